@@ -0,0 +1,209 @@
+/*
+ * Operations measured by the JMH benchmarks. They live in the default package
+ * next to the examples, JMH benchmarks load them by name through
+ * benchmarks.Workload.
+ */
+import benchmarks.Workload;
+import com.sap.smb.sbo.api.*;
+import java.util.List;
+import java.sql.Date;
+
+/**
+ *
+ * @author Rafal Rozmus (rozmus.rafal@gmail.com)
+ */
+public class Workloads
+{
+
+    /**
+     * Read all rows the way RecordsetExample used to: getRecordCount() first,
+     * then getFields().item(..) for every value of every row.
+     */
+    public static class RecordsetPerRowLookup implements Workload
+    {
+        @Override
+        public Object run(ICompany company, int size) throws Exception
+        {
+            IRecordset recordSet = SBOCOMUtil.newRecordset(company);
+            recordSet.doQuery("SELECT CardCode, CardName FROM OCRD ORDER BY CardCode");
+            int count = recordSet.getRecordCount();
+            long length = 0;
+            recordSet.moveFirst();
+            for (int i = 0; i < count; i++)
+            {
+                length += recordSet.getFields().item(0).getValue().toString().length();
+                length += recordSet.getFields().item(1).getValue().toString().length();
+                recordSet.moveNext();
+            }
+            recordSet.release();
+            return length;
+        }
+    }
+
+    /**
+     * Read all rows with RecordsetCursor
+     */
+    public static class RecordsetCursorRead implements Workload
+    {
+        @Override
+        public Object run(ICompany company, int size) throws Exception
+        {
+            long length = 0;
+            try (RecordsetCursor cursor = RecordsetCursor.open(company, "SELECT CardCode, CardName FROM OCRD ORDER BY CardCode"))
+            {
+                for (RecordsetCursor.Row row : cursor)
+                {
+                    length += row.getString(0).length();
+                    length += row.getString(1).length();
+                }
+            }
+            return length;
+        }
+    }
+
+    /**
+     * MarkInvoiceAsPrinted.markInvoices(), one autocommit per invoice
+     */
+    public static class MarkInvoicesAutocommit implements Workload
+    {
+        @Override
+        public Object run(ICompany company, int size)
+        {
+            MarkInvoiceAsPrinted example = new MarkInvoiceAsPrinted();
+            example.company = company;
+            example.markInvoices();
+            return example;
+        }
+    }
+
+    /**
+     * ChunkedInvoiceMarker, size invoices per transaction
+     */
+    public static class MarkInvoicesChunked implements Workload
+    {
+        @Override
+        public Object run(ICompany company, int size) throws Exception
+        {
+            List<Integer> docEntries = MarkInvoiceAsPrinted.getUnprintedInvoices(company);
+            return new ChunkedInvoiceMarker(company, size).mark(docEntries);
+        }
+    }
+
+    /**
+     * AddSalesOrder.addSalesOrder()
+     */
+    public static class AddSalesOrderExample implements Workload
+    {
+        @Override
+        public Object run(ICompany company, int size)
+        {
+            AddSalesOrder example = new AddSalesOrder();
+            example.company = company;
+            example.addSalesOrder();
+            return example;
+        }
+    }
+
+    /**
+     * The Sales Order of AddSalesOrder, posted through DocumentDraft
+     */
+    public static class PostSalesOrderDraft implements Workload
+    {
+        @Override
+        public Object run(ICompany company, int size) throws Exception
+        {
+            DocumentDraft draft = new DocumentDraft(17);
+            draft.cardCode = "ZZZ002";
+            draft.docDate = Date.valueOf("2015-06-10");
+            draft.docDueDate = Date.valueOf("2015-09-25");
+            draft.addLine("ITEM001", 1.0).addLine("ITEM002", 5.0);
+            return draft.post(company);
+        }
+    }
+
+    /**
+     * A Sales Order with size lines written the way AddSalesOrder used to:
+     * getLines() before every setter, add() and setCurrentLine() per line
+     */
+    public static class PostLinesPerSetter implements Workload
+    {
+        @Override
+        public Object run(ICompany company, int size) throws Exception
+        {
+            IDocuments salesOrder = SBOCOMUtil.newDocuments(company, 17);
+            try
+            {
+                salesOrder.setCardCode("ZZZ002");
+                salesOrder.setDocType(0);
+                salesOrder.setDocDate(Date.valueOf("2015-06-10"));
+                salesOrder.setDocDueDate(Date.valueOf("2015-09-25"));
+                for (int i = 0; i < size; i++)
+                {
+                    salesOrder.getLines().add();
+                    salesOrder.getLines().setCurrentLine(i);
+                    salesOrder.getLines().setItemCode("ITEM" + i);
+                    salesOrder.getLines().setQuantity(1.0);
+                }
+                if (salesOrder.add() != 0)
+                {
+                    throw new IllegalStateException(company.getLastError().getErrorMessage());
+                }
+                return company.getNewObjectKey();
+            }
+            finally
+            {
+                salesOrder.release();
+            }
+        }
+    }
+
+    /**
+     * The same Sales Order written by DocumentWriter
+     */
+    public static class PostLinesWriter implements Workload
+    {
+        @Override
+        public Object run(ICompany company, int size) throws Exception
+        {
+            DocumentDraft draft = new DocumentDraft(17);
+            draft.cardCode = "ZZZ002";
+            draft.docDate = Date.valueOf("2015-06-10");
+            draft.docDueDate = Date.valueOf("2015-09-25");
+            for (int i = 0; i < size; i++)
+            {
+                draft.addLine("ITEM" + i, 1.0);
+            }
+            return new DocumentWriter(company).add(draft);
+        }
+    }
+
+    /**
+     * UpdateAlternateCatNumbersExample.updateCategoryNumbers()
+     */
+    public static class UpdateCatNumbersPerPair implements Workload
+    {
+        @Override
+        public Object run(ICompany company, int size)
+        {
+            UpdateAlternateCatNumbersExample example = new UpdateAlternateCatNumbersExample();
+            example.company = company;
+            example.updateCategoryNumbers();
+            return example;
+        }
+    }
+
+    /**
+     * UpdateAlternateCatNumbersExample.updateChangedCategoryNumbers()
+     */
+    public static class UpdateChangedCatNumbers implements Workload
+    {
+        @Override
+        public Object run(ICompany company, int size)
+        {
+            UpdateAlternateCatNumbersExample example = new UpdateAlternateCatNumbersExample();
+            example.company = company;
+            example.updateChangedCategoryNumbers();
+            return example;
+        }
+    }
+}
@@ -0,0 +1,67 @@
+/*
+ * JMH benchmarks for the SAP Business One DI API examples, run against the
+ * in-memory DI API stand-in.
+ */
+package benchmarks;
+
+import com.sap.smb.sbo.api.*;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.*;
+
+/**
+ * Adding a two line Sales Order: AddSalesOrder against DocumentDraft.
+ *
+ * @author Rafal Rozmus (rozmus.rafal@gmail.com)
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class AddSalesOrderBenchmark
+{
+
+    @Param({"0", "1000"})
+    public long callLatencyNanos;
+
+    private ICompany company;
+    private Workload example;
+    private Workload draft;
+
+    @Setup
+    public void setUp() throws Exception
+    {
+        StandIn.reset();
+        StandIn.putBusinessPartner("ZZZ002", "ZZZ2 Test Business Partner");
+        company = Fixtures.connect();
+        StandIn.setCallLatency(callLatencyNanos);
+        Fixtures.silence();
+        example = Workload.load("AddSalesOrderExample");
+        draft = Workload.load("PostSalesOrderDraft");
+    }
+
+    @Setup(Level.Iteration)
+    public void clearOrders()
+    {
+        StandIn.documents(17).clear();
+    }
+
+    @TearDown
+    public void tearDown()
+    {
+        Fixtures.restore();
+    }
+
+    @Benchmark
+    public Object example() throws Exception
+    {
+        return example.run(company, 2);
+    }
+
+    @Benchmark
+    public Object draft() throws Exception
+    {
+        return draft.run(company, 2);
+    }
+}
@@ -0,0 +1,64 @@
+/*
+ * JMH benchmarks for the SAP Business One DI API examples, run against the
+ * in-memory DI API stand-in.
+ */
+package benchmarks;
+
+import com.sap.smb.sbo.api.*;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.*;
+
+/**
+ * Adding a Sales Order with many lines: getLines() per setter against
+ * DocumentWriter with the Lines collection fetched once.
+ *
+ * @author Rafal Rozmus (rozmus.rafal@gmail.com)
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class DocumentWriterBenchmark
+{
+
+    @Param({"2", "200"})
+    public int lines;
+
+    @Param({"0", "1000"})
+    public long callLatencyNanos;
+
+    private ICompany company;
+    private Workload perSetter;
+    private Workload writer;
+
+    @Setup
+    public void setUp() throws Exception
+    {
+        StandIn.reset();
+        StandIn.putBusinessPartner("ZZZ002", "ZZZ2 Test Business Partner");
+        company = Fixtures.connect();
+        StandIn.setCallLatency(callLatencyNanos);
+        perSetter = Workload.load("PostLinesPerSetter");
+        writer = Workload.load("PostLinesWriter");
+    }
+
+    @Setup(Level.Iteration)
+    public void clearOrders()
+    {
+        StandIn.documents(17).clear();
+    }
+
+    @Benchmark
+    public Object perSetter() throws Exception
+    {
+        return perSetter.run(company, lines);
+    }
+
+    @Benchmark
+    public Object writer() throws Exception
+    {
+        return writer.run(company, lines);
+    }
+}
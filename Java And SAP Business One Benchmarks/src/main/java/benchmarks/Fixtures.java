@@ -0,0 +1,73 @@
+/*
+ * JMH benchmarks for the SAP Business One DI API examples, run against the
+ * in-memory DI API stand-in.
+ */
+package benchmarks;
+
+import com.sap.smb.sbo.api.*;
+import java.io.OutputStream;
+import java.io.PrintStream;
+
+/**
+ * Common set-up of the benchmarks
+ *
+ * @author Rafal Rozmus (rozmus.rafal@gmail.com)
+ */
+final class Fixtures
+{
+
+    private static PrintStream console;
+
+    private Fixtures()
+    {
+    }
+
+    /**
+     * Connect a stand-in company the same way the examples do
+     */
+    static ICompany connect() throws SBOCOMException
+    {
+        ICompany company = SBOCOMUtil.newCompany();
+        company.setServer("dbserver");
+        company.setCompanyDB("SBODemoGB");
+        company.setUserName("manager");
+        company.setPassword("Password");
+        if (company.connect() != 0)
+        {
+            throw new IllegalStateException(company.getLastError().getErrorMessage());
+        }
+        return company;
+    }
+
+    /**
+     * Discard what the examples print, so that console output is not measured
+     */
+    static void silence()
+    {
+        if (console == null)
+        {
+            console = System.out;
+            System.setOut(new PrintStream(new OutputStream()
+            {
+                @Override
+                public void write(int b)
+                {
+                }
+
+                @Override
+                public void write(byte[] b, int off, int len)
+                {
+                }
+            }));
+        }
+    }
+
+    static void restore()
+    {
+        if (console != null)
+        {
+            System.setOut(console);
+            console = null;
+        }
+    }
+}
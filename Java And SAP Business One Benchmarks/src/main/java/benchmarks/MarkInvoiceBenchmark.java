@@ -0,0 +1,78 @@
+/*
+ * JMH benchmarks for the SAP Business One DI API examples, run against the
+ * in-memory DI API stand-in.
+ */
+package benchmarks;
+
+import com.sap.smb.sbo.api.*;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.*;
+
+/**
+ * Marking invoices as printed: MarkInvoiceAsPrinted's one update per
+ * autocommit against ChunkedInvoiceMarker's one transaction per chunk.
+ *
+ * @author Rafal Rozmus (rozmus.rafal@gmail.com)
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class MarkInvoiceBenchmark
+{
+
+    @Param({"500"})
+    public int invoices;
+
+    @Param({"50"})
+    public int chunkSize;
+
+    @Param({"0", "20000"})
+    public long roundTripLatencyNanos;
+
+    @Param({"0", "500000"})
+    public long commitLatencyNanos;
+
+    private ICompany company;
+    private Workload autocommit;
+    private Workload chunked;
+
+    @Setup
+    public void setUp() throws Exception
+    {
+        StandIn.reset();
+        // the query always returns all invoices, so every invocation marks them again
+        StandIn.QueryResult oinv = StandIn.result("DocEntry");
+        for (int i = 0; i < invoices; i++)
+        {
+            oinv.row(StandIn.putDocument(13, "C000001").docEntry);
+        }
+        StandIn.onQuery("SELECT T0.\\[DocEntry\\] FROM OINV.*", query -> oinv);
+        company = Fixtures.connect();
+        StandIn.setRoundTripLatency(roundTripLatencyNanos);
+        StandIn.setCommitLatency(commitLatencyNanos);
+        Fixtures.silence();
+        autocommit = Workload.load("MarkInvoicesAutocommit");
+        chunked = Workload.load("MarkInvoicesChunked");
+    }
+
+    @TearDown
+    public void tearDown()
+    {
+        Fixtures.restore();
+    }
+
+    @Benchmark
+    public Object autocommit() throws Exception
+    {
+        return autocommit.run(company, invoices);
+    }
+
+    @Benchmark
+    public Object chunked() throws Exception
+    {
+        return chunked.run(company, chunkSize);
+    }
+}
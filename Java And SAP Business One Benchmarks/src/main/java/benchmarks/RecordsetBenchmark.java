@@ -0,0 +1,63 @@
+/*
+ * JMH benchmarks for the SAP Business One DI API examples, run against the
+ * in-memory DI API stand-in.
+ */
+package benchmarks;
+
+import com.sap.smb.sbo.api.*;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.*;
+
+/**
+ * Reading the OCRD list of RecordsetExample: per-row getFields().item() calls
+ * against RecordsetCursor.
+ *
+ * @author Rafal Rozmus (rozmus.rafal@gmail.com)
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class RecordsetBenchmark
+{
+
+    @Param({"10000"})
+    public int rows;
+
+    @Param({"0", "1000"})
+    public long callLatencyNanos;
+
+    private ICompany company;
+    private Workload perRowLookup;
+    private Workload cursor;
+
+    @Setup
+    public void setUp() throws Exception
+    {
+        StandIn.reset();
+        StandIn.QueryResult ocrd = StandIn.result("CardCode", "CardName");
+        for (int i = 0; i < rows; i++)
+        {
+            ocrd.row(String.format("C%06d", i), "Business Partner " + i);
+        }
+        StandIn.onQuery("SELECT CardCode, CardName FROM OCRD.*", query -> ocrd);
+        company = Fixtures.connect();
+        StandIn.setCallLatency(callLatencyNanos);
+        perRowLookup = Workload.load("RecordsetPerRowLookup");
+        cursor = Workload.load("RecordsetCursorRead");
+    }
+
+    @Benchmark
+    public Object perRowLookup() throws Exception
+    {
+        return perRowLookup.run(company, rows);
+    }
+
+    @Benchmark
+    public Object cursor() throws Exception
+    {
+        return cursor.run(company, rows);
+    }
+}
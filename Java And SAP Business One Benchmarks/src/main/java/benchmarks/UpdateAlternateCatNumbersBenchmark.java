@@ -0,0 +1,81 @@
+/*
+ * JMH benchmarks for the SAP Business One DI API examples, run against the
+ * in-memory DI API stand-in.
+ */
+package benchmarks;
+
+import com.sap.smb.sbo.api.*;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.*;
+
+/**
+ * Updating BP Catalogue Numbers: UpdateAlternateCatNumbersExample's
+ * getByKey() + update() per pair against the prefetch-and-diff mode. Half of
+ * the pairs already carry the new number.
+ *
+ * @author Rafal Rozmus (rozmus.rafal@gmail.com)
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class UpdateAlternateCatNumbersBenchmark
+{
+
+    @Param({"0", "20000"})
+    public long roundTripLatencyNanos;
+
+    private ICompany company;
+    private Workload perPair;
+    private Workload diff;
+
+    @Setup
+    public void setUp() throws Exception
+    {
+        StandIn.reset();
+        StandIn.onQuery("SELECT ItemCode, CardCode, Substitute FROM OSCN.*", query -> {
+            StandIn.QueryResult oscn = StandIn.result("ItemCode", "CardCode", "Substitute");
+            for (StandIn.AlternateCatNumRecord record : StandIn.alternateCatNums().values())
+            {
+                oscn.row(record.itemCode, record.cardCode, record.substitute);
+            }
+            return oscn;
+        });
+        company = Fixtures.connect();
+        StandIn.setRoundTripLatency(roundTripLatencyNanos);
+        Fixtures.silence();
+        perPair = Workload.load("UpdateCatNumbersPerPair");
+        diff = Workload.load("UpdateChangedCatNumbers");
+    }
+
+    @Setup(Level.Invocation)
+    public void seed()
+    {
+        // the numbers of the example, ITEM003 and ITEM004 are already updated
+        StandIn.alternateCatNums().clear();
+        StandIn.putAlternateCatNum("ITEM001", "AAAA", "23922221");
+        StandIn.putAlternateCatNum("ITEM002", "AAAA", "23922222");
+        StandIn.putAlternateCatNum("ITEM003", "AAAA", "23922268");
+        StandIn.putAlternateCatNum("ITEM004", "AAAA", "23922269");
+    }
+
+    @TearDown
+    public void tearDown()
+    {
+        Fixtures.restore();
+    }
+
+    @Benchmark
+    public Object perPair() throws Exception
+    {
+        return perPair.run(company, 0);
+    }
+
+    @Benchmark
+    public Object diff() throws Exception
+    {
+        return diff.run(company, 0);
+    }
+}
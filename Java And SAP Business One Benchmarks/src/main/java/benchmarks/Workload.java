@@ -0,0 +1,38 @@
+/*
+ * JMH benchmarks for the SAP Business One DI API examples, run against the
+ * in-memory DI API stand-in.
+ */
+package benchmarks;
+
+import com.sap.smb.sbo.api.*;
+
+/**
+ * Operation measured by a benchmark. The examples live in the default
+ * package, which JMH benchmarks cannot import, so the operations are
+ * implemented in the default package (see Workloads) and loaded by name.
+ *
+ * @author Rafal Rozmus (rozmus.rafal@gmail.com)
+ */
+public interface Workload
+{
+
+    /**
+     * Run the operation once
+     *
+     * @param company connected stand-in company
+     * @param size size parameter of the operation, e.g. chunk size
+     * @return any result, consumed by the benchmark
+     */
+    Object run(ICompany company, int size) throws Exception;
+
+    /**
+     * Load a workload implemented in the default package
+     *
+     * @param name nested class name in Workloads, e.g. RecordsetCursorRead
+     * @return workload instance
+     */
+    static Workload load(String name) throws ReflectiveOperationException
+    {
+        return (Workload) Class.forName("Workloads$" + name).getDeclaredConstructor().newInstance();
+    }
+}
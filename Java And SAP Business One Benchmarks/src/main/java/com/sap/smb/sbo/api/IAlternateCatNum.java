@@ -0,0 +1,22 @@
+/*
+ * In-memory stand-in for the SAP Business One DI API (sboapi.jar), used to
+ * compile and benchmark the examples without DI API installed. Only the
+ * calls used by the examples are provided.
+ */
+package com.sap.smb.sbo.api;
+
+/**
+ *
+ * @author Rafal Rozmus (rozmus.rafal@gmail.com)
+ */
+public interface IAlternateCatNum
+{
+
+    Boolean getByKey(String itemCode, String cardCode, String substitute);
+    String getItemCode();
+    String getCardCode();
+    String getSubstitute();
+    void setSubstitute(String substitute);
+    Integer update();
+    void release();
+}
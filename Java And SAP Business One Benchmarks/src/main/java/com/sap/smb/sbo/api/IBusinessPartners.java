@@ -0,0 +1,26 @@
+/*
+ * In-memory stand-in for the SAP Business One DI API (sboapi.jar), used to
+ * compile and benchmark the examples without DI API installed. Only the
+ * calls used by the examples are provided.
+ */
+package com.sap.smb.sbo.api;
+
+/**
+ *
+ * @author Rafal Rozmus (rozmus.rafal@gmail.com)
+ */
+public interface IBusinessPartners
+{
+
+    void setCardCode(String cardCode);
+    String getCardCode();
+    void setCardName(String cardName);
+    String getCardName();
+    void setCardType(Integer cardType);
+    void setCompanyPrivate(Integer companyPrivate);
+    IContactEmployees getContactEmployees();
+    Boolean getByKey(String cardCode);
+    Integer add();
+    Integer update();
+    void release();
+}
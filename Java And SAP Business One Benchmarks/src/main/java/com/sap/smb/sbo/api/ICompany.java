@@ -0,0 +1,36 @@
+/*
+ * In-memory stand-in for the SAP Business One DI API (sboapi.jar), used to
+ * compile and benchmark the examples without DI API installed. Only the
+ * calls used by the examples are provided.
+ */
+package com.sap.smb.sbo.api;
+
+/**
+ *
+ * @author Rafal Rozmus (rozmus.rafal@gmail.com)
+ */
+public interface ICompany
+{
+
+    void setServer(String server);
+    void setCompanyDB(String companyDb);
+    String getCompanyDB();
+    void setUserName(String userName);
+    void setPassword(String password);
+    void setDbServerType(Integer dbServerType);
+    void setUseTrusted(Boolean useTrusted);
+    void setLanguage(Integer language);
+    void setDbUserName(String dbUserName);
+    void setDbPassword(String dbPassword);
+    void setLicenseServer(String licenseServer);
+    Integer connect();
+    void disconnect();
+    Boolean isConnected();
+    String getCompanyName();
+    SBOErrorMessage getLastError();
+    void startTransaction();
+    void endTransaction(Integer endType);
+    Boolean isInTransaction();
+    String getNewObjectKey();
+    void release();
+}
@@ -0,0 +1,26 @@
+/*
+ * In-memory stand-in for the SAP Business One DI API (sboapi.jar), used to
+ * compile and benchmark the examples without DI API installed. Only the
+ * calls used by the examples are provided.
+ */
+package com.sap.smb.sbo.api;
+
+/**
+ *
+ * @author Rafal Rozmus (rozmus.rafal@gmail.com)
+ */
+public interface IContactEmployees
+{
+
+    void add();
+    void setCurrentLine(Integer lineNum);
+    Integer getCount();
+    void setName(String name);
+    String getName();
+    void setFirstName(String firstName);
+    void setLastName(String lastName);
+    void setE_Mail(String eMail);
+    String getE_Mail();
+    void setMobilePhone(String mobilePhone);
+    String getMobilePhone();
+}
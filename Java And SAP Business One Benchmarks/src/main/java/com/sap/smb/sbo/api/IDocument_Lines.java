@@ -0,0 +1,22 @@
+/*
+ * In-memory stand-in for the SAP Business One DI API (sboapi.jar), used to
+ * compile and benchmark the examples without DI API installed. Only the
+ * calls used by the examples are provided.
+ */
+package com.sap.smb.sbo.api;
+
+/**
+ *
+ * @author Rafal Rozmus (rozmus.rafal@gmail.com)
+ */
+public interface IDocument_Lines
+{
+
+    void add();
+    void setCurrentLine(Integer lineNum);
+    Integer getCount();
+    void setItemCode(String itemCode);
+    String getItemCode();
+    void setQuantity(Double quantity);
+    Double getQuantity();
+}
@@ -0,0 +1,33 @@
+/*
+ * In-memory stand-in for the SAP Business One DI API (sboapi.jar), used to
+ * compile and benchmark the examples without DI API installed. Only the
+ * calls used by the examples are provided.
+ */
+package com.sap.smb.sbo.api;
+
+/**
+ *
+ * @author Rafal Rozmus (rozmus.rafal@gmail.com)
+ */
+public interface IDocuments
+{
+
+    IDocument_Lines getLines();
+    void setCardCode(String cardCode);
+    String getCardCode();
+    void setDocType(Integer docType);
+    void setDocDate(java.util.Date docDate);
+    void setDocDueDate(java.util.Date docDueDate);
+    void setReqType(Integer reqType);
+    void setRequester(String requester);
+    void setRequriedDate(java.util.Date requriedDate);
+    void setNumAtCard(String numAtCard);
+    String getNumAtCard();
+    void setPrinted(Integer printed);
+    Integer getPrinted();
+    Integer getDocEntry();
+    Boolean getByKey(Integer docEntry);
+    Integer add();
+    Integer update();
+    void release();
+}
@@ -0,0 +1,20 @@
+/*
+ * In-memory stand-in for the SAP Business One DI API (sboapi.jar), used to
+ * compile and benchmark the examples without DI API installed. Only the
+ * calls used by the examples are provided.
+ */
+package com.sap.smb.sbo.api;
+
+/**
+ *
+ * @author Rafal Rozmus (rozmus.rafal@gmail.com)
+ */
+public interface IField
+{
+
+    String getName();
+    Integer getType();
+    Object getValue();
+    Integer getValueInteger();
+    void release();
+}
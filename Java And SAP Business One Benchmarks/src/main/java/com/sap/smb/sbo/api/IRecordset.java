@@ -0,0 +1,23 @@
+/*
+ * In-memory stand-in for the SAP Business One DI API (sboapi.jar), used to
+ * compile and benchmark the examples without DI API installed. Only the
+ * calls used by the examples are provided.
+ */
+package com.sap.smb.sbo.api;
+
+/**
+ *
+ * @author Rafal Rozmus (rozmus.rafal@gmail.com)
+ */
+public interface IRecordset
+{
+
+    void doQuery(String query);
+    Integer getRecordCount();
+    void moveFirst();
+    void moveNext();
+    Boolean isEoF();
+    Boolean isBoF();
+    IFields getFields();
+    void release();
+}
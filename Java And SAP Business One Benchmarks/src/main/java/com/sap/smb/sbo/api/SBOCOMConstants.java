@@ -0,0 +1,24 @@
+/*
+ * In-memory stand-in for the SAP Business One DI API (sboapi.jar), used to
+ * compile and benchmark the examples without DI API installed. Only the
+ * calls used by the examples are provided.
+ */
+package com.sap.smb.sbo.api;
+
+/**
+ *
+ * @author Rafal Rozmus (rozmus.rafal@gmail.com)
+ */
+public class SBOCOMConstants
+{
+
+    public static final int BoDataServerTypes_dst_MSSQL2012 = 7;
+    public static final int BoSuppLangs_ln_English = 3;
+    public static final int BoWfTransOpt_wf_Commit = 0;
+    public static final int BoWfTransOpt_wf_RollBack = 1;
+    public static final int BoFieldTypes_db_Alpha = 0;
+    public static final int BoFieldTypes_db_Memo = 1;
+    public static final int BoFieldTypes_db_Numeric = 2;
+    public static final int BoFieldTypes_db_Date = 3;
+    public static final int BoFieldTypes_db_Float = 4;
+}
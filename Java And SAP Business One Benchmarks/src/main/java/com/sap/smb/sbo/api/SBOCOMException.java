@@ -0,0 +1,21 @@
+/*
+ * In-memory stand-in for the SAP Business One DI API (sboapi.jar), used to
+ * compile and benchmark the examples without DI API installed. Only the
+ * calls used by the examples are provided.
+ */
+package com.sap.smb.sbo.api;
+
+/**
+ *
+ * @author Rafal Rozmus (rozmus.rafal@gmail.com)
+ */
+public class SBOCOMException extends Exception
+{
+
+    private static final long serialVersionUID = 1L;
+
+    public SBOCOMException(String message)
+    {
+        super(message);
+    }
+}
@@ -0,0 +1,55 @@
+/*
+ * In-memory stand-in for the SAP Business One DI API (sboapi.jar), used to
+ * compile and benchmark the examples without DI API installed. Only the
+ * calls used by the examples are provided.
+ */
+package com.sap.smb.sbo.api;
+
+/**
+ *
+ * @author Rafal Rozmus (rozmus.rafal@gmail.com)
+ */
+public class SBOCOMUtil
+{
+
+    public static ICompany newCompany() throws SBOCOMException
+    {
+        StandIn.call();
+        return new StandIn.Company();
+    }
+
+    public static IRecordset newRecordset(ICompany company) throws SBOCOMException
+    {
+        return new StandIn.Recordset(session(company));
+    }
+
+    public static IDocuments newDocuments(ICompany company, int objectType) throws SBOCOMException
+    {
+        return new StandIn.Documents(session(company), objectType);
+    }
+
+    public static IBusinessPartners newBusinessPartners(ICompany company) throws SBOCOMException
+    {
+        return new StandIn.BusinessPartners(session(company));
+    }
+
+    public static IAlternateCatNum newAlternateCatNum(ICompany company) throws SBOCOMException
+    {
+        return new StandIn.AlternateCatNum(session(company));
+    }
+
+    public static IUsers newUsers(ICompany company) throws SBOCOMException
+    {
+        return new StandIn.Users(session(company));
+    }
+
+    private static StandIn.Company session(ICompany company) throws SBOCOMException
+    {
+        StandIn.call();
+        if (!(company instanceof StandIn.Company) || !((StandIn.Company) company).connected())
+        {
+            throw new SBOCOMException("Company is not connected");
+        }
+        return (StandIn.Company) company;
+    }
+}
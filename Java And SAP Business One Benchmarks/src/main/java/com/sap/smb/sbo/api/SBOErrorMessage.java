@@ -0,0 +1,33 @@
+/*
+ * In-memory stand-in for the SAP Business One DI API (sboapi.jar), used to
+ * compile and benchmark the examples without DI API installed. Only the
+ * calls used by the examples are provided.
+ */
+package com.sap.smb.sbo.api;
+
+/**
+ *
+ * @author Rafal Rozmus (rozmus.rafal@gmail.com)
+ */
+public class SBOErrorMessage
+{
+
+    private final int errorCode;
+    private final String errorMessage;
+
+    public SBOErrorMessage(int errorCode, String errorMessage)
+    {
+        this.errorCode = errorCode;
+        this.errorMessage = errorMessage;
+    }
+
+    public Integer getErrorCode()
+    {
+        return errorCode;
+    }
+
+    public String getErrorMessage()
+    {
+        return errorMessage;
+    }
+}
@@ -0,0 +1,1468 @@
+/*
+ * In-memory stand-in for the SAP Business One DI API (sboapi.jar), used to
+ * compile and benchmark the examples without DI API installed. Only the
+ * calls used by the examples are provided.
+ */
+package com.sap.smb.sbo.api;
+
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Shared state of the stand-in: the in-memory company database, canned query
+ * results and latency injection. Every call on a DI API object counts as a
+ * bridge call and waits callLatency; calls that go to the server (connect,
+ * doQuery, getByKey, add, update, transactions) additionally wait
+ * roundTripLatency, connect() waits connectLatency instead. Every commit -
+ * an add() or update() outside of a transaction, or endTransaction() with
+ * commit - waits commitLatency on top.
+ *
+ * @author Rafal Rozmus (rozmus.rafal@gmail.com)
+ */
+public final class StandIn
+{
+
+    private static volatile long callLatencyNanos = 0;
+    private static volatile long roundTripLatencyNanos = 0;
+    private static volatile long connectLatencyNanos = 0;
+    private static volatile long commitLatencyNanos = 0;
+    private static final LongAdder calls = new LongAdder();
+    private static final LongAdder roundTrips = new LongAdder();
+
+    private static final List<QueryRule> queries = new CopyOnWriteArrayList<>();
+    private static final Map<Integer, Map<Integer, DocumentRecord>> documents = new ConcurrentHashMap<>();
+    private static final AtomicInteger nextDocEntry = new AtomicInteger(1);
+    private static final Map<String, BusinessPartnerRecord> businessPartners = new ConcurrentHashMap<>();
+    private static final Map<String, AlternateCatNumRecord> alternateCatNums = new ConcurrentHashMap<>();
+    private static final Map<Integer, UserRecord> users = new ConcurrentHashMap<>();
+    // number of document writes still to fail, and the error they fail with
+    private static final AtomicInteger failingWrites = new AtomicInteger();
+    private static volatile SBOErrorMessage writeFailure = new SBOErrorMessage(0, "");
+    // failure of every update() of a document, by object type and DocEntry
+    private static final Map<String, SBOErrorMessage> failingDocuments = new ConcurrentHashMap<>();
+
+    private StandIn()
+    {
+    }
+
+    /**
+     * Remove all data, query rules and latencies
+     */
+    public static void reset()
+    {
+        callLatencyNanos = 0;
+        roundTripLatencyNanos = 0;
+        connectLatencyNanos = 0;
+        commitLatencyNanos = 0;
+        calls.reset();
+        roundTrips.reset();
+        queries.clear();
+        documents.clear();
+        nextDocEntry.set(1);
+        businessPartners.clear();
+        alternateCatNums.clear();
+        users.clear();
+        failingWrites.set(0);
+        failingDocuments.clear();
+    }
+
+    /**
+     * Make the next document add() or update() calls fail, e.g. with a lock
+     * timeout, to exercise error handling
+     *
+     * @param count number of calls to fail
+     */
+    public static void failWrites(int count, int code, String message)
+    {
+        writeFailure = new SBOErrorMessage(code, message);
+        failingWrites.set(count);
+    }
+
+    /**
+     * Make every update() of one document fail until reset(), e.g. an invoice
+     * in the middle of a chunk
+     */
+    public static void failWrites(int objectType, int docEntry, int code, String message)
+    {
+        failingDocuments.put(objectType + ":" + docEntry, new SBOErrorMessage(code, message));
+    }
+
+    /**
+     * Set latency of every bridge call, e.g. a property setter
+     */
+    public static void setCallLatency(long nanos)
+    {
+        callLatencyNanos = nanos;
+    }
+
+    /**
+     * Set latency of calls which go to the server
+     */
+    public static void setRoundTripLatency(long nanos)
+    {
+        roundTripLatencyNanos = nanos;
+    }
+
+    /**
+     * Set latency of company.connect()
+     */
+    public static void setConnectLatency(long nanos)
+    {
+        connectLatencyNanos = nanos;
+    }
+
+    /**
+     * Set latency of a commit, e.g. the transaction log flush of an
+     * autocommitted update
+     */
+    public static void setCommitLatency(long nanos)
+    {
+        commitLatencyNanos = nanos;
+    }
+
+    public static long getBridgeCalls()
+    {
+        return calls.sum();
+    }
+
+    public static long getRoundTrips()
+    {
+        return roundTrips.sum();
+    }
+
+    /**
+     * Answer doQuery() calls matching the regular expression. Rules are tried
+     * in the order they were added, case is ignored.
+     */
+    public static void onQuery(String regex, QueryHandler handler)
+    {
+        queries.add(new QueryRule(Pattern.compile(regex, Pattern.CASE_INSENSITIVE | Pattern.DOTALL), handler));
+    }
+
+    /**
+     * Start a query result with the given columns
+     */
+    public static QueryResult result(String... columns)
+    {
+        return new QueryResult(columns);
+    }
+
+    public static Map<Integer, DocumentRecord> documents(int objectType)
+    {
+        return documents.computeIfAbsent(objectType, t -> new ConcurrentHashMap<>());
+    }
+
+    public static DocumentRecord putDocument(int objectType, String cardCode)
+    {
+        DocumentRecord record = new DocumentRecord(nextDocEntry.getAndIncrement(), cardCode);
+        documents(objectType).put(record.docEntry, record);
+        return record;
+    }
+
+    public static Map<String, BusinessPartnerRecord> businessPartners()
+    {
+        return businessPartners;
+    }
+
+    public static BusinessPartnerRecord putBusinessPartner(String cardCode, String cardName)
+    {
+        BusinessPartnerRecord record = new BusinessPartnerRecord(cardCode);
+        record.cardName = cardName;
+        businessPartners.put(cardCode.toUpperCase(), record);
+        return record;
+    }
+
+    public static Map<String, AlternateCatNumRecord> alternateCatNums()
+    {
+        return alternateCatNums;
+    }
+
+    public static void putAlternateCatNum(String itemCode, String cardCode, String substitute)
+    {
+        AlternateCatNumRecord record = new AlternateCatNumRecord(itemCode, cardCode, substitute);
+        alternateCatNums.put(record.key(), record);
+    }
+
+    public static Map<Integer, UserRecord> users()
+    {
+        return users;
+    }
+
+    public static UserRecord putUser(int internalKey, String userCode, boolean locked)
+    {
+        UserRecord record = new UserRecord(internalKey, userCode);
+        record.locked = locked;
+        users.put(internalKey, record);
+        return record;
+    }
+
+    /**
+     * Error code of an injected write failure, 0 if the write may go on
+     */
+    static int injectedFailure(Company company)
+    {
+        if (failingWrites.getAndUpdate(n -> Math.max(0, n - 1)) > 0)
+        {
+            SBOErrorMessage failure = writeFailure;
+            return company.error(failure.getErrorCode(), failure.getErrorMessage());
+        }
+        return 0;
+    }
+
+    static void call()
+    {
+        calls.increment();
+        spin(callLatencyNanos);
+    }
+
+    static void roundTrip()
+    {
+        call();
+        roundTrips.increment();
+        spin(roundTripLatencyNanos);
+    }
+
+    /**
+     * Busy wait, sleeping is far too coarse for microsecond latencies
+     */
+    private static void spin(long nanos)
+    {
+        if (nanos > 0)
+        {
+            long end = System.nanoTime() + nanos;
+            while (System.nanoTime() < end)
+            {
+                // spin
+            }
+        }
+    }
+
+    /**
+     * Produces the result of a query
+     */
+    public interface QueryHandler
+    {
+        QueryResult answer(Matcher query);
+    }
+
+    private static class QueryRule
+    {
+        final Pattern pattern;
+        final QueryHandler handler;
+
+        QueryRule(Pattern pattern, QueryHandler handler)
+        {
+            this.pattern = pattern;
+            this.handler = handler;
+        }
+    }
+
+    /**
+     * Columns and rows returned by a query
+     */
+    public static class QueryResult
+    {
+        final String[] columns;
+        final int[] types;
+        final List<Object[]> rows = new ArrayList<>();
+
+        QueryResult(String[] columns)
+        {
+            this.columns = columns;
+            types = new int[columns.length];
+        }
+
+        /**
+         * Add a row. Column types are taken from the first row: String, Integer,
+         * Double or Date.
+         */
+        public QueryResult row(Object... values)
+        {
+            if (values.length != columns.length)
+            {
+                throw new IllegalArgumentException("Expected " + columns.length + " values");
+            }
+            if (rows.isEmpty())
+            {
+                for (int i = 0; i < values.length; i++)
+                {
+                    types[i] = values[i] instanceof Integer ? SBOCOMConstants.BoFieldTypes_db_Numeric
+                            : values[i] instanceof Number ? SBOCOMConstants.BoFieldTypes_db_Float
+                            : values[i] instanceof Date ? SBOCOMConstants.BoFieldTypes_db_Date
+                            : SBOCOMConstants.BoFieldTypes_db_Alpha;
+                }
+            }
+            rows.add(values);
+            return this;
+        }
+    }
+
+    public static class DocumentRecord
+    {
+        public final int docEntry;
+        public volatile String cardCode;
+        public volatile String numAtCard;
+        public volatile boolean printed = false;
+        public volatile List<LineRecord> lines = new ArrayList<>();
+
+        DocumentRecord(int docEntry, String cardCode)
+        {
+            this.docEntry = docEntry;
+            this.cardCode = cardCode;
+        }
+    }
+
+    public static class LineRecord
+    {
+        public String itemCode;
+        public double quantity;
+    }
+
+    public static class BusinessPartnerRecord
+    {
+        public final String cardCode;
+        public volatile String cardName;
+        public volatile List<ContactRecord> contacts = new ArrayList<>();
+
+        BusinessPartnerRecord(String cardCode)
+        {
+            this.cardCode = cardCode;
+        }
+    }
+
+    public static class ContactRecord
+    {
+        public String name;
+        public String firstName;
+        public String lastName;
+        public String eMail;
+        public String mobilePhone;
+
+        ContactRecord copy()
+        {
+            ContactRecord copy = new ContactRecord();
+            copy.name = name;
+            copy.firstName = firstName;
+            copy.lastName = lastName;
+            copy.eMail = eMail;
+            copy.mobilePhone = mobilePhone;
+            return copy;
+        }
+    }
+
+    public static class AlternateCatNumRecord
+    {
+        public final String itemCode;
+        public final String cardCode;
+        public final String substitute;
+
+        AlternateCatNumRecord(String itemCode, String cardCode, String substitute)
+        {
+            this.itemCode = itemCode;
+            this.cardCode = cardCode;
+            this.substitute = substitute;
+        }
+
+        String key()
+        {
+            return key(itemCode, cardCode, substitute);
+        }
+
+        static String key(String itemCode, String cardCode, String substitute)
+        {
+            return itemCode + '\u0000' + cardCode + '\u0000' + substitute;
+        }
+    }
+
+    public static class UserRecord
+    {
+        public final int internalKey;
+        public final String userCode;
+        public volatile boolean locked;
+
+        UserRecord(int internalKey, String userCode)
+        {
+            this.internalKey = internalKey;
+            this.userCode = userCode;
+        }
+    }
+
+    static class Company implements ICompany
+    {
+        private String companyDb;
+        private boolean connected = false;
+        private SBOErrorMessage lastError = new SBOErrorMessage(0, "");
+        private String newObjectKey = "";
+        // undo actions of the open transaction, null when not in a transaction
+        private List<Runnable> undo = null;
+
+        /**
+         * Record how to revert a change made in the open transaction
+         */
+        void changed(Runnable revert)
+        {
+            if (undo != null)
+            {
+                undo.add(revert);
+            }
+        }
+
+        int error(int code, String message)
+        {
+            lastError = new SBOErrorMessage(code, message);
+            return code;
+        }
+
+        /**
+         * Successful change, commits right away outside of a transaction
+         */
+        void autoCommit()
+        {
+            if (undo == null)
+            {
+                spin(commitLatencyNanos);
+            }
+        }
+
+        void newObject(String key)
+        {
+            newObjectKey = key;
+        }
+
+        @Override
+        public void setServer(String server)
+        {
+            call();
+        }
+
+        @Override
+        public void setCompanyDB(String companyDb)
+        {
+            call();
+            this.companyDb = companyDb;
+        }
+
+        @Override
+        public String getCompanyDB()
+        {
+            call();
+            return companyDb;
+        }
+
+        @Override
+        public void setUserName(String userName)
+        {
+            call();
+        }
+
+        @Override
+        public void setPassword(String password)
+        {
+            call();
+        }
+
+        @Override
+        public void setDbServerType(Integer dbServerType)
+        {
+            call();
+        }
+
+        @Override
+        public void setUseTrusted(Boolean useTrusted)
+        {
+            call();
+        }
+
+        @Override
+        public void setLanguage(Integer language)
+        {
+            call();
+        }
+
+        @Override
+        public void setDbUserName(String dbUserName)
+        {
+            call();
+        }
+
+        @Override
+        public void setDbPassword(String dbPassword)
+        {
+            call();
+        }
+
+        @Override
+        public void setLicenseServer(String licenseServer)
+        {
+            call();
+        }
+
+        @Override
+        public Integer connect()
+        {
+            call();
+            roundTrips.increment();
+            spin(connectLatencyNanos);
+            if (companyDb == null || companyDb.isEmpty())
+            {
+                return error(-111, "Company database is not set");
+            }
+            connected = true;
+            return 0;
+        }
+
+        @Override
+        public void disconnect()
+        {
+            call();
+            connected = false;
+        }
+
+        @Override
+        public Boolean isConnected()
+        {
+            call();
+            return connected;
+        }
+
+        /**
+         * Connection state without a bridge call, for the factories
+         */
+        boolean connected()
+        {
+            return connected;
+        }
+
+        @Override
+        public String getCompanyName()
+        {
+            call();
+            return companyDb;
+        }
+
+        @Override
+        public SBOErrorMessage getLastError()
+        {
+            call();
+            return lastError;
+        }
+
+        @Override
+        public void startTransaction()
+        {
+            roundTrip();
+            if (undo != null)
+            {
+                throw new IllegalStateException("Transaction is already in progress");
+            }
+            undo = new ArrayList<>();
+        }
+
+        @Override
+        public void endTransaction(Integer endType)
+        {
+            roundTrip();
+            if (undo == null)
+            {
+                throw new IllegalStateException("No transaction in progress");
+            }
+            if (endType == SBOCOMConstants.BoWfTransOpt_wf_RollBack)
+            {
+                for (int i = undo.size() - 1; i >= 0; i--)
+                {
+                    undo.get(i).run();
+                }
+            }
+            else
+            {
+                spin(commitLatencyNanos);
+            }
+            undo = null;
+        }
+
+        @Override
+        public Boolean isInTransaction()
+        {
+            call();
+            return undo != null;
+        }
+
+        @Override
+        public String getNewObjectKey()
+        {
+            call();
+            return newObjectKey;
+        }
+
+        @Override
+        public void release()
+        {
+            call();
+        }
+    }
+
+    static class Recordset implements IRecordset
+    {
+        private final Company company;
+        private QueryResult result = new QueryResult(new String[0]);
+        private int position = 0;
+        private final IFields fields = new Fields();
+
+        Recordset(Company company)
+        {
+            this.company = company;
+        }
+
+        @Override
+        public void doQuery(String query)
+        {
+            roundTrip();
+            if (query.trim().equalsIgnoreCase("SELECT 1"))
+            {
+                result = result("Value").row(1);
+                position = 0;
+                return;
+            }
+            for (QueryRule rule : queries)
+            {
+                Matcher matcher = rule.pattern.matcher(query);
+                if (matcher.matches())
+                {
+                    result = rule.handler.answer(matcher);
+                    position = 0;
+                    return;
+                }
+            }
+            company.error(-1, "No stand-in result for query: " + query);
+            throw new IllegalArgumentException("No stand-in result for query: " + query);
+        }
+
+        @Override
+        public Integer getRecordCount()
+        {
+            call();
+            return result.rows.size();
+        }
+
+        @Override
+        public void moveFirst()
+        {
+            call();
+            position = 0;
+        }
+
+        @Override
+        public void moveNext()
+        {
+            call();
+            if (position < result.rows.size())
+            {
+                position++;
+            }
+        }
+
+        @Override
+        public Boolean isEoF()
+        {
+            call();
+            return position >= result.rows.size();
+        }
+
+        @Override
+        public Boolean isBoF()
+        {
+            call();
+            return position == 0;
+        }
+
+        @Override
+        public IFields getFields()
+        {
+            call();
+            return fields;
+        }
+
+        @Override
+        public void release()
+        {
+            call();
+        }
+
+        private class Fields implements IFields
+        {
+            @Override
+            public IField item(Object index)
+            {
+                call();
+                if (index instanceof Number)
+                {
+                    return new Field(((Number) index).intValue());
+                }
+                for (int i = 0; i < result.columns.length; i++)
+                {
+                    if (result.columns[i].equalsIgnoreCase(index.toString()))
+                    {
+                        return new Field(i);
+                    }
+                }
+                throw new IllegalArgumentException("No column " + index);
+            }
+
+            @Override
+            public Integer getCount()
+            {
+                call();
+                return result.columns.length;
+            }
+
+            @Override
+            public void release()
+            {
+                call();
+            }
+        }
+
+        private class Field implements IField
+        {
+            private final int column;
+
+            Field(int column)
+            {
+                if (column < 0 || column >= result.columns.length)
+                {
+                    throw new IndexOutOfBoundsException("No column " + column);
+                }
+                this.column = column;
+            }
+
+            @Override
+            public String getName()
+            {
+                call();
+                return result.columns[column];
+            }
+
+            @Override
+            public Integer getType()
+            {
+                call();
+                return result.types[column];
+            }
+
+            @Override
+            public Object getValue()
+            {
+                call();
+                return position < result.rows.size() ? result.rows.get(position)[column] : null;
+            }
+
+            @Override
+            public Integer getValueInteger()
+            {
+                Object value = getValue();
+                return value == null ? 0 : ((Number) value).intValue();
+            }
+
+            @Override
+            public void release()
+            {
+                call();
+            }
+        }
+    }
+
+    static class Documents implements IDocuments
+    {
+        private final Company company;
+        private final int objectType;
+        private Integer docEntry = null;
+        private String cardCode;
+        private String numAtCard;
+        private boolean printed = false;
+        private final DocumentLines lines = new DocumentLines();
+
+        Documents(Company company, int objectType)
+        {
+            this.company = company;
+            this.objectType = objectType;
+        }
+
+        @Override
+        public IDocument_Lines getLines()
+        {
+            call();
+            return lines;
+        }
+
+        @Override
+        public void setCardCode(String cardCode)
+        {
+            call();
+            this.cardCode = cardCode;
+        }
+
+        @Override
+        public String getCardCode()
+        {
+            call();
+            return cardCode;
+        }
+
+        @Override
+        public void setDocType(Integer docType)
+        {
+            call();
+        }
+
+        @Override
+        public void setDocDate(Date docDate)
+        {
+            call();
+        }
+
+        @Override
+        public void setDocDueDate(Date docDueDate)
+        {
+            call();
+        }
+
+        @Override
+        public void setReqType(Integer reqType)
+        {
+            call();
+        }
+
+        @Override
+        public void setRequester(String requester)
+        {
+            call();
+        }
+
+        @Override
+        public void setRequriedDate(Date requriedDate)
+        {
+            call();
+        }
+
+        @Override
+        public void setNumAtCard(String numAtCard)
+        {
+            call();
+            this.numAtCard = numAtCard;
+        }
+
+        @Override
+        public String getNumAtCard()
+        {
+            call();
+            return numAtCard;
+        }
+
+        @Override
+        public void setPrinted(Integer printed)
+        {
+            call();
+            this.printed = printed == 1;
+        }
+
+        @Override
+        public Integer getPrinted()
+        {
+            call();
+            return printed ? 1 : 0;
+        }
+
+        @Override
+        public Integer getDocEntry()
+        {
+            call();
+            return docEntry == null ? 0 : docEntry;
+        }
+
+        @Override
+        public Boolean getByKey(Integer key)
+        {
+            roundTrip();
+            DocumentRecord record = documents(objectType).get(key);
+            if (record == null)
+            {
+                company.error(-2028, "No matching records found");
+                return false;
+            }
+            docEntry = record.docEntry;
+            cardCode = record.cardCode;
+            numAtCard = record.numAtCard;
+            printed = record.printed;
+            lines.load(record.lines);
+            return true;
+        }
+
+        @Override
+        public Integer add()
+        {
+            roundTrip();
+            int failure = injectedFailure(company);
+            if (failure != 0)
+            {
+                return failure;
+            }
+            if (cardCode == null || cardCode.isEmpty())
+            {
+                return company.error(-5002, "Business partner code is missing");
+            }
+            if (!businessPartners.isEmpty() && !businessPartners.containsKey(cardCode.toUpperCase()))
+            {
+                return company.error(-5002, "Invalid BP code '" + cardCode + "'");
+            }
+            List<LineRecord> added = lines.filled();
+            if (added.isEmpty())
+            {
+                return company.error(-5002, "Document has no lines");
+            }
+            DocumentRecord record = putDocument(objectType, cardCode);
+            record.printed = printed;
+            record.numAtCard = numAtCard;
+            record.lines = added;
+            company.changed(() -> documents(objectType).remove(record.docEntry));
+            company.newObject(Integer.toString(record.docEntry));
+            company.autoCommit();
+            return 0;
+        }
+
+        @Override
+        public Integer update()
+        {
+            roundTrip();
+            int failure = injectedFailure(company);
+            if (failure != 0)
+            {
+                return failure;
+            }
+            DocumentRecord record = docEntry == null ? null : documents(objectType).get(docEntry);
+            if (record == null)
+            {
+                return company.error(-2028, "No matching records found");
+            }
+            SBOErrorMessage documentFailure = failingDocuments.get(objectType + ":" + docEntry);
+            if (documentFailure != null)
+            {
+                return company.error(documentFailure.getErrorCode(), documentFailure.getErrorMessage());
+            }
+            boolean wasPrinted = record.printed;
+            company.changed(() -> record.printed = wasPrinted);
+            record.printed = printed;
+            company.autoCommit();
+            return 0;
+        }
+
+        @Override
+        public void release()
+        {
+            call();
+        }
+    }
+
+    static class DocumentLines implements IDocument_Lines
+    {
+        // a new document starts with one empty line, like in DI API
+        private final List<LineRecord> lines = new ArrayList<>();
+        private int current = 0;
+
+        DocumentLines()
+        {
+            lines.add(new LineRecord());
+        }
+
+        void load(List<LineRecord> stored)
+        {
+            lines.clear();
+            for (LineRecord line : stored)
+            {
+                LineRecord copy = new LineRecord();
+                copy.itemCode = line.itemCode;
+                copy.quantity = line.quantity;
+                lines.add(copy);
+            }
+            if (lines.isEmpty())
+            {
+                lines.add(new LineRecord());
+            }
+            current = 0;
+        }
+
+        /**
+         * Lines with an item code, empty lines are ignored by add()
+         */
+        List<LineRecord> filled()
+        {
+            List<LineRecord> filled = new ArrayList<>();
+            for (LineRecord line : lines)
+            {
+                if (line.itemCode != null)
+                {
+                    filled.add(line);
+                }
+            }
+            return filled;
+        }
+
+        @Override
+        public void add()
+        {
+            call();
+            lines.add(new LineRecord());
+            current = lines.size() - 1;
+        }
+
+        @Override
+        public void setCurrentLine(Integer lineNum)
+        {
+            call();
+            if (lineNum < 0 || lineNum >= lines.size())
+            {
+                throw new IndexOutOfBoundsException("No line " + lineNum);
+            }
+            current = lineNum;
+        }
+
+        @Override
+        public Integer getCount()
+        {
+            call();
+            return lines.size();
+        }
+
+        @Override
+        public void setItemCode(String itemCode)
+        {
+            call();
+            lines.get(current).itemCode = itemCode;
+        }
+
+        @Override
+        public String getItemCode()
+        {
+            call();
+            return lines.get(current).itemCode;
+        }
+
+        @Override
+        public void setQuantity(Double quantity)
+        {
+            call();
+            lines.get(current).quantity = quantity;
+        }
+
+        @Override
+        public Double getQuantity()
+        {
+            call();
+            return lines.get(current).quantity;
+        }
+    }
+
+    static class BusinessPartners implements IBusinessPartners
+    {
+        private final Company company;
+        private String cardCode;
+        private String cardName;
+        private boolean loaded = false;
+        private final ContactEmployees contacts = new ContactEmployees();
+
+        BusinessPartners(Company company)
+        {
+            this.company = company;
+        }
+
+        @Override
+        public void setCardCode(String cardCode)
+        {
+            call();
+            this.cardCode = cardCode;
+        }
+
+        @Override
+        public String getCardCode()
+        {
+            call();
+            return cardCode;
+        }
+
+        @Override
+        public void setCardName(String cardName)
+        {
+            call();
+            this.cardName = cardName;
+        }
+
+        @Override
+        public String getCardName()
+        {
+            call();
+            return cardName;
+        }
+
+        @Override
+        public void setCardType(Integer cardType)
+        {
+            call();
+        }
+
+        @Override
+        public void setCompanyPrivate(Integer companyPrivate)
+        {
+            call();
+        }
+
+        @Override
+        public IContactEmployees getContactEmployees()
+        {
+            call();
+            return contacts;
+        }
+
+        @Override
+        public Boolean getByKey(String key)
+        {
+            roundTrip();
+            BusinessPartnerRecord record = businessPartners.get(key.toUpperCase());
+            if (record == null)
+            {
+                company.error(-2028, "No matching records found");
+                return false;
+            }
+            cardCode = record.cardCode;
+            cardName = record.cardName;
+            contacts.load(record.contacts);
+            loaded = true;
+            return true;
+        }
+
+        @Override
+        public Integer add()
+        {
+            roundTrip();
+            if (cardCode == null || cardCode.isEmpty())
+            {
+                return company.error(-5002, "Business partner code is missing");
+            }
+            if (businessPartners.containsKey(cardCode.toUpperCase()))
+            {
+                return company.error(-10, "This entry already exists in the following tables (OCRD)");
+            }
+            BusinessPartnerRecord record = putBusinessPartner(cardCode, cardName);
+            record.contacts = contacts.filled();
+            company.changed(() -> businessPartners.remove(record.cardCode.toUpperCase()));
+            company.newObject(cardCode);
+            company.autoCommit();
+            return 0;
+        }
+
+        @Override
+        public Integer update()
+        {
+            roundTrip();
+            BusinessPartnerRecord record = loaded ? businessPartners.get(cardCode.toUpperCase()) : null;
+            if (record == null)
+            {
+                return company.error(-2028, "No matching records found");
+            }
+            String oldName = record.cardName;
+            List<ContactRecord> oldContacts = record.contacts;
+            company.changed(() -> {
+                record.cardName = oldName;
+                record.contacts = oldContacts;
+            });
+            record.cardName = cardName;
+            record.contacts = contacts.filled();
+            company.autoCommit();
+            return 0;
+        }
+
+        @Override
+        public void release()
+        {
+            call();
+        }
+    }
+
+    static class ContactEmployees implements IContactEmployees
+    {
+        // a new Business Partner starts with one empty contact, like in DI API
+        private final List<ContactRecord> contacts = new ArrayList<>();
+        private int current = 0;
+
+        ContactEmployees()
+        {
+            contacts.add(new ContactRecord());
+        }
+
+        void load(List<ContactRecord> stored)
+        {
+            contacts.clear();
+            for (ContactRecord contact : stored)
+            {
+                contacts.add(contact.copy());
+            }
+            if (contacts.isEmpty())
+            {
+                contacts.add(new ContactRecord());
+            }
+            current = 0;
+        }
+
+        List<ContactRecord> filled()
+        {
+            List<ContactRecord> filled = new ArrayList<>();
+            for (ContactRecord contact : contacts)
+            {
+                if (contact.name != null)
+                {
+                    filled.add(contact.copy());
+                }
+            }
+            return filled;
+        }
+
+        @Override
+        public void add()
+        {
+            call();
+            contacts.add(new ContactRecord());
+            current = contacts.size() - 1;
+        }
+
+        @Override
+        public void setCurrentLine(Integer lineNum)
+        {
+            call();
+            if (lineNum < 0 || lineNum >= contacts.size())
+            {
+                throw new IndexOutOfBoundsException("No contact " + lineNum);
+            }
+            current = lineNum;
+        }
+
+        @Override
+        public Integer getCount()
+        {
+            call();
+            return contacts.size();
+        }
+
+        @Override
+        public void setName(String name)
+        {
+            call();
+            contacts.get(current).name = name;
+        }
+
+        @Override
+        public String getName()
+        {
+            call();
+            return contacts.get(current).name;
+        }
+
+        @Override
+        public void setFirstName(String firstName)
+        {
+            call();
+            contacts.get(current).firstName = firstName;
+        }
+
+        @Override
+        public void setLastName(String lastName)
+        {
+            call();
+            contacts.get(current).lastName = lastName;
+        }
+
+        @Override
+        public void setE_Mail(String eMail)
+        {
+            call();
+            contacts.get(current).eMail = eMail;
+        }
+
+        @Override
+        public String getE_Mail()
+        {
+            call();
+            return contacts.get(current).eMail;
+        }
+
+        @Override
+        public void setMobilePhone(String mobilePhone)
+        {
+            call();
+            contacts.get(current).mobilePhone = mobilePhone;
+        }
+
+        @Override
+        public String getMobilePhone()
+        {
+            call();
+            return contacts.get(current).mobilePhone;
+        }
+    }
+
+    static class AlternateCatNum implements IAlternateCatNum
+    {
+        private final Company company;
+        private AlternateCatNumRecord loaded;
+        private String substitute;
+
+        AlternateCatNum(Company company)
+        {
+            this.company = company;
+        }
+
+        @Override
+        public Boolean getByKey(String itemCode, String cardCode, String substitute)
+        {
+            roundTrip();
+            AlternateCatNumRecord record = alternateCatNums.get(AlternateCatNumRecord.key(itemCode, cardCode, substitute));
+            if (record == null)
+            {
+                company.error(-2028, "No matching records found");
+                return false;
+            }
+            loaded = record;
+            this.substitute = record.substitute;
+            return true;
+        }
+
+        @Override
+        public String getItemCode()
+        {
+            call();
+            return loaded == null ? "" : loaded.itemCode;
+        }
+
+        @Override
+        public String getCardCode()
+        {
+            call();
+            return loaded == null ? "" : loaded.cardCode;
+        }
+
+        @Override
+        public String getSubstitute()
+        {
+            call();
+            return substitute;
+        }
+
+        @Override
+        public void setSubstitute(String substitute)
+        {
+            call();
+            this.substitute = substitute;
+        }
+
+        @Override
+        public Integer update()
+        {
+            roundTrip();
+            AlternateCatNumRecord old = loaded;
+            if (old == null || alternateCatNums.remove(old.key()) == null)
+            {
+                return company.error(-2028, "No matching records found");
+            }
+            AlternateCatNumRecord updated = new AlternateCatNumRecord(old.itemCode, old.cardCode, substitute);
+            alternateCatNums.put(updated.key(), updated);
+            company.changed(() -> {
+                alternateCatNums.remove(updated.key());
+                alternateCatNums.put(old.key(), old);
+            });
+            loaded = updated;
+            company.autoCommit();
+            return 0;
+        }
+
+        @Override
+        public void release()
+        {
+            call();
+        }
+    }
+
+    static class Users implements IUsers
+    {
+        private final Company company;
+        private UserRecord loaded;
+        private boolean locked;
+
+        Users(Company company)
+        {
+            this.company = company;
+        }
+
+        @Override
+        public Boolean getByKey(Integer internalKey)
+        {
+            roundTrip();
+            UserRecord record = users.get(internalKey);
+            if (record == null)
+            {
+                company.error(-2028, "No matching records found");
+                return false;
+            }
+            loaded = record;
+            locked = record.locked;
+            return true;
+        }
+
+        @Override
+        public String getUserCode()
+        {
+            call();
+            return loaded == null ? "" : loaded.userCode;
+        }
+
+        @Override
+        public Integer getLocked()
+        {
+            call();
+            return locked ? 1 : 0;
+        }
+
+        @Override
+        public void setLocked(Integer locked)
+        {
+            call();
+            this.locked = locked == 1;
+        }
+
+        @Override
+        public Integer update()
+        {
+            roundTrip();
+            UserRecord record = loaded;
+            if (record == null)
+            {
+                return company.error(-2028, "No matching records found");
+            }
+            boolean wasLocked = record.locked;
+            company.changed(() -> record.locked = wasLocked);
+            record.locked = locked;
+            company.autoCommit();
+            return 0;
+        }
+
+        @Override
+        public void release()
+        {
+            call();
+        }
+    }
+}
@@ -0,0 +1,154 @@
+/*
+ * Tests of AsyncDocumentPoster against the in-memory DI API stand-in.
+ */
+import com.sap.smb.sbo.api.*;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.RejectedExecutionException;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+/**
+ *
+ * @author Rafal Rozmus (rozmus.rafal@gmail.com)
+ */
+public class AsyncDocumentPosterTest
+{
+
+    private SessionPool pool;
+    private Path file;
+
+    @Before
+    public void setUp() throws Exception
+    {
+        StandIn.reset();
+        pool = new SessionPool(new ConnectionSettings(), 0, 2, 60000);
+        file = Files.createTempFile("journal", ".log");
+        Files.delete(file);
+    }
+
+    @After
+    public void tearDown() throws Exception
+    {
+        pool.close();
+        Files.deleteIfExists(file);
+    }
+
+    @Test
+    public void postsDocument() throws Exception
+    {
+        CompletableFuture<Integer> result;
+        try (AsyncDocumentPoster poster = new AsyncDocumentPoster(pool, "SBODemoGB", 2, 10))
+        {
+            result = poster.post(salesOrder("ORDER-1"));
+        }
+        int docEntry = result.get();
+        assertEquals("C001", StandIn.documents(17).get(docEntry).cardCode);
+    }
+
+    @Test
+    public void failedBorrowFailsDocumentWithoutJournaling() throws Exception
+    {
+        CompletableFuture<Integer> result;
+        try (PostingJournal journal = new PostingJournal(file);
+                // no company database, every login fails with -111
+                AsyncDocumentPoster poster = new AsyncDocumentPoster(pool, "", 1, 10, journal))
+        {
+            result = poster.post(salesOrder("ORDER-1"));
+            try
+            {
+                result.get();
+                fail("Document posted without a session");
+            }
+            catch (ExecutionException e)
+            {
+                assertEquals(-111, ((DiApiException) e.getCause()).getErrorCode());
+            }
+            assertTrue(journal.getInDoubt().isEmpty());
+        }
+        assertEquals(0, Files.size(file));
+        assertTrue(StandIn.documents(17).isEmpty());
+    }
+
+    @Test
+    public void workerSurvivesFailedBorrow() throws Exception
+    {
+        try (AsyncDocumentPoster poster = new AsyncDocumentPoster(pool, "", 1, 10))
+        {
+            CompletableFuture<Integer> first = poster.post(salesOrder("ORDER-1"));
+            CompletableFuture<Integer> second = poster.post(salesOrder("ORDER-2"));
+            assertTrue(first.handle((docEntry, error) -> error).get() instanceof DiApiException);
+            assertTrue(second.handle((docEntry, error) -> error).get() instanceof DiApiException);
+        }
+    }
+
+    @Test
+    public void journalsRetriedDocumentOnce() throws Exception
+    {
+        // -2038 is a lock conflict, retried at once
+        StandIn.failWrites(1, -2038, "Internal error");
+        RetryPolicy retryPolicy = new RetryPolicy(3, 1, 1, new ErrorClassifier());
+        CompletableFuture<Integer> result;
+        try (PostingJournal journal = new PostingJournal(file);
+                AsyncDocumentPoster poster = new AsyncDocumentPoster(pool, "SBODemoGB", 1, 10, journal, retryPolicy))
+        {
+            result = poster.post(salesOrder("ORDER-1"));
+            result.get();
+        }
+        long intents = Files.readAllLines(file, StandardCharsets.UTF_8).stream()
+                .filter(line -> line.startsWith("I\t"))
+                .count();
+        assertEquals(1, intents);
+        assertEquals(1, StandIn.documents(17).size());
+    }
+
+    @Test
+    public void journalFailureKeepsSession() throws Exception
+    {
+        PostingJournal journal = new PostingJournal(file);
+        journal.close();
+        try (AsyncDocumentPoster poster = new AsyncDocumentPoster(pool, "SBODemoGB", 1, 10, journal))
+        {
+            CompletableFuture<Integer> result = poster.post(salesOrder("ORDER-1"));
+            assertNotNull(result.handle((docEntry, error) -> error).get());
+        }
+        // nothing was posted, so the worker gave its session back instead
+        // of logging out
+        assertEquals(1, pool.getIdleCount("SBODemoGB"));
+        assertTrue(StandIn.documents(17).isEmpty());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void rejectsJournaledDraftWithoutReference() throws Exception
+    {
+        try (PostingJournal journal = new PostingJournal(file);
+                AsyncDocumentPoster poster = new AsyncDocumentPoster(pool, "SBODemoGB", 1, 10, journal))
+        {
+            poster.post(salesOrder(null));
+        }
+    }
+
+    @Test(expected = RejectedExecutionException.class)
+    public void rejectsPostAfterClose()
+    {
+        AsyncDocumentPoster poster = new AsyncDocumentPoster(pool, "SBODemoGB", 1, 10);
+        poster.close();
+        poster.post(salesOrder("ORDER-1"));
+    }
+
+    private static DocumentDraft salesOrder(String reference)
+    {
+        // 17 means Sales Order
+        DocumentDraft draft = new DocumentDraft(17);
+        draft.cardCode = "C001";
+        draft.reference = reference;
+        draft.addLine("ITEM001", 1.0);
+        return draft;
+    }
+}
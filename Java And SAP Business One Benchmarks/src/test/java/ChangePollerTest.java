@@ -0,0 +1,142 @@
+/*
+ * Tests of the ChangePoller watermark of a table: the queries it builds, the
+ * rows it skips and what it saves; and of polling against the in-memory DI
+ * API stand-in.
+ */
+import com.sap.smb.sbo.api.*;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.List;
+import java.util.Properties;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import static org.junit.Assert.*;
+
+/**
+ *
+ * @author Rafal Rozmus (rozmus.rafal@gmail.com)
+ */
+public class ChangePollerTest
+{
+
+    private static final String SELECT = "SELECT TOP 100 DocEntry, CardCode, UpdateDate, COALESCE(UpdateTS, 0)"
+            + " AS UpdateTS FROM OINV";
+    private static final String ORDER = " ORDER BY UpdateDate, COALESCE(UpdateTS, 0), DocEntry";
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void firstPollReadsEverything()
+    {
+        ChangePoller.Table table = table(new Properties());
+        assertEquals(SELECT + ORDER, table.query(100, 60, null));
+    }
+
+    @Test
+    public void nextPageStartsAfterLastRow()
+    {
+        ChangePoller.Table table = table(new Properties());
+        assertEquals(SELECT + " WHERE UpdateDate > '20150610'"
+                + " OR (UpdateDate = '20150610' AND COALESCE(UpdateTS, 0) > 143015)"
+                + " OR (UpdateDate = '20150610' AND COALESCE(UpdateTS, 0) = 143015 AND DocEntry > 42)" + ORDER,
+                table.query(100, 0, new Object[] {"20150610", 143015, 42}));
+        // rows without UpdateDate come first
+        assertEquals(SELECT + " WHERE UpdateDate IS NOT NULL"
+                + " OR (UpdateDate IS NULL AND COALESCE(UpdateTS, 0) > 0)"
+                + " OR (UpdateDate IS NULL AND COALESCE(UpdateTS, 0) = 0 AND DocEntry > 7)" + ORDER,
+                table.query(100, 0, new Object[] {ChangePoller.day(null), 0, 7}));
+    }
+
+    @Test
+    public void lagWindowReachesBackOverMidnight()
+    {
+        ChangePoller.Table table = table(new Properties());
+        assertTrue(table.advance("20150611", 5, "1"));
+        assertEquals(SELECT + " WHERE UpdateDate > '20150610'"
+                + " OR (UpdateDate = '20150610' AND COALESCE(UpdateTS, 0) >= 235955)" + ORDER,
+                table.query(100, 10, null));
+        // a row committed late before midnight is delivered, the watermark stays
+        assertTrue(table.advance("20150610", 235958, "2"));
+        assertFalse(table.advance("20150611", 5, "1"));
+        assertEquals(SELECT + " WHERE UpdateDate > '20150611'"
+                + " OR (UpdateDate = '20150611' AND COALESCE(UpdateTS, 0) >= 5)" + ORDER,
+                table.query(100, 0, null));
+    }
+
+    @Test
+    public void skipsRowsSeenBeforeSave()
+    {
+        Properties state = new Properties();
+        ChangePoller.Table table = table(state);
+        assertTrue(table.advance("20150610", 143000, "1"));
+        assertTrue(table.advance("20150610", 143010, "2"));
+        assertTrue(table.advance("20150610", 143015, "3"));
+        table.save(state, 10);
+
+        ChangePoller.Table loaded = table(state);
+        assertFalse(loaded.advance("20150610", 143010, "2"));
+        assertFalse(loaded.advance("20150610", 143015, "3"));
+        // changed again after it was seen
+        assertTrue(loaded.advance("20150610", 143016, "2"));
+        // forgotten, it is older than the lag window and not read again
+        assertTrue(loaded.advance("20150610", 143000, "1"));
+    }
+
+    @Test
+    public void loadDropsRowsSeenAfterSave()
+    {
+        Properties state = new Properties();
+        ChangePoller.Table table = table(state);
+        assertTrue(table.advance("20150610", 143000, "1"));
+        table.save(state, 0);
+        assertTrue(table.advance("20150610", 143005, "2"));
+        // the poll failed before the page was saved
+        table.load(state);
+        assertTrue(table.advance("20150610", 143005, "2"));
+        assertFalse(table.advance("20150610", 143000, "1"));
+    }
+
+    @Test
+    public void deliversChangedTableOncePerPoll() throws Exception
+    {
+        StandIn.reset();
+        Date updateDate = new Date(1434000000000L);
+        // the first poll reads every row, the next one from the watermark
+        StandIn.onQuery("(?s).*FROM OINV WHERE.*", q -> StandIn.result("DocEntry", "UpdateDate", "UpdateTS")
+                .row(3, updateDate, 143010));
+        StandIn.onQuery("(?s).*FROM OINV.*", q -> StandIn.result("DocEntry", "UpdateDate", "UpdateTS")
+                .row(1, updateDate, 143000)
+                .row(2, updateDate, 143005)
+                .row(3, updateDate, 143010));
+        StandIn.onQuery("(?s).*FROM OCRD.*", q -> StandIn.result("CardCode", "UpdateDate", "UpdateTS"));
+        SessionPool pool = new SessionPool(new ConnectionSettings(), 0, 1, 600000);
+        List<String> changes = new ArrayList<>();
+        List<String> tables = new ArrayList<>();
+        try (ChangePoller poller = new ChangePoller(pool, "SBODemoGB", 100,
+                folder.getRoot().toPath().resolve("watermarks")))
+        {
+            poller.track("OINV", "DocEntry", "DocEntry").track("OCRD", "CardCode", "CardCode");
+            poller.subscribe(change -> changes.add(change.key));
+            poller.subscribeTables(tables::add);
+            assertEquals(3, poller.poll());
+            assertEquals(Arrays.asList("1", "2", "3"), changes);
+            assertEquals(Arrays.asList("OINV"), tables);
+            // the last row is read again at the watermark, nothing changed
+            assertEquals(0, poller.poll());
+            assertEquals(Arrays.asList("OINV"), tables);
+        }
+        finally
+        {
+            pool.close();
+        }
+    }
+
+    private static ChangePoller.Table table(Properties state)
+    {
+        return new ChangePoller.Table("OINV", "DocEntry", "DocEntry, CardCode", state);
+    }
+}
@@ -0,0 +1,78 @@
+/*
+ * Tests of ChunkedInvoiceMarker chunk rollback and retries against the
+ * in-memory DI API stand-in.
+ */
+import com.sap.smb.sbo.api.*;
+import java.util.Arrays;
+import java.util.Collections;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+/**
+ *
+ * @author Rafal Rozmus (rozmus.rafal@gmail.com)
+ */
+public class ChunkedInvoiceMarkerTest
+{
+
+    private ICompany company;
+
+    @Before
+    public void setUp() throws Exception
+    {
+        StandIn.reset();
+        for (int i = 0; i < 6; i++)
+        {
+            // 13 means AR Invoice, DocEntry 1 to 6
+            StandIn.putDocument(13, "C20000");
+        }
+        company = new ConnectionSettings().connect("SBODemoGB");
+    }
+
+    @After
+    public void tearDown()
+    {
+        company.disconnect();
+    }
+
+    @Test
+    public void failingInvoiceRollsBackOnlyItsChunk() throws Exception
+    {
+        StandIn.failWrites(13, 2, -5002, "Document is locked for editing");
+        ChunkedInvoiceMarker marker = new ChunkedInvoiceMarker(company, 3,
+                new RetryPolicy(3, 1, 1, new ErrorClassifier()));
+
+        ChunkedInvoiceMarker.Result result = marker.mark(Arrays.asList(1, 2, 3, 4, 5, 6));
+
+        assertEquals(1, result.rolledBackChunks);
+        // only the second chunk committed as a whole
+        assertEquals(1, result.chunkNanos.size());
+        assertEquals(0, result.retries);
+        assertEquals(5, result.marked);
+        assertEquals(Collections.singleton(2), result.failed.keySet());
+        assertTrue(result.failed.get(2).contains("Document is locked for editing"));
+        for (StandIn.DocumentRecord invoice : StandIn.documents(13).values())
+        {
+            assertEquals("invoice " + invoice.docEntry, invoice.docEntry != 2, invoice.printed);
+        }
+        assertFalse(company.isInTransaction());
+    }
+
+    @Test
+    public void lockTimeoutRetriesChunk() throws Exception
+    {
+        StandIn.failWrites(1, -2038, "Lock timeout");
+        ChunkedInvoiceMarker marker = new ChunkedInvoiceMarker(company, 3,
+                new RetryPolicy(3, 1, 1, new ErrorClassifier()));
+
+        ChunkedInvoiceMarker.Result result = marker.mark(Arrays.asList(1, 2, 3, 4, 5, 6));
+
+        assertEquals(0, result.rolledBackChunks);
+        assertEquals(1, result.retries);
+        assertEquals(6, result.marked);
+        assertTrue(result.failed.isEmpty());
+    }
+}
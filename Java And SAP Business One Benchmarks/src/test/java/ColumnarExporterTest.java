@@ -0,0 +1,121 @@
+/*
+ * Tests of ColumnarExporter: a query result written by the exporter is read
+ * back by its Reader.
+ */
+import com.sap.smb.sbo.api.*;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Date;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import static org.junit.Assert.*;
+
+/**
+ *
+ * @author Rafal Rozmus (rozmus.rafal@gmail.com)
+ */
+public class ColumnarExporterTest
+{
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private ICompany company;
+
+    @Before
+    public void setUp() throws Exception
+    {
+        StandIn.reset();
+        // the first row sets the column types, so it has no nulls
+        StandIn.onQuery("(?s).*FROM OINV.*", q -> StandIn.result("DocEntry", "CardCode", "DocDate", "LineTotal")
+                .row(1, "C20000", new Date(1000), 10.5)
+                .row(2, null, new Date(2000), 20.0)
+                .row(null, "C10000", null, 30.25)
+                .row(4, "C20000", new Date(4000), null)
+                .row(5, "C30000", new Date(5000), 50.0));
+        company = new ConnectionSettings().connect("SBODemoGB");
+    }
+
+    @After
+    public void tearDown()
+    {
+        company.disconnect();
+    }
+
+    @Test
+    public void readsBackWhatWasExported() throws Exception
+    {
+        Path file = folder.getRoot().toPath().resolve("invoices.sboc");
+        try (RecordsetCursor cursor = RecordsetCursor.open(company,
+                "SELECT DocEntry, CardCode, DocDate, LineTotal FROM OINV"))
+        {
+            // 2 rows per group, the last group holds one row
+            assertEquals(5, new ColumnarExporter(2, 64).export(cursor, file));
+        }
+        try (ColumnarExporter.Reader reader = ColumnarExporter.Reader.open(file))
+        {
+            assertEquals(5, reader.getRowCount());
+            assertEquals(Arrays.asList("DocEntry", "CardCode", "DocDate", "LineTotal"),
+                    reader.getColumnNames());
+
+            assertArrayEquals(new int[] {1, 2, 0, 4, 5}, reader.readInts("DocEntry"));
+            assertEquals(bits(2), reader.readNulls("DocEntry"));
+            ColumnarExporter.Stats stats = reader.getStats("DocEntry");
+            assertEquals(1, stats.nulls);
+            assertEquals(1, stats.min, 0);
+            assertEquals(5, stats.max, 0);
+            assertEquals(12, stats.sum, 0);
+            assertEquals(0, stats.distinct);
+
+            assertArrayEquals(new String[] {"C20000", null, "C10000", "C20000", "C30000"},
+                    reader.readStrings("CardCode"));
+            assertArrayEquals(new String[] {"C20000", "C10000", "C30000"}, reader.getDictionary("CardCode"));
+            assertEquals(bits(1), reader.readNulls("CardCode"));
+            stats = reader.getStats("CardCode");
+            assertEquals(1, stats.nulls);
+            assertEquals(3, stats.distinct);
+            assertEquals("C10000", stats.minString);
+            assertEquals("C30000", stats.maxString);
+
+            assertArrayEquals(new long[] {1000, 2000, 0, 4000, 5000}, reader.readDates("DocDate"));
+            assertEquals(bits(2), reader.readNulls("DocDate"));
+            assertEquals(1000, reader.getStats("DocDate").min, 0);
+            assertEquals(5000, reader.getStats("DocDate").max, 0);
+
+            assertArrayEquals(new double[] {10.5, 20.0, 30.25, 0, 50.0}, reader.readDoubles("LineTotal"), 0);
+            assertEquals(bits(3), reader.readNulls("LineTotal"));
+            stats = reader.getStats("LineTotal");
+            assertEquals(1, stats.nulls);
+            assertEquals(110.75, stats.sum, 0);
+        }
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void refusesColumnOfAnotherType() throws Exception
+    {
+        Path file = folder.getRoot().toPath().resolve("invoices.sboc");
+        try (RecordsetCursor cursor = RecordsetCursor.open(company, "SELECT DocEntry FROM OINV"))
+        {
+            new ColumnarExporter(2, 64).export(cursor, file);
+        }
+        try (ColumnarExporter.Reader reader = ColumnarExporter.Reader.open(file))
+        {
+            reader.readDoubles("DocEntry");
+        }
+    }
+
+    private static BitSet bits(int... rows)
+    {
+        BitSet bits = new BitSet();
+        for (int row : rows)
+        {
+            bits.set(row);
+        }
+        return bits;
+    }
+}
@@ -0,0 +1,129 @@
+/*
+ * Tests of DocumentWriter bridge call counts against the in-memory DI API
+ * stand-in, which counts every call it receives.
+ */
+import com.sap.smb.sbo.api.*;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+/**
+ *
+ * @author Rafal Rozmus (rozmus.rafal@gmail.com)
+ */
+public class DocumentWriterTest
+{
+
+    private SessionPool pool;
+
+    @Before
+    public void setUp() throws Exception
+    {
+        StandIn.reset();
+        pool = new SessionPool(new ConnectionSettings(), 0, 1, 60000);
+    }
+
+    @After
+    public void tearDown() throws Exception
+    {
+        pool.close();
+    }
+
+    @Test
+    public void countsEveryBridgeCallOfAdd() throws Exception
+    {
+        ICompany session = pool.borrow("SBODemoGB");
+        try
+        {
+            DocumentWriter writer = pool.objects(session).writer();
+            long before = StandIn.getBridgeCalls();
+            writer.add(salesOrder("ORDER-1", 3));
+            assertEquals(StandIn.getBridgeCalls() - before, writer.getLastBridgeCalls());
+        }
+        finally
+        {
+            pool.giveBack(session);
+        }
+    }
+
+    @Test
+    public void countsErrorMessageOfFailedAdd() throws Exception
+    {
+        ICompany session = pool.borrow("SBODemoGB");
+        try
+        {
+            DocumentWriter writer = pool.objects(session).writer();
+            StandIn.failWrites(1, -5002, "Item is inactive");
+            long before = StandIn.getBridgeCalls();
+            try
+            {
+                writer.add(salesOrder("ORDER-1", 1));
+                fail("Failed add() not reported");
+            }
+            catch (DiApiException e)
+            {
+                assertEquals(-5002, e.getErrorCode());
+            }
+            assertEquals(StandIn.getBridgeCalls() - before, writer.getLastBridgeCalls());
+        }
+        finally
+        {
+            pool.giveBack(session);
+        }
+    }
+
+    @Test
+    public void countsEveryBridgeCallOfBusinessPartnerAdd() throws Exception
+    {
+        ICompany session = pool.borrow("SBODemoGB");
+        try
+        {
+            DocumentWriter writer = pool.objects(session).writer();
+            BusinessPartnerDraft bp = new BusinessPartnerDraft("C002", "Contoso");
+            bp.addContact("John Smith").setFirstName("John").setE_Mail("john.smith@example.com");
+            bp.addContact("Jane Roe");
+            long before = StandIn.getBridgeCalls();
+            writer.add(bp);
+            assertEquals(StandIn.getBridgeCalls() - before, writer.getLastBridgeCalls());
+        }
+        finally
+        {
+            pool.giveBack(session);
+        }
+    }
+
+    @Test
+    public void countsAddUpPerSession() throws Exception
+    {
+        ICompany session = pool.borrow("SBODemoGB");
+        try
+        {
+            BusinessObjectPool objects = pool.objects(session);
+            long before = StandIn.getBridgeCalls();
+            salesOrder("ORDER-1", 1).post(objects, null);
+            salesOrder("ORDER-2", 2).post(objects, null);
+            DocumentWriter writer = objects.writer();
+            assertEquals(2, writer.getWritten());
+            assertEquals((StandIn.getBridgeCalls() - before) / 2.0, writer.getBridgeCallsPerObject(), 0);
+        }
+        finally
+        {
+            pool.giveBack(session);
+        }
+    }
+
+    private static DocumentDraft salesOrder(String reference, int lines)
+    {
+        // 17 means Sales Order
+        DocumentDraft draft = new DocumentDraft(17);
+        draft.cardCode = "C001";
+        draft.reference = reference;
+        for (int i = 0; i < lines; i++)
+        {
+            draft.addLine("ITEM00" + (i + 1), 1.0);
+        }
+        return draft;
+    }
+}
@@ -0,0 +1,158 @@
+/*
+ * Tests of PostingJournal replay and recovery of a torn tail.
+ */
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+import java.util.concurrent.CompletionException;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+/**
+ *
+ * @author Rafal Rozmus (rozmus.rafal@gmail.com)
+ */
+public class PostingJournalTest
+{
+
+    private Path file;
+
+    @Before
+    public void setUp() throws Exception
+    {
+        file = Files.createTempFile("journal", ".log");
+        Files.delete(file);
+    }
+
+    @After
+    public void tearDown() throws Exception
+    {
+        Files.deleteIfExists(file);
+        Files.deleteIfExists(file.resolveSibling(file.getFileName() + ".compact"));
+    }
+
+    @Test
+    public void replaysCommittedAndInDoubt() throws Exception
+    {
+        try (PostingJournal journal = new PostingJournal(file))
+        {
+            journal.intent(draft("A"));
+            journal.intent(draft("B"));
+            journal.committed("A", 12).join();
+        }
+        try (PostingJournal journal = new PostingJournal(file))
+        {
+            assertEquals(Integer.valueOf(12), journal.getDocEntry("A"));
+            List<DocumentDraft> inDoubt = journal.getInDoubt();
+            assertEquals(1, inDoubt.size());
+            assertEquals("B", inDoubt.get(0).reference);
+            assertEquals("C001", inDoubt.get(0).cardCode);
+            assertEquals("ITEM001", inDoubt.get(0).lines.get(0).itemCode);
+        }
+    }
+
+    @Test
+    public void cutsTornTailAndAppendsAfterLastRecord() throws Exception
+    {
+        try (PostingJournal journal = new PostingJournal(file))
+        {
+            journal.intent(draft("A"));
+        }
+        long size = Files.size(file);
+        // "C\tA\t12" cut after the first digit by a crash, no newline
+        Files.write(file, "C\tA\t1".getBytes(StandardCharsets.UTF_8), StandardOpenOption.APPEND);
+        try (PostingJournal journal = new PostingJournal(file))
+        {
+            assertNull(journal.getDocEntry("A"));
+            assertEquals(1, journal.getInDoubt().size());
+            assertEquals(size, Files.size(file));
+            journal.committed("A", 12).join();
+        }
+        try (PostingJournal journal = new PostingJournal(file))
+        {
+            assertEquals(Integer.valueOf(12), journal.getDocEntry("A"));
+            assertTrue(journal.getInDoubt().isEmpty());
+        }
+    }
+
+    @Test
+    public void rejectsRecordWithWrongChecksum() throws Exception
+    {
+        try (PostingJournal journal = new PostingJournal(file))
+        {
+            journal.intent(draft("A"));
+            journal.committed("A", 12).join();
+        }
+        String text = new String(Files.readAllBytes(file), StandardCharsets.UTF_8);
+        Files.write(file, text.replace("C\tA\t12\t", "C\tA\t13\t").getBytes(StandardCharsets.UTF_8));
+        try (PostingJournal journal = new PostingJournal(file))
+        {
+            assertNull(journal.getDocEntry("A"));
+            assertEquals(1, journal.getInDoubt().size());
+        }
+    }
+
+    @Test
+    public void compactKeepsOnlyCurrentState() throws Exception
+    {
+        try (PostingJournal journal = new PostingJournal(file))
+        {
+            for (int i = 0; i < 20; i++)
+            {
+                journal.intent(draft("R" + i));
+                if (i % 2 == 0)
+                {
+                    journal.committed("R" + i, i + 100).join();
+                }
+                else
+                {
+                    journal.failed("R" + i, -5002).join();
+                }
+            }
+            journal.intent(draft("B"));
+            long size = Files.size(file);
+            journal.compact().join();
+            assertTrue(Files.size(file) < size);
+            journal.committed("B", 7).join();
+        }
+        try (PostingJournal journal = new PostingJournal(file))
+        {
+            assertEquals(Integer.valueOf(118), journal.getDocEntry("R18"));
+            assertNull(journal.getDocEntry("R19"));
+            assertEquals(Integer.valueOf(7), journal.getDocEntry("B"));
+            assertTrue(journal.getInDoubt().isEmpty());
+        }
+    }
+
+    @Test
+    public void failsRecordsAfterClose() throws Exception
+    {
+        PostingJournal journal = new PostingJournal(file);
+        journal.close();
+        try
+        {
+            journal.intent(draft("A"));
+            fail("Intent journaled after close");
+        }
+        catch (CompletionException e)
+        {
+            assertTrue(e.getCause() instanceof IllegalStateException);
+        }
+        assertTrue(journal.getInDoubt().isEmpty());
+        assertTrue(journal.committed("A", 1).isCompletedExceptionally());
+    }
+
+    private static DocumentDraft draft(String reference)
+    {
+        DocumentDraft draft = new DocumentDraft(17);
+        draft.cardCode = "C001";
+        draft.reference = reference;
+        draft.addLine("ITEM001", 1.0);
+        return draft;
+    }
+}
@@ -0,0 +1,140 @@
+/*
+ * Tests of QueryCache parsing and caching against the in-memory DI API
+ * stand-in.
+ */
+import com.sap.smb.sbo.api.*;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Set;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+/**
+ *
+ * @author Rafal Rozmus (rozmus.rafal@gmail.com)
+ */
+public class QueryCacheTest
+{
+
+    private ICompany company;
+    private int queries;
+    // run while a query is loaded, null for nothing
+    private Runnable whileLoading;
+
+    @Before
+    public void setUp() throws Exception
+    {
+        StandIn.reset();
+        queries = 0;
+        whileLoading = null;
+        StandIn.onQuery("(?s).*FROM.*", q -> {
+            queries++;
+            if (whileLoading != null)
+            {
+                whileLoading.run();
+            }
+            return StandIn.result("DocEntry").row(1);
+        });
+        company = new ConnectionSettings().connect("SBODemoGB");
+    }
+
+    @After
+    public void tearDown()
+    {
+        company.disconnect();
+    }
+
+    @Test
+    public void readsCommaJoins()
+    {
+        assertEquals(set("OINV", "INV1"), tables("SELECT * FROM OINV T0, INV1 T1 WHERE T0.DocEntry = T1.DocEntry"));
+        assertEquals(set("OINV", "INV1", "OCRD"), tables(
+                "SELECT * FROM dbo.[OINV] T0 WITH (NOLOCK) INNER JOIN INV1 T1 ON T0.DocEntry = T1.DocEntry, OCRD T2"));
+    }
+
+    @Test
+    public void readsSubqueries()
+    {
+        assertEquals(set("OINV", "ORDR"), tables(
+                "SELECT * FROM OINV WHERE CardCode IN (SELECT CardCode FROM ORDR) ORDER BY DocEntry"));
+        assertEquals(set("OINV", "INV1"), tables("SELECT * FROM (SELECT DocEntry FROM OINV) T0, INV1"));
+    }
+
+    @Test
+    public void refusesUnknownTables()
+    {
+        assertNull(tables("SELECT * FROM @Invoices"));
+        assertNull(tables("SELECT * FROM #Invoices"));
+        assertNull(tables("SELECT * FROM dbo.fnInvoices(1)"));
+        assertNull(tables("SELECT * FROM OINV; DELETE FROM OINV"));
+    }
+
+    @Test
+    public void ignoresComments()
+    {
+        assertEquals("SELECT * FROM OINV WHERE CARDCODE = '--c'",
+                QueryCache.normalize("SELECT * -- all 'columns\nFROM OINV /* invoices, /* nested */ ORDR */"
+                        + " WHERE CardCode = '--c'"));
+        assertEquals(set("OINV"), tables("SELECT * FROM OINV -- , ORDR"));
+    }
+
+    @Test
+    public void cachesTemplatedQueries() throws Exception
+    {
+        QueryCache cache = new QueryCache(1 << 20, 60000);
+        String sql = QueryTemplate.of("SELECT DocEntry FROM OINV WHERE CardCode = :CardCode").bind()
+                .set("CardCode", "C001").toSql();
+        assertEquals(set("OINV"), QueryCache.tables(QueryCache.statement(QueryCache.normalize(sql))));
+        cache.query(company, sql);
+        cache.query(company, sql);
+        assertEquals(1, queries);
+        cache.invalidate(null, "OINV");
+        cache.query(company, sql);
+        assertEquals(2, queries);
+    }
+
+    @Test
+    public void keepsResultLoadedWhileAnotherTableChanged() throws Exception
+    {
+        QueryCache cache = new QueryCache(1 << 20, 60000);
+        whileLoading = () -> cache.invalidate(null, "OCRD");
+        cache.query(company, "SELECT DocEntry FROM OINV");
+        cache.query(company, "SELECT DocEntry FROM OINV");
+        assertEquals(1, queries);
+    }
+
+    @Test
+    public void dropsResultLoadedWhileItsTableChanged() throws Exception
+    {
+        QueryCache cache = new QueryCache(1 << 20, 60000);
+        whileLoading = () -> cache.invalidate(null, "INV1");
+        cache.query(company, "SELECT T0.DocEntry FROM OINV T0 INNER JOIN INV1 T1 ON T0.DocEntry = T1.DocEntry");
+        whileLoading = null;
+        cache.query(company, "SELECT T0.DocEntry FROM OINV T0 INNER JOIN INV1 T1 ON T0.DocEntry = T1.DocEntry");
+        cache.query(company, "SELECT T0.DocEntry FROM OINV T0 INNER JOIN INV1 T1 ON T0.DocEntry = T1.DocEntry");
+        assertEquals(2, queries);
+    }
+
+    @Test
+    public void runsUnknownTablesEveryTime() throws Exception
+    {
+        QueryCache cache = new QueryCache(1 << 20, 60000);
+        cache.query(company, "SELECT DocEntry FROM dbo.fnInvoices(1)");
+        cache.query(company, "SELECT DocEntry FROM dbo.fnInvoices(1)");
+        assertEquals(2, queries);
+        assertEquals(0, cache.getHits());
+    }
+
+    private static Set<String> tables(String query)
+    {
+        return QueryCache.tables(QueryCache.statement(QueryCache.normalize(query)));
+    }
+
+    private static Set<String> set(String... tables)
+    {
+        return new HashSet<>(Arrays.asList(tables));
+    }
+}
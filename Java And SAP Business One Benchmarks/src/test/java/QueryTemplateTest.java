@@ -0,0 +1,67 @@
+/*
+ * Tests of QueryTemplate parsing and rendering.
+ */
+import java.util.Arrays;
+import java.util.Collections;
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+/**
+ *
+ * @author Rafal Rozmus (rozmus.rafal@gmail.com)
+ */
+public class QueryTemplateTest
+{
+
+    @Test
+    public void rendersParameters()
+    {
+        QueryTemplate template = QueryTemplate.of("SELECT * FROM OCRD WHERE CardType = :type AND CardCode > :Code");
+        assertEquals(Arrays.asList("type", "Code"), template.getParameterNames());
+        assertEquals("EXEC sp_executesql N'SELECT * FROM OCRD WHERE CardType = @type AND CardCode > @Code',"
+                + " N'@type nvarchar(4000), @Code nvarchar(4000)', @type = N'C', @Code = N'O''Brien'",
+                template.bind().set("TYPE", "C").set("code", "O'Brien").toSql());
+    }
+
+    @Test
+    public void ignoresNamesInLiterals()
+    {
+        QueryTemplate template = QueryTemplate.of(
+                "SELECT ':a', \"x:b\", [y:c], 'it''s :d' FROM OCRD WHERE CardCode = :e");
+        assertEquals(Collections.singletonList("e"), template.getParameterNames());
+        assertTrue(template.bind().set("e", "C1").toSql().startsWith(
+                "EXEC sp_executesql N'SELECT '':a'', \"x:b\", [y:c], ''it''''s :d'' FROM OCRD WHERE CardCode = @e'"));
+    }
+
+    @Test
+    public void leavesDoubleColonAlone()
+    {
+        QueryTemplate template = QueryTemplate.of("SELECT geometry::Point(1, 2, 0) FROM OCRD WHERE CardCode = :Code");
+        assertEquals(Collections.singletonList("Code"), template.getParameterNames());
+        assertTrue(template.bind().set("Code", "C1").toSql().contains("geometry::Point(1, 2, 0)"));
+    }
+
+    @Test
+    public void ignoresNamesInComments()
+    {
+        QueryTemplate template = QueryTemplate.of("SELECT * FROM OCRD -- don't use :a\n"
+                + "/* nor :b /* or :c */ here's */ WHERE CardCode = :Code");
+        assertEquals(Collections.singletonList("Code"), template.getParameterNames());
+        assertTrue(template.bind().set("Code", "C1").toSql().contains(
+                "-- don''t use :a\n/* nor :b /* or :c */ here''s */ WHERE CardCode = @Code"));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void rejectsUnclosedLiteral()
+    {
+        QueryTemplate.of("SELECT * FROM OCRD WHERE CardCode = ':Code");
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void rejectsUnsetParameter()
+    {
+        QueryTemplate.of("SELECT * FROM OCRD WHERE CardCode = :Code AND CardType = :Type").bind()
+                .set("Code", "C1").toSql();
+    }
+}
@@ -0,0 +1,103 @@
+/*
+ * Tests of SessionPool shutdown against the in-memory DI API stand-in: no
+ * session is logged in or kept idle once the pool is closed.
+ */
+import com.sap.smb.sbo.api.*;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicReference;
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+/**
+ *
+ * @author Rafal Rozmus (rozmus.rafal@gmail.com)
+ */
+public class SessionPoolTest
+{
+
+    @Before
+    public void setUp()
+    {
+        StandIn.reset();
+    }
+
+    @Test
+    public void waitingBorrowerFailsWhenPoolIsClosed() throws Exception
+    {
+        SessionPool pool = new SessionPool(new ConnectionSettings(), 0, 1, 60000);
+        ICompany session = pool.borrow("SBODemoGB");
+        AtomicReference<Object> outcome = new AtomicReference<>();
+        Thread waiting = new Thread(() -> {
+            try
+            {
+                outcome.set(pool.borrow("SBODemoGB"));
+            }
+            catch (Exception e)
+            {
+                outcome.set(e);
+            }
+        });
+        waiting.start();
+        // let the borrower wait for the only seat
+        while (waiting.getState() != Thread.State.TIMED_WAITING)
+        {
+            Thread.sleep(1);
+        }
+        pool.close();
+        // frees the seat, the waiting borrower must not log in on it
+        pool.giveBack(session);
+        waiting.join(5000);
+        assertTrue("Borrower logged in after close: " + outcome.get(),
+                outcome.get() instanceof IllegalStateException);
+        assertFalse(session.isConnected());
+        assertEquals(0, pool.getOpenCount("SBODemoGB"));
+    }
+
+    @Test
+    public void sessionGivenBackWhileClosingIsDisconnected() throws Exception
+    {
+        for (int run = 0; run < 100; run++)
+        {
+            SessionPool pool = new SessionPool(new ConnectionSettings(), 0, 4, 60000);
+            List<ICompany> sessions = new ArrayList<>();
+            for (int i = 0; i < 4; i++)
+            {
+                sessions.add(pool.borrow("SBODemoGB"));
+            }
+            CountDownLatch start = new CountDownLatch(1);
+            List<Thread> threads = new ArrayList<>();
+            for (ICompany session : sessions)
+            {
+                Thread thread = new Thread(() -> {
+                    try
+                    {
+                        start.await();
+                        pool.giveBack(session);
+                    }
+                    catch (InterruptedException e)
+                    {
+                        Thread.currentThread().interrupt();
+                    }
+                });
+                thread.start();
+                threads.add(thread);
+            }
+            start.countDown();
+            pool.close();
+            for (Thread thread : threads)
+            {
+                thread.join();
+            }
+            assertEquals(0, pool.getIdleCount("SBODemoGB"));
+            assertEquals(0, pool.getOpenCount("SBODemoGB"));
+            for (ICompany session : sessions)
+            {
+                assertFalse(session.isConnected());
+            }
+        }
+    }
+}
@@ -25,6 +25,8 @@ public class AddBusinessPartnerAndContactEmployee {
     public IBusinessPartners bp;
     // declare Contact Employee object
     public IContactEmployees contactEmployee; 
+    // optional index of existing Business Partner codes, avoids a failed add()
+    public CardCodeIndex index;
     // set default value for connection result, 0 will mean success
     private int connectionResult = -1;
     
@@ -32,6 +34,17 @@ public class AddBusinessPartnerAndContactEmployee {
     {
         AddBusinessPartnerAndContactEmployee sapConnection = new AddBusinessPartnerAndContactEmployee();
         sapConnection.connect();
+        if (sapConnection.getConnectionResult() == 0)
+        {
+            try
+            {
+                sapConnection.index = CardCodeIndex.load(sapConnection.company);
+            }
+            catch (SBOCOMException e)
+            {
+                e.printStackTrace();
+            }
+        }
         sapConnection.addBusinessPartner();
         // check if connection has been established before disconnecting
         if (sapConnection.getConnectionResult() == 0)
@@ -45,10 +58,16 @@ public class AddBusinessPartnerAndContactEmployee {
      */
     public void addBusinessPartner() 
     {
+        // the index answers without a round trip, add() would fail anyway
+        if (index != null && index.contains("ZZZ002"))
+        {
+            System.out.println("Business Partner ZZZ002 already exists");
+            return;
+        }
         try
         {
             // initialise Business Partner object
-            bp = SBOCOMUtil.newBusinessPartners(company);
+            bp = HandleTracker.shared().newBusinessPartners(company);
             // set BP's account code
             bp.setCardCode("ZZZ002");
             // set BP's name
@@ -57,36 +76,41 @@ public class AddBusinessPartnerAndContactEmployee {
             bp.setCardType(0);
             // decide whether it's a company or private person (0=Company, 1=Private)
             bp.setCompanyPrivate(0);
-            // Add first Contact Employee
-            bp.getContactEmployees().add();
-            bp.getContactEmployees().setCurrentLine(0);
-            bp.getContactEmployees().setName("John Smith");
-            bp.getContactEmployees().setFirstName("John");
-            bp.getContactEmployees().setLastName("Smith");
-            bp.getContactEmployees().setE_Mail("John.Smith@example.com");
-            bp.getContactEmployees().setMobilePhone("07777777777");
+            // get Contact Employees once, every getContactEmployees() call
+            // goes across the bridge
+            contactEmployee = bp.getContactEmployees();
             
-            // Add second Contact Employee
-            bp.getContactEmployees().setCurrentLine(1);
-            bp.getContactEmployees().setName("Laura Smith");
-            bp.getContactEmployees().setFirstName("Laura");
-            bp.getContactEmployees().setLastName("Smith");
-            bp.getContactEmployees().setE_Mail("Laura.Smith@example.com");
-            bp.getContactEmployees().setMobilePhone("07777777777");
+            // Fill first Contact Employee, a new Business Partner already has
+            // one empty contact
+            contactEmployee.setName("John Smith");
+            contactEmployee.setFirstName("John");
+            contactEmployee.setLastName("Smith");
+            contactEmployee.setE_Mail("John.Smith@example.com");
+            contactEmployee.setMobilePhone("07777777777");
             
-            // Another way of adding Contact Employee
-            // Use ContactEmployees object instead of BP object
-            contactEmployee = bp.getContactEmployees();
+            // Add second Contact Employee, add() appends a contact and makes
+            // it current
+            contactEmployee.add();
+            contactEmployee.setName("Laura Smith");
+            contactEmployee.setFirstName("Laura");
+            contactEmployee.setLastName("Smith");
+            contactEmployee.setE_Mail("Laura.Smith@example.com");
+            contactEmployee.setMobilePhone("07777777777");
+            
+            // Add third Contact Employee
             contactEmployee.add();
-            contactEmployee.setCurrentLine(2);
             contactEmployee.setName("John Doe");
             contactEmployee.setFirstName("John");
             contactEmployee.setLastName("Doe");
             contactEmployee.setE_Mail("John.Doe@example.com");
             // add Business Partner
-            if (bp.add() == 0) 
+            if (DiApiMetrics.shared().add(company, bp) == 0) 
             {
                 System.out.println("Successfully added Business Partner");
+                if (index != null)
+                {
+                    index.add("ZZZ002");
+                }
             }
             else 
             {
@@ -104,6 +128,14 @@ public class AddBusinessPartnerAndContactEmployee {
         {
             e.printStackTrace();
         }
+        finally
+        {
+            if (bp != null)
+            {
+                bp.release();
+                bp = null;
+            }
+        }
     }
     
     
@@ -139,7 +171,7 @@ public class AddBusinessPartnerAndContactEmployee {
             company.setLicenseServer("licenserver:30000");
             
             // initialise connection
-            connectionResult = company.connect();
+            connectionResult = DiApiMetrics.shared().connect(company);
             
             // if connection successful
             if (connectionResult == 0) 
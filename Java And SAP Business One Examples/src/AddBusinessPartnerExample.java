@@ -30,10 +30,20 @@ public class AddBusinessPartnerExample {
     {
         AddBusinessPartnerExample sapConnection = new AddBusinessPartnerExample();
         sapConnection.connect();
-        sapConnection.addBusinessPartner();
-        // check if connection has been established before disconnecting
+        // check if connection has been established before using it
         if (sapConnection.getConnectionResult() == 0)
         {
+            // Business Partner objects are reused for every upsert
+            try (BusinessObjectPool objects = new BusinessObjectPool(sapConnection.company, 1))
+            {
+                // load existing codes once, then add or update without a failed add()
+                CardCodeIndex index = CardCodeIndex.load(sapConnection.company);
+                sapConnection.upsertBusinessPartner(objects, index, "ZZZ001", "ZZZ Test Business Partner");
+            }
+            catch (SBOCOMException e)
+            {
+                e.printStackTrace();
+            }
             sapConnection.disconnect();
         }    
     }
@@ -46,7 +56,7 @@ public class AddBusinessPartnerExample {
         try
         {
             // initialise Business Partner object
-            bp = SBOCOMUtil.newBusinessPartners(company);
+            bp = HandleTracker.shared().newBusinessPartners(company);
             // set BP's account code
             bp.setCardCode("ZZZ001");
             // set BP's name
@@ -56,7 +66,7 @@ public class AddBusinessPartnerExample {
             // decide whether it's a company or private person (0=Company, 1=Private)
             bp.setCompanyPrivate(0);
             // add Business Partner
-            if (bp.add() == 0) 
+            if (DiApiMetrics.shared().add(company, bp) == 0) 
             {
                 System.out.println("Successfully added Business Partner");
             }
@@ -76,9 +86,98 @@ public class AddBusinessPartnerExample {
         {
             e.printStackTrace();
         }
+        finally
+        {
+            if (bp != null)
+            {
+                bp.release();
+                bp = null;
+            }
+        }
     }
     
     
+    /**
+     * Add a Business Partner, or update its name if it already exists. The
+     * index decides which one, so re-running an import does not end up with
+     * failed add() calls for every existing Business Partner.
+     *
+     * @param objects business objects of the company, the Business Partner
+     *        object is taken from them
+     * @param index existing Business Partner codes
+     * @param cardCode BP's account code
+     * @param cardName BP's name
+     * @return true if success
+     */
+    public boolean upsertBusinessPartner(BusinessObjectPool objects, CardCodeIndex index, String cardCode,
+            String cardName) 
+    {
+        // an object filled for add() can't be reused, it is discarded then
+        boolean loaded = false;
+        try
+        {
+            // take a Business Partner object
+            bp = objects.businessPartners();
+            // getByKey() can still fail, e.g. if the code was deleted meanwhile
+            boolean update = index.contains(cardCode) && bp.getByKey(cardCode);
+            loaded = update;
+            int result;
+            if (update)
+            {
+                // update existing Business Partner
+                bp.setCardName(cardName);
+                result = DiApiMetrics.shared().update(company, bp);
+            }
+            else
+            {
+                bp.setCardCode(cardCode);
+                bp.setCardName(cardName);
+                // set BP type (0=Customer, 1=Supplier, 2=Lead)
+                bp.setCardType(0);
+                // decide whether it's a company or private person (0=Company, 1=Private)
+                bp.setCompanyPrivate(0);
+                result = DiApiMetrics.shared().add(company, bp);
+                if (result == 0)
+                {
+                    index.add(cardCode);
+                }
+            }
+            if (result == 0)
+            {
+                System.out.println("Successfully " + (update ? "updated" : "added") + " Business Partner " + cardCode);
+                return true;
+            }
+            // get error message fom SAP Business One Server
+            SBOErrorMessage errMsg = company.getLastError();
+            System.out.println(
+                    "Cannot save Business Partner " + cardCode + ": "
+                    + errMsg.getErrorMessage()
+                    + " "
+                    + errMsg.getErrorCode()
+            );
+        }
+        catch(SBOCOMException e)
+        {
+            e.printStackTrace();
+        }
+        finally
+        {
+            if (bp != null)
+            {
+                if (loaded)
+                {
+                    objects.giveBack(bp);
+                }
+                else
+                {
+                    objects.discard(bp);
+                }
+                bp = null;
+            }
+        }
+        return false;
+    }
+    
     /**
      * Set all connection parameters, connect to SAP Business One and initialise
      * company instance.
@@ -111,7 +210,7 @@ public class AddBusinessPartnerExample {
             company.setLicenseServer("licenserver:30000");
             
             // initialise connection
-            connectionResult = company.connect();
+            connectionResult = DiApiMetrics.shared().connect(company);
             
             // if connection successful
             if (connectionResult == 0) 
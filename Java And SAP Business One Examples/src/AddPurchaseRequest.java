@@ -23,6 +23,8 @@ public class AddPurchaseRequest {
     public ICompany company;
     // declare Document object
     public IDocuments purchaseRequest;
+    // optional Item Master Data cache, lines are checked against it before add()
+    public ItemCache itemCache;
     // set default value for connection result, 0 will mean success
     private int connectionResult = -1;
     
@@ -33,6 +35,16 @@ public class AddPurchaseRequest {
         sapConnection.connect();
         
         if (sapConnection.connect()) {
+            // keep items for an hour, items not loaded are read on first use
+            sapConnection.itemCache = new ItemCache(sapConnection.company, 10000, 3600000);
+            try
+            {
+                sapConnection.itemCache.load();
+            }
+            catch (SBOCOMException e)
+            {
+                e.printStackTrace();
+            }
             sapConnection.addPurchaseRequest();
             sapConnection.disconnect();
         }   
@@ -41,12 +53,29 @@ public class AddPurchaseRequest {
     
     public void addPurchaseRequest()
     {
+        // item codes and quantities of the lines
+        String[] itemCodes = {"LUCY10", "PEKI41"};
+        double[] quantities = {1.0, 5.0};
         try
         {
+            // check lines locally, a bad item would fail the whole add()
+            if (itemCache != null)
+            {
+                for (String itemCode : itemCodes)
+                {
+                    String error = itemCache.check(itemCode, false);
+                    if (error != null)
+                    {
+                        System.out.println("Cannot add Purchase Request: " + error);
+                        return;
+                    }
+                }
+            }
+            
             // Initialise Documents object and set the document type to Purchase
             // Request. 1470000113 indicates Purchase Request. For a list of Object Types check
             // http://www.sapbusinessonesdk.co.uk/2015/12/17/sap-business-one-object-types/
-            purchaseRequest = SBOCOMUtil.newDocuments(company, 1470000113);
+            purchaseRequest = HandleTracker.shared().newDocuments(company, 1470000113);
             
             // Set Request Type. The valid values are: '12' - 'User',  '171' - 'Employee'
             purchaseRequest.setReqType(12);
@@ -62,21 +91,23 @@ public class AddPurchaseRequest {
             purchaseRequest.setDocDate(Date.valueOf("2018-02-05"));
             purchaseRequest.setRequriedDate(Date.valueOf("2018-03-01"));
             
-            // Add 1st line
-            purchaseRequest.getLines().add();
-            purchaseRequest.getLines().setCurrentLine(0);
-            purchaseRequest.getLines().setItemCode("LUCY10");
-            purchaseRequest.getLines().setQuantity(1.0);
-
-            // Add 2nd line
-            purchaseRequest.getLines().add();
-            purchaseRequest.getLines().setCurrentLine(1);
-            purchaseRequest.getLines().setItemCode("PEKI41");
-            purchaseRequest.getLines().setQuantity(5.0);
-
+            // get Lines once, every getLines() call goes across the bridge
+            IDocument_Lines lines = purchaseRequest.getLines();
+            
+            for (int i = 0; i < itemCodes.length; i++)
+            {
+                // a new document already has one empty line for the 1st line,
+                // add() appends a line and makes it current
+                if (i > 0)
+                {
+                    lines.add();
+                }
+                lines.setItemCode(itemCodes[i]);
+                lines.setQuantity(quantities[i]);
+            }
             
             // add Purchase Request
-            if (purchaseRequest.add() == 0) 
+            if (DiApiMetrics.shared().add(company, purchaseRequest, 1470000113) == 0) 
             {
                 System.out.println("Successfully added Sales Order");
             }
@@ -96,6 +127,14 @@ public class AddPurchaseRequest {
         {
             e.printStackTrace();
         }
+        finally
+        {
+            if (purchaseRequest != null)
+            {
+                purchaseRequest.release();
+                purchaseRequest = null;
+            }
+        }
         
     }
     
@@ -133,7 +172,7 @@ public class AddPurchaseRequest {
             company.setLicenseServer("licenseserver:30000");
             
             // initialise connection
-            connectionResult = company.connect();
+            connectionResult = DiApiMetrics.shared().connect(company);
             
             // if connection successful
             if (connectionResult == 0) 
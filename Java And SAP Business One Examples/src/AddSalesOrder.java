@@ -23,6 +23,8 @@ public class AddSalesOrder {
     public ICompany company;
     // declare Document object
     public IDocuments salesOrder;
+    // optional Item Master Data cache, lines are checked against it before add()
+    public ItemCache itemCache;
     // set default value for connection result, 0 will mean success
     private int connectionResult = -1;
     
@@ -31,6 +33,19 @@ public class AddSalesOrder {
         AddSalesOrder sapConnection = new AddSalesOrder();
         
         sapConnection.connect();
+        if (sapConnection.getConnectionResult() == 0)
+        {
+            // keep items for an hour, items not loaded are read on first use
+            sapConnection.itemCache = new ItemCache(sapConnection.company, 10000, 3600000);
+            try
+            {
+                sapConnection.itemCache.load();
+            }
+            catch (SBOCOMException e)
+            {
+                e.printStackTrace();
+            }
+        }
         sapConnection.addSalesOrder();
         // check if connection has been established before disconnecting
         if (sapConnection.getConnectionResult() == 0)
@@ -42,12 +57,29 @@ public class AddSalesOrder {
     
     public void addSalesOrder()
     {
+        // item codes and quantities of the lines
+        String[] itemCodes = {"ITEM001", "ITEM002"};
+        double[] quantities = {1.0, 5.0};
         try
         {
+            // check lines locally, a bad item would fail the whole add()
+            if (itemCache != null)
+            {
+                for (String itemCode : itemCodes)
+                {
+                    String error = itemCache.check(itemCode, true);
+                    if (error != null)
+                    {
+                        System.out.println("Cannot add Sales Order: " + error);
+                        return;
+                    }
+                }
+            }
+            
             // initialise Documents object and set the document type to Sales
             // Order. 17 means Sales Order. For a list of Object Types check
             // http://www.ggrenacher.ch/705/sap-business-one-form-types-and-object-types
-            salesOrder = SBOCOMUtil.newDocuments(company, 17);
+            salesOrder = HandleTracker.shared().newDocuments(company, 17);
             // Set Business Partner
             salesOrder.setCardCode("ZZZ002");
             // Set Item/Service Type, 0=Items, 1=Service
@@ -57,21 +89,23 @@ public class AddSalesOrder {
             // Set Delivery Date
             salesOrder.setDocDueDate(Date.valueOf("2015-09-25"));
             
-            // Add 1st line
-            salesOrder.getLines().add();
-            salesOrder.getLines().setCurrentLine(0);
-            salesOrder.getLines().setItemCode("ITEM001");
-            salesOrder.getLines().setQuantity(1.0);
-
-            // Add 2nd line
-            salesOrder.getLines().add();
-            salesOrder.getLines().setCurrentLine(1);
-            salesOrder.getLines().setItemCode("ITEM002");
-            salesOrder.getLines().setQuantity(5.0);
-
+            // get Lines once, every getLines() call goes across the bridge
+            IDocument_Lines lines = salesOrder.getLines();
+            
+            for (int i = 0; i < itemCodes.length; i++)
+            {
+                // a new document already has one empty line for the 1st line,
+                // add() appends a line and makes it current
+                if (i > 0)
+                {
+                    lines.add();
+                }
+                lines.setItemCode(itemCodes[i]);
+                lines.setQuantity(quantities[i]);
+            }
             
             // add Sales Order
-            if (salesOrder.add() == 0) 
+            if (DiApiMetrics.shared().add(company, salesOrder, 17) == 0) 
             {
                 System.out.println("Successfully added Sales Order");
             }
@@ -91,6 +125,14 @@ public class AddSalesOrder {
         {
             e.printStackTrace();
         }
+        finally
+        {
+            if (salesOrder != null)
+            {
+                salesOrder.release();
+                salesOrder = null;
+            }
+        }
         
     }
     
@@ -127,7 +169,7 @@ public class AddSalesOrder {
             company.setLicenseServer("licenserver:30000");
             
             // initialise connection
-            connectionResult = company.connect();
+            connectionResult = DiApiMetrics.shared().connect(company);
             
             // if connection successful
             if (connectionResult == 0) 
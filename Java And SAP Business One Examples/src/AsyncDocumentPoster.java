@@ -0,0 +1,385 @@
+/*
+ * Asynchronous document posting. post() queues a DocumentDraft and returns at
+ * once with a CompletableFuture which completes with the new DocEntry, or
+ * exceptionally with a DiApiException carrying the error code. Documents are
+ * added by a fixed set of worker threads, each holding its own pooled
+ * session, so hundreds of documents can be in flight while only as many
+ * threads block on DI API as there are sessions.
+ * DI API objects must be used on the thread that created them, so every
+ * session stays on one worker thread for its whole life.
+ * With a PostingJournal every document is journaled once before it is
+ * added, and documents already committed in the journal are not posted
+ * again. A document which can't be journaled fails without being posted.
+ * Documents rejected with a transient error, e.g. a lock timeout, are posted
+ * again after a backoff, on a fresh session if the connection was lost. When
+ * no session can be borrowed the document completes exceptionally without
+ * being journaled, it was never attempted.
+ * For this program to work, you need SAP Business One DI API installed.
+ */
+
+/*
+ * Import JCO libraries from DI API folder. Two files need to be added to your
+ * project libraries - sboapi.jar and sbowrapper.jar
+ * The files are usually located in:
+ * C:\Program Files (x86)\SAP\SAP Business One DI API\JCO\LIB - 32 bit build
+ * C:\Program Files\SAP\SAP Business One DI API\JCO\LIB - 64 bit build
+ */
+import com.sap.smb.sbo.api.*;
+import java.sql.Date;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+
+/**
+ *
+ * @author Rafal Rozmus (rozmus.rafal@gmail.com)
+ */
+public class AsyncDocumentPoster implements AutoCloseable
+{
+
+    // tells a worker to give back its session and stop
+    private static final Task STOP = new Task(null);
+
+    // pool the worker sessions are borrowed from
+    private final SessionPool pool;
+    // company database to post to
+    private final String companyDb;
+    // documents waiting for a worker
+    private final BlockingQueue<Task> queue;
+    // optional journal of posts, may be null
+    private final PostingJournal journal;
+    // retries of documents rejected with a transient error
+    private final RetryPolicy retryPolicy;
+    // optional Item Master Data cache, lines are checked against it before add()
+    private volatile ItemCache itemCache;
+    private final List<Thread> workers = new ArrayList<>();
+    // guarded by this, so no task is queued behind the STOP markers
+    private boolean closed = false;
+
+    public static void main(String[] args) throws Exception
+    {
+        SessionPool pool = new SessionPool(new ConnectionSettings(), 0, 4, 60000);
+        List<CompletableFuture<Integer>> results = new ArrayList<>();
+        try (AsyncDocumentPoster poster = new AsyncDocumentPoster(pool, "SBODemoGB", 4, 1000))
+        {
+            for (int i = 0; i < 100; i++)
+            {
+                // 17 means Sales Order
+                DocumentDraft salesOrder = new DocumentDraft(17);
+                salesOrder.cardCode = "ZZZ002";
+                salesOrder.docDate = Date.valueOf("2015-06-10");
+                salesOrder.docDueDate = Date.valueOf("2015-09-25");
+                salesOrder.addLine("ITEM001", 1.0).addLine("ITEM002", 5.0);
+                results.add(poster.post(salesOrder));
+            }
+            for (CompletableFuture<Integer> result : results)
+            {
+                result.handle((docEntry, error) -> {
+                    System.out.println(error == null ? "Added Sales Order " + docEntry : error.getMessage());
+                    return null;
+                }).join();
+            }
+        }
+        finally
+        {
+            pool.close();
+        }
+    }
+
+    /**
+     * Start the workers
+     *
+     * @param pool session pool, must allow at least sessions sessions
+     * @param companyDb company database name
+     * @param sessions number of worker threads and sessions
+     * @param maxQueued maximum number of documents waiting for a worker
+     */
+    public AsyncDocumentPoster(SessionPool pool, String companyDb, int sessions, int maxQueued)
+    {
+        this(pool, companyDb, sessions, maxQueued, null);
+    }
+
+    /**
+     * Start the workers, journaling every post
+     *
+     * @param pool session pool, must allow at least sessions sessions
+     * @param companyDb company database name
+     * @param sessions number of worker threads and sessions
+     * @param maxQueued maximum number of documents waiting for a worker
+     * @param journal journal of posts, drafts must then have a reference
+     */
+    public AsyncDocumentPoster(SessionPool pool, String companyDb, int sessions, int maxQueued, PostingJournal journal)
+    {
+        this(pool, companyDb, sessions, maxQueued, journal, new RetryPolicy());
+    }
+
+    /**
+     * Start the workers
+     *
+     * @param pool session pool, must allow at least sessions sessions
+     * @param companyDb company database name
+     * @param sessions number of worker threads and sessions
+     * @param maxQueued maximum number of documents waiting for a worker
+     * @param journal journal of posts or null, drafts must then have a reference
+     * @param retryPolicy retries of transient errors
+     */
+    public AsyncDocumentPoster(SessionPool pool, String companyDb, int sessions, int maxQueued, PostingJournal journal,
+            RetryPolicy retryPolicy)
+    {
+        this.pool = pool;
+        this.companyDb = companyDb;
+        this.journal = journal;
+        this.retryPolicy = retryPolicy;
+        queue = new LinkedBlockingQueue<>(maxQueued);
+        for (int i = 0; i < sessions; i++)
+        {
+            Thread worker = new Thread(this::work, "document-poster-" + i);
+            worker.setDaemon(true);
+            worker.start();
+            workers.add(worker);
+        }
+    }
+
+    /**
+     * Check document lines against an Item Master Data cache before add(), a
+     * document with a bad item completes with a DiApiException carrying
+     * ItemCache.REJECTED
+     *
+     * @param itemCache cache or null for no check
+     */
+    public void setItemCache(ItemCache itemCache)
+    {
+        this.itemCache = itemCache;
+    }
+
+    /**
+     * Queue a document for posting
+     *
+     * @param draft document to add
+     * @return future completed with the new DocEntry, or exceptionally with
+     *         DiApiException when the server rejects the document
+     * @throws RejectedExecutionException when maxQueued documents are waiting
+     *         or the poster is closed
+     * @throws IllegalArgumentException if a journal is set and the draft has
+     *         no valid reference
+     */
+    public CompletableFuture<Integer> post(DocumentDraft draft)
+    {
+        if (journal != null)
+        {
+            PostingJournal.checkReference(draft.reference);
+        }
+        if (journal != null && journal.getDocEntry(draft.reference) != null)
+        {
+            // posted by an earlier run
+            return CompletableFuture.completedFuture(journal.getDocEntry(draft.reference));
+        }
+        Task task = new Task(draft);
+        synchronized (this)
+        {
+            if (closed)
+            {
+                throw new RejectedExecutionException("Document poster is closed");
+            }
+            if (!queue.offer(task))
+            {
+                throw new RejectedExecutionException("Too many documents waiting to be posted");
+            }
+        }
+        return task.result;
+    }
+
+    /**
+     * Get number of documents waiting for a worker
+     *
+     * @return queued documents
+     */
+    public int getQueued()
+    {
+        return queue.size();
+    }
+
+    /**
+     * Post all queued documents, then stop the workers and give back their
+     * sessions. If the calling thread is interrupted it stops waiting and
+     * the workers finish on their own.
+     */
+    @Override
+    public void close()
+    {
+        synchronized (this)
+        {
+            if (closed)
+            {
+                return;
+            }
+            closed = true;
+        }
+        try
+        {
+            for (int i = 0; i < workers.size(); i++)
+            {
+                queue.put(STOP);
+            }
+            for (Thread worker : workers)
+            {
+                worker.join();
+            }
+        }
+        catch (InterruptedException e)
+        {
+            Thread.currentThread().interrupt();
+            return;
+        }
+        // left behind by a worker which stopped early, e.g. when interrupted
+        Task task;
+        while ((task = queue.poll()) != null)
+        {
+            task.result.completeExceptionally(new RejectedExecutionException("Document poster is closed"));
+        }
+    }
+
+    private void work()
+    {
+        ICompany session = null;
+        Task task = null;
+        try
+        {
+            while ((task = queue.take()) != STOP)
+            {
+                boolean journaled = journal == null;
+                for (int attempt = 1;; attempt++)
+                {
+                    if (session == null)
+                    {
+                        session = borrow(task);
+                        if (session == null)
+                        {
+                            // the task has failed, go on with the next one
+                            break;
+                        }
+                    }
+                    if (!journaled)
+                    {
+                        // once for all attempts; nothing is posted if this fails,
+                        // so the session is kept
+                        try
+                        {
+                            journal.intent(task.draft);
+                            journaled = true;
+                        }
+                        catch (RuntimeException e)
+                        {
+                            task.result.completeExceptionally(e);
+                            break;
+                        }
+                    }
+                    try
+                    {
+                        int docEntry = task.draft.post(pool.objects(session), itemCache);
+                        if (journal != null)
+                        {
+                            journal.committed(task.draft.reference, docEntry);
+                        }
+                        task.result.complete(docEntry);
+                        break;
+                    }
+                    catch (DiApiException e)
+                    {
+                        // the server rejected the document, it was not added
+                        if (retryPolicy.shouldRetry(attempt, e))
+                        {
+                            if (retryPolicy.getClassifier().needsFreshSession(e))
+                            {
+                                pool.invalidate(session);
+                                session = null;
+                            }
+                            retryPolicy.backOff(attempt);
+                            continue;
+                        }
+                        if (journal != null)
+                        {
+                            journal.failed(task.draft.reference, e.getErrorCode());
+                        }
+                        task.result.completeExceptionally(e);
+                        break;
+                    }
+                    catch (Exception e)
+                    {
+                        // the document may have been added, so it is not posted again;
+                        // a journaled document stays in doubt until reconciled
+                        task.result.completeExceptionally(e);
+                        // the session may be broken, use a fresh one for the next document
+                        pool.invalidate(session);
+                        session = null;
+                        break;
+                    }
+                }
+            }
+        }
+        catch (InterruptedException e)
+        {
+            // fail the task being worked on, if any
+            if (task != null && task != STOP)
+            {
+                task.result.completeExceptionally(e);
+            }
+            Thread.currentThread().interrupt();
+        }
+        finally
+        {
+            if (session != null)
+            {
+                pool.giveBack(session);
+            }
+        }
+    }
+
+    /**
+     * Borrow a session for a task, retrying transient failures such as a lost
+     * connection to the server. When no session can be had the task completes
+     * exceptionally; the document was not attempted, so it is not journaled.
+     *
+     * @return session, or null if the task has failed
+     */
+    private ICompany borrow(Task task) throws InterruptedException
+    {
+        for (int attempt = 1;; attempt++)
+        {
+            try
+            {
+                return pool.borrow(companyDb);
+            }
+            catch (InterruptedException e)
+            {
+                throw e;
+            }
+            catch (Exception e)
+            {
+                if (!retryPolicy.shouldRetry(attempt, e))
+                {
+                    task.result.completeExceptionally(e);
+                    return null;
+                }
+            }
+            retryPolicy.backOff(attempt);
+        }
+    }
+
+    /**
+     * Queued document and its result
+     */
+    private static class Task
+    {
+        final DocumentDraft draft;
+        final CompletableFuture<Integer> result = new CompletableFuture<>();
+
+        Task(DocumentDraft draft)
+        {
+            this.draft = draft;
+        }
+    }
+}
@@ -0,0 +1,354 @@
+/*
+ * Keeps DI API business objects of one session for reuse. Creating an object
+ * with SBOCOMUtil.newDocuments(), newRecordset() etc. allocates a COM object
+ * on the native side, which stays allocated until release() is called -
+ * forgetting release() in a long running process makes native memory grow
+ * with every operation. Objects taken from this pool are given back when
+ * done and handed out again; all of them are released when the pool is
+ * closed, e.g. when SessionPool disconnects the session.
+ * A pooled object keeps the data it last read, so it must be loaded with
+ * getByKey() (or doQuery() for a Recordset) before use. An object filled for
+ * add() is discarded instead of given back; DocumentWriter creates a fresh
+ * object for every add() for that reason.
+ * Code running on SessionPool sessions, e.g. ParallelInvoiceMarker,
+ * UpdatePipeline, LockedUserSweeper and ChangePoller, gets the pool of its
+ * session from SessionPool.objects(); ContactSync, AddBusinessPartnerExample
+ * and UpdateAlternateCatNumbersExample keep one for their connection.
+ * For this program to work, you need SAP Business One DI API installed.
+ */
+
+/*
+ * Import JCO libraries from DI API folder. Two files need to be added to your
+ * project libraries - sboapi.jar and sbowrapper.jar
+ * The files are usually located in:
+ * C:\Program Files (x86)\SAP\SAP Business One DI API\JCO\LIB - 32 bit build
+ * C:\Program Files\SAP\SAP Business One DI API\JCO\LIB - 64 bit build
+ */
+import com.sap.smb.sbo.api.*;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Consumer;
+
+/**
+ *
+ * @author Rafal Rozmus (rozmus.rafal@gmail.com)
+ */
+public class BusinessObjectPool implements AutoCloseable
+{
+
+    // declare Company object
+    private final ICompany company;
+    // maximum number of idle objects kept per kind
+    private final int maxIdle;
+    // idle objects by kind, e.g. "Recordset" or "Documents 13"
+    private final Map<String, Deque<Pooled>> idle = new HashMap<>();
+    // objects handed out and not yet given back
+    private final Map<Object, Pooled> borrowed = new IdentityHashMap<>();
+    private boolean closed = false;
+    // writer of this session, created on first use
+    private DocumentWriter writer;
+    // statistics
+    private long created = 0;
+    private long reused = 0;
+
+    public static void main(String[] args) throws Exception
+    {
+        ICompany company = new ConnectionSettings().connect("SBODemoGB");
+        try (BusinessObjectPool objects = new BusinessObjectPool(company, 4))
+        {
+            for (int docEntry : MarkInvoiceAsPrinted.getUnprintedInvoices(company))
+            {
+                // the same Documents object is used for every invoice
+                IDocuments invoice = objects.documents(13);
+                try
+                {
+                    invoice.getByKey(docEntry);
+                    System.out.println(docEntry + "\t" + invoice.getCardCode());
+                }
+                finally
+                {
+                    objects.giveBack(invoice);
+                }
+            }
+            System.out.println(objects);
+        }
+        finally
+        {
+            company.disconnect();
+        }
+    }
+
+    /**
+     * @param company connected company instance the objects belong to
+     * @param maxIdle idle objects kept per kind, more are released
+     */
+    public BusinessObjectPool(ICompany company, int maxIdle)
+    {
+        if (maxIdle < 1)
+        {
+            throw new IllegalArgumentException("Invalid number of idle objects: " + maxIdle);
+        }
+        this.company = company;
+        this.maxIdle = maxIdle;
+    }
+
+    public ICompany getCompany()
+    {
+        return company;
+    }
+
+    public IRecordset recordset() throws SBOCOMException
+    {
+        IRecordset recordSet = take("Recordset", IRecordset.class);
+        if (recordSet == null)
+        {
+            recordSet = HandleTracker.shared().newRecordset(company);
+            created("Recordset", recordSet, IRecordset::release);
+        }
+        return recordSet;
+    }
+
+    /**
+     * @param objectType document type, e.g. 13 for AR Invoice
+     */
+    public IDocuments documents(int objectType) throws SBOCOMException
+    {
+        String kind = "Documents " + objectType;
+        IDocuments document = take(kind, IDocuments.class);
+        if (document == null)
+        {
+            document = HandleTracker.shared().newDocuments(company, objectType);
+            created(kind, document, IDocuments::release);
+        }
+        return document;
+    }
+
+    public IBusinessPartners businessPartners() throws SBOCOMException
+    {
+        IBusinessPartners bp = take("BusinessPartners", IBusinessPartners.class);
+        if (bp == null)
+        {
+            bp = HandleTracker.shared().newBusinessPartners(company);
+            created("BusinessPartners", bp, IBusinessPartners::release);
+        }
+        return bp;
+    }
+
+    public IAlternateCatNum alternateCatNum() throws SBOCOMException
+    {
+        IAlternateCatNum altCatNum = take("AlternateCatNum", IAlternateCatNum.class);
+        if (altCatNum == null)
+        {
+            altCatNum = HandleTracker.shared().newAlternateCatNum(company);
+            created("AlternateCatNum", altCatNum, IAlternateCatNum::release);
+        }
+        return altCatNum;
+    }
+
+    public IUsers users() throws SBOCOMException
+    {
+        IUsers user = take("Users", IUsers.class);
+        if (user == null)
+        {
+            user = HandleTracker.shared().newUsers(company);
+            created("Users", user, IUsers::release);
+        }
+        return user;
+    }
+
+    /**
+     * Get the DocumentWriter of this session; its bridge call counts add up
+     * over everything written on the session
+     *
+     * @return the same writer on every call
+     */
+    public synchronized DocumentWriter writer()
+    {
+        if (writer == null)
+        {
+            writer = new DocumentWriter(company);
+        }
+        return writer;
+    }
+
+    /**
+     * Give back an object for reuse. It is released instead if the pool is
+     * closed or enough objects of its kind are idle.
+     *
+     * @param object object taken from this pool
+     */
+    public void giveBack(Object object)
+    {
+        Pooled pooled;
+        synchronized (this)
+        {
+            pooled = unmark(object);
+            Deque<Pooled> objects = idle.computeIfAbsent(pooled.kind, k -> new ArrayDeque<>());
+            if (!closed && objects.size() < maxIdle)
+            {
+                objects.addFirst(pooled);
+                return;
+            }
+        }
+        pooled.release();
+    }
+
+    /**
+     * Release an object instead of giving it back, e.g. after add() or when
+     * its state is unknown after a failure
+     *
+     * @param object object taken from this pool
+     */
+    public void discard(Object object)
+    {
+        Pooled pooled;
+        synchronized (this)
+        {
+            pooled = unmark(object);
+        }
+        pooled.release();
+    }
+
+    /**
+     * Release objects which were taken and never given back. Call it when
+     * the user of the session is done, e.g. when the session is returned to
+     * SessionPool.
+     *
+     * @return number of objects released
+     */
+    public int releaseBorrowed()
+    {
+        List<Pooled> leaked;
+        synchronized (this)
+        {
+            leaked = new ArrayList<>(borrowed.values());
+            borrowed.clear();
+        }
+        for (Pooled pooled : leaked)
+        {
+            pooled.release();
+        }
+        return leaked.size();
+    }
+
+    /**
+     * Release all idle objects. Objects still taken are released when they
+     * are given back.
+     */
+    @Override
+    public void close()
+    {
+        List<Pooled> all = new ArrayList<>();
+        synchronized (this)
+        {
+            closed = true;
+            for (Deque<Pooled> objects : idle.values())
+            {
+                all.addAll(objects);
+            }
+            idle.clear();
+        }
+        for (Pooled pooled : all)
+        {
+            pooled.release();
+        }
+    }
+
+    /**
+     * Get number of objects created
+     */
+    public synchronized long getCreated()
+    {
+        return created;
+    }
+
+    /**
+     * Get number of times an idle object was handed out again
+     */
+    public synchronized long getReused()
+    {
+        return reused;
+    }
+
+    /**
+     * Get number of objects taken and not given back
+     */
+    public synchronized int getBorrowedCount()
+    {
+        return borrowed.size();
+    }
+
+    @Override
+    public synchronized String toString()
+    {
+        return created + " objects created, " + reused + " reused, " + borrowed.size() + " taken";
+    }
+
+    private synchronized <T> T take(String kind, Class<T> type)
+    {
+        if (closed)
+        {
+            throw new IllegalStateException("Business object pool is closed");
+        }
+        Deque<Pooled> objects = idle.get(kind);
+        Pooled pooled = objects == null ? null : objects.pollFirst();
+        if (pooled == null)
+        {
+            return null;
+        }
+        reused++;
+        borrowed.put(pooled.object, pooled);
+        return type.cast(pooled.object);
+    }
+
+    private synchronized <T> void created(String kind, T object, Consumer<T> release)
+    {
+        created++;
+        borrowed.put(object, new Pooled(kind, object, () -> release.accept(object)));
+    }
+
+    private Pooled unmark(Object object)
+    {
+        Pooled pooled = borrowed.remove(object);
+        if (pooled == null)
+        {
+            throw new IllegalArgumentException("Object was not taken from this pool");
+        }
+        return pooled;
+    }
+
+    /**
+     * Pooled object with the way to release it; the DI API interfaces have no
+     * common supertype
+     */
+    private static class Pooled
+    {
+        final String kind;
+        final Object object;
+        final Runnable release;
+
+        Pooled(String kind, Object object, Runnable release)
+        {
+            this.kind = kind;
+            this.object = object;
+            this.release = release;
+        }
+
+        void release()
+        {
+            try
+            {
+                release.run();
+            }
+            catch (Exception e)
+            {
+                e.printStackTrace();
+            }
+        }
+    }
+}
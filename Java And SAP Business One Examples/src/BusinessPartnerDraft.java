@@ -0,0 +1,107 @@
+/*
+ * Plain Java description of a Business Partner with its Contact Employees. A
+ * draft can be built without a connection and added to SAP Business One
+ * later with DocumentWriter.
+ * For this program to work, you need SAP Business One DI API installed.
+ */
+
+/*
+ * Import JCO libraries from DI API folder. Two files need to be added to your
+ * project libraries - sboapi.jar and sbowrapper.jar
+ * The files are usually located in:
+ * C:\Program Files (x86)\SAP\SAP Business One DI API\JCO\LIB - 32 bit build
+ * C:\Program Files\SAP\SAP Business One DI API\JCO\LIB - 64 bit build
+ */
+import com.sap.smb.sbo.api.*;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ *
+ * @author Rafal Rozmus (rozmus.rafal@gmail.com)
+ */
+public class BusinessPartnerDraft
+{
+
+    // BP's account code
+    public final String cardCode;
+    // BP's name
+    public String cardName;
+    // BP type (0=Customer, 1=Supplier, 2=Lead)
+    public int cardType = 0;
+    // 0=Company, 1=Private
+    public int companyPrivate = 0;
+    // Contact Employees
+    public final List<Contact> contacts = new ArrayList<>();
+
+    public BusinessPartnerDraft(String cardCode, String cardName)
+    {
+        this.cardCode = cardCode;
+        this.cardName = cardName;
+    }
+
+    /**
+     * Add a Contact Employee
+     *
+     * @param name contact ID, unique within the Business Partner
+     * @return the new contact, to set further fields
+     */
+    public Contact addContact(String name)
+    {
+        Contact contact = new Contact(name);
+        contacts.add(contact);
+        return contact;
+    }
+
+    /**
+     * Add the Business Partner to SAP Business One
+     *
+     * @param company connected company instance
+     * @throws DiApiException if add() failed
+     */
+    public void post(ICompany company) throws DiApiException, SBOCOMException
+    {
+        new DocumentWriter(company).add(this);
+    }
+
+    /**
+     * Contact Employee
+     */
+    public static class Contact
+    {
+        public final String name;
+        public String firstName;
+        public String lastName;
+        public String eMail;
+        public String mobilePhone;
+
+        public Contact(String name)
+        {
+            this.name = name;
+        }
+
+        public Contact setFirstName(String firstName)
+        {
+            this.firstName = firstName;
+            return this;
+        }
+
+        public Contact setLastName(String lastName)
+        {
+            this.lastName = lastName;
+            return this;
+        }
+
+        public Contact setE_Mail(String eMail)
+        {
+            this.eMail = eMail;
+            return this;
+        }
+
+        public Contact setMobilePhone(String mobilePhone)
+        {
+            this.mobilePhone = mobilePhone;
+            return this;
+        }
+    }
+}
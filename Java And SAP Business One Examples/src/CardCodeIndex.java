@@ -0,0 +1,163 @@
+/*
+ * Compact in-memory index of existing Business Partner codes (OCRD.CardCode).
+ * A Bloom filter answers most "does not exist" questions without touching the
+ * sorted code array; a binary search confirms the rest. Used to decide
+ * between add() and getByKey() + update() without a failed add() round trip.
+ * For this program to work, you need SAP Business One DI API installed.
+ */
+
+/*
+ * Import JCO libraries from DI API folder. Two files need to be added to your
+ * project libraries - sboapi.jar and sbowrapper.jar
+ * The files are usually located in:
+ * C:\Program Files (x86)\SAP\SAP Business One DI API\JCO\LIB - 32 bit build
+ * C:\Program Files\SAP\SAP Business One DI API\JCO\LIB - 64 bit build
+ */
+import com.sap.smb.sbo.api.*;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ *
+ * @author Rafal Rozmus (rozmus.rafal@gmail.com)
+ */
+public class CardCodeIndex
+{
+
+    // Bloom filter bits per code, gives about 1% false positives with 7 hashes
+    private static final int BITS_PER_CODE = 10;
+    private static final int HASHES = 7;
+
+    // codes loaded from OCRD, upper case and sorted
+    private final String[] codes;
+    // codes added after loading
+    private final Set<String> added = new HashSet<>();
+    private final long[] bits;
+    private final int bitCount;
+
+    /**
+     * Load all Business Partner codes
+     *
+     * @param company connected company instance
+     * @return index of existing codes
+     */
+    public static CardCodeIndex load(ICompany company) throws SBOCOMException
+    {
+        List<String> codes = new ArrayList<>();
+        try (RecordsetCursor cursor = RecordsetCursor.open(company, "SELECT CardCode FROM OCRD"))
+        {
+            for (RecordsetCursor.Row row : cursor)
+            {
+                codes.add(row.getString(0));
+            }
+        }
+        return new CardCodeIndex(codes);
+    }
+
+    public CardCodeIndex(List<String> cardCodes)
+    {
+        codes = new String[cardCodes.size()];
+        for (int i = 0; i < codes.length; i++)
+        {
+            codes[i] = normalize(cardCodes.get(i));
+        }
+        Arrays.sort(codes);
+        bitCount = Math.max(64, codes.length * BITS_PER_CODE);
+        bits = new long[(bitCount + 63) / 64];
+        for (String code : codes)
+        {
+            setBits(code);
+        }
+    }
+
+    /**
+     * Check whether a Business Partner exists
+     *
+     * @param cardCode Business Partner code
+     * @return true if the code was loaded or added
+     */
+    public synchronized boolean contains(String cardCode)
+    {
+        String code = normalize(cardCode);
+        if (!mightContain(code))
+        {
+            return false;
+        }
+        return Arrays.binarySearch(codes, code) >= 0 || added.contains(code);
+    }
+
+    /**
+     * Record a Business Partner added after the index was loaded
+     *
+     * @param cardCode Business Partner code
+     */
+    public synchronized void add(String cardCode)
+    {
+        String code = normalize(cardCode);
+        added.add(code);
+        setBits(code);
+    }
+
+    /**
+     * Get number of indexed codes
+     *
+     * @return indexed codes
+     */
+    public synchronized int size()
+    {
+        return codes.length + added.size();
+    }
+
+    /**
+     * Codes are compared the way SQL Server's default collation does, without
+     * regard to case.
+     */
+    private static String normalize(String cardCode)
+    {
+        return cardCode.trim().toUpperCase();
+    }
+
+    private boolean mightContain(String code)
+    {
+        int h1 = code.hashCode();
+        int h2 = secondHash(code);
+        for (int i = 0; i < HASHES; i++)
+        {
+            int bit = Math.floorMod(h1 + i * h2, bitCount);
+            if ((bits[bit >>> 6] & (1L << bit)) == 0)
+            {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private void setBits(String code)
+    {
+        int h1 = code.hashCode();
+        int h2 = secondHash(code);
+        for (int i = 0; i < HASHES; i++)
+        {
+            int bit = Math.floorMod(h1 + i * h2, bitCount);
+            bits[bit >>> 6] |= 1L << bit;
+        }
+    }
+
+    /**
+     * FNV-1a hash, independent of String.hashCode()
+     */
+    private static int secondHash(String code)
+    {
+        int hash = 0x811c9dc5;
+        for (int i = 0; i < code.length(); i++)
+        {
+            hash ^= code.charAt(i);
+            hash *= 0x01000193;
+        }
+        // never zero, so that every hash probes a different bit
+        return hash | 1;
+    }
+}
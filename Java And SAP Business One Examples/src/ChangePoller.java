@@ -0,0 +1,574 @@
+/*
+ * Incremental change capture for SAP Business One tables such as OINV and
+ * OCRD. Every table keeps a watermark - the UpdateDate and UpdateTS of the
+ * last row seen - and every poll reads only rows changed since then, page by
+ * page in (UpdateDate, UpdateTS, key) order. Changed rows are handed to the
+ * subscribers, so downstream jobs do work proportional to the changes, not
+ * to the table size.
+ * UpdateTS only has a resolution of one second and is set before the
+ * transaction commits, so every poll reads again from the lag window before
+ * the watermark - the last second by default - and skips rows already seen
+ * with the same UpdateDate and UpdateTS. A row committed late within the
+ * window is not lost; set the window to the longest transaction expected.
+ * Rows without UpdateDate come first, the way SQL Server sorts NULL.
+ * Watermarks are saved to a local file after every page the subscribers have
+ * processed, so a change is delivered at least once. Delete the file to
+ * deliver every row again.
+ * For this program to work, you need SAP Business One DI API installed.
+ */
+
+/*
+ * Import JCO libraries from DI API folder. Two files need to be added to your
+ * project libraries - sboapi.jar and sbowrapper.jar
+ * The files are usually located in:
+ * C:\Program Files (x86)\SAP\SAP Business One DI API\JCO\LIB - 32 bit build
+ * C:\Program Files\SAP\SAP Business One DI API\JCO\LIB - 64 bit build
+ */
+import com.sap.smb.sbo.api.*;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.text.SimpleDateFormat;
+import java.time.LocalDate;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.Set;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+/**
+ *
+ * @author Rafal Rozmus (rozmus.rafal@gmail.com)
+ */
+public class ChangePoller implements AutoCloseable
+{
+
+    // watermark day of rows without UpdateDate, before all others
+    private static final String NO_DAY = "19000101";
+
+    // pool the polling session is borrowed from
+    private final SessionPool pool;
+    // company database to poll
+    private final String companyDb;
+    // number of rows fetched by one query
+    private final int pageSize;
+    // file holding the watermarks of all tables
+    private final Path stateFile;
+    private final Properties state = new Properties();
+    private final Map<String, Table> tables = new LinkedHashMap<>();
+    private final List<Consumer<Change>> subscribers = new CopyOnWriteArrayList<>();
+    private final List<Consumer<String>> tableSubscribers = new CopyOnWriteArrayList<>();
+    // tables with rows delivered by the running poll
+    private final Set<String> changedTables = new LinkedHashSet<>();
+    // seconds before the watermark read again by every poll
+    private volatile int lagSeconds = 0;
+    private ScheduledExecutorService scheduler;
+
+    public static void main(String[] args) throws Exception
+    {
+        SessionPool pool = new SessionPool(new ConnectionSettings(), 0, 1, 600000);
+        try (ChangePoller poller = new ChangePoller(pool, "SBODemoGB", 5000, Paths.get("sbodemogb.watermarks")))
+        {
+            poller.track("OINV", "DocEntry", "DocEntry, DocNum, CardCode, DocTotal, Printed")
+                    .track("OCRD", "CardCode", "CardCode, CardName");
+            poller.subscribe(change -> System.out.println(change.table + " " + change.key + " changed"));
+            poller.start(30);
+            Thread.sleep(TimeUnit.MINUTES.toMillis(10));
+        }
+        finally
+        {
+            pool.close();
+        }
+    }
+
+    public ChangePoller(SessionPool pool, String companyDb, int pageSize, Path stateFile) throws IOException
+    {
+        if (pageSize < 1)
+        {
+            throw new IllegalArgumentException("Page size must be positive: " + pageSize);
+        }
+        this.pool = pool;
+        this.companyDb = companyDb;
+        this.pageSize = pageSize;
+        this.stateFile = stateFile;
+        if (Files.exists(stateFile))
+        {
+            try (InputStream in = Files.newInputStream(stateFile))
+            {
+                state.load(in);
+            }
+        }
+    }
+
+    /**
+     * Poll a table. The table needs UpdateDate and UpdateTS columns, like all
+     * marketing documents and master data tables.
+     *
+     * @param table table name, e.g. OINV
+     * @param keyColumn unique column, e.g. DocEntry
+     * @param columns comma separated list of columns to select, must include
+     *        the key
+     * @return this poller
+     */
+    public synchronized ChangePoller track(String table, String keyColumn, String columns)
+    {
+        tables.put(table, new Table(table, keyColumn, columns, state));
+        return this;
+    }
+
+    /**
+     * Read again the given seconds before the watermark on every poll, to
+     * catch rows of transactions which committed after a later row was
+     * read. Rows seen already are not delivered again.
+     *
+     * @param lagSeconds seconds, 0 to read again only the second of the
+     *        watermark
+     */
+    public void setLagSeconds(int lagSeconds)
+    {
+        if (lagSeconds < 0)
+        {
+            throw new IllegalArgumentException("Lag must not be negative: " + lagSeconds);
+        }
+        this.lagSeconds = lagSeconds;
+    }
+
+    /**
+     * Receive changed rows of all tracked tables. Subscribers are called on
+     * the polling thread; one that throws stops the poll, and the rows from
+     * the last saved watermark on are delivered again on the next poll.
+     *
+     * @param subscriber receives every changed row
+     */
+    public void subscribe(Consumer<Change> subscriber)
+    {
+        subscribers.add(subscriber);
+    }
+
+    /**
+     * Receive the names of tables with changed rows once per poll, after
+     * their rows were delivered to the subscribers, e.g. to invalidate a
+     * cache. Tables are also delivered when a later table fails.
+     *
+     * @param subscriber receives every changed table name
+     */
+    public void subscribeTables(Consumer<String> subscriber)
+    {
+        tableSubscribers.add(subscriber);
+    }
+
+    /**
+     * Poll every interval on a background thread
+     *
+     * @param intervalSeconds seconds between the end of a poll and the start
+     *        of the next one
+     */
+    public synchronized void start(long intervalSeconds)
+    {
+        if (scheduler != null)
+        {
+            throw new IllegalStateException("Poller is already running");
+        }
+        scheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "change-poller-" + companyDb);
+            t.setDaemon(true);
+            return t;
+        });
+        scheduler.scheduleWithFixedDelay(() -> {
+            try
+            {
+                poll();
+            }
+            catch (Exception e)
+            {
+                // keep polling, the watermark was not moved past the failure
+                e.printStackTrace();
+            }
+        }, 0, intervalSeconds, TimeUnit.SECONDS);
+    }
+
+    /**
+     * Poll all tables once on the calling thread
+     *
+     * @return number of changed rows delivered
+     */
+    public synchronized long poll() throws Exception
+    {
+        long delivered = 0;
+        ICompany session = pool.borrow(companyDb);
+        try
+        {
+            for (Table table : tables.values())
+            {
+                delivered += poll(session, table);
+            }
+        }
+        finally
+        {
+            pool.giveBack(session);
+            List<String> changed = new ArrayList<>(changedTables);
+            changedTables.clear();
+            for (String table : changed)
+            {
+                for (Consumer<String> subscriber : tableSubscribers)
+                {
+                    subscriber.accept(table);
+                }
+            }
+        }
+        return delivered;
+    }
+
+    /**
+     * Stop polling, waiting for a running poll to finish. If the calling
+     * thread is interrupted the running poll is interrupted too.
+     */
+    @Override
+    public void close()
+    {
+        ScheduledExecutorService running;
+        synchronized (this)
+        {
+            running = scheduler;
+            scheduler = null;
+        }
+        if (running != null)
+        {
+            running.shutdown();
+            try
+            {
+                running.awaitTermination(1, TimeUnit.MINUTES);
+            }
+            catch (InterruptedException e)
+            {
+                running.shutdownNow();
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    private long poll(ICompany session, Table table) throws SBOCOMException, IOException
+    {
+        try
+        {
+            return pollPages(session, table);
+        }
+        catch (RuntimeException | SBOCOMException | IOException e)
+        {
+            // deliver the unsaved rows again on the next poll
+            table.load(state);
+            throw e;
+        }
+    }
+
+    private long pollPages(ICompany session, Table table) throws SBOCOMException, IOException
+    {
+        long delivered = 0;
+        // position of the last row read by this poll, null before the first page
+        Object[] last = null;
+        while (true)
+        {
+            int rows = 0;
+            try (RecordsetCursor cursor = RecordsetCursor.open(pool.objects(session),
+                    table.query(pageSize, lagSeconds, last)))
+            {
+                String[] columns = new String[cursor.getColumnCount() - 2];
+                for (int i = 0; i < columns.length; i++)
+                {
+                    columns[i] = cursor.getColumnName(i);
+                }
+                int keyIndex = cursor.getColumnIndex(table.keyColumn);
+                for (RecordsetCursor.Row row : cursor)
+                {
+                    rows++;
+                    Date updateDate = row.getDate(columns.length);
+                    int updateTs = row.getInt(columns.length + 1);
+                    Object key = row.getValue(keyIndex);
+                    last = new Object[] {day(updateDate), updateTs, key};
+                    if (table.advance(day(updateDate), updateTs, String.valueOf(key)))
+                    {
+                        Object[] values = new Object[columns.length];
+                        System.arraycopy(row.toArray(), 0, values, 0, columns.length);
+                        Change change = new Change(table.name, String.valueOf(key), columns, values, updateDate);
+                        for (Consumer<Change> subscriber : subscribers)
+                        {
+                            subscriber.accept(change);
+                        }
+                        changedTables.add(table.name);
+                        delivered++;
+                    }
+                }
+            }
+            // the page is processed, save where it ended
+            table.save(state, lagSeconds);
+            saveState();
+            if (rows < pageSize)
+            {
+                return delivered;
+            }
+        }
+    }
+
+    private void saveState() throws IOException
+    {
+        // write to a temporary file and rename it, so a crash never leaves a
+        // half written state file behind
+        Path temp = stateFile.resolveSibling(stateFile.getFileName() + ".tmp");
+        try (OutputStream out = Files.newOutputStream(temp))
+        {
+            state.store(out, "Change watermarks of " + companyDb);
+        }
+        Files.move(temp, stateFile, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    /**
+     * Format a date as an SQL literal without time, e.g. 20150610
+     *
+     * @param date date or null for rows without UpdateDate
+     */
+    static String day(Date date)
+    {
+        return date == null ? NO_DAY : new SimpleDateFormat("yyyyMMdd").format(date);
+    }
+
+    /**
+     * Get seconds since 1970 of an UpdateDate and UpdateTS, e.g. 20150610
+     * and 143015 for 14:30:15
+     */
+    static long position(String day, int time)
+    {
+        return LocalDate.parse(day, DateTimeFormatter.BASIC_ISO_DATE).toEpochDay() * 86400
+                + time / 10000 * 3600 + time / 100 % 100 * 60 + time % 100;
+    }
+
+    private static String literal(Object value)
+    {
+        if (value instanceof Number)
+        {
+            return value.toString();
+        }
+        return "N'" + String.valueOf(value).replace("'", "''") + "'";
+    }
+
+    /**
+     * Tracked table and its watermark
+     */
+    static class Table
+    {
+        final String name;
+        final String keyColumn;
+        final String columns;
+        // UpdateDate as yyyyMMdd and UpdateTS of the newest row seen, null if none
+        String day;
+        int time;
+        // position of the rows seen within the lag window by key, see
+        // position()
+        final Map<String, Long> seen = new HashMap<>();
+
+        Table(String name, String keyColumn, String columns, Properties state)
+        {
+            this.name = name;
+            this.keyColumn = keyColumn;
+            this.columns = columns;
+            load(state);
+        }
+
+        /**
+         * Set the watermark to the saved one
+         */
+        void load(Properties state)
+        {
+            day = state.getProperty(name + ".day");
+            time = Integer.parseInt(state.getProperty(name + ".time", "0"));
+            seen.clear();
+            String keys = state.getProperty(name + ".seen", "");
+            for (String key : keys.split("\n"))
+            {
+                int tab = key.indexOf('\t');
+                if (tab > 0)
+                {
+                    seen.put(key.substring(tab + 1), Long.valueOf(key.substring(0, tab)));
+                }
+                else if (!key.isEmpty() && day != null)
+                {
+                    // saved before the lag window, seen at the watermark
+                    seen.put(key, position(day, time));
+                }
+            }
+        }
+
+        /**
+         * Build query for the page after the given row. The first page starts
+         * lagSeconds before the watermark, to catch rows committed late.
+         *
+         * @param last UpdateDate as yyyyMMdd, UpdateTS and key of the last row
+         *        read by this poll, null for the first page
+         */
+        String query(int pageSize, int lagSeconds, Object[] last)
+        {
+            String updateTs = "COALESCE(UpdateTS, 0)";
+            StringBuilder query = new StringBuilder("SELECT TOP ").append(pageSize).append(' ').append(columns)
+                    .append(", UpdateDate, ").append(updateTs).append(" AS UpdateTS FROM ").append(name);
+            if (last != null)
+            {
+                String date = (String) last[0];
+                query.append(" WHERE ").append(after(date))
+                        .append(" OR (").append(on(date)).append(" AND ").append(updateTs).append(" > ")
+                        .append(last[1]).append(')')
+                        .append(" OR (").append(on(date)).append(" AND ").append(updateTs).append(" = ")
+                        .append(last[1]).append(" AND ").append(keyColumn).append(" > ").append(literal(last[2]))
+                        .append(')');
+            }
+            else if (day != null)
+            {
+                long from = position(day, time) - lagSeconds;
+                String fromDay = LocalDate.ofEpochDay(Math.floorDiv(from, 86400))
+                        .format(DateTimeFormatter.BASIC_ISO_DATE);
+                long second = Math.floorMod(from, 86400);
+                long fromTime = second / 3600 * 10000 + second / 60 % 60 * 100 + second % 60;
+                if (fromDay.compareTo(NO_DAY) < 0)
+                {
+                    fromDay = NO_DAY;
+                    fromTime = 0;
+                }
+                query.append(" WHERE ").append(after(fromDay))
+                        .append(" OR (").append(on(fromDay)).append(" AND ").append(updateTs).append(" >= ")
+                        .append(fromTime).append(')');
+            }
+            return query.append(" ORDER BY UpdateDate, ").append(updateTs).append(", ").append(keyColumn)
+                    .toString();
+        }
+
+        /**
+         * Condition for rows changed after a day; the column is compared as
+         * it is, so an index on UpdateDate can be used
+         */
+        private static String after(String day)
+        {
+            return NO_DAY.equals(day) ? "UpdateDate IS NOT NULL" : "UpdateDate > '" + day + "'";
+        }
+
+        /**
+         * Condition for rows changed on a day
+         */
+        private static String on(String day)
+        {
+            return NO_DAY.equals(day) ? "UpdateDate IS NULL" : "UpdateDate = '" + day + "'";
+        }
+
+        /**
+         * Move the watermark to a row; a row read again in the lag window
+         * leaves it where it is
+         *
+         * @return false if the row was already delivered
+         */
+        boolean advance(String rowDay, int rowTime, String key)
+        {
+            long position = position(rowDay, rowTime);
+            Long previous = seen.put(key, position);
+            if (previous != null && previous == position)
+            {
+                return false;
+            }
+            if (day == null || position > position(day, time))
+            {
+                day = rowDay;
+                time = rowTime;
+            }
+            return true;
+        }
+
+        /**
+         * Save the watermark and the rows seen within the lag window; older
+         * rows are forgotten, they are not read again
+         */
+        void save(Properties state, int lagSeconds)
+        {
+            if (day != null)
+            {
+                long from = position(day, time) - lagSeconds;
+                seen.values().removeIf(position -> position < from);
+                List<String> keys = new ArrayList<>();
+                for (Map.Entry<String, Long> entry : seen.entrySet())
+                {
+                    keys.add(entry.getValue() + "\t" + entry.getKey());
+                }
+                state.setProperty(name + ".day", day);
+                state.setProperty(name + ".time", Integer.toString(time));
+                state.setProperty(name + ".seen", String.join("\n", keys));
+            }
+        }
+    }
+
+    /**
+     * Changed row
+     */
+    public static class Change
+    {
+        // table name, e.g. OINV
+        public final String table;
+        // value of the key column
+        public final String key;
+        // UpdateDate of the row
+        public final Date updateDate;
+        private final String[] columns;
+        private final Object[] values;
+
+        Change(String table, String key, String[] columns, Object[] values, Date updateDate)
+        {
+            this.table = table;
+            this.key = key;
+            this.columns = columns;
+            this.values = values;
+            this.updateDate = updateDate;
+        }
+
+        public Object getValue(int column)
+        {
+            return values[column];
+        }
+
+        public String getString(int column)
+        {
+            return values[column] == null ? null : values[column].toString();
+        }
+
+        /**
+         * Get a value by column name
+         *
+         * @param column column name, case is ignored
+         * @return value
+         */
+        public Object getValue(String column)
+        {
+            for (int i = 0; i < columns.length; i++)
+            {
+                if (columns[i].equalsIgnoreCase(column))
+                {
+                    return values[i];
+                }
+            }
+            throw new IllegalArgumentException("No column " + column);
+        }
+
+        public List<String> getColumnNames()
+        {
+            return Arrays.asList(columns);
+        }
+    }
+}
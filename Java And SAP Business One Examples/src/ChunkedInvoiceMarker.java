@@ -0,0 +1,266 @@
+/*
+ * Marks AR Invoices as printed in chunks, one transaction per chunk. When an
+ * invoice in a chunk fails, only that chunk is rolled back and its invoices
+ * are retried one by one, so the failing invoice is isolated and the rest of
+ * the chunk is still marked. Transient failures such as lock timeouts are
+ * retried with backoff first, so they do not split the chunk.
+ * For this program to work, you need SAP Business One DI API installed.
+ */
+
+/*
+ * Import JCO libraries from DI API folder. Two files need to be added to your
+ * project libraries - sboapi.jar and sbowrapper.jar
+ * The files are usually located in:
+ * C:\Program Files (x86)\SAP\SAP Business One DI API\JCO\LIB - 32 bit build
+ * C:\Program Files\SAP\SAP Business One DI API\JCO\LIB - 64 bit build
+ */
+import com.sap.smb.sbo.api.*;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ *
+ * @author Rafal Rozmus (rozmus.rafal@gmail.com)
+ */
+public class ChunkedInvoiceMarker
+{
+
+    // declare Company object
+    private final ICompany company;
+    // business objects of a pooled session, null for a plain company
+    private final BusinessObjectPool objects;
+    // number of invoices updated in one transaction
+    private final int chunkSize;
+    // retries of chunks and invoices which failed on a lock or deadlock
+    private final RetryPolicy retryPolicy;
+
+    public ChunkedInvoiceMarker(ICompany company, int chunkSize)
+    {
+        this(company, chunkSize, new RetryPolicy());
+    }
+
+    public ChunkedInvoiceMarker(ICompany company, int chunkSize, RetryPolicy retryPolicy)
+    {
+        this(company, null, chunkSize, retryPolicy);
+    }
+
+    /**
+     * @param objects business objects of a pooled session, see
+     *        SessionPool.objects(); the Documents object is taken from them
+     * @param chunkSize number of invoices updated in one transaction
+     */
+    public ChunkedInvoiceMarker(BusinessObjectPool objects, int chunkSize)
+    {
+        this(objects, chunkSize, new RetryPolicy());
+    }
+
+    public ChunkedInvoiceMarker(BusinessObjectPool objects, int chunkSize, RetryPolicy retryPolicy)
+    {
+        this(objects.getCompany(), objects, chunkSize, retryPolicy);
+    }
+
+    private ChunkedInvoiceMarker(ICompany company, BusinessObjectPool objects, int chunkSize,
+            RetryPolicy retryPolicy)
+    {
+        if (chunkSize < 1)
+        {
+            throw new IllegalArgumentException("Chunk size must be positive: " + chunkSize);
+        }
+        this.company = company;
+        this.objects = objects;
+        this.chunkSize = chunkSize;
+        this.retryPolicy = retryPolicy;
+    }
+
+    /**
+     * Mark the given invoices as printed
+     *
+     * @param docEntries OINV.DocEntry values
+     * @return marked and failed invoices with duration of every committed
+     *         chunk
+     */
+    public Result mark(List<Integer> docEntries) throws SBOCOMException, InterruptedException
+    {
+        Result result = new Result();
+        // 13 means AR Invoice
+        IDocuments invoice = objects != null
+                ? objects.documents(13)
+                : HandleTracker.shared().newDocuments(company, 13);
+        try
+        {
+            for (int from = 0; from < docEntries.size(); from += chunkSize)
+            {
+                List<Integer> chunk = docEntries.subList(from, Math.min(from + chunkSize, docEntries.size()));
+                markChunk(invoice, chunk, result);
+            }
+        }
+        finally
+        {
+            if (objects != null)
+            {
+                // every invoice is loaded with getByKey(), the object can be reused
+                objects.giveBack(invoice);
+            }
+            else
+            {
+                invoice.release();
+            }
+        }
+        return result;
+    }
+
+    private void markChunk(IDocuments invoice, List<Integer> chunk, Result result) throws InterruptedException
+    {
+        DiApiException error;
+        for (int attempt = 1;; attempt++)
+        {
+            long start = System.nanoTime();
+            error = markInTransaction(invoice, chunk);
+            if (error == null)
+            {
+                result.marked += chunk.size();
+                result.chunkNanos.add(System.nanoTime() - start);
+                return;
+            }
+            if (!retryPolicy.shouldRetry(attempt, error))
+            {
+                break;
+            }
+            // e.g. a lock timeout, the same chunk will likely go through
+            result.retries++;
+            retryPolicy.backOff(attempt);
+        }
+        // isolate the failing invoice, every update commits on its own
+        result.rolledBackChunks++;
+        for (Integer docEntry : chunk)
+        {
+            DiApiException isolated = markOne(invoice, docEntry);
+            for (int attempt = 1; isolated != null && retryPolicy.shouldRetry(attempt, isolated); attempt++)
+            {
+                result.retries++;
+                retryPolicy.backOff(attempt);
+                isolated = markOne(invoice, docEntry);
+            }
+            if (isolated == null)
+            {
+                result.marked++;
+            }
+            else
+            {
+                result.failed.put(docEntry, isolated.getMessage());
+            }
+        }
+    }
+
+    /**
+     * Mark all invoices of a chunk in one transaction
+     *
+     * @return null if committed, error of the first failing invoice otherwise
+     */
+    private DiApiException markInTransaction(IDocuments invoice, List<Integer> chunk)
+    {
+        company.startTransaction();
+        DiApiException error = null;
+        // set only when the loop ran to the end without an exception
+        boolean completed = false;
+        try
+        {
+            for (Integer docEntry : chunk)
+            {
+                error = markOne(invoice, docEntry);
+                if (error != null)
+                {
+                    break;
+                }
+            }
+            completed = true;
+        }
+        finally
+        {
+            // roll back on any failure, including exceptions from the bridge
+            if (company.isInTransaction())
+            {
+                company.endTransaction(completed && error == null
+                        ? SBOCOMConstants.BoWfTransOpt_wf_Commit
+                        : SBOCOMConstants.BoWfTransOpt_wf_RollBack);
+            }
+        }
+        return error;
+    }
+
+    /**
+     * Mark a single invoice
+     *
+     * @return null if success, error otherwise
+     */
+    private DiApiException markOne(IDocuments invoice, int docEntry)
+    {
+        // Retrieve AR Invoice by it's OINV.DocEntry value
+        if (!invoice.getByKey(docEntry))
+        {
+            return new DiApiException("find invoice " + docEntry, -2028, "Invoice not found");
+        }
+        invoice.setPrinted(1);
+        if (DiApiMetrics.shared().update(company, invoice, 13) != 0)
+        {
+            // get error message fom SAP Business One Server
+            return new DiApiException("mark invoice " + docEntry, company.getLastError());
+        }
+        return null;
+    }
+
+    /**
+     * Outcome of a marking run
+     */
+    public static class Result
+    {
+        // number of invoices marked as printed
+        public int marked = 0;
+        // number of chunks rolled back because one of their invoices failed
+        public int rolledBackChunks = 0;
+        // number of chunks and invoices retried after a transient failure
+        public int retries = 0;
+        // error message of every invoice which could not be marked
+        public final Map<Integer, String> failed = new LinkedHashMap<>();
+        // duration of every committed chunk, in nanoseconds
+        public final List<Long> chunkNanos = new ArrayList<>();
+
+        /**
+         * Add the outcome of another run, e.g. of another worker
+         *
+         * @param other result to add
+         */
+        public synchronized void merge(Result other)
+        {
+            marked += other.marked;
+            rolledBackChunks += other.rolledBackChunks;
+            retries += other.retries;
+            failed.putAll(other.failed);
+            chunkNanos.addAll(other.chunkNanos);
+        }
+
+        @Override
+        public synchronized String toString()
+        {
+            long[] sorted = new long[chunkNanos.size()];
+            for (int i = 0; i < sorted.length; i++)
+            {
+                sorted[i] = chunkNanos.get(i);
+            }
+            Arrays.sort(sorted);
+            String latency = sorted.length == 0 ? "no chunks committed"
+                    : sorted.length + " chunks committed, chunk duration p50 " + millis(sorted[sorted.length / 2])
+                    + " ms, max " + millis(sorted[sorted.length - 1]) + " ms";
+            return "Marked " + marked + " invoices, " + failed.size() + " failed, "
+                    + rolledBackChunks + " chunks rolled back, " + retries + " retries, " + latency;
+        }
+
+        private static String millis(long nanos)
+        {
+            return String.format("%.1f", nanos / 1e6);
+        }
+    }
+}
@@ -0,0 +1,750 @@
+/*
+ * Exports query results to a compact columnar file instead of tab separated
+ * text. Rows are collected in groups of up to groupRows rows and every
+ * column of a group is stored as one block: numbers as an int or double
+ * array, dates as epoch milliseconds, strings (CardCode, ItemCode, ...) as
+ * int ids into a dictionary of the whole column. The footer holds the
+ * dictionaries and per column statistics - null count, min, max, sum and
+ * number of distinct strings - so a reader can skip columns and answer
+ * simple questions without touching the data.
+ * The file is written through one direct (off-heap) buffer and read with a
+ * memory map, so neither side copies the data through the Java heap. Java
+ * has no way to unmap a file: the map of a closed Reader goes away when it is
+ * garbage collected, and until then Windows won't let the file be deleted or
+ * exported again. Export to a new file name each time and delete old files
+ * later.
+ * For this program to work, you need SAP Business One DI API installed.
+ */
+
+/*
+ * Import JCO libraries from DI API folder. Two files need to be added to your
+ * project libraries - sboapi.jar and sbowrapper.jar
+ * The files are usually located in:
+ * C:\Program Files (x86)\SAP\SAP Business One DI API\JCO\LIB - 32 bit build
+ * C:\Program Files\SAP\SAP Business One DI API\JCO\LIB - 64 bit build
+ */
+import com.sap.smb.sbo.api.*;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ *
+ * @author Rafal Rozmus (rozmus.rafal@gmail.com)
+ */
+public class ColumnarExporter
+{
+
+    // "SBOC" at the start and the end of every file
+    static final int MAGIC = 0x53424F43;
+    // file format version
+    static final int VERSION = 2;
+    // column kinds
+    static final byte INT = 0;
+    static final byte DOUBLE = 1;
+    static final byte DATE = 2;
+    static final byte STRING = 3;
+
+    // rows per group
+    private final int groupRows;
+    // size of the off-heap write buffer
+    private final int bufferSize;
+
+    public static void main(String[] args) throws Exception
+    {
+        ICompany company = new ConnectionSettings().connect("SBODemoGB");
+        try (RecordsetCursor cursor = RecordsetCursor.open(company,
+                "SELECT T0.DocEntry, T0.CardCode, T0.DocDate, T1.ItemCode, T1.Quantity, T1.LineTotal"
+                + " FROM OINV T0 INNER JOIN INV1 T1 ON T0.DocEntry = T1.DocEntry"))
+        {
+            long rows = new ColumnarExporter(65536, 1 << 20).export(cursor, Paths.get("invoices.sboc"));
+            System.out.println("Exported " + rows + " rows");
+        }
+        finally
+        {
+            company.disconnect();
+        }
+        try (Reader reader = Reader.open(Paths.get("invoices.sboc")))
+        {
+            for (String column : reader.getColumnNames())
+            {
+                System.out.println(column + ": " + reader.getStats(column));
+            }
+        }
+    }
+
+    public ColumnarExporter(int groupRows, int bufferSize)
+    {
+        if (groupRows < 1 || bufferSize < 64)
+        {
+            throw new IllegalArgumentException("Invalid group rows " + groupRows + " or buffer size " + bufferSize);
+        }
+        this.groupRows = groupRows;
+        this.bufferSize = bufferSize;
+    }
+
+    /**
+     * Write all rows of the cursor to a file
+     *
+     * @param cursor open query result, it is read to the end
+     * @param file file to create or replace
+     * @return number of rows written
+     */
+    public long export(RecordsetCursor cursor, Path file) throws IOException
+    {
+        Column[] columns = new Column[cursor.getColumnCount()];
+        for (int i = 0; i < columns.length; i++)
+        {
+            columns[i] = new Column(cursor.getColumnName(i), kind(cursor.getColumnType(i)), groupRows);
+        }
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING))
+        {
+            Output out = new Output(channel, bufferSize);
+            out.putInt(MAGIC);
+            out.putInt(VERSION);
+            List<long[]> groups = new ArrayList<>();
+            long total = 0;
+            int rows = 0;
+            for (RecordsetCursor.Row row : cursor)
+            {
+                for (int i = 0; i < columns.length; i++)
+                {
+                    columns[i].add(rows, row.getValue(i));
+                }
+                rows++;
+                if (rows == groupRows)
+                {
+                    groups.add(new long[] {out.position(), rows});
+                    writeGroup(out, columns, rows);
+                    total += rows;
+                    rows = 0;
+                }
+            }
+            if (rows > 0)
+            {
+                groups.add(new long[] {out.position(), rows});
+                writeGroup(out, columns, rows);
+                total += rows;
+            }
+            long footer = out.position();
+            out.putLong(total);
+            out.putInt(groups.size());
+            for (long[] group : groups)
+            {
+                out.putLong(group[0]);
+                out.putInt((int) group[1]);
+            }
+            out.putInt(columns.length);
+            for (Column column : columns)
+            {
+                column.writeFooter(out);
+            }
+            out.putLong(footer);
+            out.putInt(MAGIC);
+            out.flush();
+            return total;
+        }
+    }
+
+    private static void writeGroup(Output out, Column[] columns, int rows) throws IOException
+    {
+        for (Column column : columns)
+        {
+            column.writeBlock(out, rows);
+        }
+    }
+
+    /**
+     * Column kind of a DI API field type
+     */
+    static byte kind(int fieldType)
+    {
+        switch (fieldType)
+        {
+            case SBOCOMConstants.BoFieldTypes_db_Numeric:
+                return INT;
+            case SBOCOMConstants.BoFieldTypes_db_Float:
+                return DOUBLE;
+            case SBOCOMConstants.BoFieldTypes_db_Date:
+                return DATE;
+            default:
+                return STRING;
+        }
+    }
+
+    /**
+     * Values of one column in the current group, and statistics of the whole
+     * column
+     */
+    private static class Column
+    {
+        final String name;
+        final byte kind;
+        final BitSet nulls = new BitSet();
+        int[] ints;
+        double[] doubles;
+        long[] longs;
+        // dictionary of a string column, id by value and value by id
+        final Map<String, Integer> ids = new HashMap<>();
+        final List<String> dictionary = new ArrayList<>();
+        // statistics
+        long nullCount = 0;
+        double min = Double.POSITIVE_INFINITY;
+        double max = Double.NEGATIVE_INFINITY;
+        double sum = 0;
+        String minString;
+        String maxString;
+
+        Column(String name, byte kind, int groupRows)
+        {
+            this.name = name;
+            this.kind = kind;
+            if (kind == DOUBLE)
+            {
+                doubles = new double[groupRows];
+            }
+            else if (kind == DATE)
+            {
+                longs = new long[groupRows];
+            }
+            else
+            {
+                // INT values and STRING dictionary ids
+                ints = new int[groupRows];
+            }
+        }
+
+        void add(int row, Object value)
+        {
+            if (value == null)
+            {
+                nulls.set(row);
+                nullCount++;
+                return;
+            }
+            switch (kind)
+            {
+                case INT:
+                    ints[row] = ((Number) value).intValue();
+                    stat(ints[row]);
+                    break;
+                case DOUBLE:
+                    doubles[row] = ((Number) value).doubleValue();
+                    stat(doubles[row]);
+                    break;
+                case DATE:
+                    longs[row] = ((Date) value).getTime();
+                    stat(longs[row]);
+                    break;
+                default:
+                    String text = value.toString();
+                    Integer id = ids.get(text);
+                    if (id == null)
+                    {
+                        id = dictionary.size();
+                        ids.put(text, id);
+                        dictionary.add(text);
+                        if (minString == null || text.compareTo(minString) < 0)
+                        {
+                            minString = text;
+                        }
+                        if (maxString == null || text.compareTo(maxString) > 0)
+                        {
+                            maxString = text;
+                        }
+                    }
+                    ints[row] = id;
+                    break;
+            }
+        }
+
+        private void stat(double value)
+        {
+            min = Math.min(min, value);
+            max = Math.max(max, value);
+            sum += value;
+        }
+
+        /**
+         * Write the group: null bitmap, then the values
+         */
+        void writeBlock(Output out, int rows) throws IOException
+        {
+            byte[] bitmap = nulls.toByteArray();
+            out.putInt(bitmap.length);
+            out.put(bitmap);
+            switch (kind)
+            {
+                case DOUBLE:
+                    for (int i = 0; i < rows; i++)
+                    {
+                        out.putDouble(doubles[i]);
+                    }
+                    Arrays.fill(doubles, 0, rows, 0);
+                    break;
+                case DATE:
+                    for (int i = 0; i < rows; i++)
+                    {
+                        out.putLong(longs[i]);
+                    }
+                    Arrays.fill(longs, 0, rows, 0);
+                    break;
+                default:
+                    for (int i = 0; i < rows; i++)
+                    {
+                        out.putInt(ints[i]);
+                    }
+                    Arrays.fill(ints, 0, rows, 0);
+                    break;
+            }
+            nulls.clear();
+        }
+
+        /**
+         * Write name, kind, statistics and dictionary, followed by min and
+         * max of a non-empty dictionary
+         */
+        void writeFooter(Output out) throws IOException
+        {
+            out.putString(name);
+            out.put(new byte[] {kind});
+            out.putLong(nullCount);
+            out.putDouble(min);
+            out.putDouble(max);
+            out.putDouble(sum);
+            out.putInt(dictionary.size());
+            for (String value : dictionary)
+            {
+                out.putString(value);
+            }
+            if (!dictionary.isEmpty())
+            {
+                out.putString(minString);
+                out.putString(maxString);
+            }
+        }
+    }
+
+    /**
+     * Buffered file output through a direct buffer
+     */
+    private static class Output
+    {
+        private final FileChannel channel;
+        private final ByteBuffer buffer;
+        private long flushed = 0;
+
+        Output(FileChannel channel, int size)
+        {
+            this.channel = channel;
+            buffer = ByteBuffer.allocateDirect(size).order(ByteOrder.LITTLE_ENDIAN);
+        }
+
+        long position()
+        {
+            return flushed + buffer.position();
+        }
+
+        void putInt(int value) throws IOException
+        {
+            ensure(4);
+            buffer.putInt(value);
+        }
+
+        void putLong(long value) throws IOException
+        {
+            ensure(8);
+            buffer.putLong(value);
+        }
+
+        void putDouble(double value) throws IOException
+        {
+            ensure(8);
+            buffer.putDouble(value);
+        }
+
+        void put(byte[] bytes) throws IOException
+        {
+            int offset = 0;
+            while (offset < bytes.length)
+            {
+                ensure(1);
+                int length = Math.min(buffer.remaining(), bytes.length - offset);
+                buffer.put(bytes, offset, length);
+                offset += length;
+            }
+        }
+
+        void putString(String value) throws IOException
+        {
+            byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+            putInt(bytes.length);
+            put(bytes);
+        }
+
+        private void ensure(int bytes) throws IOException
+        {
+            if (buffer.remaining() < bytes)
+            {
+                flush();
+            }
+        }
+
+        void flush() throws IOException
+        {
+            buffer.flip();
+            while (buffer.hasRemaining())
+            {
+                flushed += channel.write(buffer);
+            }
+            buffer.clear();
+        }
+    }
+
+    /**
+     * Statistics of a column
+     */
+    public static class Stats
+    {
+        public final long nulls;
+        // min and max of numbers, of dates as epoch milliseconds
+        public final double min;
+        public final double max;
+        public final double sum;
+        // number of different strings, 0 for other columns
+        public final int distinct;
+        public final String minString;
+        public final String maxString;
+
+        Stats(long nulls, double min, double max, double sum, int distinct, String minString, String maxString)
+        {
+            this.nulls = nulls;
+            this.min = min;
+            this.max = max;
+            this.sum = sum;
+            this.distinct = distinct;
+            this.minString = minString;
+            this.maxString = maxString;
+        }
+
+        @Override
+        public String toString()
+        {
+            if (distinct > 0)
+            {
+                return distinct + " distinct, min " + minString + ", max " + maxString + ", " + nulls + " nulls";
+            }
+            return "min " + min + ", max " + max + ", sum " + sum + ", " + nulls + " nulls";
+        }
+    }
+
+    /**
+     * Reads an exported file through a memory map
+     */
+    public static class Reader implements AutoCloseable
+    {
+        private final FileChannel channel;
+        // null once closed
+        private MappedByteBuffer map;
+        private final long rowCount;
+        private final long[] groupOffsets;
+        private final int[] groupRows;
+        private final String[] names;
+        private final byte[] kinds;
+        private final Stats[] stats;
+        private final String[][] dictionaries;
+
+        private Reader(FileChannel channel) throws IOException
+        {
+            this.channel = channel;
+            map = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            map.order(ByteOrder.LITTLE_ENDIAN);
+            if (map.getInt(0) != MAGIC || map.getInt(map.limit() - 4) != MAGIC)
+            {
+                throw new IOException("Not a columnar export file");
+            }
+            int version = map.getInt(4);
+            if (version != VERSION)
+            {
+                throw new IOException("Unsupported columnar export file version " + version);
+            }
+            ByteBuffer in = map.duplicate().order(ByteOrder.LITTLE_ENDIAN);
+            in.position((int) map.getLong(map.limit() - 12));
+            rowCount = in.getLong();
+            int groups = in.getInt();
+            groupOffsets = new long[groups];
+            groupRows = new int[groups];
+            for (int i = 0; i < groups; i++)
+            {
+                groupOffsets[i] = in.getLong();
+                groupRows[i] = in.getInt();
+            }
+            int columns = in.getInt();
+            names = new String[columns];
+            kinds = new byte[columns];
+            stats = new Stats[columns];
+            dictionaries = new String[columns][];
+            for (int i = 0; i < columns; i++)
+            {
+                names[i] = getString(in);
+                kinds[i] = in.get();
+                long nulls = in.getLong();
+                double min = in.getDouble();
+                double max = in.getDouble();
+                double sum = in.getDouble();
+                String[] dictionary = new String[in.getInt()];
+                for (int j = 0; j < dictionary.length; j++)
+                {
+                    dictionary[j] = getString(in);
+                }
+                String minString = null;
+                String maxString = null;
+                if (dictionary.length > 0)
+                {
+                    minString = getString(in);
+                    maxString = getString(in);
+                }
+                dictionaries[i] = dictionary;
+                stats[i] = new Stats(nulls, min, max, sum, dictionary.length, minString, maxString);
+            }
+        }
+
+        /**
+         * Open a file written by ColumnarExporter. Files over 2 GB are not
+         * supported.
+         *
+         * @param file exported file
+         * @return reader, close it when done; the file stays mapped until
+         *         the reader is garbage collected
+         */
+        public static Reader open(Path file) throws IOException
+        {
+            FileChannel channel = FileChannel.open(file, StandardOpenOption.READ);
+            try
+            {
+                return new Reader(channel);
+            }
+            catch (IOException | RuntimeException e)
+            {
+                channel.close();
+                throw e;
+            }
+        }
+
+        public long getRowCount()
+        {
+            return rowCount;
+        }
+
+        public List<String> getColumnNames()
+        {
+            return Arrays.asList(names);
+        }
+
+        public Stats getStats(String column)
+        {
+            return stats[index(column)];
+        }
+
+        /**
+         * Get the dictionary of a string column, ids returned by readIds()
+         * index into it
+         */
+        public String[] getDictionary(String column)
+        {
+            return dictionaries[index(column)].clone();
+        }
+
+        /**
+         * Read a numeric column, null values are 0
+         */
+        public int[] readInts(String column)
+        {
+            return readIntBlock(check(column, INT));
+        }
+
+        /**
+         * Read dictionary ids of a string column, null values are 0
+         */
+        public int[] readIds(String column)
+        {
+            return readIntBlock(check(column, STRING));
+        }
+
+        /**
+         * Read a float column, null values are 0
+         */
+        public double[] readDoubles(String column)
+        {
+            int index = check(column, DOUBLE);
+            double[] values = new double[(int) rowCount];
+            int row = 0;
+            for (int g = 0; g < groupOffsets.length; g++)
+            {
+                ByteBuffer block = block(g, index);
+                block.asDoubleBuffer().get(values, row, groupRows[g]);
+                row += groupRows[g];
+            }
+            return values;
+        }
+
+        /**
+         * Read a date column as epoch milliseconds, null values are 0
+         */
+        public long[] readDates(String column)
+        {
+            int index = check(column, DATE);
+            long[] values = new long[(int) rowCount];
+            int row = 0;
+            for (int g = 0; g < groupOffsets.length; g++)
+            {
+                ByteBuffer block = block(g, index);
+                block.asLongBuffer().get(values, row, groupRows[g]);
+                row += groupRows[g];
+            }
+            return values;
+        }
+
+        /**
+         * Read a string column
+         */
+        public String[] readStrings(String column)
+        {
+            int index = check(column, STRING);
+            int[] ids = readIntBlock(index);
+            BitSet nulls = readNulls(column);
+            String[] values = new String[ids.length];
+            for (int i = 0; i < ids.length; i++)
+            {
+                values[i] = nulls.get(i) ? null : dictionaries[index][ids[i]];
+            }
+            return values;
+        }
+
+        /**
+         * Read which rows of a column are null
+         */
+        public BitSet readNulls(String column)
+        {
+            int index = index(column);
+            BitSet nulls = new BitSet();
+            int row = 0;
+            for (int g = 0; g < groupOffsets.length; g++)
+            {
+                ByteBuffer in = position(g, index);
+                byte[] bitmap = new byte[in.getInt()];
+                in.get(bitmap);
+                BitSet group = BitSet.valueOf(bitmap);
+                for (int i = group.nextSetBit(0); i >= 0; i = group.nextSetBit(i + 1))
+                {
+                    nulls.set(row + i);
+                }
+                row += groupRows[g];
+            }
+            return nulls;
+        }
+
+        /**
+         * Close the file and drop the map, so it can be garbage collected.
+         * Columns can't be read any more.
+         */
+        @Override
+        public void close() throws IOException
+        {
+            map = null;
+            channel.close();
+        }
+
+        private int[] readIntBlock(int index)
+        {
+            int[] values = new int[(int) rowCount];
+            int row = 0;
+            for (int g = 0; g < groupOffsets.length; g++)
+            {
+                ByteBuffer block = block(g, index);
+                block.asIntBuffer().get(values, row, groupRows[g]);
+                row += groupRows[g];
+            }
+            return values;
+        }
+
+        /**
+         * Get the values of a column in a group, after its null bitmap
+         */
+        private ByteBuffer block(int group, int index)
+        {
+            ByteBuffer in = position(group, index);
+            int bitmap = in.getInt();
+            in.position(in.position() + bitmap);
+            return in.slice().order(ByteOrder.LITTLE_ENDIAN);
+        }
+
+        /**
+         * Get a buffer positioned at the block of a column in a group
+         */
+        private ByteBuffer position(int group, int index)
+        {
+            if (map == null)
+            {
+                throw new IllegalStateException("Reader is closed");
+            }
+            ByteBuffer in = map.duplicate().order(ByteOrder.LITTLE_ENDIAN);
+            in.position((int) groupOffsets[group]);
+            // skip the blocks of the columns before
+            for (int i = 0; i < index; i++)
+            {
+                int bitmap = in.getInt();
+                in.position(in.position() + bitmap + groupRows[group] * width(kinds[i]));
+            }
+            return in;
+        }
+
+        private int check(String column, byte kind)
+        {
+            int index = index(column);
+            if (kinds[index] != kind)
+            {
+                throw new IllegalArgumentException("Column " + column + " is of another type");
+            }
+            return index;
+        }
+
+        private int index(String column)
+        {
+            for (int i = 0; i < names.length; i++)
+            {
+                if (names[i].equalsIgnoreCase(column))
+                {
+                    return i;
+                }
+            }
+            throw new IllegalArgumentException("No column " + column);
+        }
+
+        private static int width(byte kind)
+        {
+            return kind == DOUBLE || kind == DATE ? 8 : 4;
+        }
+
+        private static String getString(ByteBuffer in)
+        {
+            byte[] bytes = new byte[in.getInt()];
+            in.get(bytes);
+            return new String(bytes, StandardCharsets.UTF_8);
+        }
+    }
+}
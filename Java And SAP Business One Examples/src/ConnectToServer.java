@@ -62,7 +62,7 @@ public class ConnectToServer
             company.setLicenseServer("licenserver:30000");
             
             // initialise connection
-            connectionResult = company.connect();
+            connectionResult = DiApiMetrics.shared().connect(company);
             
             // if connection successful
             if (connectionResult == 0) 
@@ -0,0 +1,88 @@
+/*
+ * Connection parameters shared by all sessions opened against one SAP Business
+ * One server. Company database is not part of the settings - it is supplied
+ * per session, so the same settings can be used for many company databases.
+ * For this program to work, you need SAP Business One DI API installed.
+ */
+
+/*
+ * Import JCO libraries from DI API folder. Two files need to be added to your
+ * project libraries - sboapi.jar and sbowrapper.jar
+ * The files are usually located in:
+ * C:\Program Files (x86)\SAP\SAP Business One DI API\JCO\LIB - 32 bit build
+ * C:\Program Files\SAP\SAP Business One DI API\JCO\LIB - 64 bit build
+ */
+import com.sap.smb.sbo.api.*;
+
+/**
+ *
+ * @author Rafal Rozmus (rozmus.rafal@gmail.com)
+ */
+public class ConnectionSettings
+{
+
+    // database server host
+    public String server = "dbserver";
+    // SAP user
+    public String userName = "manager";
+    // SAP user password
+    public String password = "Password";
+    // SQL server version
+    public int dbServerType = SBOCOMConstants.BoDataServerTypes_dst_MSSQL2012;
+    // whether to use trusted connection to SQL server
+    public boolean useTrusted = false;
+    // SAP Business One language
+    public int language = SBOCOMConstants.BoSuppLangs_ln_English;
+    // database user
+    public String dbUserName = "sa";
+    // database user password
+    public String dbPassword = "SQLPassword";
+    // license server and port
+    public String licenseServer = "licenserver:30000";
+
+    /**
+     * Initialise a new company instance with these settings and connect it to
+     * the given company database.
+     *
+     * @param companyDb company database name, e.g. SBODemoGB
+     * @return connected company instance
+     * @throws DiApiException if the server refused the connection
+     * @throws SBOCOMException if company instance cannot be created
+     */
+    public ICompany connect(String companyDb) throws DiApiException, SBOCOMException
+    {
+        // initialise company instance
+        ICompany company = SBOCOMUtil.newCompany();
+        boolean connected = false;
+        try
+        {
+            company.setServer(server);
+            company.setCompanyDB(companyDb);
+            company.setUserName(userName);
+            company.setPassword(password);
+            company.setDbServerType(dbServerType);
+            company.setUseTrusted(useTrusted);
+            company.setLanguage(language);
+            company.setDbUserName(dbUserName);
+            company.setDbPassword(dbPassword);
+            company.setLicenseServer(licenseServer);
+
+            // initialise connection
+            if (DiApiMetrics.shared().connect(company) != 0)
+            {
+                // get error message fom SAP Business One Server
+                throw new DiApiException("connect to " + companyDb, company.getLastError());
+            }
+            connected = true;
+            return company;
+        }
+        finally
+        {
+            if (!connected)
+            {
+                // don't leak the company instance when connect() failed or threw
+                company.release();
+            }
+        }
+    }
+}
@@ -0,0 +1,338 @@
+/*
+ * Pushes Contact Employees of existing Business Partners, e.g. from a CRM,
+ * touching only what changed. Existing contacts (OCPR) of a batch of
+ * Business Partners are read with one query and compared with the incoming
+ * ones - matched by contact name, or by e-mail for renamed contacts. Only
+ * Business Partners with new or changed contacts are loaded with getByKey()
+ * and saved with one update(); unchanged ones cost no DI API call at all.
+ * Contacts missing from the incoming set are left alone.
+ * For this program to work, you need SAP Business One DI API installed.
+ */
+
+/*
+ * Import JCO libraries from DI API folder. Two files need to be added to your
+ * project libraries - sboapi.jar and sbowrapper.jar
+ * The files are usually located in:
+ * C:\Program Files (x86)\SAP\SAP Business One DI API\JCO\LIB - 32 bit build
+ * C:\Program Files\SAP\SAP Business One DI API\JCO\LIB - 64 bit build
+ */
+import com.sap.smb.sbo.api.*;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ *
+ * @author Rafal Rozmus (rozmus.rafal@gmail.com)
+ */
+public class ContactSync
+{
+
+    // declare Company object
+    private final ICompany company;
+    // business objects of the session, null for a plain company
+    private final BusinessObjectPool objects;
+    // number of Business Partners read with one OCPR query
+    private final int batchSize;
+
+    public static void main(String[] args) throws Exception
+    {
+        ICompany company = new ConnectionSettings().connect("SBODemoGB");
+        try
+        {
+            List<BusinessPartnerDraft> incoming = new ArrayList<>();
+            BusinessPartnerDraft bp = new BusinessPartnerDraft("ZZZ002", "ZZZ2 Test Business Partner");
+            bp.addContact("John Smith").setFirstName("John").setLastName("Smith")
+                    .setE_Mail("john.smith@example.com").setMobilePhone("07777777777");
+            bp.addContact("Jane Roe").setFirstName("Jane").setLastName("Roe").setE_Mail("Jane.Roe@example.com");
+            incoming.add(bp);
+            try (BusinessObjectPool objects = new BusinessObjectPool(company, 1))
+            {
+                System.out.println(new ContactSync(objects, 500).sync(incoming));
+            }
+        }
+        finally
+        {
+            company.disconnect();
+        }
+    }
+
+    public ContactSync(ICompany company, int batchSize)
+    {
+        this(company, null, batchSize);
+    }
+
+    /**
+     * @param objects business objects of the session, e.g. from
+     *        SessionPool.objects(); the Business Partner object and the
+     *        Recordsets are taken from them
+     * @param batchSize number of Business Partners read with one query
+     */
+    public ContactSync(BusinessObjectPool objects, int batchSize)
+    {
+        this(objects.getCompany(), objects, batchSize);
+    }
+
+    private ContactSync(ICompany company, BusinessObjectPool objects, int batchSize)
+    {
+        if (batchSize < 1)
+        {
+            throw new IllegalArgumentException("Batch size must be positive: " + batchSize);
+        }
+        this.company = company;
+        this.objects = objects;
+        this.batchSize = batchSize;
+    }
+
+    /**
+     * Bring the contacts of the given Business Partners up to date
+     *
+     * @param incoming Business Partners with their wanted contacts; only
+     *        cardCode and contacts are used
+     * @return what was updated and what failed
+     */
+    public Result sync(List<BusinessPartnerDraft> incoming) throws SBOCOMException
+    {
+        Result result = new Result();
+        IBusinessPartners bp = objects != null
+                ? objects.businessPartners()
+                : HandleTracker.shared().newBusinessPartners(company);
+        try
+        {
+            for (int from = 0; from < incoming.size(); from += batchSize)
+            {
+                List<BusinessPartnerDraft> batch = incoming.subList(from, Math.min(from + batchSize, incoming.size()));
+                Map<String, List<Existing>> existing = loadContacts(batch);
+                for (BusinessPartnerDraft draft : batch)
+                {
+                    List<Existing> contacts = existing.get(draft.cardCode.toUpperCase(Locale.ROOT));
+                    syncOne(bp, draft, contacts == null ? new ArrayList<>() : contacts, result);
+                }
+            }
+        }
+        finally
+        {
+            if (objects != null)
+            {
+                // every Business Partner is loaded with getByKey() before use
+                objects.giveBack(bp);
+            }
+            else
+            {
+                bp.release();
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Read contacts of a batch of Business Partners with one query
+     *
+     * @return contacts in line order, by upper case CardCode
+     */
+    private Map<String, List<Existing>> loadContacts(List<BusinessPartnerDraft> batch) throws SBOCOMException
+    {
+        StringBuilder query = new StringBuilder(
+                "SELECT CardCode, Name, FirstName, LastName, E_MailL, Cellolar FROM OCPR WHERE CardCode IN (");
+        for (int i = 0; i < batch.size(); i++)
+        {
+            query.append(i == 0 ? "N'" : ", N'").append(batch.get(i).cardCode.replace("'", "''")).append('\'');
+        }
+        // ContactEmployees lists the contacts in the order they were created
+        query.append(") ORDER BY CardCode, CntctCode");
+        Map<String, List<Existing>> contacts = new HashMap<>();
+        try (RecordsetCursor cursor = objects != null
+                ? RecordsetCursor.open(objects, query.toString())
+                : RecordsetCursor.open(company, query.toString()))
+        {
+            for (RecordsetCursor.Row row : cursor)
+            {
+                List<Existing> list = contacts.computeIfAbsent(row.getString(0).toUpperCase(Locale.ROOT),
+                        k -> new ArrayList<>());
+                BusinessPartnerDraft.Contact contact = new BusinessPartnerDraft.Contact(row.getString(1))
+                        .setFirstName(row.getString(2))
+                        .setLastName(row.getString(3))
+                        .setE_Mail(row.getString(4))
+                        .setMobilePhone(row.getString(5));
+                list.add(new Existing(list.size(), contact));
+            }
+        }
+        return contacts;
+    }
+
+    private void syncOne(IBusinessPartners bp, BusinessPartnerDraft draft, List<Existing> existing, Result result)
+    {
+        // pair incoming contacts with existing ones, first by name then by e-mail
+        Map<BusinessPartnerDraft.Contact, Existing> matches = new LinkedHashMap<>();
+        List<BusinessPartnerDraft.Contact> unmatched = new ArrayList<>();
+        List<Existing> free = new ArrayList<>(existing);
+        for (BusinessPartnerDraft.Contact contact : draft.contacts)
+        {
+            Existing match = take(free, contact, true);
+            if (match != null)
+            {
+                matches.put(contact, match);
+            }
+            else
+            {
+                unmatched.add(contact);
+            }
+        }
+        List<BusinessPartnerDraft.Contact> added = new ArrayList<>();
+        for (BusinessPartnerDraft.Contact contact : unmatched)
+        {
+            Existing match = take(free, contact, false);
+            if (match != null)
+            {
+                matches.put(contact, match);
+            }
+            else
+            {
+                added.add(contact);
+            }
+        }
+        Map<BusinessPartnerDraft.Contact, Existing> changed = new LinkedHashMap<>();
+        for (Map.Entry<BusinessPartnerDraft.Contact, Existing> match : matches.entrySet())
+        {
+            if (!same(match.getKey(), match.getValue().contact))
+            {
+                changed.put(match.getKey(), match.getValue());
+            }
+        }
+        if (added.isEmpty() && changed.isEmpty())
+        {
+            result.unchanged++;
+            return;
+        }
+
+        // Retrieve Business Partner by it's CardCode
+        if (!bp.getByKey(draft.cardCode))
+        {
+            result.failed.put(draft.cardCode, "Business Partner not found");
+            return;
+        }
+        IContactEmployees contacts = bp.getContactEmployees();
+        for (Map.Entry<BusinessPartnerDraft.Contact, Existing> change : changed.entrySet())
+        {
+            Existing line = change.getValue();
+            contacts.setCurrentLine(line.line);
+            // the line order should follow CntctCode, check before overwriting
+            if (!line.contact.name.equalsIgnoreCase(contacts.getName()) && !seek(contacts, line.contact.name))
+            {
+                result.failed.put(draft.cardCode, "Contact " + line.contact.name + " not found");
+                return;
+            }
+            DocumentWriter.write(contacts, change.getKey());
+        }
+        for (int i = 0; i < added.size(); i++)
+        {
+            if (i > 0 || !existing.isEmpty())
+            {
+                contacts.add();
+            }
+            // a Business Partner without contacts has one empty line to fill
+            DocumentWriter.write(contacts, added.get(i));
+        }
+        if (DiApiMetrics.shared().update(company, bp) != 0)
+        {
+            // get error message fom SAP Business One Server
+            SBOErrorMessage errMsg = company.getLastError();
+            result.failed.put(draft.cardCode, errMsg.getErrorMessage() + " " + errMsg.getErrorCode());
+            return;
+        }
+        result.updated++;
+        result.contactsAdded += added.size();
+        result.contactsChanged += changed.size();
+    }
+
+    /**
+     * Remove and return the existing contact matching by name or by e-mail
+     */
+    private static Existing take(List<Existing> free, BusinessPartnerDraft.Contact contact, boolean byName)
+    {
+        for (int i = 0; i < free.size(); i++)
+        {
+            BusinessPartnerDraft.Contact candidate = free.get(i).contact;
+            boolean match = byName
+                    ? candidate.name.equalsIgnoreCase(contact.name)
+                    : contact.eMail != null && contact.eMail.equalsIgnoreCase(candidate.eMail);
+            if (match)
+            {
+                return free.remove(i);
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Move to the contact with the given name by scanning all lines
+     *
+     * @return false if there is no such contact
+     */
+    private static boolean seek(IContactEmployees contacts, String name)
+    {
+        int count = contacts.getCount();
+        for (int i = 0; i < count; i++)
+        {
+            contacts.setCurrentLine(i);
+            if (name.equalsIgnoreCase(contacts.getName()))
+            {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Compare the fields the sync writes; fields not set in the incoming
+     * contact are not compared
+     */
+    private static boolean same(BusinessPartnerDraft.Contact incoming, BusinessPartnerDraft.Contact existing)
+    {
+        return incoming.name.equals(existing.name)
+                && (incoming.firstName == null || incoming.firstName.equals(existing.firstName))
+                && (incoming.lastName == null || incoming.lastName.equals(existing.lastName))
+                && (incoming.eMail == null || incoming.eMail.equals(existing.eMail))
+                && (incoming.mobilePhone == null || incoming.mobilePhone.equals(existing.mobilePhone));
+    }
+
+    /**
+     * Contact read from OCPR and its line in ContactEmployees
+     */
+    private static class Existing
+    {
+        final int line;
+        final BusinessPartnerDraft.Contact contact;
+
+        Existing(int line, BusinessPartnerDraft.Contact contact)
+        {
+            this.line = line;
+            this.contact = contact;
+        }
+    }
+
+    /**
+     * Outcome of a sync
+     */
+    public static class Result
+    {
+        // Business Partners saved with update()
+        public int updated = 0;
+        // Business Partners skipped because nothing changed
+        public int unchanged = 0;
+        public int contactsAdded = 0;
+        public int contactsChanged = 0;
+        // error message of every Business Partner which could not be updated
+        public final Map<String, String> failed = new LinkedHashMap<>();
+
+        @Override
+        public String toString()
+        {
+            return "Updated " + updated + " Business Partners (" + contactsAdded + " contacts added, "
+                    + contactsChanged + " changed), " + unchanged + " unchanged, " + failed.size() + " failed";
+        }
+    }
+}
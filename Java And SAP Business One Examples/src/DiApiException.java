@@ -0,0 +1,47 @@
+/*
+ * Exception raised when a DI API call returns a non-zero result. Carries the
+ * error code and message returned by company.getLastError().
+ */
+
+/*
+ * Import JCO libraries from DI API folder. Two files need to be added to your
+ * project libraries - sboapi.jar and sbowrapper.jar
+ * The files are usually located in:
+ * C:\Program Files (x86)\SAP\SAP Business One DI API\JCO\LIB - 32 bit build
+ * C:\Program Files\SAP\SAP Business One DI API\JCO\LIB - 64 bit build
+ */
+import com.sap.smb.sbo.api.*;
+
+/**
+ *
+ * @author Rafal Rozmus (rozmus.rafal@gmail.com)
+ */
+public class DiApiException extends Exception
+{
+
+    private static final long serialVersionUID = 1L;
+
+    // error code returned by SAP Business One Server
+    private final int errorCode;
+
+    public DiApiException(String operation, int errorCode, String errorMessage)
+    {
+        super("Cannot " + operation + ": " + errorMessage + " " + errorCode);
+        this.errorCode = errorCode;
+    }
+
+    public DiApiException(String operation, SBOErrorMessage errMsg)
+    {
+        this(operation, errMsg.getErrorCode(), errMsg.getErrorMessage());
+    }
+
+    /**
+     * Get error code returned by SAP Business One Server
+     *
+     * @return error code, e.g. -2028
+     */
+    public int getErrorCode()
+    {
+        return errorCode;
+    }
+}
@@ -0,0 +1,298 @@
+/*
+ * Latency and error statistics of DI API calls. Wrap connect(), add(),
+ * update() and doQuery() with the methods of this class to get p50/p99/max
+ * latency per operation and business object type, and error counts per
+ * getLastError() code. Statistics can be printed periodically and scraped
+ * over HTTP in Prometheus text format.
+ * For this program to work, you need SAP Business One DI API installed.
+ */
+
+/*
+ * Import JCO libraries from DI API folder. Two files need to be added to your
+ * project libraries - sboapi.jar and sbowrapper.jar
+ * The files are usually located in:
+ * C:\Program Files (x86)\SAP\SAP Business One DI API\JCO\LIB - 32 bit build
+ * C:\Program Files\SAP\SAP Business One DI API\JCO\LIB - 64 bit build
+ */
+import com.sap.smb.sbo.api.*;
+import com.sun.net.httpserver.HttpServer;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.IntSupplier;
+
+/**
+ *
+ * @author Rafal Rozmus (rozmus.rafal@gmail.com)
+ */
+public class DiApiMetrics
+{
+
+    // statistics shared by all examples
+    private static final DiApiMetrics SHARED = new DiApiMetrics();
+
+    // latency per "operation objectType"
+    private final Map<String, LatencyHistogram> latencies = new ConcurrentHashMap<>();
+    // error count per "operation objectType errorCode"
+    private final Map<String, LongAdder> errors = new ConcurrentHashMap<>();
+
+    /**
+     * Get statistics shared by all examples
+     *
+     * @return shared instance
+     */
+    public static DiApiMetrics shared()
+    {
+        return SHARED;
+    }
+
+    /**
+     * Time company.connect()
+     *
+     * @return connect() result, 0 if success
+     */
+    public int connect(ICompany company)
+    {
+        return call("connect", "Company", company, company::connect);
+    }
+
+    /**
+     * Time a document add(), e.g. of a Sales Order
+     *
+     * @param objectType document Object Type, e.g. 17
+     * @return add() result, 0 if success
+     */
+    public int add(ICompany company, IDocuments document, int objectType)
+    {
+        return call("add", Integer.toString(objectType), company, document::add);
+    }
+
+    /**
+     * Time a document update()
+     *
+     * @param objectType document Object Type, e.g. 13
+     * @return update() result, 0 if success
+     */
+    public int update(ICompany company, IDocuments document, int objectType)
+    {
+        return call("update", Integer.toString(objectType), company, document::update);
+    }
+
+    public int add(ICompany company, IBusinessPartners bp)
+    {
+        return call("add", "BusinessPartners", company, bp::add);
+    }
+
+    public int update(ICompany company, IBusinessPartners bp)
+    {
+        return call("update", "BusinessPartners", company, bp::update);
+    }
+
+    public int update(ICompany company, IAlternateCatNum altCatNum)
+    {
+        return call("update", "AlternateCatNum", company, altCatNum::update);
+    }
+
+    public int update(ICompany company, IUsers user)
+    {
+        return call("update", "Users", company, user::update);
+    }
+
+    /**
+     * Time recordSet.doQuery(). A failing query counts as error -1.
+     */
+    public void doQuery(IRecordset recordSet, String query)
+    {
+        long start = System.nanoTime();
+        try
+        {
+            recordSet.doQuery(query);
+        }
+        catch (RuntimeException e)
+        {
+            errors.computeIfAbsent("doQuery Recordset -1", k -> new LongAdder()).increment();
+            throw e;
+        }
+        finally
+        {
+            histogram("doQuery Recordset").record(System.nanoTime() - start);
+        }
+    }
+
+    /**
+     * Time any DI API call returning 0 on success. On failure the error code
+     * of company.getLastError() is counted, a call which throws, e.g. when
+     * the bridge fails, is timed too and counts as error -1.
+     *
+     * @param operation e.g. add
+     * @param objectType business object, e.g. 17 or BusinessPartners
+     * @param company company the call is made on
+     * @param call the DI API call
+     * @return result of the call
+     */
+    public int call(String operation, String objectType, ICompany company, IntSupplier call)
+    {
+        long start = System.nanoTime();
+        int result;
+        try
+        {
+            result = call.getAsInt();
+        }
+        catch (RuntimeException e)
+        {
+            errors.computeIfAbsent(operation + " " + objectType + " -1", k -> new LongAdder()).increment();
+            throw e;
+        }
+        finally
+        {
+            histogram(operation + " " + objectType).record(System.nanoTime() - start);
+        }
+        if (result != 0)
+        {
+            int errorCode = result;
+            try
+            {
+                errorCode = company.getLastError().getErrorCode();
+            }
+            catch (RuntimeException e)
+            {
+                // keep the returned code
+            }
+            errors.computeIfAbsent(operation + " " + objectType + " " + errorCode, k -> new LongAdder()).increment();
+        }
+        return result;
+    }
+
+    /**
+     * Get latency histogram of an operation
+     *
+     * @param key operation and object type, e.g. "add 17"
+     * @return histogram
+     */
+    public LatencyHistogram histogram(String key)
+    {
+        return latencies.computeIfAbsent(key, k -> new LatencyHistogram());
+    }
+
+    /**
+     * Get statistics as a text table
+     *
+     * @return one line per operation and one per error code
+     */
+    public String snapshot()
+    {
+        StringBuilder text = new StringBuilder(String.format("%-32s %10s %10s %10s %10s%n",
+                "operation", "count", "p50 ms", "p99 ms", "max ms"));
+        for (Map.Entry<String, LatencyHistogram> entry : new TreeMap<>(latencies).entrySet())
+        {
+            LatencyHistogram h = entry.getValue();
+            text.append(String.format("%-32s %10d %10.2f %10.2f %10.2f%n", entry.getKey(), h.getCount(),
+                    h.getPercentile(0.5) / 1e6, h.getPercentile(0.99) / 1e6, h.getMax() / 1e6));
+        }
+        for (Map.Entry<String, LongAdder> entry : new TreeMap<>(errors).entrySet())
+        {
+            text.append(String.format("%-32s %10d errors%n", entry.getKey(), entry.getValue().sum()));
+        }
+        return text.toString();
+    }
+
+    /**
+     * Get statistics in Prometheus text format
+     *
+     * @return exposition text
+     */
+    public String prometheus()
+    {
+        StringBuilder text = new StringBuilder();
+        text.append("# TYPE sbo_diapi_latency_seconds summary\n");
+        for (Map.Entry<String, LatencyHistogram> entry : new TreeMap<>(latencies).entrySet())
+        {
+            String[] key = entry.getKey().split(" ");
+            String labels = "operation=\"" + key[0] + "\",object=\"" + key[1] + "\"";
+            LatencyHistogram h = entry.getValue();
+            text.append("sbo_diapi_latency_seconds{").append(labels).append(",quantile=\"0.5\"} ")
+                    .append(h.getPercentile(0.5) / 1e9).append('\n');
+            text.append("sbo_diapi_latency_seconds{").append(labels).append(",quantile=\"0.99\"} ")
+                    .append(h.getPercentile(0.99) / 1e9).append('\n');
+            text.append("sbo_diapi_latency_seconds{").append(labels).append(",quantile=\"1\"} ")
+                    .append(h.getMax() / 1e9).append('\n');
+            text.append("sbo_diapi_latency_seconds_sum{").append(labels).append("} ")
+                    .append(h.getSum() / 1e9).append('\n');
+            text.append("sbo_diapi_latency_seconds_count{").append(labels).append("} ")
+                    .append(h.getCount()).append('\n');
+        }
+        text.append("# TYPE sbo_diapi_errors_total counter\n");
+        for (Map.Entry<String, LongAdder> entry : new TreeMap<>(errors).entrySet())
+        {
+            String[] key = entry.getKey().split(" ");
+            text.append("sbo_diapi_errors_total{operation=\"").append(key[0]).append("\",object=\"").append(key[1])
+                    .append("\",code=\"").append(key[2]).append("\"} ").append(entry.getValue().sum()).append('\n');
+        }
+        return text.toString();
+    }
+
+    /**
+     * Print snapshot() every period on a background thread
+     *
+     * @param periodSeconds seconds between snapshots
+     * @param out where to print, e.g. System.out
+     * @return scheduler, shut it down to stop printing
+     */
+    public ScheduledExecutorService startReporting(long periodSeconds, PrintStream out)
+    {
+        ScheduledExecutorService reporter = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "diapi-metrics-reporter");
+            t.setDaemon(true);
+            return t;
+        });
+        reporter.scheduleAtFixedRate(() -> out.print(snapshot()), periodSeconds, periodSeconds, TimeUnit.SECONDS);
+        return reporter;
+    }
+
+    /**
+     * Serve prometheus() at http://localhost:port/metrics, together with live
+     * object counts when HandleTracker is enabled. Only local clients can
+     * connect, the endpoint has no authentication.
+     *
+     * @param port TCP port
+     * @return running server, stop it with server.stop(0)
+     */
+    public HttpServer startEndpoint(int port) throws IOException
+    {
+        return startEndpoint(InetAddress.getLoopbackAddress(), port);
+    }
+
+    /**
+     * Serve prometheus() at http://address:port/metrics, e.g. on the address
+     * of the network a Prometheus server scrapes from
+     *
+     * @param address local address to bind, or null for all addresses
+     * @param port TCP port
+     * @return running server, stop it with server.stop(0)
+     */
+    public HttpServer startEndpoint(InetAddress address, int port) throws IOException
+    {
+        HttpServer server = HttpServer.create(new InetSocketAddress(address, port), 0);
+        server.createContext("/metrics", exchange -> {
+            byte[] body = (prometheus() + HandleTracker.shared().prometheus()).getBytes(StandardCharsets.UTF_8);
+            exchange.getResponseHeaders().set("Content-Type", "text/plain; version=0.0.4; charset=utf-8");
+            exchange.sendResponseHeaders(200, body.length);
+            try (OutputStream out = exchange.getResponseBody())
+            {
+                out.write(body);
+            }
+        });
+        server.start();
+        return server;
+    }
+}
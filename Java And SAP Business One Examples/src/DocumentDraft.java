@@ -0,0 +1,123 @@
+/*
+ * Plain Java description of a marketing document (Sales Order, Purchase
+ * Request, ...) - header and lines. A draft can be built and checked without
+ * a connection and posted to SAP Business One later, see DocumentWriter.
+ * For this program to work, you need SAP Business One DI API installed.
+ */
+
+/*
+ * Import JCO libraries from DI API folder. Two files need to be added to your
+ * project libraries - sboapi.jar and sbowrapper.jar
+ * The files are usually located in:
+ * C:\Program Files (x86)\SAP\SAP Business One DI API\JCO\LIB - 32 bit build
+ * C:\Program Files\SAP\SAP Business One DI API\JCO\LIB - 64 bit build
+ */
+import com.sap.smb.sbo.api.*;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+
+/**
+ *
+ * @author Rafal Rozmus (rozmus.rafal@gmail.com)
+ */
+public class DocumentDraft
+{
+
+    // Object Type, e.g. 17 for Sales Order, 1470000113 for Purchase Request
+    public final int objectType;
+    // Business Partner
+    public String cardCode;
+    // Item/Service Type, 0=Items, 1=Service
+    public int docType = 0;
+    // Posting Date
+    public Date docDate;
+    // Delivery Date
+    public Date docDueDate;
+    // Customer/Vendor Ref. No. (NumAtCard), e.g. the order number of the feed
+    public String reference;
+    // document lines
+    public final List<Line> lines = new ArrayList<>();
+
+    public DocumentDraft(int objectType)
+    {
+        this.objectType = objectType;
+    }
+
+    /**
+     * Add a line
+     *
+     * @param itemCode item code
+     * @param quantity quantity
+     * @return this draft
+     */
+    public DocumentDraft addLine(String itemCode, double quantity)
+    {
+        lines.add(new Line(itemCode, quantity));
+        return this;
+    }
+
+    /**
+     * Add the document to SAP Business One
+     *
+     * @param company connected company instance
+     * @return DocEntry of the new document
+     * @throws DiApiException if add() failed
+     */
+    public int post(ICompany company) throws DiApiException, SBOCOMException
+    {
+        return post(company, null);
+    }
+
+    /**
+     * Check the lines against an Item Master Data cache and add the document
+     * to SAP Business One
+     *
+     * @param company connected company instance
+     * @param itemCache cache or null for no check
+     * @return DocEntry of the new document
+     * @throws DiApiException if add() failed or a line was rejected by the
+     *         cache
+     */
+    public int post(ICompany company, ItemCache itemCache) throws DiApiException, SBOCOMException
+    {
+        return post(new DocumentWriter(company), itemCache);
+    }
+
+    /**
+     * Add the document with the writer of a pooled session, so its bridge
+     * calls are counted with the other documents of the session
+     *
+     * @param objects business objects of the session, see
+     *        SessionPool.objects()
+     * @param itemCache cache or null for no check
+     * @return DocEntry of the new document
+     * @throws DiApiException if add() failed or a line was rejected by the
+     *         cache
+     */
+    public int post(BusinessObjectPool objects, ItemCache itemCache) throws DiApiException, SBOCOMException
+    {
+        return post(objects.writer(), itemCache);
+    }
+
+    private int post(DocumentWriter writer, ItemCache itemCache) throws DiApiException, SBOCOMException
+    {
+        writer.setItemCache(itemCache);
+        return writer.add(this);
+    }
+
+    /**
+     * Document line
+     */
+    public static class Line
+    {
+        public final String itemCode;
+        public final double quantity;
+
+        public Line(String itemCode, double quantity)
+        {
+            this.itemCode = itemCode;
+            this.quantity = quantity;
+        }
+    }
+}
@@ -0,0 +1,265 @@
+/*
+ * Writes a DocumentDraft or BusinessPartnerDraft to a DI API object in one
+ * tight pass. Every DI API call crosses the JCO/COM bridge, so the child
+ * collection (Lines, ContactEmployees) is fetched once and kept, a new object
+ * already holds one empty line which is filled before add() is called for the
+ * next one, and setCurrentLine() is never needed. Properties which are not
+ * set in the draft are not written.
+ * The writer counts every bridge call it makes, including getLastError()
+ * after a failed add(), next to the call itself, so the cost of large
+ * documents can be watched without slowing down the calls. Keep
+ * one writer per session, see BusinessObjectPool.writer(), so the counts add
+ * up over everything written on it. A writer is used by one thread at a time,
+ * like its session. With an ItemCache the lines of a document are checked
+ * before the document object is even created. Objects are not taken from
+ * BusinessObjectPool: one filled for add() can't be cleared, so every write
+ * creates a fresh object and releases it.
+ * For this program to work, you need SAP Business One DI API installed.
+ */
+
+/*
+ * Import JCO libraries from DI API folder. Two files need to be added to your
+ * project libraries - sboapi.jar and sbowrapper.jar
+ * The files are usually located in:
+ * C:\Program Files (x86)\SAP\SAP Business One DI API\JCO\LIB - 32 bit build
+ * C:\Program Files\SAP\SAP Business One DI API\JCO\LIB - 64 bit build
+ */
+import com.sap.smb.sbo.api.*;
+import java.util.List;
+
+/**
+ *
+ * @author Rafal Rozmus (rozmus.rafal@gmail.com)
+ */
+public class DocumentWriter
+{
+
+    // declare Company object
+    private final ICompany company;
+    // optional Item Master Data cache, may be null
+    private ItemCache itemCache;
+    // bridge calls made for the current object
+    private int calls = 0;
+    // bridge calls made for the last object
+    private int lastCalls = 0;
+    // bridge calls and objects since the writer was created
+    private long totalCalls = 0;
+    private long written = 0;
+
+    public DocumentWriter(ICompany company)
+    {
+        this.company = company;
+    }
+
+    /**
+     * Check document lines against an Item Master Data cache before add()
+     *
+     * @param itemCache cache or null for no check
+     */
+    public void setItemCache(ItemCache itemCache)
+    {
+        this.itemCache = itemCache;
+    }
+
+    /**
+     * Add a document
+     *
+     * @param draft header and lines
+     * @return DocEntry of the new document
+     * @throws DiApiException if add() failed, or with ItemCache.REJECTED if
+     *         a line was rejected by the item cache
+     */
+    public int add(DocumentDraft draft) throws DiApiException, SBOCOMException
+    {
+        if (itemCache != null)
+        {
+            // a bad item would fail the whole add() on the server; items
+            // which are not cached are read on this writer's session
+            List<String> errors = itemCache.check(draft, company);
+            if (!errors.isEmpty())
+            {
+                throw new DiApiException("add document", ItemCache.REJECTED, String.join(", ", errors));
+            }
+        }
+        IDocuments document = HandleTracker.shared().newDocuments(company, draft.objectType);
+        calls = 1;
+        try
+        {
+            document.setCardCode(draft.cardCode);
+            document.setDocType(draft.docType);
+            calls += 2;
+            if (draft.docDate != null)
+            {
+                document.setDocDate(draft.docDate);
+                calls++;
+            }
+            if (draft.docDueDate != null)
+            {
+                document.setDocDueDate(draft.docDueDate);
+                calls++;
+            }
+            if (draft.reference != null)
+            {
+                document.setNumAtCard(draft.reference);
+                calls++;
+            }
+            // fetch the collection once, every getLines() is a bridge call
+            IDocument_Lines lines = document.getLines();
+            calls++;
+            for (int i = 0; i < draft.lines.size(); i++)
+            {
+                DocumentDraft.Line line = draft.lines.get(i);
+                if (i > 0)
+                {
+                    // append a line and make it current
+                    lines.add();
+                    calls++;
+                }
+                lines.setItemCode(line.itemCode);
+                lines.setQuantity(line.quantity);
+                calls += 2;
+            }
+            if (added(DiApiMetrics.shared().add(company, document, draft.objectType)) != 0)
+            {
+                // get error message fom SAP Business One Server
+                calls++;
+                throw new DiApiException("add document", company.getLastError());
+            }
+            calls++;
+            return Integer.parseInt(company.getNewObjectKey());
+        }
+        finally
+        {
+            document.release();
+            calls++;
+            count();
+        }
+    }
+
+    /**
+     * Add a Business Partner with its Contact Employees
+     *
+     * @param draft Business Partner and contacts
+     * @throws DiApiException if add() failed
+     */
+    public void add(BusinessPartnerDraft draft) throws DiApiException, SBOCOMException
+    {
+        IBusinessPartners bp = HandleTracker.shared().newBusinessPartners(company);
+        calls = 1;
+        try
+        {
+            bp.setCardCode(draft.cardCode);
+            bp.setCardName(draft.cardName);
+            bp.setCardType(draft.cardType);
+            bp.setCompanyPrivate(draft.companyPrivate);
+            calls += 4;
+            if (!draft.contacts.isEmpty())
+            {
+                IContactEmployees contacts = bp.getContactEmployees();
+                calls++;
+                for (int i = 0; i < draft.contacts.size(); i++)
+                {
+                    if (i > 0)
+                    {
+                        contacts.add();
+                        calls++;
+                    }
+                    calls += write(contacts, draft.contacts.get(i));
+                }
+            }
+            if (added(DiApiMetrics.shared().add(company, bp)) != 0)
+            {
+                // get error message fom SAP Business One Server
+                calls++;
+                throw new DiApiException("add Business Partner " + draft.cardCode, company.getLastError());
+            }
+        }
+        finally
+        {
+            bp.release();
+            calls++;
+            count();
+        }
+    }
+
+    /**
+     * Write the fields of a contact to the current Contact Employee
+     *
+     * @return number of bridge calls made
+     */
+    static int write(IContactEmployees contacts, BusinessPartnerDraft.Contact contact)
+    {
+        int calls = 1;
+        contacts.setName(contact.name);
+        if (contact.firstName != null)
+        {
+            contacts.setFirstName(contact.firstName);
+            calls++;
+        }
+        if (contact.lastName != null)
+        {
+            contacts.setLastName(contact.lastName);
+            calls++;
+        }
+        if (contact.eMail != null)
+        {
+            contacts.setE_Mail(contact.eMail);
+            calls++;
+        }
+        if (contact.mobilePhone != null)
+        {
+            contacts.setMobilePhone(contact.mobilePhone);
+            calls++;
+        }
+        return calls;
+    }
+
+    /**
+     * Get number of bridge calls made for the last document or Business
+     * Partner, including creating and releasing the object
+     *
+     * @return bridge calls
+     */
+    public int getLastBridgeCalls()
+    {
+        return lastCalls;
+    }
+
+    /**
+     * Get average number of bridge calls per written object
+     *
+     * @return bridge calls per object, 0 if nothing was written
+     */
+    public double getBridgeCallsPerObject()
+    {
+        return written == 0 ? 0 : (double) totalCalls / written;
+    }
+
+    /**
+     * Get number of documents and Business Partners written, including
+     * failed ones
+     */
+    public long getWritten()
+    {
+        return written;
+    }
+
+    /**
+     * Count the add() call made through DiApiMetrics, which also reads the
+     * error code with getLastError() when it fails
+     *
+     * @return result of add()
+     */
+    private int added(int result)
+    {
+        calls += result == 0 ? 1 : 2;
+        return result;
+    }
+
+    private void count()
+    {
+        lastCalls = calls;
+        totalCalls += calls;
+        written++;
+    }
+}
@@ -0,0 +1,183 @@
+/*
+ * Sorts DI API failures into transient ones, which are worth retrying (lock
+ * timeouts, deadlocks, lost connections), permanent ones, which fail again
+ * with the same data (validation errors, missing records, duplicates), and
+ * fatal ones, which stop the whole batch (missing DI API, licence problems).
+ * Error codes are matched first, then well known texts of the database
+ * server, because DI API often reports lock problems as a generic internal
+ * error with the server message attached. Exceptions which don't come from
+ * DI API, e.g. a NullPointerException in the caller's code or an interrupt,
+ * are permanent: they happen again on any session.
+ * For this program to work, you need SAP Business One DI API installed.
+ */
+
+/*
+ * Import JCO libraries from DI API folder. Two files need to be added to your
+ * project libraries - sboapi.jar and sbowrapper.jar
+ * The files are usually located in:
+ * C:\Program Files (x86)\SAP\SAP Business One DI API\JCO\LIB - 32 bit build
+ * C:\Program Files\SAP\SAP Business One DI API\JCO\LIB - 64 bit build
+ */
+import com.sap.smb.sbo.api.*;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+
+/**
+ *
+ * @author Rafal Rozmus (rozmus.rafal@gmail.com)
+ */
+public class ErrorClassifier
+{
+
+    public enum Category
+    {
+        TRANSIENT, PERMANENT, FATAL
+    }
+
+    // error codes worth retrying, add codes seen on your installation
+    public final Set<Integer> transientCodes = new HashSet<>(Arrays.asList(
+            // internal error, raised for lock conflicts while posting
+            -2038,
+            // connection to the company database lost
+            -1116));
+    // error codes after which no further call can succeed
+    public final Set<Integer> fatalCodes = new HashSet<>(Arrays.asList(
+            // company database not set or not found
+            -111));
+    // message texts meaning lock or connection problems, lower case
+    private final List<String> transientTexts = Arrays.asList("deadlock", "lock request time out",
+            "lock wait timeout", "could not serialize", "communication link", "connection", "not connected",
+            "timeout expired");
+    // message texts meaning a session replacement is needed, lower case
+    private final List<String> connectionTexts = Arrays.asList("communication link", "connection",
+            "not connected");
+    // packages of the DI API Java bridge; its runtime exceptions, e.g.
+    // ComFailException, mean a call on the COM object failed
+    private final List<String> bridgePackages = Arrays.asList("com.sap.smb.sbo.");
+
+    /**
+     * Classify an error returned by company.getLastError()
+     *
+     * @param errorCode error code, e.g. -2038
+     * @param errorMessage error message
+     * @return category of the error
+     */
+    public Category classify(int errorCode, String errorMessage)
+    {
+        if (fatalCodes.contains(errorCode))
+        {
+            return Category.FATAL;
+        }
+        if (transientCodes.contains(errorCode))
+        {
+            return Category.TRANSIENT;
+        }
+        String text = errorMessage == null ? "" : errorMessage.toLowerCase(Locale.ROOT);
+        if (text.contains("licen"))
+        {
+            return Category.FATAL;
+        }
+        for (String transientText : transientTexts)
+        {
+            if (text.contains(transientText))
+            {
+                return Category.TRANSIENT;
+            }
+        }
+        return Category.PERMANENT;
+    }
+
+    public Category classify(SBOErrorMessage errMsg)
+    {
+        return classify(errMsg.getErrorCode(), errMsg.getErrorMessage());
+    }
+
+    /**
+     * Classify an exception thrown while talking to DI API
+     *
+     * @param error DiApiException, SBOCOMException or any other failure
+     * @return category of the failure; failures from outside DI API are
+     *         permanent
+     */
+    public Category classify(Throwable error)
+    {
+        if (error instanceof DiApiException)
+        {
+            return classify(((DiApiException) error).getErrorCode(), error.getMessage());
+        }
+        if (error instanceof SBOCOMException)
+        {
+            // DI API could not create an object, no session will do better
+            return Category.FATAL;
+        }
+        if (error instanceof Error)
+        {
+            // e.g. the native DI API library failed to load
+            return Category.FATAL;
+        }
+        if (isBridgeFailure(error))
+        {
+            // the bridge failed inside a call, the session is probably broken
+            return Category.TRANSIENT;
+        }
+        // a bug or an interrupt, retrying won't help
+        return Category.PERMANENT;
+    }
+
+    /**
+     * Check whether an exception was thrown by the DI API Java bridge inside
+     * a call, rather than by the caller's code
+     *
+     * @param error any failure
+     * @return true for runtime exceptions of the bridge packages
+     */
+    public boolean isBridgeFailure(Throwable error)
+    {
+        if (!(error instanceof RuntimeException))
+        {
+            return false;
+        }
+        String name = error.getClass().getName();
+        for (String bridgePackage : bridgePackages)
+        {
+            if (name.startsWith(bridgePackage))
+            {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Check whether a failure should be retried on a fresh session rather
+     * than on the one it happened on
+     *
+     * @param error failure classified as transient
+     * @return true if the session should be invalidated; false for failures
+     *         from outside DI API, the session is fine
+     */
+    public boolean needsFreshSession(Throwable error)
+    {
+        if (!(error instanceof DiApiException))
+        {
+            return isBridgeFailure(error);
+        }
+        int errorCode = ((DiApiException) error).getErrorCode();
+        if (errorCode == -1116)
+        {
+            return true;
+        }
+        String text = error.getMessage() == null ? "" : error.getMessage().toLowerCase(Locale.ROOT);
+        for (String connectionText : connectionTexts)
+        {
+            if (text.contains(connectionText))
+            {
+                return true;
+            }
+        }
+        return false;
+    }
+}
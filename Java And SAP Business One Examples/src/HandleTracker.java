@@ -0,0 +1,399 @@
+/*
+ * Finds DI API objects which are never released. Every object created through
+ * the tracker is wrapped in a proxy that notices release(); when a proxy is
+ * garbage collected without it, a warning with the place the object was
+ * created is printed. The native object is not released by default, that
+ * would happen on the tracker's own thread instead of the one which created
+ * the COM object, see setReleaseLeaked(). Live objects are counted per type
+ * and creation site, the counts can be printed or scraped in Prometheus text
+ * format with DiApiMetrics.
+ * Tracking costs a stack walk per object and a reflective call per method,
+ * so it is off unless the JVM is started with -Dsbo.trackHandles=true, e.g.
+ * in test runs; when off the factory methods return plain objects.
+ * For this program to work, you need SAP Business One DI API installed.
+ */
+
+/*
+ * Import JCO libraries from DI API folder. Two files need to be added to your
+ * project libraries - sboapi.jar and sbowrapper.jar
+ * The files are usually located in:
+ * C:\Program Files (x86)\SAP\SAP Business One DI API\JCO\LIB - 32 bit build
+ * C:\Program Files\SAP\SAP Business One DI API\JCO\LIB - 64 bit build
+ */
+import com.sap.smb.sbo.api.*;
+import java.lang.ref.PhantomReference;
+import java.lang.ref.Reference;
+import java.lang.ref.ReferenceQueue;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ *
+ * @author Rafal Rozmus (rozmus.rafal@gmail.com)
+ */
+public class HandleTracker
+{
+
+    // tracker used by the examples, enabled with -Dsbo.trackHandles=true
+    private static final HandleTracker SHARED = new HandleTracker(Boolean.getBoolean("sbo.trackHandles"));
+    // classes which create objects for their callers; the creation site is
+    // the first frame outside of them
+    private static final Set<String> FACTORIES = new HashSet<>(Arrays.asList(
+            HandleTracker.class.getName(), BusinessObjectPool.class.getName(), RecordsetCursor.class.getName()));
+
+    private final boolean enabled;
+    // proxies are enqueued here once they are unreachable
+    private final ReferenceQueue<Object> queue = new ReferenceQueue<>();
+    // keeps the references themselves reachable until they are processed
+    private final Set<Handle> handles = ConcurrentHashMap.newKeySet();
+    // live objects per type and per "type site"
+    private final Map<String, LongAdder> live = new ConcurrentHashMap<>();
+    private final Map<String, LongAdder> liveBySite = new ConcurrentHashMap<>();
+    // objects collected without release() per type
+    private final Map<String, LongAdder> leaked = new ConcurrentHashMap<>();
+    // release the native object of a leaked proxy on the reaper thread
+    private volatile boolean releaseLeaked = false;
+
+    public static void main(String[] args) throws Exception
+    {
+        HandleTracker tracker = new HandleTracker(true);
+        ICompany company = new ConnectionSettings().connect("SBODemoGB");
+        try
+        {
+            for (int i = 0; i < 10; i++)
+            {
+                // never released
+                IRecordset recordSet = tracker.newRecordset(company);
+                DiApiMetrics.shared().doQuery(recordSet, "SELECT 1");
+            }
+            System.out.print(tracker.snapshot());
+            System.gc();
+            Thread.sleep(1000);
+            System.out.print(tracker.snapshot());
+        }
+        finally
+        {
+            company.disconnect();
+        }
+    }
+
+    /**
+     * @param enabled false to create plain, untracked objects
+     */
+    public HandleTracker(boolean enabled)
+    {
+        this.enabled = enabled;
+        if (enabled)
+        {
+            Thread reaper = new Thread(this::reap, "diapi-handle-tracker");
+            reaper.setDaemon(true);
+            reaper.start();
+        }
+    }
+
+    /**
+     * Get the tracker used by the examples
+     *
+     * @return shared instance
+     */
+    public static HandleTracker shared()
+    {
+        return SHARED;
+    }
+
+    public boolean isEnabled()
+    {
+        return enabled;
+    }
+
+    /**
+     * Choose whether the native object of a leaked proxy is released; it is
+     * not by default. The release runs on the tracker's reaper thread, while
+     * the COM object belongs to the thread, and apartment, which created it,
+     * and the session may be in use or disconnected by then. Only turn it on
+     * when leaks are known to come from threads of the same multi-threaded
+     * apartment, otherwise the leaked memory is the smaller risk.
+     */
+    public void setReleaseLeaked(boolean releaseLeaked)
+    {
+        this.releaseLeaked = releaseLeaked;
+    }
+
+    public IRecordset newRecordset(ICompany company) throws SBOCOMException
+    {
+        IRecordset recordSet = SBOCOMUtil.newRecordset(company);
+        return track(IRecordset.class, "Recordset", recordSet, recordSet::release);
+    }
+
+    /**
+     * @param objectType document type, e.g. 13 for AR Invoice
+     */
+    public IDocuments newDocuments(ICompany company, int objectType) throws SBOCOMException
+    {
+        IDocuments document = SBOCOMUtil.newDocuments(company, objectType);
+        return track(IDocuments.class, "Documents", document, document::release);
+    }
+
+    public IBusinessPartners newBusinessPartners(ICompany company) throws SBOCOMException
+    {
+        IBusinessPartners bp = SBOCOMUtil.newBusinessPartners(company);
+        return track(IBusinessPartners.class, "BusinessPartners", bp, bp::release);
+    }
+
+    public IAlternateCatNum newAlternateCatNum(ICompany company) throws SBOCOMException
+    {
+        IAlternateCatNum altCatNum = SBOCOMUtil.newAlternateCatNum(company);
+        return track(IAlternateCatNum.class, "AlternateCatNum", altCatNum, altCatNum::release);
+    }
+
+    public IUsers newUsers(ICompany company) throws SBOCOMException
+    {
+        IUsers user = SBOCOMUtil.newUsers(company);
+        return track(IUsers.class, "Users", user, user::release);
+    }
+
+    /**
+     * Get live objects per type
+     *
+     * @return count by type, e.g. "Recordset"
+     */
+    public Map<String, Long> getLiveCounts()
+    {
+        return counts(live);
+    }
+
+    /**
+     * Get live objects per type and creation site
+     *
+     * @return count by "type site", e.g. "Recordset MyJob.run(MyJob.java:42)"
+     */
+    public Map<String, Long> getLiveCountsBySite()
+    {
+        return counts(liveBySite);
+    }
+
+    /**
+     * Get objects garbage collected without release() per type
+     *
+     * @return count by type
+     */
+    public Map<String, Long> getLeakedCounts()
+    {
+        return counts(leaked);
+    }
+
+    /**
+     * Get live and leaked objects as a text table
+     *
+     * @return one line per type and creation site
+     */
+    public String snapshot()
+    {
+        StringBuilder text = new StringBuilder(String.format("%-60s %10s%n", "live DI API objects", "count"));
+        for (Map.Entry<String, Long> entry : getLiveCountsBySite().entrySet())
+        {
+            text.append(String.format("%-60s %10d%n", entry.getKey(), entry.getValue()));
+        }
+        for (Map.Entry<String, Long> entry : getLeakedCounts().entrySet())
+        {
+            text.append(String.format("%-60s %10d leaked%n", entry.getKey(), entry.getValue()));
+        }
+        return text.toString();
+    }
+
+    /**
+     * Get live and leaked objects in Prometheus text format
+     *
+     * @return exposition text, empty when tracking is off
+     */
+    public String prometheus()
+    {
+        if (!enabled)
+        {
+            return "";
+        }
+        StringBuilder text = new StringBuilder();
+        text.append("# TYPE sbo_diapi_live_objects gauge\n");
+        for (Map.Entry<String, Long> entry : getLiveCounts().entrySet())
+        {
+            text.append("sbo_diapi_live_objects{object=\"").append(entry.getKey()).append("\"} ")
+                    .append(entry.getValue()).append('\n');
+        }
+        text.append("# TYPE sbo_diapi_leaked_objects_total counter\n");
+        for (Map.Entry<String, Long> entry : getLeakedCounts().entrySet())
+        {
+            text.append("sbo_diapi_leaked_objects_total{object=\"").append(entry.getKey()).append("\"} ")
+                    .append(entry.getValue()).append('\n');
+        }
+        return text.toString();
+    }
+
+    private <T> T track(Class<T> type, String name, T object, Runnable release)
+    {
+        if (!enabled)
+        {
+            return object;
+        }
+        String site = name + " " + site();
+        Handle handle = new Handle(name, site, release);
+        T proxy = type.cast(Proxy.newProxyInstance(type.getClassLoader(), new Class<?>[] {type},
+                (p, method, args) -> handle.invoke(object, method, args)));
+        handle.watch(proxy);
+        return proxy;
+    }
+
+    /**
+     * Get the first stack frame outside of the factories
+     */
+    private static String site()
+    {
+        for (StackTraceElement frame : new Throwable().getStackTrace())
+        {
+            if (!FACTORIES.contains(frame.getClassName()))
+            {
+                return frame.getClassName() + "." + frame.getMethodName() + "(" + frame.getFileName() + ":"
+                        + frame.getLineNumber() + ")";
+            }
+        }
+        return "unknown";
+    }
+
+    private void reap()
+    {
+        while (true)
+        {
+            try
+            {
+                Reference<?> reference = queue.remove();
+                ((Handle.Watch) reference).handle.collected();
+            }
+            catch (InterruptedException e)
+            {
+                return;
+            }
+            catch (RuntimeException e)
+            {
+                e.printStackTrace();
+            }
+        }
+    }
+
+    private static Map<String, Long> counts(Map<String, LongAdder> counters)
+    {
+        Map<String, Long> counts = new TreeMap<>();
+        for (Map.Entry<String, LongAdder> entry : counters.entrySet())
+        {
+            long count = entry.getValue().sum();
+            if (count != 0)
+            {
+                counts.put(entry.getKey(), count);
+            }
+        }
+        return counts;
+    }
+
+    private static void add(Map<String, LongAdder> counters, String key, long delta)
+    {
+        counters.computeIfAbsent(key, k -> new LongAdder()).add(delta);
+    }
+
+    /**
+     * Tracked object; it must not reference the proxy, or the proxy would
+     * never become unreachable
+     */
+    private class Handle
+    {
+        final String type;
+        final String site;
+        // releases the native object
+        final Runnable release;
+        private boolean released = false;
+        private Watch watch;
+
+        Handle(String type, String site, Runnable release)
+        {
+            this.type = type;
+            this.site = site;
+            this.release = release;
+        }
+
+        void watch(Object proxy)
+        {
+            watch = new Watch(proxy, this);
+            handles.add(this);
+            add(live, type, 1);
+            add(liveBySite, site, 1);
+        }
+
+        Object invoke(Object target, Method method, Object[] args) throws Throwable
+        {
+            boolean releasing = method.getName().equals("release") && method.getParameterCount() == 0;
+            if (releasing && !markReleased())
+            {
+                // released twice, the native object is gone already
+                return null;
+            }
+            try
+            {
+                return method.invoke(target, args);
+            }
+            catch (InvocationTargetException e)
+            {
+                throw e.getCause();
+            }
+        }
+
+        /**
+         * @return false if the object was released already
+         */
+        private synchronized boolean markReleased()
+        {
+            if (released)
+            {
+                return false;
+            }
+            released = true;
+            watch.clear();
+            handles.remove(this);
+            add(live, type, -1);
+            add(liveBySite, site, -1);
+            return true;
+        }
+
+        void collected()
+        {
+            if (!markReleased())
+            {
+                return;
+            }
+            add(leaked, type, 1);
+            System.err.println("DI API object " + site + " was not released");
+            if (releaseLeaked)
+            {
+                release.run();
+            }
+        }
+
+        /**
+         * Reference to the proxy, enqueued when it is unreachable
+         */
+        private class Watch extends PhantomReference<Object>
+        {
+            final Handle handle;
+
+            Watch(Object proxy, Handle handle)
+            {
+                super(proxy, queue);
+                this.handle = handle;
+            }
+        }
+    }
+}
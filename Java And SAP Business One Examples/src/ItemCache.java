@@ -0,0 +1,400 @@
+/*
+ * In-process cache of Item Master Data (OITM) used to check document lines
+ * before they are sent to SAP Business One. An unknown, inactive or frozen
+ * item is rejected locally instead of failing the whole add() on the server.
+ * The cache is bulk loaded once, refreshed by UpdateDate and bounded in size;
+ * entries older than the time-to-live are read again on the next lookup.
+ * Item codes which were not found are remembered for a short time only, so
+ * an item created after the lookup is soon usable.
+ * Loads and refreshes run on the cache's own session, startRefresh() runs
+ * them on a thread of their own. A lookup which misses queries on the
+ * session of the caller, e.g. a posting thread, since DI API objects can't
+ * be shared between threads; no lock is held while the query runs, so
+ * other threads keep using the cache meanwhile.
+ * For this program to work, you need SAP Business One DI API installed.
+ */
+
+/*
+ * Import JCO libraries from DI API folder. Two files need to be added to your
+ * project libraries - sboapi.jar and sbowrapper.jar
+ * The files are usually located in:
+ * C:\Program Files (x86)\SAP\SAP Business One DI API\JCO\LIB - 32 bit build
+ * C:\Program Files\SAP\SAP Business One DI API\JCO\LIB - 64 bit build
+ */
+import com.sap.smb.sbo.api.*;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ *
+ * @author Rafal Rozmus (rozmus.rafal@gmail.com)
+ */
+public class ItemCache implements AutoCloseable
+{
+
+    private static final String COLUMNS = "SELECT ItemCode, frozenFor, SellItem, PrchseItem, UpdateDate FROM OITM";
+    private static final QueryTemplate CHANGED_SINCE = QueryTemplate.of(COLUMNS + " WHERE UpdateDate >= :UpdateDate");
+    private static final QueryTemplate BY_CODE = QueryTemplate.of(COLUMNS + " WHERE ItemCode = :ItemCode");
+    // Object Types of sales documents (AR Invoice, AR Credit Memo, Delivery,
+    // Return, Sales Order, Sales Quotation, AR Down Payment)
+    private static final Set<Integer> SALES = new HashSet<>(Arrays.asList(13, 14, 15, 16, 17, 23, 203));
+    // Object Types of purchasing documents (AP Invoice, AP Credit Memo, Goods
+    // Return, Goods Receipt PO, Purchase Order, AP Down Payment, Purchase
+    // Quotation, Purchase Request)
+    private static final Set<Integer> PURCHASING = new HashSet<>(Arrays.asList(
+            18, 19, 20, 21, 22, 204, 540000006, 1470000113));
+    // error code of a DiApiException for a document rejected by the cache,
+    // before anything was sent to the server
+    public static final int REJECTED = -1;
+
+    // session of loads and refreshes
+    private final ICompany company;
+    // maximum number of cached items
+    private final int maxSize;
+    // time after which an entry is read again from the server
+    private final long ttlMillis;
+    // time after which an item which was not found is looked up again
+    private volatile long missTtlMillis;
+    // cached items, least recently used first
+    private final LinkedHashMap<String, Item> items;
+    // UpdateDate of the newest item seen so far
+    private Date lastUpdateDate;
+    // runs refresh() when started, see startRefresh()
+    private ScheduledExecutorService refresher;
+
+    public ItemCache(ICompany company, int maxSize, long ttlMillis)
+    {
+        this.company = company;
+        this.maxSize = maxSize;
+        this.ttlMillis = ttlMillis;
+        this.missTtlMillis = Math.min(ttlMillis, 60000);
+        items = new LinkedHashMap<String, Item>(Math.min(maxSize, 1 << 16), 0.75f, true)
+        {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, Item> eldest)
+            {
+                return size() > ItemCache.this.maxSize;
+            }
+        };
+    }
+
+    /**
+     * Set how long an item code which was not found is remembered, by
+     * default a minute or the time-to-live if it is shorter
+     *
+     * @param missTtlMillis time in milliseconds, 0 to look it up every time
+     */
+    public void setMissTtl(long missTtlMillis)
+    {
+        this.missTtlMillis = missTtlMillis;
+    }
+
+    /**
+     * Load all items on the cache's session. With more items than maxSize
+     * only the last ones read are kept, the others are looked up one by one
+     * when needed.
+     */
+    public void load() throws SBOCOMException
+    {
+        Map<String, Item> read = new LinkedHashMap<>();
+        Date newest = read(RecordsetCursor.open(company, COLUMNS), read, null);
+        synchronized (this)
+        {
+            items.clear();
+            items.putAll(read);
+            lastUpdateDate = newest;
+        }
+    }
+
+    /**
+     * Read items changed since the last load or refresh on the cache's
+     * session. UpdateDate has no time part, so the items of the last day
+     * seen are read again.
+     */
+    public void refresh() throws SBOCOMException
+    {
+        Date since;
+        synchronized (this)
+        {
+            since = lastUpdateDate;
+        }
+        if (since == null)
+        {
+            load();
+            return;
+        }
+        Map<String, Item> read = new LinkedHashMap<>();
+        Date newest = read(CHANGED_SINCE.bind().set("UpdateDate", since).open(company), read, since);
+        synchronized (this)
+        {
+            items.putAll(read);
+            if (lastUpdateDate == null || newest.after(lastUpdateDate))
+            {
+                lastUpdateDate = newest;
+            }
+        }
+    }
+
+    /**
+     * Run refresh() every period on a background thread, the only user of
+     * the cache's session from then on. Items are loaded on the first run
+     * if load() was not called.
+     *
+     * @param periodMillis time between the end of a refresh and the start of
+     *        the next one
+     */
+    public synchronized void startRefresh(long periodMillis)
+    {
+        if (refresher != null)
+        {
+            throw new IllegalStateException("Item cache is already refreshed");
+        }
+        refresher = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "item-cache-refresh");
+            t.setDaemon(true);
+            return t;
+        });
+        refresher.scheduleWithFixedDelay(() -> {
+            try
+            {
+                refresh();
+            }
+            catch (Exception e)
+            {
+                // try again on the next run
+                e.printStackTrace();
+            }
+        }, lastUpdateDate == null ? 0 : periodMillis, periodMillis, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Stop the background refresh, waiting for a running one to finish so
+     * the cache's session can be used again
+     */
+    @Override
+    public void close()
+    {
+        ScheduledExecutorService stopped;
+        synchronized (this)
+        {
+            stopped = refresher;
+            refresher = null;
+        }
+        if (stopped != null)
+        {
+            stopped.shutdownNow();
+            try
+            {
+                stopped.awaitTermination(1, TimeUnit.MINUTES);
+            }
+            catch (InterruptedException e)
+            {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    /**
+     * Check whether an item can be used on a document, looking it up on the
+     * cache's session when it is not cached. For the thread which owns that
+     * session only.
+     *
+     * @param itemCode item code
+     * @param sales true for sales documents, false for purchasing documents
+     * @return null if the item can be used, reason otherwise
+     */
+    public String check(String itemCode, boolean sales) throws SBOCOMException
+    {
+        return check(itemCode, Boolean.valueOf(sales), company);
+    }
+
+    /**
+     * Check whether an item can be used on a document
+     *
+     * @param itemCode item code
+     * @param sales true for sales documents, false for purchasing documents
+     * @param session session of the calling thread, used when the item is
+     *        not cached
+     * @return null if the item can be used, reason otherwise
+     */
+    public String check(String itemCode, boolean sales, ICompany session) throws SBOCOMException
+    {
+        return check(itemCode, Boolean.valueOf(sales), session);
+    }
+
+    /**
+     * @param sales null for documents which are neither sales nor purchasing,
+     *        only existence and status are checked then
+     */
+    private String check(String itemCode, Boolean sales, ICompany session) throws SBOCOMException
+    {
+        Item item = get(itemCode, session);
+        if (item == null)
+        {
+            return "Item " + itemCode + " does not exist";
+        }
+        if (!item.active)
+        {
+            return "Item " + itemCode + " is inactive";
+        }
+        if (sales == null)
+        {
+            return null;
+        }
+        if (sales && !item.sellItem)
+        {
+            return "Item " + itemCode + " is not a sales item";
+        }
+        if (!sales && !item.purchaseItem)
+        {
+            return "Item " + itemCode + " is not a purchase item";
+        }
+        return null;
+    }
+
+    /**
+     * Check all lines of a document
+     *
+     * @param draft document
+     * @param sales true for sales documents, false for purchasing documents
+     * @param session session of the calling thread, used for items which are
+     *        not cached
+     * @return reasons for every line that cannot be added, empty if all are fine
+     */
+    public List<String> check(DocumentDraft draft, boolean sales, ICompany session) throws SBOCOMException
+    {
+        return check(draft, Boolean.valueOf(sales), session);
+    }
+
+    /**
+     * Check all lines of a document, as sales or purchasing lines depending
+     * on its Object Type
+     *
+     * @param draft document
+     * @param session session of the calling thread, used for items which are
+     *        not cached
+     * @return reasons for every line that cannot be added, empty if all are fine
+     */
+    public List<String> check(DocumentDraft draft, ICompany session) throws SBOCOMException
+    {
+        Boolean sales = SALES.contains(draft.objectType) ? Boolean.TRUE
+                : PURCHASING.contains(draft.objectType) ? Boolean.FALSE : null;
+        return check(draft, sales, session);
+    }
+
+    private List<String> check(DocumentDraft draft, Boolean sales, ICompany session) throws SBOCOMException
+    {
+        List<String> errors = new ArrayList<>();
+        for (int i = 0; i < draft.lines.size(); i++)
+        {
+            String error = check(draft.lines.get(i).itemCode, sales, session);
+            if (error != null)
+            {
+                errors.add("Line " + i + ": " + error);
+            }
+        }
+        return errors;
+    }
+
+    /**
+     * Get number of cached items
+     *
+     * @return cached items
+     */
+    public synchronized int size()
+    {
+        return items.size();
+    }
+
+    /**
+     * Get an item, reading it on the given session when it is not cached or
+     * has expired. Items which do not exist are cached too, for
+     * missTtlMillis.
+     */
+    private Item get(String itemCode, ICompany session) throws SBOCOMException
+    {
+        Item item;
+        synchronized (this)
+        {
+            item = items.get(itemCode);
+        }
+        long ttl = item == null || item.exists ? ttlMillis : missTtlMillis;
+        if (item == null || System.currentTimeMillis() - item.loadedAt > ttl)
+        {
+            // another thread may read the same item meanwhile, both store
+            // the same data
+            Map<String, Item> read = new LinkedHashMap<>();
+            read(BY_CODE.bind().set("ItemCode", itemCode).open(session), read, null);
+            item = read.get(itemCode);
+            if (item == null)
+            {
+                item = new Item(false, false, false, false);
+            }
+            synchronized (this)
+            {
+                items.put(itemCode, item);
+            }
+        }
+        return item.exists ? item : null;
+    }
+
+    /**
+     * Read the rows of a query
+     *
+     * @param read receives the items
+     * @param newest UpdateDate seen so far, may be null
+     * @return newest UpdateDate of the rows and newest
+     */
+    private static Date read(RecordsetCursor query, Map<String, Item> read, Date newest)
+    {
+        try (RecordsetCursor cursor = query)
+        {
+            for (RecordsetCursor.Row row : cursor)
+            {
+                boolean active = !"Y".equals(row.getString(1));
+                read.put(row.getString(0), new Item(active, "Y".equals(row.getString(2)), "Y".equals(row.getString(3))));
+                Date updateDate = row.getDate(4);
+                if (updateDate != null && (newest == null || updateDate.after(newest)))
+                {
+                    newest = updateDate;
+                }
+            }
+        }
+        return newest;
+    }
+
+    /**
+     * Cached part of an item
+     */
+    private static class Item
+    {
+        final boolean exists;
+        // not set to inactive (frozenFor)
+        final boolean active;
+        final boolean sellItem;
+        final boolean purchaseItem;
+        final long loadedAt = System.currentTimeMillis();
+
+        Item(boolean active, boolean sellItem, boolean purchaseItem)
+        {
+            this(true, active, sellItem, purchaseItem);
+        }
+
+        Item(boolean exists, boolean active, boolean sellItem, boolean purchaseItem)
+        {
+            this.exists = exists;
+            this.active = active;
+            this.sellItem = sellItem;
+            this.purchaseItem = purchaseItem;
+        }
+    }
+}
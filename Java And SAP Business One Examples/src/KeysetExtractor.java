@@ -0,0 +1,152 @@
+/*
+ * An example on how to extract a large master data table (e.g. OCRD) page by
+ * page. Every page is a separate "SELECT TOP n ... WHERE key > last ORDER BY
+ * key" query, so only one page is held in memory at a time. The last key of
+ * every finished page is written to a checkpoint file and an interrupted run
+ * resumes after it.
+ * For this program to work, you need SAP Business One DI API installed.
+ */
+
+/*
+ * Import JCO libraries from DI API folder. Two files need to be added to your
+ * project libraries - sboapi.jar and sbowrapper.jar
+ * The files are usually located in:
+ * C:\Program Files (x86)\SAP\SAP Business One DI API\JCO\LIB - 32 bit build
+ * C:\Program Files\SAP\SAP Business One DI API\JCO\LIB - 64 bit build
+ */
+import com.sap.smb.sbo.api.*;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.function.Consumer;
+
+/**
+ *
+ * @author Rafal Rozmus (rozmus.rafal@gmail.com)
+ */
+public class KeysetExtractor
+{
+
+    // declare Company object
+    private final ICompany company;
+    // table to extract, e.g. OCRD
+    private final String table;
+    // unique column the table is paged by, e.g. CardCode
+    private final String keyColumn;
+    // comma separated list of columns to select, must include the key
+    private final String columns;
+    // number of rows fetched by one query
+    private final int pageSize;
+    // file holding the last key of the last finished page
+    private final Path checkpoint;
+
+    public static void main(String[] args) throws Exception
+    {
+        SessionPool pool = new SessionPool(new ConnectionSettings(), 0, 1, 60000);
+        ICompany session = pool.borrow("SBODemoGB");
+        try
+        {
+            KeysetExtractor extractor = new KeysetExtractor(session, "OCRD", "CardCode",
+                    "CardCode, CardName", 5000, Paths.get("ocrd.checkpoint"));
+            long rows = extractor.extract(row -> System.out.println(row.getString(0) + "\t\t" + row.getString(1)));
+            System.out.println("Extracted " + rows + " rows");
+        }
+        finally
+        {
+            pool.giveBack(session);
+            pool.close();
+        }
+    }
+
+    public KeysetExtractor(ICompany company, String table, String keyColumn, String columns,
+            int pageSize, Path checkpoint)
+    {
+        if (pageSize < 1)
+        {
+            throw new IllegalArgumentException("Page size must be positive: " + pageSize);
+        }
+        this.company = company;
+        this.table = table;
+        this.keyColumn = keyColumn;
+        this.columns = columns;
+        this.pageSize = pageSize;
+        this.checkpoint = checkpoint;
+    }
+
+    /**
+     * Extract all rows after the checkpoint, in key order. The consumer gets a
+     * row view which is only valid during the call. When the whole table has
+     * been read the checkpoint file is removed, so the next run starts over.
+     *
+     * @param consumer receives every row
+     * @return number of rows extracted by this run
+     */
+    public long extract(Consumer<RecordsetCursor.Row> consumer) throws SBOCOMException, IOException
+    {
+        String lastKey = readCheckpoint();
+        long total = 0;
+        while (true)
+        {
+            int rows = 0;
+            try (RecordsetCursor cursor = RecordsetCursor.open(company, pageQuery(lastKey)))
+            {
+                int keyIndex = cursor.getColumnIndex(keyColumn);
+                for (RecordsetCursor.Row row : cursor)
+                {
+                    consumer.accept(row);
+                    lastKey = row.getString(keyIndex);
+                    rows++;
+                }
+            }
+            total += rows;
+            if (rows < pageSize)
+            {
+                // last page, nothing left to resume
+                Files.deleteIfExists(checkpoint);
+                return total;
+            }
+            writeCheckpoint(lastKey);
+        }
+    }
+
+    /**
+     * Build query for the page after the given key
+     *
+     * @param lastKey last key of the previous page, null for the first page
+     * @return SQL query
+     */
+    String pageQuery(String lastKey)
+    {
+        StringBuilder query = new StringBuilder("SELECT TOP ").append(pageSize).append(' ')
+                .append(columns).append(" FROM ").append(table);
+        if (lastKey != null)
+        {
+            query.append(" WHERE ").append(keyColumn).append(" > N'")
+                    .append(lastKey.replace("'", "''")).append('\'');
+        }
+        return query.append(" ORDER BY ").append(keyColumn).toString();
+    }
+
+    private String readCheckpoint() throws IOException
+    {
+        if (!Files.exists(checkpoint))
+        {
+            return null;
+        }
+        String key = new String(Files.readAllBytes(checkpoint), StandardCharsets.UTF_8);
+        System.out.println("Resuming " + table + " after " + keyColumn + " " + key);
+        return key;
+    }
+
+    private void writeCheckpoint(String key) throws IOException
+    {
+        // write to a temporary file and rename it, so a crash never leaves a
+        // half written checkpoint behind
+        Path temp = checkpoint.resolveSibling(checkpoint.getFileName() + ".tmp");
+        Files.write(temp, key.getBytes(StandardCharsets.UTF_8));
+        Files.move(temp, checkpoint, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+}
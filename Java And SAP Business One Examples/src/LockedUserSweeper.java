@@ -0,0 +1,407 @@
+/*
+ * Unlocks all locked users at once instead of one UnlockUser run per user,
+ * e.g. after a password policy change locked hundreds of accounts. Locked
+ * users are found with one OUSR query, allow and deny rules decide which of
+ * them may be unlocked, and a few worker threads unlock them on pooled
+ * sessions, so there is no login per user. Every user gets an outcome. The
+ * sweep can run on a schedule, so accounts locked later are unlocked on the
+ * next run.
+ * Superusers are never unlocked unless allowed explicitly.
+ * For this program to work, you need SAP Business One DI API installed.
+ */
+
+/*
+ * Import JCO libraries from DI API folder. Two files need to be added to your
+ * project libraries - sboapi.jar and sbowrapper.jar
+ * The files are usually located in:
+ * C:\Program Files (x86)\SAP\SAP Business One DI API\JCO\LIB - 32 bit build
+ * C:\Program Files\SAP\SAP Business One DI API\JCO\LIB - 64 bit build
+ */
+import com.sap.smb.sbo.api.*;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+import java.util.regex.Pattern;
+
+/**
+ *
+ * @author Rafal Rozmus (rozmus.rafal@gmail.com)
+ */
+public class LockedUserSweeper implements AutoCloseable
+{
+
+    private static final String QUERY =
+            "SELECT INTERNAL_K, USER_CODE, U_NAME, SUPERUSER FROM OUSR WHERE Locked = 'Y' ORDER BY INTERNAL_K";
+
+    /**
+     * What happened to a locked user
+     */
+    public enum Outcome
+    {
+        UNLOCKED,
+        // excluded by the rules
+        DENIED,
+        // over maxUnlocks, left for the next sweep
+        DEFERRED,
+        // unlocked by someone else meanwhile
+        NOT_LOCKED,
+        // deleted meanwhile
+        NOT_FOUND,
+        FAILED
+    }
+
+    // pool the worker sessions are borrowed from
+    private final SessionPool pool;
+    private final String companyDb;
+    // number of users unlocked at the same time
+    private final int workers;
+    private final RetryPolicy retryPolicy;
+    // rules, USER_CODE patterns
+    private final List<Pattern> allowed = new CopyOnWriteArrayList<>();
+    private final List<Pattern> denied = new CopyOnWriteArrayList<>();
+    private volatile boolean allowSuperUsers = false;
+    // users unlocked per sweep at most, 0 for no limit
+    private volatile int maxUnlocks = 0;
+    private ScheduledExecutorService scheduler;
+
+    public static void main(String[] args) throws Exception
+    {
+        SessionPool pool = new SessionPool(new ConnectionSettings(), 0, 4, 300000);
+        try (LockedUserSweeper sweeper = new LockedUserSweeper(pool, "SBODemoGB", 3, new RetryPolicy()))
+        {
+            // technical users are left for the administrator
+            sweeper.deny("svc_.*").deny("manager");
+            sweeper.setMaxUnlocks(500);
+            Result result = sweeper.sweep();
+            result.outcomes.forEach((userCode, outcome) -> System.out.println(userCode + "\t" + outcome
+                    + (result.errors.containsKey(userCode) ? "\t" + result.errors.get(userCode) : "")));
+            System.out.println(result);
+        }
+        finally
+        {
+            pool.close();
+        }
+    }
+
+    /**
+     * @param pool session pool, it needs room for the workers
+     * @param companyDb company database name
+     * @param workers number of users unlocked at the same time
+     * @param retryPolicy retries of transient failures, e.g. lock timeouts
+     */
+    public LockedUserSweeper(SessionPool pool, String companyDb, int workers, RetryPolicy retryPolicy)
+    {
+        if (workers < 1)
+        {
+            throw new IllegalArgumentException("Number of workers must be positive: " + workers);
+        }
+        this.pool = pool;
+        this.companyDb = companyDb;
+        this.workers = workers;
+        this.retryPolicy = retryPolicy;
+    }
+
+    /**
+     * Unlock only users whose code matches one of the allowed patterns. With
+     * no allowed pattern all users are allowed.
+     *
+     * @param userCodeRegex regular expression matching the whole USER_CODE,
+     *        ignoring case
+     * @return this sweeper
+     */
+    public LockedUserSweeper allow(String userCodeRegex)
+    {
+        allowed.add(Pattern.compile(userCodeRegex, Pattern.CASE_INSENSITIVE));
+        return this;
+    }
+
+    /**
+     * Never unlock users whose code matches the pattern; deny wins over allow
+     *
+     * @param userCodeRegex regular expression matching the whole USER_CODE,
+     *        ignoring case
+     * @return this sweeper
+     */
+    public LockedUserSweeper deny(String userCodeRegex)
+    {
+        denied.add(Pattern.compile(userCodeRegex, Pattern.CASE_INSENSITIVE));
+        return this;
+    }
+
+    public void setAllowSuperUsers(boolean allowSuperUsers)
+    {
+        this.allowSuperUsers = allowSuperUsers;
+    }
+
+    /**
+     * Limit the number of users unlocked by one sweep; the others are
+     * deferred to the next sweep. A safety net when the rules are too
+     * broad.
+     *
+     * @param maxUnlocks users per sweep, 0 for no limit
+     */
+    public void setMaxUnlocks(int maxUnlocks)
+    {
+        this.maxUnlocks = maxUnlocks;
+    }
+
+    /**
+     * Sweep every interval on a background thread
+     *
+     * @param intervalSeconds seconds between the end of a sweep and the start
+     *        of the next one
+     * @param report receives the result of every sweep
+     */
+    public synchronized void start(long intervalSeconds, Consumer<Result> report)
+    {
+        if (scheduler != null)
+        {
+            throw new IllegalStateException("Sweeper is already running");
+        }
+        scheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "user-sweeper-" + companyDb);
+            t.setDaemon(true);
+            return t;
+        });
+        scheduler.scheduleWithFixedDelay(() -> {
+            try
+            {
+                report.accept(sweep());
+            }
+            catch (InterruptedException e)
+            {
+                Thread.currentThread().interrupt();
+            }
+            catch (Exception e)
+            {
+                // try again on the next run
+                e.printStackTrace();
+            }
+        }, 0, intervalSeconds, TimeUnit.SECONDS);
+    }
+
+    /**
+     * Find and unlock locked users once, on the calling thread and the
+     * workers
+     *
+     * @return outcome of every locked user
+     * @throws Exception if the locked users could not be read
+     */
+    public Result sweep() throws Exception
+    {
+        long start = System.nanoTime();
+        Result result = new Result();
+        List<User> candidates = new ArrayList<>();
+        for (User user : findLocked())
+        {
+            if (!isAllowed(user))
+            {
+                result.outcomes.put(user.userCode, Outcome.DENIED);
+            }
+            else if (maxUnlocks > 0 && candidates.size() >= maxUnlocks)
+            {
+                result.outcomes.put(user.userCode, Outcome.DEFERRED);
+            }
+            else
+            {
+                candidates.add(user);
+                // set when unlocked, keeps query order in the result
+                result.outcomes.put(user.userCode, null);
+            }
+        }
+        ExecutorService executor = Executors.newFixedThreadPool(Math.min(workers, Math.max(1, candidates.size())),
+                r -> {
+                    Thread t = new Thread(r, "user-sweeper-worker-" + companyDb);
+                    t.setDaemon(true);
+                    return t;
+                });
+        try
+        {
+            List<Future<Outcome>> futures = new ArrayList<>();
+            for (User user : candidates)
+            {
+                futures.add(executor.submit(() -> retryPolicy.run(pool, companyDb, session -> unlock(session, user))));
+            }
+            for (int i = 0; i < candidates.size(); i++)
+            {
+                String userCode = candidates.get(i).userCode;
+                try
+                {
+                    result.outcomes.put(userCode, futures.get(i).get());
+                }
+                catch (ExecutionException e)
+                {
+                    result.outcomes.put(userCode, Outcome.FAILED);
+                    result.errors.put(userCode, e.getCause().getMessage());
+                }
+            }
+        }
+        finally
+        {
+            executor.shutdownNow();
+        }
+        result.millis = (System.nanoTime() - start) / 1000000;
+        return result;
+    }
+
+    /**
+     * Stop the scheduled sweeps
+     */
+    @Override
+    public synchronized void close()
+    {
+        if (scheduler != null)
+        {
+            scheduler.shutdownNow();
+            scheduler = null;
+        }
+    }
+
+    /**
+     * Read all locked users with one query
+     */
+    private List<User> findLocked() throws Exception
+    {
+        return retryPolicy.run(pool, companyDb, session -> {
+            List<User> users = new ArrayList<>();
+            try (RecordsetCursor cursor = RecordsetCursor.open(pool.objects(session), QUERY))
+            {
+                for (RecordsetCursor.Row row : cursor)
+                {
+                    users.add(new User(row.getInt(0), row.getString(1), row.getString(2),
+                            "Y".equals(row.getString(3))));
+                }
+            }
+            return users;
+        });
+    }
+
+    /**
+     * Check a locked user against the rules
+     */
+    boolean isAllowed(User user)
+    {
+        if (user.superUser && !allowSuperUsers)
+        {
+            return false;
+        }
+        for (Pattern pattern : denied)
+        {
+            if (pattern.matcher(user.userCode).matches())
+            {
+                return false;
+            }
+        }
+        if (allowed.isEmpty())
+        {
+            return true;
+        }
+        for (Pattern pattern : allowed)
+        {
+            if (pattern.matcher(user.userCode).matches())
+            {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Unlock a user on a worker session
+     */
+    private Outcome unlock(ICompany session, User user) throws DiApiException, SBOCOMException
+    {
+        BusinessObjectPool objects = pool.objects(session);
+        IUsers users = objects.users();
+        try
+        {
+            // get the user by its InternalKey (INTERNAL_K in OUSR table)
+            if (!users.getByKey(user.internalKey))
+            {
+                return Outcome.NOT_FOUND;
+            }
+            if (users.getLocked() != 1)
+            {
+                return Outcome.NOT_LOCKED;
+            }
+            users.setLocked(0);
+            if (DiApiMetrics.shared().update(session, users) != 0)
+            {
+                // get error message fom SAP Business One Server
+                throw new DiApiException("unlock user " + user.userCode, session.getLastError());
+            }
+            return Outcome.UNLOCKED;
+        }
+        finally
+        {
+            objects.giveBack(users);
+        }
+    }
+
+    /**
+     * Locked user read from OUSR
+     */
+    static class User
+    {
+        final int internalKey;
+        final String userCode;
+        final String userName;
+        final boolean superUser;
+
+        User(int internalKey, String userCode, String userName, boolean superUser)
+        {
+            this.internalKey = internalKey;
+            this.userCode = userCode;
+            this.userName = userName;
+            this.superUser = superUser;
+        }
+    }
+
+    /**
+     * Outcome of a sweep
+     */
+    public static class Result
+    {
+        // outcome of every locked user by USER_CODE, in InternalKey order
+        public final Map<String, Outcome> outcomes = new LinkedHashMap<>();
+        // error message of every user which could not be unlocked
+        public final Map<String, String> errors = new LinkedHashMap<>();
+        // total duration
+        public long millis = 0;
+
+        /**
+         * Get number of users with the given outcome
+         */
+        public int count(Outcome outcome)
+        {
+            int count = 0;
+            for (Outcome o : outcomes.values())
+            {
+                if (o == outcome)
+                {
+                    count++;
+                }
+            }
+            return count;
+        }
+
+        @Override
+        public String toString()
+        {
+            return outcomes.size() + " locked users: " + count(Outcome.UNLOCKED) + " unlocked, "
+                    + count(Outcome.DENIED) + " denied, " + count(Outcome.DEFERRED) + " deferred, "
+                    + count(Outcome.NOT_LOCKED) + " already unlocked, "
+                    + count(Outcome.NOT_FOUND) + " not found, " + count(Outcome.FAILED) + " failed in " + millis
+                    + " ms";
+        }
+    }
+}
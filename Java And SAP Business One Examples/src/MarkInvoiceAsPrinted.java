@@ -11,6 +11,8 @@
  * C:\Program Files\SAP\SAP Business One DI API\JCO\LIB - 64 bit build
  */
 import com.sap.smb.sbo.api.*;
+import java.util.ArrayList;
+import java.util.List;
 
 /**
  *
@@ -31,7 +33,15 @@ public class MarkInvoiceAsPrinted {
     {
         MarkInvoiceAsPrinted sapConnection = new MarkInvoiceAsPrinted();
         sapConnection.connect();
-        sapConnection.markInvoices();
+        // pass a chunk size to mark the invoices in batches, one transaction per chunk
+        if (args.length > 0)
+        {
+            sapConnection.markInvoices(Integer.parseInt(args[0]));
+        }
+        else
+        {
+            sapConnection.markInvoices();
+        }
         // check if connection has been established before disconnecting
         if (sapConnection.getConnectionResult() == 0)
         {
@@ -46,21 +56,38 @@ public class MarkInvoiceAsPrinted {
         try
         {
             // Initialise Recordset object
-            recordSet = SBOCOMUtil.newRecordset(company);
+            recordSet = HandleTracker.shared().newRecordset(company);
             // Initialise Documents object and set the type to AR Invoice
             // 13 means AR Invoice. For a list of Object Types check
             // http://www.sapbusinessonesdk.co.uk/2015/12/17/sap-business-one-object-types/
-            invoice = SBOCOMUtil.newDocuments(company, 13);
+            invoice = HandleTracker.shared().newDocuments(company, 13);
             // Perform SQL query. Select all today's Invoices that haven't been printed
-            recordSet.doQuery("SELECT T0.[DocEntry] FROM OINV T0 WHERE T0.DocDate = CAST(CURRENT_TIMESTAMP AS DATE) AND T0.[Printed] = 'N'");
+            DiApiMetrics.shared().doQuery(recordSet, "SELECT T0.[DocEntry] FROM OINV T0 WHERE T0.DocDate = CAST(CURRENT_TIMESTAMP AS DATE) AND T0.[Printed] = 'N'");
             // Move to the first record
             recordSet.moveFirst();
             // Go through all records
             while (!recordSet.isEoF()) {
                 // Retrieve AR Invoice by it's OINV.DocEntry value
-                invoice.getByKey(recordSet.getFields().item(0).getValueInteger());
-                invoice.setPrinted(1);
-                invoice.update();
+                int docEntry = recordSet.getFields().item(0).getValueInteger();
+                if (!invoice.getByKey(docEntry))
+                {
+                    System.out.println("Cannot find Invoice " + docEntry);
+                }
+                else
+                {
+                    invoice.setPrinted(1);
+                    if (DiApiMetrics.shared().update(company, invoice, 13) != 0)
+                    {
+                        // get error message fom SAP Business One Server
+                        SBOErrorMessage errMsg = company.getLastError();
+                        System.out.println(
+                                "Cannot mark Invoice " + docEntry + " as printed: "
+                                + errMsg.getErrorMessage()
+                                + " "
+                                + errMsg.getErrorCode()
+                        );
+                    }
+                }
                 recordSet.moveNext();
             }
             
@@ -69,6 +96,74 @@ public class MarkInvoiceAsPrinted {
         {
             e.printStackTrace();  
         }
+        finally
+        {
+            // release native DI API objects, they are not garbage collected
+            if (recordSet != null)
+            {
+                recordSet.release();
+                recordSet = null;
+            }
+            if (invoice != null)
+            {
+                invoice.release();
+                invoice = null;
+            }
+        }
+    }
+    
+    /**
+     * Mark all today's AR Invoices as printed, committing chunkSize invoices
+     * per transaction. A chunk with a failing invoice is rolled back and its
+     * invoices are retried one by one. Lock timeouts and deadlocks are
+     * retried with backoff.
+     *
+     * @param chunkSize number of invoices per transaction
+     */
+    public void markInvoices(int chunkSize)
+    {
+        try
+        {
+            List<Integer> docEntries = getUnprintedInvoices(company);
+            ChunkedInvoiceMarker.Result result = new ChunkedInvoiceMarker(company, chunkSize).mark(docEntries);
+            // duration of the whole chunk, from startTransaction() to the commit
+            for (int i = 0; i < result.chunkNanos.size(); i++)
+            {
+                System.out.println("Committed chunk " + (i + 1) + " of " + result.chunkNanos.size() + " took "
+                        + result.chunkNanos.get(i) / 1000000 + " ms");
+            }
+            result.failed.forEach((docEntry, error) ->
+                    System.out.println("Cannot mark Invoice " + docEntry + ": " + error));
+            System.out.println(result);
+        }
+        catch (SBOCOMException e) 
+        {
+            e.printStackTrace();  
+        }
+        catch (InterruptedException e)
+        {
+            Thread.currentThread().interrupt();
+        }
+    }
+    
+    /**
+     * Get DocEntry of all today's AR Invoices that haven't been printed
+     *
+     * @param company connected company instance
+     * @return OINV.DocEntry values in ascending order
+     */
+    public static List<Integer> getUnprintedInvoices(ICompany company) throws SBOCOMException
+    {
+        List<Integer> docEntries = new ArrayList<>();
+        try (RecordsetCursor cursor = RecordsetCursor.open(company,
+                "SELECT T0.[DocEntry] FROM OINV T0 WHERE T0.DocDate = CAST(CURRENT_TIMESTAMP AS DATE) AND T0.[Printed] = 'N' ORDER BY T0.[DocEntry]"))
+        {
+            for (RecordsetCursor.Row row : cursor)
+            {
+                docEntries.add(row.getInt(0));
+            }
+        }
+        return docEntries;
     }
     
     /**
@@ -103,7 +198,7 @@ public class MarkInvoiceAsPrinted {
             company.setLicenseServer("licenserver:30000");
             
             // initialise connection
-            connectionResult = company.connect();
+            connectionResult = DiApiMetrics.shared().connect(company);
             
             // if connection successful
             if (connectionResult == 0) 
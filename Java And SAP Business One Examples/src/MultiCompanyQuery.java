@@ -0,0 +1,491 @@
+/*
+ * Runs the same Recordset query against several company databases at once,
+ * each on its own pooled session and thread, and streams the rows to the
+ * calling thread tagged with their company. A cross-company report takes as
+ * long as the slowest company instead of the sum of all of them.
+ * Rows arrive either as they come (forEach) or merged by a key column
+ * (forEachOrdered), when every company returns its rows sorted by that key.
+ * Only a few rows per company are buffered, so large results are not held in
+ * memory.
+ * For this program to work, you need SAP Business One DI API installed.
+ */
+
+/*
+ * Import JCO libraries from DI API folder. Two files need to be added to your
+ * project libraries - sboapi.jar and sbowrapper.jar
+ * The files are usually located in:
+ * C:\Program Files (x86)\SAP\SAP Business One DI API\JCO\LIB - 32 bit build
+ * C:\Program Files\SAP\SAP Business One DI API\JCO\LIB - 64 bit build
+ */
+import com.sap.smb.sbo.api.*;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+/**
+ *
+ * @author Rafal Rozmus (rozmus.rafal@gmail.com)
+ */
+public class MultiCompanyQuery
+{
+
+    // pool the query sessions are borrowed from
+    private final SessionPool pool;
+    // rows buffered per company
+    private final int bufferRows;
+
+    public static void main(String[] args) throws Exception
+    {
+        SessionPool pool = new SessionPool(new ConnectionSettings(), 0, 1, 60000);
+        try
+        {
+            List<String> companies = Arrays.asList("SBODemoGB", "SBODemoUS", "SBODemoDE");
+            // Business Partners of all companies in one list sorted by CardCode
+            Summary summary = new MultiCompanyQuery(pool, 1000).forEachOrdered(companies,
+                    "SELECT CardCode, CardName FROM OCRD ORDER BY CardCode", "CardCode",
+                    row -> System.out.println(row.companyDb + "\t" + row.getString(0) + "\t\t" + row.getString(1)));
+            System.out.println(summary);
+        }
+        finally
+        {
+            pool.close();
+        }
+    }
+
+    /**
+     * @param pool session pool, sessions are borrowed per company database
+     * @param bufferRows rows buffered per company before its query waits
+     */
+    public MultiCompanyQuery(SessionPool pool, int bufferRows)
+    {
+        this.pool = pool;
+        this.bufferRows = bufferRows;
+    }
+
+    /**
+     * Run the query on every company and pass the rows to action in the order
+     * they arrive
+     *
+     * @param companyDbs company database names
+     * @param query SQL query
+     * @param action called on the calling thread for every row
+     * @return row count and duration per company
+     * @throws ExecutionException when the query fails on any company, the
+     *         other queries are then stopped
+     */
+    public Summary forEach(List<String> companyDbs, String query, Consumer<TaggedRow> action)
+            throws ExecutionException, InterruptedException
+    {
+        // all companies share one queue
+        BlockingQueue<Object> queue = new ArrayBlockingQueue<>(bufferRows * companyDbs.size());
+        List<Source> sources = new ArrayList<>();
+        for (String companyDb : companyDbs)
+        {
+            sources.add(new Source(companyDb, query, null, queue));
+        }
+        Summary summary = new Summary(sources);
+        try
+        {
+            start(sources);
+            int running = sources.size();
+            while (running > 0)
+            {
+                Object next = queue.take();
+                if (next instanceof End)
+                {
+                    ((End) next).rethrow();
+                    running--;
+                }
+                else
+                {
+                    action.accept((TaggedRow) next);
+                }
+            }
+        }
+        finally
+        {
+            stop(sources);
+        }
+        return summary.finish();
+    }
+
+    /**
+     * Run the query on every company and pass the rows to action merged by the
+     * key column. The query must sort by the key, e.g. ORDER BY CardCode.
+     * Strings are compared ignoring case, like the default SQL Server
+     * collation.
+     *
+     * @param companyDbs company database names
+     * @param query SQL query sorted by the key column
+     * @param keyColumn name of the key column
+     * @param action called on the calling thread for every row
+     * @return row count and duration per company
+     * @throws ExecutionException when the query fails on any company
+     */
+    public Summary forEachOrdered(List<String> companyDbs, String query, String keyColumn,
+            Consumer<TaggedRow> action) throws ExecutionException, InterruptedException
+    {
+        return forEachOrdered(companyDbs, query, keyColumn, MultiCompanyQuery::compareKeys, action);
+    }
+
+    /**
+     * Run the query on every company and pass the rows to action merged by the
+     * key column, using the given order of keys
+     *
+     * @param keyOrder order of key values, must match the ORDER BY of the query
+     */
+    public Summary forEachOrdered(List<String> companyDbs, String query, String keyColumn,
+            Comparator<Object> keyOrder, Consumer<TaggedRow> action) throws ExecutionException, InterruptedException
+    {
+        List<Source> sources = new ArrayList<>();
+        for (String companyDb : companyDbs)
+        {
+            // one queue per company, the merge needs the head of each
+            sources.add(new Source(companyDb, query, keyColumn, new ArrayBlockingQueue<>(bufferRows)));
+        }
+        Summary summary = new Summary(sources);
+        // heads ordered by key, equal keys in the order of companyDbs
+        PriorityQueue<Head> heads = new PriorityQueue<>(Math.max(1, sources.size()), (a, b) -> {
+            int order = keyOrder.compare(a.row.getValue(a.source.keyIndex), b.row.getValue(b.source.keyIndex));
+            return order != 0 ? order : Integer.compare(a.index, b.index);
+        });
+        try
+        {
+            start(sources);
+            for (int i = 0; i < sources.size(); i++)
+            {
+                Head head = take(sources.get(i), i);
+                if (head != null)
+                {
+                    heads.add(head);
+                }
+            }
+            while (!heads.isEmpty())
+            {
+                Head head = heads.poll();
+                action.accept(head.row);
+                Head next = take(head.source, head.index);
+                if (next != null)
+                {
+                    heads.add(next);
+                }
+            }
+        }
+        finally
+        {
+            stop(sources);
+        }
+        return summary.finish();
+    }
+
+    /**
+     * Default key order: nulls first, strings ignoring case, other values by
+     * their natural order
+     */
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    static int compareKeys(Object a, Object b)
+    {
+        if (a == null || b == null)
+        {
+            return a == null ? (b == null ? 0 : -1) : 1;
+        }
+        if (a instanceof String && b instanceof String)
+        {
+            return String.CASE_INSENSITIVE_ORDER.compare((String) a, (String) b);
+        }
+        if (a instanceof Number && b instanceof Number)
+        {
+            return Double.compare(((Number) a).doubleValue(), ((Number) b).doubleValue());
+        }
+        return ((Comparable) a).compareTo(b);
+    }
+
+    /**
+     * Take the next row of a company for the merge
+     *
+     * @return null when the company has no more rows
+     */
+    private static Head take(Source source, int index) throws ExecutionException, InterruptedException
+    {
+        Object next = source.queue.take();
+        if (next instanceof End)
+        {
+            ((End) next).rethrow();
+            return null;
+        }
+        return new Head(source, index, (TaggedRow) next);
+    }
+
+    private void start(List<Source> sources)
+    {
+        for (Source source : sources)
+        {
+            Thread thread = new Thread(() -> source.run(pool), "company-query-" + source.companyDb);
+            thread.setDaemon(true);
+            source.thread = thread;
+            thread.start();
+        }
+    }
+
+    /**
+     * Stop queries which are still running, e.g. after another company failed
+     */
+    private static void stop(List<Source> sources) throws InterruptedException
+    {
+        for (Source source : sources)
+        {
+            source.cancelled = true;
+        }
+        for (Source source : sources)
+        {
+            if (source.thread != null)
+            {
+                source.thread.join();
+            }
+        }
+    }
+
+    /**
+     * Query of one company, runs on its own thread
+     */
+    private static class Source
+    {
+        final String companyDb;
+        final String query;
+        final String keyColumn;
+        final BlockingQueue<Object> queue;
+        Thread thread;
+        volatile boolean cancelled = false;
+        // index of the key column, known once the query has run
+        volatile int keyIndex = -1;
+        volatile long rows = 0;
+        volatile long nanos = 0;
+
+        Source(String companyDb, String query, String keyColumn, BlockingQueue<Object> queue)
+        {
+            this.companyDb = companyDb;
+            this.query = query;
+            this.keyColumn = keyColumn;
+            this.queue = queue;
+        }
+
+        void run(SessionPool pool)
+        {
+            long start = System.nanoTime();
+            Exception error = null;
+            try
+            {
+                // the session is used on this thread only
+                ICompany session = pool.borrow(companyDb);
+                try (RecordsetCursor cursor = RecordsetCursor.open(session, query))
+                {
+                    String[] columns = new String[cursor.getColumnCount()];
+                    for (int i = 0; i < columns.length; i++)
+                    {
+                        columns[i] = cursor.getColumnName(i);
+                    }
+                    if (keyColumn != null)
+                    {
+                        keyIndex = cursor.getColumnIndex(keyColumn);
+                    }
+                    for (RecordsetCursor.Row row : cursor)
+                    {
+                        // copy the values, the cursor row is reused
+                        if (!put(new TaggedRow(companyDb, columns, row.toArray())))
+                        {
+                            break;
+                        }
+                        rows++;
+                    }
+                }
+                finally
+                {
+                    pool.giveBack(session);
+                }
+            }
+            catch (InterruptedException e)
+            {
+                Thread.currentThread().interrupt();
+                error = e;
+            }
+            catch (Exception e)
+            {
+                error = e;
+            }
+            nanos = System.nanoTime() - start;
+            try
+            {
+                put(new End(companyDb, error));
+            }
+            catch (InterruptedException e)
+            {
+                Thread.currentThread().interrupt();
+            }
+        }
+
+        /**
+         * Wait for space in the queue unless the merge was stopped
+         *
+         * @return false if stopped
+         */
+        private boolean put(Object item) throws InterruptedException
+        {
+            while (!cancelled)
+            {
+                if (queue.offer(item, 100, TimeUnit.MILLISECONDS))
+                {
+                    return true;
+                }
+            }
+            return false;
+        }
+    }
+
+    /**
+     * Current row of one company in the merge
+     */
+    private static class Head
+    {
+        final Source source;
+        final int index;
+        final TaggedRow row;
+
+        Head(Source source, int index, TaggedRow row)
+        {
+            this.source = source;
+            this.index = index;
+            this.row = row;
+        }
+    }
+
+    /**
+     * Marks the end of the rows of one company
+     */
+    private static class End
+    {
+        final String companyDb;
+        final Exception error;
+
+        End(String companyDb, Exception error)
+        {
+            this.companyDb = companyDb;
+            this.error = error;
+        }
+
+        void rethrow() throws ExecutionException
+        {
+            if (error != null)
+            {
+                throw new ExecutionException("Query failed on " + companyDb + ": " + error.getMessage(), error);
+            }
+        }
+    }
+
+    /**
+     * Row of one company
+     */
+    public static class TaggedRow
+    {
+        // company database the row comes from
+        public final String companyDb;
+        private final String[] columns;
+        private final Object[] values;
+
+        TaggedRow(String companyDb, String[] columns, Object[] values)
+        {
+            this.companyDb = companyDb;
+            this.columns = columns;
+            this.values = values;
+        }
+
+        public Object getValue(int column)
+        {
+            return values[column];
+        }
+
+        public String getString(int column)
+        {
+            return values[column] == null ? null : values[column].toString();
+        }
+
+        public String getColumnName(int column)
+        {
+            return columns[column];
+        }
+
+        public int getColumnCount()
+        {
+            return values.length;
+        }
+
+        /**
+         * Get a value by column name
+         *
+         * @param column column name, case is ignored
+         * @return value
+         */
+        public Object getValue(String column)
+        {
+            for (int i = 0; i < columns.length; i++)
+            {
+                if (columns[i].equalsIgnoreCase(column))
+                {
+                    return values[i];
+                }
+            }
+            throw new IllegalArgumentException("No column " + column);
+        }
+    }
+
+    /**
+     * Rows and query time per company
+     */
+    public static class Summary
+    {
+        private final List<Source> sources;
+        private final long start = System.nanoTime();
+        // rows per company database
+        public final Map<String, Long> rows = new LinkedHashMap<>();
+        // query time per company database, in milliseconds
+        public final Map<String, Long> millis = new LinkedHashMap<>();
+        // time of the whole fan-out, in milliseconds
+        public long totalMillis;
+
+        Summary(List<Source> sources)
+        {
+            this.sources = sources;
+        }
+
+        Summary finish()
+        {
+            totalMillis = (System.nanoTime() - start) / 1000000;
+            for (Source source : sources)
+            {
+                rows.put(source.companyDb, source.rows);
+                millis.put(source.companyDb, source.nanos / 1000000);
+            }
+            return this;
+        }
+
+        @Override
+        public String toString()
+        {
+            long sum = 0;
+            for (long companyMillis : millis.values())
+            {
+                sum += companyMillis;
+            }
+            return rows.size() + " companies in " + totalMillis + " ms (" + sum + " ms one after another), rows "
+                    + rows;
+        }
+    }
+}
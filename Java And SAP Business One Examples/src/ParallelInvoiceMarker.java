@@ -0,0 +1,173 @@
+/*
+ * An example on how to mark today's AR Invoices as printed in parallel. The
+ * unprinted DocEntry values are split into disjoint ranges and every range is
+ * marked on its own worker thread with its own pooled session, so the work
+ * scales with the number of license seats instead of running on one session.
+ * For this program to work, you need SAP Business One DI API installed.
+ */
+
+/*
+ * Import JCO libraries from DI API folder. Two files need to be added to your
+ * project libraries - sboapi.jar and sbowrapper.jar
+ * The files are usually located in:
+ * C:\Program Files (x86)\SAP\SAP Business One DI API\JCO\LIB - 32 bit build
+ * C:\Program Files\SAP\SAP Business One DI API\JCO\LIB - 64 bit build
+ */
+import com.sap.smb.sbo.api.*;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ *
+ * @author Rafal Rozmus (rozmus.rafal@gmail.com)
+ */
+public class ParallelInvoiceMarker
+{
+
+    // pool the worker sessions are borrowed from
+    private final SessionPool pool;
+    // company database the invoices belong to
+    private final String companyDb;
+    // number of worker threads and sessions
+    private final int parallelism;
+    // number of invoices per transaction
+    private final int chunkSize;
+
+    public static void main(String[] args) throws Exception
+    {
+        int parallelism = args.length > 0 ? Integer.parseInt(args[0]) : 4;
+        SessionPool pool = new SessionPool(new ConnectionSettings(), 0, parallelism, 60000);
+        try
+        {
+            ChunkedInvoiceMarker.Result result = new ParallelInvoiceMarker(pool, "SBODemoGB", parallelism, 100).markInvoices();
+            result.failed.forEach((docEntry, error) ->
+                    System.out.println("Cannot mark Invoice " + docEntry + ": " + error));
+            System.out.println(result);
+        }
+        finally
+        {
+            pool.close();
+        }
+    }
+
+    public ParallelInvoiceMarker(SessionPool pool, String companyDb, int parallelism, int chunkSize)
+    {
+        if (parallelism < 1)
+        {
+            throw new IllegalArgumentException("Parallelism must be positive: " + parallelism);
+        }
+        this.pool = pool;
+        this.companyDb = companyDb;
+        this.parallelism = parallelism;
+        this.chunkSize = chunkSize;
+    }
+
+    /**
+     * Mark all today's unprinted AR Invoices as printed
+     *
+     * @return aggregated result of all workers
+     */
+    public ChunkedInvoiceMarker.Result markInvoices() throws Exception
+    {
+        List<Integer> docEntries;
+        ICompany session = pool.borrow(companyDb);
+        try
+        {
+            docEntries = MarkInvoiceAsPrinted.getUnprintedInvoices(session);
+        }
+        finally
+        {
+            pool.giveBack(session);
+        }
+        return mark(docEntries);
+    }
+
+    /**
+     * Mark the given invoices as printed
+     *
+     * @param docEntries OINV.DocEntry values in ascending order
+     * @return aggregated result of all workers
+     */
+    public ChunkedInvoiceMarker.Result mark(List<Integer> docEntries) throws Exception
+    {
+        ChunkedInvoiceMarker.Result total = new ChunkedInvoiceMarker.Result();
+        List<List<Integer>> ranges = split(docEntries, parallelism);
+        if (ranges.isEmpty())
+        {
+            return total;
+        }
+        ExecutorService workers = Executors.newFixedThreadPool(ranges.size());
+        try
+        {
+            List<Future<ChunkedInvoiceMarker.Result>> results = new ArrayList<>();
+            for (List<Integer> range : ranges)
+            {
+                results.add(workers.submit(() -> markRange(range)));
+            }
+            for (int i = 0; i < results.size(); i++)
+            {
+                try
+                {
+                    total.merge(results.get(i).get());
+                }
+                catch (ExecutionException e)
+                {
+                    // the other ranges are independent, keep collecting them;
+                    // invoices of this range may be marked or not, report all
+                    String error = "Range failed: " + e.getCause();
+                    for (Integer docEntry : ranges.get(i))
+                    {
+                        total.failed.put(docEntry, error);
+                    }
+                }
+            }
+        }
+        finally
+        {
+            workers.shutdown();
+        }
+        return total;
+    }
+
+    private ChunkedInvoiceMarker.Result markRange(List<Integer> range) throws Exception
+    {
+        ICompany session = pool.borrow(companyDb);
+        try
+        {
+            return new ChunkedInvoiceMarker(pool.objects(session), chunkSize).mark(range);
+        }
+        finally
+        {
+            pool.giveBack(session);
+        }
+    }
+
+    /**
+     * Split sorted DocEntry values into at most n contiguous ranges of
+     * similar size. Ranges never overlap, so no two workers lock the same
+     * invoice.
+     *
+     * @param docEntries OINV.DocEntry values in ascending order
+     * @param n maximum number of ranges
+     * @return non-empty ranges
+     */
+    static List<List<Integer>> split(List<Integer> docEntries, int n)
+    {
+        List<List<Integer>> ranges = new ArrayList<>();
+        int size = docEntries.size();
+        for (int i = 0; i < n; i++)
+        {
+            int from = (int) ((long) size * i / n);
+            int to = (int) ((long) size * (i + 1) / n);
+            if (to > from)
+            {
+                ranges.add(docEntries.subList(from, to));
+            }
+        }
+        return ranges;
+    }
+}
@@ -0,0 +1,640 @@
+/*
+ * Append-only local journal of document posts. Before a document is added its
+ * draft is recorded as an intent; after add() the resulting DocEntry (or the
+ * error) is recorded against the same reference. After a crash the journal
+ * tells which documents were certainly created, which were rejected and which
+ * are in doubt, so a restart only has to check the few in-doubt documents.
+ *
+ * Writes are group committed: a single writer thread appends everything that
+ * was queued since the last flush and forces the file once for the whole
+ * group, so concurrent posting threads share one fsync.
+ *
+ * Every record is one line ending with the CRC32 of its content. A crash can
+ * only tear the last group, so on open the records are replayed up to the
+ * first one which is incomplete or fails its check, and the file is cut
+ * there before anything is appended. The file is compacted on open and on
+ * compact(): records of finished documents are replaced by what is needed to
+ * restore the current state.
+ * For this program to work, you need SAP Business One DI API installed.
+ */
+
+/*
+ * Import JCO libraries from DI API folder. Two files need to be added to your
+ * project libraries - sboapi.jar and sbowrapper.jar
+ * The files are usually located in:
+ * C:\Program Files (x86)\SAP\SAP Business One DI API\JCO\LIB - 32 bit build
+ * C:\Program Files\SAP\SAP Business One DI API\JCO\LIB - 64 bit build
+ */
+import com.sap.smb.sbo.api.*;
+import java.io.BufferedInputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.zip.CRC32;
+
+/**
+ *
+ * @author Rafal Rozmus (rozmus.rafal@gmail.com)
+ */
+public class PostingJournal implements AutoCloseable
+{
+
+    // tells the writer thread to stop
+    private static final Append STOP = new Append(new byte[0]);
+
+    private final Path file;
+    // replaced by compaction, used by the writer thread only once it runs
+    private FileChannel channel;
+    // drafts intended but not yet committed or failed, by reference
+    private final Map<String, DocumentDraft> pending = new LinkedHashMap<>();
+    // DocEntry of every committed reference
+    private final Map<String, Integer> committed = new HashMap<>();
+    private final BlockingQueue<Append> queue = new LinkedBlockingQueue<>();
+    // guarded by queue, nothing is queued after STOP
+    private boolean closed = false;
+    private final Thread writer;
+    // number of forces and of records written, to see how well writes are grouped
+    private volatile long flushes = 0;
+    private volatile long records = 0;
+
+    /**
+     * Open the journal, replaying an existing file
+     *
+     * @param file journal file, created when missing
+     */
+    public PostingJournal(Path file) throws IOException
+    {
+        this.file = file;
+        long replayed = Files.exists(file) ? replay() : 0;
+        channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+        if (replayed > committed.size() + pending.size())
+        {
+            // records of finished documents, keep only what is needed
+            rewrite();
+        }
+        writer = new Thread(this::write, "posting-journal-writer");
+        writer.setDaemon(true);
+        writer.start();
+    }
+
+    /**
+     * Record that a document is about to be added. Returns once the record is
+     * on disk. The draft needs a unique reference, e.g. the order number of
+     * the feed; it is also written to the document's NumAtCard.
+     *
+     * @param draft document to add
+     */
+    public void intent(DocumentDraft draft)
+    {
+        checkReference(draft.reference);
+        synchronized (this)
+        {
+            pending.put(draft.reference, draft);
+        }
+        try
+        {
+            append(intentRecord(draft)).join();
+        }
+        catch (CompletionException e)
+        {
+            // not journaled, so the document must not be posted
+            synchronized (this)
+            {
+                pending.remove(draft.reference);
+            }
+            throw e;
+        }
+    }
+
+    /**
+     * Record that a document has been added. Does not wait for the disk, a
+     * lost commit record only turns the document into an in-doubt one.
+     *
+     * @param reference reference of the draft
+     * @param docEntry DocEntry of the new document
+     * @return future completed once the record is on disk
+     */
+    public CompletableFuture<Void> committed(String reference, int docEntry)
+    {
+        synchronized (this)
+        {
+            pending.remove(reference);
+            committed.put(reference, docEntry);
+        }
+        return append("C\t" + reference + "\t" + docEntry);
+    }
+
+    /**
+     * Record that the server rejected a document, so it is not in doubt
+     *
+     * @param reference reference of the draft
+     * @param errorCode error code returned by the server
+     * @return future completed once the record is on disk
+     */
+    public CompletableFuture<Void> failed(String reference, int errorCode)
+    {
+        synchronized (this)
+        {
+            pending.remove(reference);
+        }
+        return append("F\t" + reference + "\t" + errorCode);
+    }
+
+    /**
+     * Check whether a document has already been added, e.g. to skip it when
+     * an import is run again
+     *
+     * @param reference reference of the draft
+     * @return DocEntry, or null if not committed
+     */
+    public synchronized Integer getDocEntry(String reference)
+    {
+        return committed.get(reference);
+    }
+
+    /**
+     * Get documents which were about to be added when the process stopped.
+     * They may or may not exist in SAP Business One; use reconcile() to find
+     * out.
+     *
+     * @return drafts in journal order
+     */
+    public synchronized List<DocumentDraft> getInDoubt()
+    {
+        return new ArrayList<>(pending.values());
+    }
+
+    /**
+     * Look up in-doubt documents in the database by their reference and record
+     * the ones that were created as committed. One query per document table.
+     *
+     * @param company connected company instance
+     * @return drafts which were not created and can be posted again
+     */
+    public List<DocumentDraft> reconcile(ICompany company) throws SBOCOMException
+    {
+        Map<Integer, List<DocumentDraft>> byType = new LinkedHashMap<>();
+        for (DocumentDraft draft : getInDoubt())
+        {
+            byType.computeIfAbsent(draft.objectType, t -> new ArrayList<>()).add(draft);
+        }
+        List<DocumentDraft> notPosted = new ArrayList<>();
+        for (Map.Entry<Integer, List<DocumentDraft>> entry : byType.entrySet())
+        {
+            Map<String, DocumentDraft> drafts = new LinkedHashMap<>();
+            StringBuilder query = new StringBuilder("SELECT DocEntry, NumAtCard FROM ")
+                    .append(table(entry.getKey())).append(" WHERE NumAtCard IN (");
+            for (DocumentDraft draft : entry.getValue())
+            {
+                query.append(drafts.isEmpty() ? "N'" : ", N'").append(draft.reference.replace("'", "''")).append('\'');
+                drafts.put(draft.reference, draft);
+            }
+            query.append(')');
+            try (RecordsetCursor cursor = RecordsetCursor.open(company, query.toString()))
+            {
+                for (RecordsetCursor.Row row : cursor)
+                {
+                    if (drafts.remove(row.getString(1)) != null)
+                    {
+                        committed(row.getString(1), row.getInt(0));
+                    }
+                }
+            }
+            notPosted.addAll(drafts.values());
+        }
+        return notPosted;
+    }
+
+    /**
+     * Get number of times the file was forced to disk
+     *
+     * @return forces since the journal was opened
+     */
+    public long getFlushes()
+    {
+        return flushes;
+    }
+
+    /**
+     * Get number of records written
+     *
+     * @return records since the journal was opened
+     */
+    public long getRecords()
+    {
+        return records;
+    }
+
+    /**
+     * Rewrite the file with only the records needed to restore the current
+     * state: the DocEntry of every committed document and the draft of every
+     * document in doubt. Records queued meanwhile are written first.
+     *
+     * @return future completed once the compacted file has replaced the old
+     *         one
+     */
+    public CompletableFuture<Void> compact()
+    {
+        return enqueue(new Append(null));
+    }
+
+    /**
+     * Write outstanding records and close the file. If the calling thread is
+     * interrupted it stops waiting for the writer; records not written by
+     * then fail. Records appended after close fail at once.
+     */
+    @Override
+    public void close() throws IOException
+    {
+        synchronized (queue)
+        {
+            closed = true;
+            queue.add(STOP);
+        }
+        try
+        {
+            writer.join();
+        }
+        catch (InterruptedException e)
+        {
+            Thread.currentThread().interrupt();
+        }
+        channel.close();
+        // left behind if the writer was interrupted
+        failQueued();
+    }
+
+    /**
+     * Table holding documents of the given Object Type
+     */
+    static String table(int objectType)
+    {
+        switch (objectType)
+        {
+            case 13: return "OINV";
+            case 14: return "ORIN";
+            case 15: return "ODLN";
+            case 17: return "ORDR";
+            case 18: return "OPCH";
+            case 20: return "OPDN";
+            case 22: return "OPOR";
+            case 23: return "OQUT";
+            case 1470000113: return "OPRQ";
+            default: throw new IllegalArgumentException("Unknown document Object Type " + objectType);
+        }
+    }
+
+    private CompletableFuture<Void> append(String record)
+    {
+        return enqueue(new Append(line(record)));
+    }
+
+    private CompletableFuture<Void> enqueue(Append append)
+    {
+        synchronized (queue)
+        {
+            if (closed)
+            {
+                append.done.completeExceptionally(new IllegalStateException("Posting journal is closed"));
+                return append.done;
+            }
+            queue.add(append);
+        }
+        return append.done;
+    }
+
+    /**
+     * Fail everything still queued, nobody will write it
+     */
+    private void failQueued()
+    {
+        synchronized (queue)
+        {
+            closed = true;
+        }
+        Append append;
+        while ((append = queue.poll()) != null)
+        {
+            append.done.completeExceptionally(new IllegalStateException("Posting journal is closed"));
+        }
+    }
+
+    /**
+     * Writer thread: take everything queued, write it and force once
+     */
+    private void write()
+    {
+        List<Append> group = new ArrayList<>();
+        boolean stop = false;
+        while (!stop)
+        {
+            try
+            {
+                group.add(queue.take());
+            }
+            catch (InterruptedException e)
+            {
+                failQueued();
+                Thread.currentThread().interrupt();
+                return;
+            }
+            queue.drainTo(group);
+            stop = group.remove(STOP);
+            try
+            {
+                int size = 0;
+                int written = 0;
+                boolean compact = false;
+                for (Append append : group)
+                {
+                    if (append.bytes == null)
+                    {
+                        compact = true;
+                    }
+                    else
+                    {
+                        size += append.bytes.length;
+                        written++;
+                    }
+                }
+                ByteBuffer buffer = ByteBuffer.allocate(size);
+                for (Append append : group)
+                {
+                    if (append.bytes != null)
+                    {
+                        buffer.put(append.bytes);
+                    }
+                }
+                buffer.flip();
+                while (buffer.hasRemaining())
+                {
+                    channel.write(buffer);
+                }
+                if (written > 0)
+                {
+                    channel.force(false);
+                    flushes++;
+                    records += written;
+                }
+                if (compact)
+                {
+                    rewrite();
+                }
+                for (Append append : group)
+                {
+                    append.done.complete(null);
+                }
+            }
+            catch (IOException e)
+            {
+                for (Append append : group)
+                {
+                    append.done.completeExceptionally(new CompletionException(new UncheckedIOException(e)));
+                }
+            }
+            group.clear();
+        }
+    }
+
+    /**
+     * Replace the file with the records of the current state, on the writer
+     * thread or before it is started
+     */
+    private void rewrite() throws IOException
+    {
+        ByteArrayOutputStream lines = new ByteArrayOutputStream();
+        synchronized (this)
+        {
+            for (Map.Entry<String, Integer> entry : committed.entrySet())
+            {
+                lines.write(line("C\t" + entry.getKey() + "\t" + entry.getValue()));
+            }
+            for (DocumentDraft draft : pending.values())
+            {
+                lines.write(line(intentRecord(draft)));
+            }
+        }
+        Path compacted = file.resolveSibling(file.getFileName() + ".compact");
+        try (FileChannel out = FileChannel.open(compacted, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING))
+        {
+            ByteBuffer buffer = ByteBuffer.wrap(lines.toByteArray());
+            while (buffer.hasRemaining())
+            {
+                out.write(buffer);
+            }
+            out.force(true);
+        }
+        channel.close();
+        try
+        {
+            Files.move(compacted, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        }
+        finally
+        {
+            channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                    StandardOpenOption.APPEND);
+        }
+    }
+
+    /**
+     * Read the records up to the first incomplete or damaged one and cut the
+     * file there, so the next record is not appended to a torn one. Groups
+     * are forced in order, so only the tail of the file can be damaged.
+     *
+     * @return number of records read
+     */
+    private long replay() throws IOException
+    {
+        long valid = 0;
+        long count = 0;
+        try (InputStream in = new BufferedInputStream(Files.newInputStream(file)))
+        {
+            ByteArrayOutputStream line = new ByteArrayOutputStream();
+            long offset = 0;
+            int b;
+            while ((b = in.read()) != -1)
+            {
+                offset++;
+                if (b != '\n')
+                {
+                    line.write(b);
+                    continue;
+                }
+                if (!apply(new String(line.toByteArray(), StandardCharsets.UTF_8)))
+                {
+                    break;
+                }
+                line.reset();
+                valid = offset;
+                count++;
+            }
+        }
+        long size = Files.size(file);
+        if (valid < size)
+        {
+            System.err.println("Cutting " + (size - valid) + " bytes of torn records from the end of " + file);
+            try (FileChannel cut = FileChannel.open(file, StandardOpenOption.WRITE))
+            {
+                cut.truncate(valid);
+                cut.force(true);
+            }
+        }
+        return count;
+    }
+
+    /**
+     * Apply a replayed record
+     *
+     * @return false if the record is damaged
+     */
+    private boolean apply(String line)
+    {
+        int tab = line.lastIndexOf('\t');
+        if (tab < 0 || line.length() - tab - 1 != 8)
+        {
+            return false;
+        }
+        String content = line.substring(0, tab);
+        try
+        {
+            if (Long.parseLong(line.substring(tab + 1), 16) != crc(content))
+            {
+                return false;
+            }
+            String[] record = content.split("\t", 3);
+            if (record.length < 3)
+            {
+                return false;
+            }
+            switch (record[0])
+            {
+                case "I":
+                    pending.put(record[1], decode(Base64.getDecoder().decode(record[2])));
+                    return true;
+                case "C":
+                    pending.remove(record[1]);
+                    committed.put(record[1], Integer.parseInt(record[2]));
+                    return true;
+                case "F":
+                    pending.remove(record[1]);
+                    return true;
+                default:
+                    return false;
+            }
+        }
+        catch (IllegalArgumentException | IOException e)
+        {
+            return false;
+        }
+    }
+
+    private static String intentRecord(DocumentDraft draft)
+    {
+        return "I\t" + draft.reference + "\t" + Base64.getEncoder().encodeToString(encode(draft));
+    }
+
+    /**
+     * Get the bytes of a record line: content, tab, CRC32 in 8 hex digits
+     */
+    private static byte[] line(String content)
+    {
+        return String.format("%s\t%08x\n", content, crc(content)).getBytes(StandardCharsets.UTF_8);
+    }
+
+    private static long crc(String content)
+    {
+        CRC32 crc = new CRC32();
+        crc.update(content.getBytes(StandardCharsets.UTF_8));
+        return crc.getValue();
+    }
+
+    static void checkReference(String reference)
+    {
+        if (reference == null || reference.isEmpty() || reference.indexOf('\t') >= 0 || reference.indexOf('\n') >= 0)
+        {
+            throw new IllegalArgumentException("Journaled documents need a reference without tabs or line breaks");
+        }
+    }
+
+    private static byte[] encode(DocumentDraft draft)
+    {
+        try
+        {
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            DataOutputStream out = new DataOutputStream(bytes);
+            out.writeInt(draft.objectType);
+            out.writeUTF(draft.cardCode == null ? "" : draft.cardCode);
+            out.writeInt(draft.docType);
+            out.writeLong(draft.docDate == null ? Long.MIN_VALUE : draft.docDate.getTime());
+            out.writeLong(draft.docDueDate == null ? Long.MIN_VALUE : draft.docDueDate.getTime());
+            out.writeUTF(draft.reference);
+            out.writeInt(draft.lines.size());
+            for (DocumentDraft.Line line : draft.lines)
+            {
+                out.writeUTF(line.itemCode);
+                out.writeDouble(line.quantity);
+            }
+            return bytes.toByteArray();
+        }
+        catch (IOException e)
+        {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private static DocumentDraft decode(byte[] bytes) throws IOException
+    {
+        DataInputStream in = new DataInputStream(new ByteArrayInputStream(bytes));
+        DocumentDraft draft = new DocumentDraft(in.readInt());
+        draft.cardCode = in.readUTF();
+        draft.docType = in.readInt();
+        long docDate = in.readLong();
+        draft.docDate = docDate == Long.MIN_VALUE ? null : new Date(docDate);
+        long docDueDate = in.readLong();
+        draft.docDueDate = docDueDate == Long.MIN_VALUE ? null : new Date(docDueDate);
+        draft.reference = in.readUTF();
+        int lines = in.readInt();
+        for (int i = 0; i < lines; i++)
+        {
+            draft.addLine(in.readUTF(), in.readDouble());
+        }
+        return draft;
+    }
+
+    /**
+     * Record waiting to be written
+     */
+    private static class Append
+    {
+        final byte[] bytes;
+        final CompletableFuture<Void> done = new CompletableFuture<>();
+
+        Append(byte[] bytes)
+        {
+            this.bytes = bytes;
+        }
+    }
+}
@@ -0,0 +1,733 @@
+/*
+ * Caches results of read-only queries, so jobs which run the same lookup
+ * (list of Business Partners, unprinted invoices, ...) within minutes of each
+ * other do not send it to SQL Server again. Results are keyed by company
+ * database and normalized SQL - whitespace and letter case outside string
+ * literals do not matter. Every result is kept as one immutable block of
+ * values, and the least recently used results are dropped when the cache
+ * grows over its size limit.
+ * Results expire after a time to live, which can be set per table, and can
+ * be dropped at once for a table - e.g. by subscribing invalidator() to the
+ * changed tables of a ChangePoller. Queries which are not a SELECT, and queries whose tables
+ * can't be told for sure - table variables, temp tables, functions in FROM,
+ * several statements - are never cached. Queries of a QueryTemplate run
+ * through sp_executesql are cached by statement and values.
+ * For this program to work, you need SAP Business One DI API installed.
+ */
+
+/*
+ * Import JCO libraries from DI API folder. Two files need to be added to your
+ * project libraries - sboapi.jar and sbowrapper.jar
+ * The files are usually located in:
+ * C:\Program Files (x86)\SAP\SAP Business One DI API\JCO\LIB - 32 bit build
+ * C:\Program Files\SAP\SAP Business One DI API\JCO\LIB - 64 bit build
+ */
+import com.sap.smb.sbo.api.*;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.Consumer;
+
+/**
+ *
+ * @author Rafal Rozmus (rozmus.rafal@gmail.com)
+ */
+public class QueryCache
+{
+
+    // keywords ending the table list of a FROM clause
+    private static final Set<String> CLAUSE_ENDS = new HashSet<>(Arrays.asList("WHERE", "GROUP", "ORDER",
+            "HAVING", "UNION", "EXCEPT", "INTERSECT", "OPTION", "FOR"));
+    // start of a statement run by sp_executesql, normalized
+    private static final String[] EXECUTESQL = {"EXEC SP_EXECUTESQL N'", "EXECUTE SP_EXECUTESQL N'"};
+
+    // limit of the estimated size of all cached results, in bytes
+    private final long maxBytes;
+    // time to live of results, unless set for a table
+    private final long ttlMillis;
+    private final Map<String, Long> tableTtl = new HashMap<>();
+    // results in access order, least recently used first
+    private final LinkedHashMap<String, Entry> entries = new LinkedHashMap<>(16, 0.75f, true);
+    private long bytes = 0;
+    // invalidations by table of all companies; a result loaded across an
+    // invalidation of one of its tables is not stored
+    private final Map<String, Long> generations = new HashMap<>();
+    // invalidateAll() calls
+    private long clears = 0;
+    // statistics
+    private long hits = 0;
+    private long misses = 0;
+    private long evictions = 0;
+
+    public static void main(String[] args) throws Exception
+    {
+        ICompany company = new ConnectionSettings().connect("SBODemoGB");
+        try
+        {
+            QueryCache cache = new QueryCache(64L << 20, 5 * 60 * 1000);
+            cache.setTtl("OINV", 30 * 1000);
+            for (int i = 0; i < 3; i++)
+            {
+                CachedResult result = cache.query(company,
+                        "SELECT DocEntry, CardCode FROM OINV WHERE Printed = 'N'");
+                System.out.println(result.getRowCount() + " unprinted invoices");
+            }
+            System.out.println(cache);
+        }
+        finally
+        {
+            company.disconnect();
+        }
+    }
+
+    /**
+     * @param maxBytes limit of the estimated memory used by cached results
+     * @param ttlMillis how long a result is kept, unless set for its tables
+     */
+    public QueryCache(long maxBytes, long ttlMillis)
+    {
+        if (maxBytes < 1 || ttlMillis < 0)
+        {
+            throw new IllegalArgumentException("Invalid size limit " + maxBytes + " or time to live " + ttlMillis);
+        }
+        this.maxBytes = maxBytes;
+        this.ttlMillis = ttlMillis;
+    }
+
+    /**
+     * Set how long results reading a table are kept. A result reading
+     * several tables expires with the shortest time to live of them.
+     *
+     * @param table table name, e.g. OINV
+     * @param ttlMillis time to live, 0 not to cache queries of the table
+     */
+    public synchronized void setTtl(String table, long ttlMillis)
+    {
+        tableTtl.put(table.toUpperCase(Locale.ROOT), ttlMillis);
+    }
+
+    /**
+     * Run a query, or return its cached result
+     *
+     * @param company connected company instance
+     * @param query SQL query
+     * @return rows of the query
+     */
+    public CachedResult query(ICompany company, String query) throws SBOCOMException
+    {
+        String sql = normalize(query);
+        String statement = statement(sql);
+        Set<String> tables = statement == null ? null : tables(statement);
+        if (tables == null || tables.isEmpty())
+        {
+            // writes, temp tables and queries of unknown tables are run every time
+            return load(company, query, Collections.<String>emptySet());
+        }
+        String key = company.getCompanyDB().toUpperCase(Locale.ROOT) + "\n" + sql;
+        long generation;
+        synchronized (this)
+        {
+            Entry entry = entries.get(key);
+            if (entry != null && entry.expires > System.currentTimeMillis())
+            {
+                hits++;
+                return entry.result;
+            }
+            if (entry != null)
+            {
+                remove(key);
+            }
+            misses++;
+            generation = generation(tables);
+        }
+        CachedResult result = load(company, query, tables);
+        long ttl = ttl(tables);
+        synchronized (this)
+        {
+            // a result loaded while its tables changed may be stale already
+            if (ttl > 0 && generation == generation(tables) && result.bytes <= maxBytes)
+            {
+                Entry old = entries.put(key, new Entry(result, System.currentTimeMillis() + ttl));
+                if (old != null)
+                {
+                    bytes -= old.result.bytes;
+                }
+                bytes += result.bytes;
+                evict();
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Drop cached results reading a table
+     *
+     * @param companyDb company database, null for all companies
+     * @param table table name, e.g. OINV
+     */
+    public synchronized void invalidate(String companyDb, String table)
+    {
+        String prefix = companyDb == null ? null : companyDb.toUpperCase(Locale.ROOT) + "\n";
+        String name = table.toUpperCase(Locale.ROOT);
+        generations.merge(name, 1L, Long::sum);
+        Iterator<Map.Entry<String, Entry>> it = entries.entrySet().iterator();
+        while (it.hasNext())
+        {
+            Map.Entry<String, Entry> entry = it.next();
+            if ((prefix == null || entry.getKey().startsWith(prefix)) && entry.getValue().result.tables.contains(name))
+            {
+                bytes -= entry.getValue().result.bytes;
+                it.remove();
+            }
+        }
+    }
+
+    /**
+     * Drop all cached results
+     */
+    public synchronized void invalidateAll()
+    {
+        clears++;
+        entries.clear();
+        bytes = 0;
+    }
+
+    /**
+     * Get a subscriber which drops results of changed tables, for
+     * ChangePoller.subscribeTables(); it is called once per table and poll,
+     * not for every changed row
+     *
+     * @param companyDb company database the poller watches
+     * @return changed table subscriber
+     */
+    public Consumer<String> invalidator(String companyDb)
+    {
+        return table -> invalidate(companyDb, table);
+    }
+
+    public synchronized long getHits()
+    {
+        return hits;
+    }
+
+    public synchronized long getMisses()
+    {
+        return misses;
+    }
+
+    public synchronized long getEvictions()
+    {
+        return evictions;
+    }
+
+    /**
+     * Get estimated memory used by cached results
+     *
+     * @return bytes
+     */
+    public synchronized long getBytes()
+    {
+        return bytes;
+    }
+
+    @Override
+    public synchronized String toString()
+    {
+        return entries.size() + " results, " + bytes + " bytes, " + hits + " hits, " + misses + " misses, "
+                + evictions + " evicted";
+    }
+
+    /**
+     * Collapse whitespace and upper case everything outside string literals,
+     * drop comments and a trailing semicolon
+     */
+    static String normalize(String query)
+    {
+        StringBuilder sql = new StringBuilder(query.length());
+        char quote = 0;
+        boolean space = false;
+        for (int i = 0; i < query.length(); i++)
+        {
+            char c = query.charAt(i);
+            if (quote == 0 && c == '-' && query.startsWith("-", i + 1))
+            {
+                // comment to the end of the line, read as whitespace
+                while (i + 1 < query.length() && query.charAt(i + 1) != '\n')
+                {
+                    i++;
+                }
+                space = sql.length() > 0;
+            }
+            else if (quote == 0 && c == '/' && query.startsWith("*", i + 1))
+            {
+                // block comment, they nest in T-SQL
+                int depth = 0;
+                for (; i < query.length(); i++)
+                {
+                    if (query.startsWith("/*", i))
+                    {
+                        depth++;
+                        i++;
+                    }
+                    else if (query.startsWith("*/", i))
+                    {
+                        i++;
+                        if (--depth == 0)
+                        {
+                            break;
+                        }
+                    }
+                }
+                space = sql.length() > 0;
+            }
+            else if (quote != 0)
+            {
+                // only string literals are case sensitive
+                sql.append(quote == '\'' ? c : Character.toUpperCase(c));
+                if (c == quote)
+                {
+                    quote = 0;
+                }
+            }
+            else if (Character.isWhitespace(c))
+            {
+                space = sql.length() > 0;
+            }
+            else
+            {
+                if (space)
+                {
+                    sql.append(' ');
+                    space = false;
+                }
+                if (c == '\'' || c == '"')
+                {
+                    quote = c;
+                }
+                else if (c == '[')
+                {
+                    quote = ']';
+                }
+                sql.append(Character.toUpperCase(c));
+            }
+        }
+        int end = sql.length();
+        while (end > 0 && (sql.charAt(end - 1) == ';' || sql.charAt(end - 1) == ' '))
+        {
+            end--;
+        }
+        sql.setLength(end);
+        return sql.toString();
+    }
+
+    /**
+     * Get the statement a normalized query runs: the query itself, or the
+     * statement of an sp_executesql call, e.g. of a QueryTemplate
+     *
+     * @return normalized statement, null if it is not a SELECT or may write
+     */
+    static String statement(String sql)
+    {
+        for (String prefix : EXECUTESQL)
+        {
+            if (sql.startsWith(prefix))
+            {
+                int end = prefix.length();
+                while (end < sql.length() && (sql.charAt(end) != '\'' || sql.startsWith("''", end)))
+                {
+                    end += sql.startsWith("''", end) ? 2 : 1;
+                }
+                sql = normalize(sql.substring(prefix.length(), Math.min(end, sql.length())).replace("''", "'"));
+                break;
+            }
+        }
+        return sql.startsWith("SELECT ") && !sql.contains(" INTO ") ? sql : null;
+    }
+
+    /**
+     * Get tables read by a normalized statement: every table of a FROM
+     * list, comma separated ones too, every joined table, and the tables of
+     * subqueries
+     *
+     * @return upper case table names, null if they can't be told for sure,
+     *         e.g. for a table variable, a temp table, a function or several
+     *         statements
+     */
+    static Set<String> tables(String sql)
+    {
+        List<String> tokens = tokens(sql);
+        Set<String> tables = new HashSet<>();
+        for (int i = 0; i < tokens.size(); i++)
+        {
+            String token = tokens.get(i);
+            if (token.equals(";"))
+            {
+                return null;
+            }
+            if (token.equals("JOIN") && !table(tokens, i + 1, tables))
+            {
+                return null;
+            }
+            if (token.equals("FROM"))
+            {
+                if (!table(tokens, i + 1, tables))
+                {
+                    return null;
+                }
+                // the rest of the table list, up to the next clause
+                int depth = 0;
+                for (int j = i + 1; j < tokens.size(); j++)
+                {
+                    String next = tokens.get(j);
+                    if (next.equals("("))
+                    {
+                        depth++;
+                    }
+                    else if (next.equals(")"))
+                    {
+                        if (depth-- == 0)
+                        {
+                            break;
+                        }
+                    }
+                    else if (depth == 0 && CLAUSE_ENDS.contains(next))
+                    {
+                        break;
+                    }
+                    else if (depth == 0 && next.equals(",") && !table(tokens, j + 1, tables))
+                    {
+                        return null;
+                    }
+                }
+            }
+        }
+        return tables;
+    }
+
+    /**
+     * Read the table at a position of the token list. A subquery is fine,
+     * its own FROM is read by tables().
+     *
+     * @return false if there is no table name
+     */
+    private static boolean table(List<String> tokens, int i, Set<String> tables)
+    {
+        if (i < tokens.size() && tokens.get(i).equals("("))
+        {
+            return true;
+        }
+        String name = null;
+        while (i < tokens.size() && isName(tokens.get(i)))
+        {
+            name = tokens.get(i++);
+            if (i < tokens.size() && tokens.get(i).equals("."))
+            {
+                i++;
+                continue;
+            }
+            break;
+        }
+        if (name == null || (i < tokens.size() && tokens.get(i).equals("(")))
+        {
+            // nothing or a table valued function
+            return false;
+        }
+        if (name.startsWith("[") || name.startsWith("\""))
+        {
+            name = name.substring(1, name.length() - 1);
+        }
+        tables.add(name.toUpperCase(Locale.ROOT));
+        return true;
+    }
+
+    /**
+     * Check for a table name, not a variable, a temp table or a literal
+     */
+    private static boolean isName(String token)
+    {
+        char c = token.charAt(0);
+        return (Character.isLetter(c) || c == '_' || c == '[' || c == '"') && !token.startsWith("[#");
+    }
+
+    /**
+     * Split a normalized statement into names, quoted names, string
+     * literals and single characters
+     */
+    private static List<String> tokens(String sql)
+    {
+        List<String> tokens = new ArrayList<>();
+        int i = 0;
+        while (i < sql.length())
+        {
+            char c = sql.charAt(i);
+            int end = i + 1;
+            if (c == ' ')
+            {
+                i++;
+                continue;
+            }
+            if (c == '\'' || c == '"' || c == '[')
+            {
+                char quote = c == '[' ? ']' : c;
+                while (end < sql.length() && sql.charAt(end) != quote)
+                {
+                    end++;
+                }
+                end = Math.min(end + 1, sql.length());
+            }
+            else if (Character.isLetterOrDigit(c) || c == '_' || c == '@' || c == '#' || c == '$')
+            {
+                while (end < sql.length() && (Character.isLetterOrDigit(sql.charAt(end)) || sql.charAt(end) == '_'
+                        || sql.charAt(end) == '@' || sql.charAt(end) == '#' || sql.charAt(end) == '$'))
+                {
+                    end++;
+                }
+            }
+            tokens.add(sql.substring(i, end));
+            i = end;
+        }
+        return tokens;
+    }
+
+    private CachedResult load(ICompany company, String query, Set<String> tables) throws SBOCOMException
+    {
+        try (RecordsetCursor cursor = RecordsetCursor.open(company, query))
+        {
+            return new CachedResult(cursor, tables);
+        }
+    }
+
+    /**
+     * Sum of the invalidations of the tables, it changes when any of them is
+     * invalidated
+     */
+    private long generation(Set<String> tables)
+    {
+        long generation = clears;
+        for (String table : tables)
+        {
+            generation += generations.getOrDefault(table, 0L);
+        }
+        return generation;
+    }
+
+    private synchronized long ttl(Set<String> tables)
+    {
+        long ttl = ttlMillis;
+        for (String table : tables)
+        {
+            Long t = tableTtl.get(table);
+            if (t != null)
+            {
+                ttl = Math.min(ttl, t);
+            }
+        }
+        return ttl;
+    }
+
+    private void remove(String key)
+    {
+        Entry entry = entries.remove(key);
+        if (entry != null)
+        {
+            bytes -= entry.result.bytes;
+        }
+    }
+
+    private void evict()
+    {
+        Iterator<Entry> it = entries.values().iterator();
+        while (bytes > maxBytes && it.hasNext())
+        {
+            bytes -= it.next().result.bytes;
+            it.remove();
+            evictions++;
+        }
+    }
+
+    private static class Entry
+    {
+        final CachedResult result;
+        final long expires;
+
+        Entry(CachedResult result, long expires)
+        {
+            this.result = result;
+            this.expires = expires;
+        }
+    }
+
+    /**
+     * Immutable result of a query. All values are kept in one array, row
+     * after row; dates are returned as copies.
+     */
+    public static class CachedResult
+    {
+        private final String[] names;
+        private final int[] types;
+        private final Object[] values;
+        private final int rows;
+        // tables read by the query, upper case
+        final Set<String> tables;
+        // estimated memory used
+        final long bytes;
+
+        CachedResult(RecordsetCursor cursor, Set<String> tables)
+        {
+            int columns = cursor.getColumnCount();
+            names = new String[columns];
+            types = new int[columns];
+            long size = 64;
+            for (int i = 0; i < columns; i++)
+            {
+                names[i] = cursor.getColumnName(i);
+                types[i] = cursor.getColumnType(i);
+                size += 48 + 2 * names[i].length();
+            }
+            Object[] block = new Object[columns * 64];
+            int count = 0;
+            for (RecordsetCursor.Row row : cursor)
+            {
+                if ((count + 1) * columns > block.length)
+                {
+                    block = Arrays.copyOf(block, block.length * 2);
+                }
+                for (int i = 0; i < columns; i++)
+                {
+                    Object value = row.getValue(i);
+                    block[count * columns + i] = value;
+                    size += 8 + estimate(value);
+                }
+                count++;
+            }
+            values = Arrays.copyOf(block, count * columns);
+            rows = count;
+            this.tables = Collections.unmodifiableSet(tables);
+            bytes = size;
+        }
+
+        private static long estimate(Object value)
+        {
+            if (value == null)
+            {
+                return 0;
+            }
+            if (value instanceof String)
+            {
+                return 40 + 2 * ((String) value).length();
+            }
+            return value instanceof Date ? 24 : 16;
+        }
+
+        public int getRowCount()
+        {
+            return rows;
+        }
+
+        public int getColumnCount()
+        {
+            return names.length;
+        }
+
+        public String getColumnName(int column)
+        {
+            return names[column];
+        }
+
+        /**
+         * Get type of a column, one of SBOCOMConstants.BoFieldTypes_db_*
+         */
+        public int getColumnType(int column)
+        {
+            return types[column];
+        }
+
+        /**
+         * Find column position by name, ignoring case
+         *
+         * @param name column name, e.g. CardCode
+         * @return column position, starting from 0
+         */
+        public int getColumnIndex(String name)
+        {
+            for (int i = 0; i < names.length; i++)
+            {
+                if (names[i].equalsIgnoreCase(name))
+                {
+                    return i;
+                }
+            }
+            throw new IllegalArgumentException("No column " + name + " in query result");
+        }
+
+        public Object getValue(int row, int column)
+        {
+            if (column < 0 || column >= names.length)
+            {
+                throw new IndexOutOfBoundsException("Column " + column);
+            }
+            Object value = values[row * names.length + column];
+            return value instanceof Date ? new Date(((Date) value).getTime()) : value;
+        }
+
+        public String getString(int row, int column)
+        {
+            Object value = getValue(row, column);
+            return value == null ? null : value.toString();
+        }
+
+        public int getInt(int row, int column)
+        {
+            Object value = getValue(row, column);
+            if (value == null)
+            {
+                return 0;
+            }
+            return value instanceof Number ? ((Number) value).intValue() : Integer.parseInt(value.toString().trim());
+        }
+
+        public double getDouble(int row, int column)
+        {
+            Object value = getValue(row, column);
+            if (value == null)
+            {
+                return 0;
+            }
+            return value instanceof Number ? ((Number) value).doubleValue() : Double.parseDouble(value.toString().trim());
+        }
+
+        public Date getDate(int row, int column)
+        {
+            return (Date) getValue(row, column);
+        }
+
+        public String getString(int row, String column)
+        {
+            return getString(row, getColumnIndex(column));
+        }
+
+        public int getInt(int row, String column)
+        {
+            return getInt(row, getColumnIndex(column));
+        }
+
+        public double getDouble(int row, String column)
+        {
+            return getDouble(row, getColumnIndex(column));
+        }
+
+        public Date getDate(int row, String column)
+        {
+            return getDate(row, getColumnIndex(column));
+        }
+    }
+}
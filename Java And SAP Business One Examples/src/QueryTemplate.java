@@ -0,0 +1,455 @@
+/*
+ * Query with named parameters instead of values pasted into the SQL text.
+ * Parameters are written as :Name in the query and bound with typed setters;
+ * the query is sent to doQuery() through sp_executesql, so SQL Server sees
+ * the same statement text for every value and reuses its plan, and values
+ * never become part of the statement. Templates are parsed once and kept by
+ * their text, the parts of the rendered query which do not depend on values
+ * are prepared at parse time, and every template counts its executions and
+ * time spent in doQuery(). Names inside string literals, quoted names and
+ * comments are not parameters, and a :: cast is left alone.
+ * sp_executesql is SQL Server only, templates can't be used on SAP HANA.
+ * For this program to work, you need SAP Business One DI API installed.
+ */
+
+/*
+ * Import JCO libraries from DI API folder. Two files need to be added to your
+ * project libraries - sboapi.jar and sbowrapper.jar
+ * The files are usually located in:
+ * C:\Program Files (x86)\SAP\SAP Business One DI API\JCO\LIB - 32 bit build
+ * C:\Program Files\SAP\SAP Business One DI API\JCO\LIB - 64 bit build
+ */
+import com.sap.smb.sbo.api.*;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Date;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ *
+ * @author Rafal Rozmus (rozmus.rafal@gmail.com)
+ */
+public class QueryTemplate
+{
+
+    // parsed templates by their text; templates are meant to be constants,
+    // past this many new ones are parsed but not kept
+    private static final int MAX_TEMPLATES = 1000;
+    private static final Map<String, QueryTemplate> TEMPLATES = new ConcurrentHashMap<>();
+    private static final DateTimeFormatter DATETIME = DateTimeFormatter.ofPattern("yyyy-MM-dd'T'HH:mm:ss.SSS");
+    // parameter types and their SQL Server declarations; strings are always
+    // nvarchar(4000) so values of any length share one plan
+    static final int STRING = 0;
+    static final int INT = 1;
+    static final int FLOAT = 2;
+    static final int DATE = 3;
+    private static final String[] SQL_TYPES = {"nvarchar(4000)", "int", "float", "datetime"};
+
+    private final String sql;
+    // parameter names in order of first use
+    private final String[] names;
+    // "EXEC sp_executesql N'...', N'" - everything up to the declarations
+    private final String prefix;
+    // declarations by type signature, see declaration()
+    private final Map<Long, String> declarations = new ConcurrentHashMap<>();
+    // statistics
+    private final LongAdder executions = new LongAdder();
+    private final LongAdder failures = new LongAdder();
+    private final LongAdder totalNanos = new LongAdder();
+    private final AtomicLong maxNanos = new AtomicLong();
+
+    public static void main(String[] args) throws Exception
+    {
+        ICompany company = new ConnectionSettings().connect("SBODemoGB");
+        try
+        {
+            QueryTemplate template = QueryTemplate.of(
+                    "SELECT CardCode, CardName FROM OCRD WHERE CardType = :CardType AND CardName LIKE :Name");
+            try (RecordsetCursor cursor = template.bind()
+                    .set("CardType", "C")
+                    .set("Name", "A%")
+                    .open(company))
+            {
+                for (RecordsetCursor.Row row : cursor)
+                {
+                    System.out.println(row.getString(0) + "\t" + row.getString(1));
+                }
+            }
+            System.out.println(template);
+        }
+        finally
+        {
+            company.disconnect();
+        }
+    }
+
+    private QueryTemplate(String sql)
+    {
+        this.sql = sql;
+        List<String> found = new ArrayList<>();
+        StringBuilder statement = new StringBuilder(sql.length());
+        char quote = 0;
+        for (int i = 0; i < sql.length(); i++)
+        {
+            char c = sql.charAt(i);
+            if (quote != 0)
+            {
+                if (c == quote)
+                {
+                    quote = 0;
+                }
+            }
+            else if (c == '\'' || c == '"')
+            {
+                quote = c;
+            }
+            else if (c == '[')
+            {
+                quote = ']';
+            }
+            else if (c == '-' && sql.startsWith("-", i + 1))
+            {
+                // comment to the end of the line, kept as it is
+                int end = sql.indexOf('\n', i);
+                end = end < 0 ? sql.length() : end;
+                statement.append(sql, i, end);
+                i = end - 1;
+                continue;
+            }
+            else if (c == '/' && sql.startsWith("*", i + 1))
+            {
+                // block comment, they nest in T-SQL
+                int end = i;
+                int depth = 0;
+                while (end < sql.length())
+                {
+                    if (sql.startsWith("/*", end))
+                    {
+                        depth++;
+                        end += 2;
+                    }
+                    else if (sql.startsWith("*/", end))
+                    {
+                        end += 2;
+                        if (--depth == 0)
+                        {
+                            break;
+                        }
+                    }
+                    else
+                    {
+                        end++;
+                    }
+                }
+                if (depth != 0)
+                {
+                    throw new IllegalArgumentException("Unclosed comment in query template: " + sql);
+                }
+                statement.append(sql, i, end);
+                i = end - 1;
+                continue;
+            }
+            else if (c == ':' && i + 1 < sql.length() && isNameStart(sql.charAt(i + 1))
+                    && (i == 0 || sql.charAt(i - 1) != ':'))
+            {
+                int end = i + 1;
+                while (end < sql.length() && (Character.isLetterOrDigit(sql.charAt(end)) || sql.charAt(end) == '_'))
+                {
+                    end++;
+                }
+                String name = sql.substring(i + 1, end);
+                int index = indexOf(found, name);
+                if (index < 0)
+                {
+                    index = found.size();
+                    found.add(name);
+                }
+                // names ignore case, write them as first used
+                statement.append('@').append(found.get(index));
+                i = end - 1;
+                continue;
+            }
+            statement.append(c);
+        }
+        if (quote != 0)
+        {
+            throw new IllegalArgumentException("Unclosed " + quote + " in query template: " + sql);
+        }
+        names = found.toArray(new String[0]);
+        prefix = "EXEC sp_executesql N'" + statement.toString().replace("'", "''") + "', N'";
+    }
+
+    /**
+     * Get the parsed template of a query
+     *
+     * @param sql query with :Name parameters, e.g. "SELECT ... WHERE CardCode
+     *        = :CardCode"; parameters inside quotes and comments are not
+     *        recognised
+     * @return template, the same instance for the same text
+     */
+    public static QueryTemplate of(String sql)
+    {
+        QueryTemplate template = TEMPLATES.get(sql);
+        if (template != null)
+        {
+            return template;
+        }
+        template = new QueryTemplate(sql);
+        if (TEMPLATES.size() < MAX_TEMPLATES)
+        {
+            QueryTemplate existing = TEMPLATES.putIfAbsent(sql, template);
+            return existing == null ? template : existing;
+        }
+        return template;
+    }
+
+    /**
+     * Get all kept templates, e.g. to print their statistics
+     */
+    public static Collection<QueryTemplate> getTemplates()
+    {
+        return Collections.unmodifiableCollection(TEMPLATES.values());
+    }
+
+    /**
+     * Start binding values for one execution
+     *
+     * @return empty parameters
+     */
+    public Parameters bind()
+    {
+        return new Parameters();
+    }
+
+    public String getSql()
+    {
+        return sql;
+    }
+
+    /**
+     * Get parameter names in order of first use
+     */
+    public List<String> getParameterNames()
+    {
+        return Collections.unmodifiableList(Arrays.asList(names));
+    }
+
+    public long getExecutions()
+    {
+        return executions.sum();
+    }
+
+    public long getFailures()
+    {
+        return failures.sum();
+    }
+
+    /**
+     * Get average time of doQuery() in milliseconds
+     */
+    public double getAverageMillis()
+    {
+        long count = executions.sum();
+        return count == 0 ? 0 : totalNanos.sum() / 1e6 / count;
+    }
+
+    public double getMaxMillis()
+    {
+        return maxNanos.get() / 1e6;
+    }
+
+    @Override
+    public String toString()
+    {
+        return String.format("%d executions, %d failed, avg %.3f ms, max %.3f ms: %s", getExecutions(),
+                getFailures(), getAverageMillis(), getMaxMillis(), sql);
+    }
+
+    private static boolean isNameStart(char c)
+    {
+        return Character.isLetter(c) || c == '_';
+    }
+
+    private static int indexOf(List<String> names, String name)
+    {
+        for (int i = 0; i < names.size(); i++)
+        {
+            if (names.get(i).equalsIgnoreCase(name))
+            {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    private int index(String name)
+    {
+        for (int i = 0; i < names.length; i++)
+        {
+            if (names[i].equalsIgnoreCase(name))
+            {
+                return i;
+            }
+        }
+        throw new IllegalArgumentException("No parameter " + name + " in query template: " + sql);
+    }
+
+    /**
+     * Get the declaration list for the bound types, e.g. "@CardCode
+     * nvarchar(4000), @Qty int"
+     */
+    private String declaration(int[] types)
+    {
+        if (names.length > 31)
+        {
+            // signature would overflow, don't cache
+            return declare(types);
+        }
+        long signature = 0;
+        for (int type : types)
+        {
+            signature = signature * 4 + type;
+        }
+        return declarations.computeIfAbsent(signature, k -> declare(types));
+    }
+
+    private String declare(int[] types)
+    {
+        StringBuilder declaration = new StringBuilder();
+        for (int i = 0; i < names.length; i++)
+        {
+            declaration.append(i == 0 ? "@" : ", @").append(names[i]).append(' ').append(SQL_TYPES[types[i]]);
+        }
+        return declaration.toString();
+    }
+
+    private void record(long nanos, boolean failed)
+    {
+        executions.increment();
+        totalNanos.add(nanos);
+        maxNanos.accumulateAndGet(nanos, Math::max);
+        if (failed)
+        {
+            failures.increment();
+        }
+    }
+
+    /**
+     * Values of one execution of the template
+     */
+    public class Parameters
+    {
+        private final int[] types = new int[names.length];
+        // rendered SQL literals
+        private final String[] values = new String[names.length];
+
+        public Parameters set(String name, String value)
+        {
+            return put(name, STRING, value == null ? null : "N'" + value.replace("'", "''") + "'");
+        }
+
+        public Parameters set(String name, int value)
+        {
+            return put(name, INT, Integer.toString(value));
+        }
+
+        public Parameters set(String name, double value)
+        {
+            if (Double.isNaN(value) || Double.isInfinite(value))
+            {
+                throw new IllegalArgumentException("Parameter " + name + " is not a number: " + value);
+            }
+            return put(name, FLOAT, Double.toString(value));
+        }
+
+        public Parameters set(String name, Date value)
+        {
+            // not toInstant(), java.sql.Date does not support it
+            return put(name, DATE, value == null ? null : "'" + LocalDateTime.ofInstant(
+                    Instant.ofEpochMilli(value.getTime()), ZoneId.systemDefault()).format(DATETIME) + "'");
+        }
+
+        private Parameters put(String name, int type, String literal)
+        {
+            int i = index(name);
+            types[i] = type;
+            values[i] = literal == null ? "NULL" : literal;
+            return this;
+        }
+
+        /**
+         * Render the query for doQuery()
+         *
+         * @return sp_executesql call
+         * @throws IllegalStateException if a parameter is not set
+         */
+        public String toSql()
+        {
+            if (names.length == 0)
+            {
+                return sql;
+            }
+            String declaration = declaration(types);
+            int length = prefix.length() + declaration.length() + 1;
+            for (int i = 0; i < names.length; i++)
+            {
+                if (values[i] == null)
+                {
+                    throw new IllegalStateException("Parameter " + names[i] + " is not set in query template: " + sql);
+                }
+                length += names[i].length() + values[i].length() + 5;
+            }
+            StringBuilder query = new StringBuilder(length).append(prefix).append(declaration).append('\'');
+            for (int i = 0; i < names.length; i++)
+            {
+                query.append(", @").append(names[i]).append(" = ").append(values[i]);
+            }
+            return query.toString();
+        }
+
+        /**
+         * Run the query
+         *
+         * @param company connected company instance
+         * @return cursor over the result, close it when done
+         */
+        public RecordsetCursor open(ICompany company) throws SBOCOMException
+        {
+            String query = toSql();
+            long start = System.nanoTime();
+            boolean failed = true;
+            try
+            {
+                RecordsetCursor cursor = RecordsetCursor.open(company, query);
+                failed = false;
+                return cursor;
+            }
+            finally
+            {
+                record(System.nanoTime() - start, failed);
+            }
+        }
+
+        @Override
+        public String toString()
+        {
+            Map<String, String> bound = new LinkedHashMap<>();
+            for (int i = 0; i < names.length; i++)
+            {
+                bound.put(names[i], values[i]);
+            }
+            return bound.toString();
+        }
+    }
+}
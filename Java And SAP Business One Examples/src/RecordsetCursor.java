@@ -0,0 +1,329 @@
+/*
+ * Forward-only cursor over a Recordset query result. Column positions and
+ * types are resolved once when the query is executed, so reading a row does
+ * not go through recordSet.getFields().item(..) again. Rows can be consumed
+ * with a for-each loop or as a Stream.
+ * For this program to work, you need SAP Business One DI API installed.
+ */
+
+/*
+ * Import JCO libraries from DI API folder. Two files need to be added to your
+ * project libraries - sboapi.jar and sbowrapper.jar
+ * The files are usually located in:
+ * C:\Program Files (x86)\SAP\SAP Business One DI API\JCO\LIB - 32 bit build
+ * C:\Program Files\SAP\SAP Business One DI API\JCO\LIB - 64 bit build
+ */
+import com.sap.smb.sbo.api.*;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+/**
+ *
+ * @author Rafal Rozmus (rozmus.rafal@gmail.com)
+ */
+public class RecordsetCursor implements Iterable<RecordsetCursor.Row>, AutoCloseable
+{
+
+    // underlying Recordset object
+    private final IRecordset recordSet;
+    // pool the Recordset is given back to, null to release it
+    private BusinessObjectPool owner;
+    // Field objects of every column, they always point at the current row
+    private final IField[] fields;
+    // column names and types (BoFieldTypes), resolved once
+    private final String[] names;
+    private final int[] types;
+    private final Map<String, Integer> columnIndex = new HashMap<>();
+    // the single row view handed out by this cursor
+    private final Row row = new Row();
+    // next() has returned the current row, move before reading again
+    private boolean pendingMove = false;
+    private boolean iteratorCreated = false;
+    private boolean released = false;
+
+    /**
+     * Execute the query and open a cursor on its result.
+     *
+     * @param company connected company instance
+     * @param query SQL query
+     * @return cursor positioned before the first row
+     */
+    public static RecordsetCursor open(ICompany company, String query) throws SBOCOMException
+    {
+        IRecordset recordSet = HandleTracker.shared().newRecordset(company);
+        try
+        {
+            DiApiMetrics.shared().doQuery(recordSet, query);
+            return new RecordsetCursor(recordSet);
+        }
+        catch (RuntimeException e)
+        {
+            recordSet.release();
+            throw e;
+        }
+    }
+
+    /**
+     * Execute the query with a Recordset from the pool and open a cursor on
+     * its result. The Recordset is given back to the pool on close().
+     *
+     * @param objects business objects of a connected session
+     * @param query SQL query
+     * @return cursor positioned before the first row
+     */
+    public static RecordsetCursor open(BusinessObjectPool objects, String query) throws SBOCOMException
+    {
+        IRecordset recordSet = objects.recordset();
+        try
+        {
+            DiApiMetrics.shared().doQuery(recordSet, query);
+            RecordsetCursor cursor = new RecordsetCursor(recordSet);
+            cursor.owner = objects;
+            return cursor;
+        }
+        catch (RuntimeException e)
+        {
+            objects.discard(recordSet);
+            throw e;
+        }
+    }
+
+    /**
+     * Wrap a Recordset which has already executed its query. The cursor takes
+     * over the Recordset and releases it on close().
+     *
+     * @param recordSet Recordset after doQuery()
+     */
+    public RecordsetCursor(IRecordset recordSet)
+    {
+        this.recordSet = recordSet;
+        IFields all = recordSet.getFields();
+        int count = all.getCount();
+        fields = new IField[count];
+        names = new String[count];
+        types = new int[count];
+        for (int i = 0; i < count; i++)
+        {
+            fields[i] = all.item(i);
+            names[i] = fields[i].getName();
+            types[i] = fields[i].getType();
+            columnIndex.put(names[i].toUpperCase(), i);
+        }
+        if (count > 0)
+        {
+            recordSet.moveFirst();
+        }
+    }
+
+    /**
+     * Get number of columns
+     *
+     * @return column count
+     */
+    public int getColumnCount()
+    {
+        return names.length;
+    }
+
+    /**
+     * Get column name
+     *
+     * @param column column position, starting from 0
+     * @return column name
+     */
+    public String getColumnName(int column)
+    {
+        return names[column];
+    }
+
+    /**
+     * Get column type
+     *
+     * @param column column position, starting from 0
+     * @return one of SBOCOMConstants.BoFieldTypes_* values
+     */
+    public int getColumnType(int column)
+    {
+        return types[column];
+    }
+
+    /**
+     * Find column position by name, ignoring case
+     *
+     * @param name column name, e.g. CardCode
+     * @return column position, starting from 0
+     */
+    public int getColumnIndex(String name)
+    {
+        Integer index = columnIndex.get(name.toUpperCase());
+        if (index == null)
+        {
+            throw new IllegalArgumentException("No column " + name + " in query result");
+        }
+        return index;
+    }
+
+    /**
+     * Iterate over the rows. The same Row instance is returned for every row
+     * and it is only valid until the next call to next(); use Row.toArray() to
+     * keep the values. A cursor can only be iterated once.
+     */
+    @Override
+    public Iterator<Row> iterator()
+    {
+        if (iteratorCreated)
+        {
+            throw new IllegalStateException("Recordset cursor can only be iterated once");
+        }
+        iteratorCreated = true;
+        return new Iterator<Row>()
+        {
+            @Override
+            public boolean hasNext()
+            {
+                if (released || names.length == 0)
+                {
+                    return false;
+                }
+                if (pendingMove)
+                {
+                    recordSet.moveNext();
+                    pendingMove = false;
+                }
+                return !recordSet.isEoF();
+            }
+
+            @Override
+            public Row next()
+            {
+                if (!hasNext())
+                {
+                    throw new NoSuchElementException();
+                }
+                pendingMove = true;
+                return row;
+            }
+        };
+    }
+
+    /**
+     * Get the rows as a sequential Stream. Closing the stream releases the
+     * Recordset, so use it in a try-with-resources block.
+     *
+     * @return stream of row views
+     */
+    public Stream<Row> stream()
+    {
+        Spliterator<Row> spliterator = Spliterators.spliteratorUnknownSize(iterator(),
+                Spliterator.ORDERED | Spliterator.NONNULL);
+        return StreamSupport.stream(spliterator, false).onClose(this::close);
+    }
+
+    /**
+     * Release the Recordset object, or give it back to its pool
+     */
+    @Override
+    public void close()
+    {
+        if (!released)
+        {
+            released = true;
+            if (owner != null)
+            {
+                owner.giveBack(recordSet);
+            }
+            else
+            {
+                recordSet.release();
+            }
+        }
+    }
+
+    /**
+     * View of the current row of the cursor
+     */
+    public class Row
+    {
+
+        /**
+         * Get value of a column in its DI API type: String, Integer, Double or
+         * Date.
+         *
+         * @param column column position, starting from 0
+         * @return column value
+         */
+        public Object getValue(int column)
+        {
+            return fields[column].getValue();
+        }
+
+        public String getString(int column)
+        {
+            Object value = fields[column].getValue();
+            return value == null ? null : value.toString();
+        }
+
+        public int getInt(int column)
+        {
+            if (types[column] == SBOCOMConstants.BoFieldTypes_db_Numeric)
+            {
+                return fields[column].getValueInteger();
+            }
+            Object value = fields[column].getValue();
+            return value instanceof Number ? ((Number) value).intValue() : Integer.parseInt(value.toString().trim());
+        }
+
+        public double getDouble(int column)
+        {
+            Object value = fields[column].getValue();
+            return value instanceof Number ? ((Number) value).doubleValue() : Double.parseDouble(value.toString().trim());
+        }
+
+        public Date getDate(int column)
+        {
+            return (Date) fields[column].getValue();
+        }
+
+        public String getString(String column)
+        {
+            return getString(getColumnIndex(column));
+        }
+
+        public int getInt(String column)
+        {
+            return getInt(getColumnIndex(column));
+        }
+
+        public double getDouble(String column)
+        {
+            return getDouble(getColumnIndex(column));
+        }
+
+        public Date getDate(String column)
+        {
+            return getDate(getColumnIndex(column));
+        }
+
+        /**
+         * Copy all values of the current row
+         *
+         * @return column values in column order
+         */
+        public Object[] toArray()
+        {
+            Object[] values = new Object[fields.length];
+            for (int i = 0; i < fields.length; i++)
+            {
+                values[i] = fields[i].getValue();
+            }
+            return values;
+        }
+    }
+}
@@ -44,33 +44,23 @@ public class RecordsetExample {
      */
     public void getBPList()
     {
-        try
+        // perform SQL query, Recordset is released when the cursor is closed
+        try (RecordsetCursor cursor = RecordsetCursor.open(company, "SELECT CardCode, CardName FROM OCRD ORDER BY CardCode"))
         {
-            // initialise Recordset object
-            recordSet = SBOCOMUtil.newRecordset(company);
-            int index;
-            // perform SQL query
-            recordSet.doQuery("SELECT CardCode, CardName FROM OCRD ORDER BY CardCode");
-            index = recordSet.getRecordCount();
             // print out column names first - CardCode(item 0) and CardName(item 1)
-            System.out.println(recordSet.getFields().item(0).getName()
+            System.out.println(cursor.getColumnName(0)
                 + "\t\t"
-                + recordSet.getFields().item(1).getName()
+                + cursor.getColumnName(1)
             );
             
-            // move to the first row
-            recordSet.moveFirst();
             // iterate through all rows
-            for (int i = 0; i < index; i++)
+            for (RecordsetCursor.Row row : cursor)
             {
-                System.out.println(recordSet.getFields().item(0).getValue()
+                System.out.println(row.getString(0)
                     + "\t\t"
-                    + recordSet.getFields().item(1).getValue()
+                    + row.getString(1)
                 );
-                // move to next row
-                recordSet.moveNext();
             }             
-            recordSet.release();
         }
         catch (SBOCOMException e) 
         {
@@ -111,7 +101,7 @@ public class RecordsetExample {
             company.setLicenseServer("licenserver:30000");
             
             // initialise connection
-            connectionResult = company.connect();
+            connectionResult = DiApiMetrics.shared().connect(company);
             
             // if connection successful
             if (connectionResult == 0) 
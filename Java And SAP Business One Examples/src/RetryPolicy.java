@@ -0,0 +1,181 @@
+/*
+ * Retries transient DI API failures with jittered exponential backoff. The
+ * delay after failed attempt n is random between 0 and min(maxDelay,
+ * baseDelay * 2^(n-1)), so sessions which collided on a lock do not collide again on the
+ * retry. Failures after which the session is likely broken are retried on a
+ * fresh pooled session. Permanent and fatal failures are not retried.
+ * Only retry calls which are safe to repeat: an update of the same values,
+ * or an add() which returned an error code. An add() which threw may have
+ * created the document.
+ * For this program to work, you need SAP Business One DI API installed.
+ */
+
+/*
+ * Import JCO libraries from DI API folder. Two files need to be added to your
+ * project libraries - sboapi.jar and sbowrapper.jar
+ * The files are usually located in:
+ * C:\Program Files (x86)\SAP\SAP Business One DI API\JCO\LIB - 32 bit build
+ * C:\Program Files\SAP\SAP Business One DI API\JCO\LIB - 64 bit build
+ */
+import com.sap.smb.sbo.api.*;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ *
+ * @author Rafal Rozmus (rozmus.rafal@gmail.com)
+ */
+public class RetryPolicy
+{
+
+    // total number of attempts, 1 means no retry
+    private final int maxAttempts;
+    private final long baseDelayMillis;
+    private final long maxDelayMillis;
+    private final ErrorClassifier classifier;
+    // number of retries made with this policy
+    private final LongAdder retries = new LongAdder();
+
+    /**
+     * Call made on a session
+     */
+    public interface SessionCall<T>
+    {
+        T call(ICompany company) throws Exception;
+    }
+
+    /**
+     * Policy with 5 attempts, 50 ms base delay and 2 s maximum delay
+     */
+    public RetryPolicy()
+    {
+        this(5, 50, 2000, new ErrorClassifier());
+    }
+
+    public RetryPolicy(int maxAttempts, long baseDelayMillis, long maxDelayMillis, ErrorClassifier classifier)
+    {
+        if (maxAttempts < 1)
+        {
+            throw new IllegalArgumentException("At least one attempt is needed: " + maxAttempts);
+        }
+        this.maxAttempts = maxAttempts;
+        this.baseDelayMillis = baseDelayMillis;
+        this.maxDelayMillis = maxDelayMillis;
+        this.classifier = classifier;
+    }
+
+    public ErrorClassifier getClassifier()
+    {
+        return classifier;
+    }
+
+    /**
+     * Get number of retries made with this policy
+     *
+     * @return retries since the policy was created
+     */
+    public long getRetries()
+    {
+        return retries.sum();
+    }
+
+    /**
+     * Check whether a failed attempt should be retried
+     *
+     * @param attempt number of the failed attempt, starting at 1
+     * @param error the failure
+     * @return true if attempts are left and the failure is transient
+     */
+    public boolean shouldRetry(int attempt, Throwable error)
+    {
+        return attempt < maxAttempts && classifier.classify(error) == ErrorClassifier.Category.TRANSIENT;
+    }
+
+    /**
+     * Wait before the next attempt
+     *
+     * @param attempt number of the failed attempt, starting at 1
+     */
+    public void backOff(int attempt) throws InterruptedException
+    {
+        retries.increment();
+        long ceiling = Math.min(maxDelayMillis, baseDelayMillis << Math.min(attempt - 1, 30));
+        Thread.sleep(ThreadLocalRandom.current().nextLong(ceiling + 1));
+    }
+
+    /**
+     * Make a call on a pooled session, retrying transient failures. A session
+     * which failed with a connection problem is invalidated and the retry is
+     * made on a fresh one. An interrupt stops at once, with the interrupt
+     * flag set again.
+     *
+     * @param pool session pool
+     * @param companyDb company database name
+     * @param call call to make
+     * @return result of the first successful attempt
+     * @throws Exception failure of the last attempt
+     */
+    public <T> T run(SessionPool pool, String companyDb, SessionCall<T> call) throws Exception
+    {
+        for (int attempt = 1;; attempt++)
+        {
+            ICompany session = pool.borrow(companyDb);
+            try
+            {
+                T result = call.call(session);
+                pool.giveBack(session);
+                return result;
+            }
+            catch (InterruptedException e)
+            {
+                pool.giveBack(session);
+                Thread.currentThread().interrupt();
+                throw e;
+            }
+            catch (Exception e)
+            {
+                if (classifier.classify(e) == ErrorClassifier.Category.TRANSIENT && classifier.needsFreshSession(e))
+                {
+                    pool.invalidate(session);
+                }
+                else
+                {
+                    pool.giveBack(session);
+                }
+                if (!shouldRetry(attempt, e))
+                {
+                    throw e;
+                }
+            }
+            backOff(attempt);
+        }
+    }
+
+    /**
+     * Make a call on the given session, retrying transient failures. Failures
+     * which need a fresh session are not retried.
+     *
+     * @param company connected company instance
+     * @param call call to make
+     * @return result of the first successful attempt
+     * @throws Exception failure of the last attempt
+     */
+    public <T> T run(ICompany company, SessionCall<T> call) throws Exception
+    {
+        for (int attempt = 1;; attempt++)
+        {
+            try
+            {
+                return call.call(company);
+            }
+            catch (Exception e)
+            {
+                if (!shouldRetry(attempt, e) || classifier.needsFreshSession(e))
+                {
+                    throw e;
+                }
+            }
+            backOff(attempt);
+        }
+    }
+}
@@ -0,0 +1,415 @@
+/*
+ * An example on how to import Sales Orders from a CSV or TSV file. The file
+ * has a header row and one row per document line; consecutive rows with the
+ * same OrderKey form one order:
+ *
+ *   OrderKey;CardCode;DocDate;DocDueDate;ItemCode;Quantity
+ *
+ * The file is read on one thread while orders are posted on others, through a
+ * bounded queue, so parsing and posting overlap and only a few orders are in
+ * memory at any time. A row which can't be read fails its order only, the
+ * rest of that order is skipped and the import goes on.
+ * For this program to work, you need SAP Business One DI API installed.
+ */
+
+/*
+ * Import JCO libraries from DI API folder. Two files need to be added to your
+ * project libraries - sboapi.jar and sbowrapper.jar
+ * The files are usually located in:
+ * C:\Program Files (x86)\SAP\SAP Business One DI API\JCO\LIB - 32 bit build
+ * C:\Program Files\SAP\SAP Business One DI API\JCO\LIB - 64 bit build
+ */
+import com.sap.smb.sbo.api.*;
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.sql.Date;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ *
+ * @author Rafal Rozmus (rozmus.rafal@gmail.com)
+ */
+public class SalesOrderImporter
+{
+
+    // marks the end of the file for the posting threads
+    private static final ImportedOrder END = new ImportedOrder(null, null);
+
+    // pool the posting sessions are borrowed from
+    private final SessionPool pool;
+    // company database to import into
+    private final String companyDb;
+    // number of posting threads and sessions
+    private final int posters;
+    // maximum number of parsed orders waiting to be posted
+    private final int queueCapacity;
+    // optional Item Master Data cache, lines are checked against it before add()
+    private volatile ItemCache itemCache;
+
+    public static void main(String[] args) throws Exception
+    {
+        SessionPool pool = new SessionPool(new ConnectionSettings(), 0, 3, 60000);
+        try
+        {
+            // the item cache loads and refreshes items on its own session;
+            // items it misses are read on the session of the posting thread
+            ICompany cacheSession = pool.borrow("SBODemoGB");
+            try (ItemCache itemCache = new ItemCache(cacheSession, 100000, 3600000))
+            {
+                itemCache.load();
+                // from here on the session is used by the refresh thread only
+                itemCache.startRefresh(600000);
+                SalesOrderImporter importer = new SalesOrderImporter(pool, "SBODemoGB", 2, 64);
+                importer.setItemCache(itemCache);
+                Summary summary = importer.importFile(Paths.get(args[0]));
+                summary.errors.forEach((orderKey, error) -> System.out.println("Order " + orderKey + ": " + error));
+                System.out.println(summary);
+            }
+            finally
+            {
+                pool.giveBack(cacheSession);
+            }
+        }
+        finally
+        {
+            pool.close();
+        }
+    }
+
+    public SalesOrderImporter(SessionPool pool, String companyDb, int posters, int queueCapacity)
+    {
+        this.pool = pool;
+        this.companyDb = companyDb;
+        this.posters = posters;
+        this.queueCapacity = queueCapacity;
+    }
+
+    /**
+     * Check order lines against an Item Master Data cache before add(), an
+     * order with a bad item is counted as failed without a call to the server
+     *
+     * @param itemCache cache or null for no check
+     */
+    public void setItemCache(ItemCache itemCache)
+    {
+        this.itemCache = itemCache;
+    }
+
+    /**
+     * Import all orders from the file. Files ending with .tsv are tab
+     * separated, anything else is read as semicolon or comma separated,
+     * whichever the header uses.
+     *
+     * @param file order file
+     * @return import summary
+     */
+    public Summary importFile(Path file) throws IOException, InterruptedException
+    {
+        BlockingQueue<ImportedOrder> queue = new ArrayBlockingQueue<>(queueCapacity);
+        Summary summary = new Summary();
+        long start = System.nanoTime();
+        ExecutorService postingThreads = Executors.newFixedThreadPool(posters);
+        List<Future<?>> running = new ArrayList<>();
+        for (int i = 0; i < posters; i++)
+        {
+            running.add(postingThreads.submit(() -> {
+                postAll(queue, summary);
+                return null;
+            }));
+        }
+        try
+        {
+            parse(file, summary, order -> enqueue(queue, order, running));
+        }
+        finally
+        {
+            // let every posting thread finish, even when parsing failed
+            for (int i = 0; i < posters && !running.stream().allMatch(Future::isDone); i++)
+            {
+                enqueue(queue, END, running);
+            }
+            postingThreads.shutdown();
+            for (Future<?> poster : running)
+            {
+                try
+                {
+                    poster.get();
+                }
+                catch (ExecutionException e)
+                {
+                    e.getCause().printStackTrace();
+                }
+            }
+        }
+        summary.elapsedNanos = System.nanoTime() - start;
+        return summary;
+    }
+
+    /**
+     * Read the file and queue every order as soon as its last line was read.
+     * Blocks when the posting threads fall behind. Orders with a row which
+     * can't be read are recorded in the summary instead.
+     */
+    private void parse(Path file, Summary summary, OrderSink sink) throws IOException, InterruptedException
+    {
+        try (BufferedReader reader = Files.newBufferedReader(file, StandardCharsets.UTF_8))
+        {
+            String header = reader.readLine();
+            if (header == null)
+            {
+                return;
+            }
+            char separator = file.toString().toLowerCase().endsWith(".tsv") ? '\t'
+                    : header.indexOf(';') >= 0 ? ';' : ',';
+            List<String> columns = split(header, separator);
+            int orderKey = column(columns, "OrderKey");
+            int cardCode = column(columns, "CardCode");
+            int docDate = column(columns, "DocDate");
+            int docDueDate = column(columns, "DocDueDate");
+            int itemCode = column(columns, "ItemCode");
+            int quantity = column(columns, "Quantity");
+
+            ImportedOrder order = null;
+            // key of the order being skipped after a bad row
+            String skipped = null;
+            String line;
+            int lineNumber = 1;
+            while ((line = reader.readLine()) != null)
+            {
+                lineNumber++;
+                if (line.isEmpty())
+                {
+                    continue;
+                }
+                List<String> values = split(line, separator);
+                if (values.size() <= orderKey)
+                {
+                    // the row does not even say which order it belongs to
+                    summary.failed.incrementAndGet();
+                    summary.errors.put("line " + lineNumber, "Missing OrderKey");
+                    continue;
+                }
+                String key = values.get(orderKey);
+                if (key.equals(skipped))
+                {
+                    continue;
+                }
+                skipped = null;
+                if (order != null && !order.key.equals(key))
+                {
+                    sink.put(order);
+                    order = null;
+                }
+                try
+                {
+                    if (order == null)
+                    {
+                        // 17 means Sales Order
+                        DocumentDraft draft = new DocumentDraft(17);
+                        draft.cardCode = values.get(cardCode);
+                        draft.docDate = Date.valueOf(values.get(docDate));
+                        draft.docDueDate = Date.valueOf(values.get(docDueDate));
+                        order = new ImportedOrder(key, draft);
+                    }
+                    order.draft.addLine(values.get(itemCode), Double.parseDouble(values.get(quantity)));
+                }
+                catch (IndexOutOfBoundsException | IllegalArgumentException e)
+                {
+                    // NumberFormatException is an IllegalArgumentException too
+                    summary.failed.incrementAndGet();
+                    summary.errors.put(key, e instanceof IndexOutOfBoundsException
+                            ? "Line " + lineNumber + " has " + values.size() + " of " + columns.size() + " columns"
+                            : "Line " + lineNumber + " has an invalid date or quantity"
+                                    + (e.getMessage() == null ? "" : ": " + e.getMessage()));
+                    // the rest of the order is skipped
+                    order = null;
+                    skipped = key;
+                }
+            }
+            if (order != null)
+            {
+                sink.put(order);
+            }
+        }
+    }
+
+    /**
+     * Post queued orders on a borrowed session until the end marker arrives
+     */
+    private void postAll(BlockingQueue<ImportedOrder> queue, Summary summary) throws Exception
+    {
+        ICompany session = pool.borrow(companyDb);
+        try
+        {
+            ImportedOrder order;
+            while ((order = queue.take()) != END)
+            {
+                try
+                {
+                    order.draft.post(pool.objects(session), itemCache);
+                    summary.posted.incrementAndGet();
+                }
+                catch (DiApiException e)
+                {
+                    summary.failed.incrementAndGet();
+                    summary.errors.put(order.key, e.getMessage());
+                }
+                catch (SBOCOMException | RuntimeException e)
+                {
+                    // one bad order must not stop the thread and the orders behind it
+                    summary.failed.incrementAndGet();
+                    summary.errors.put(order.key, e.toString());
+                }
+            }
+        }
+        finally
+        {
+            pool.giveBack(session);
+        }
+    }
+
+    /**
+     * Queue an order, waiting while the queue is full. Gives up when no posting
+     * thread is left to drain the queue, e.g. because no session could be
+     * borrowed.
+     */
+    private static void enqueue(BlockingQueue<ImportedOrder> queue, ImportedOrder order, List<Future<?>> posters)
+            throws InterruptedException
+    {
+        while (!queue.offer(order, 500, TimeUnit.MILLISECONDS))
+        {
+            if (posters.stream().allMatch(Future::isDone))
+            {
+                throw new IllegalStateException("All posting threads have stopped");
+            }
+        }
+    }
+
+    private static int column(List<String> header, String name)
+    {
+        for (int i = 0; i < header.size(); i++)
+        {
+            if (header.get(i).trim().equalsIgnoreCase(name))
+            {
+                return i;
+            }
+        }
+        throw new IllegalArgumentException("Missing column " + name);
+    }
+
+    /**
+     * Split a line on the separator. Values may be enclosed in double quotes,
+     * a doubled quote inside quotes stands for one quote.
+     */
+    static List<String> split(String line, char separator)
+    {
+        List<String> values = new ArrayList<>();
+        StringBuilder value = new StringBuilder();
+        boolean quoted = false;
+        for (int i = 0; i < line.length(); i++)
+        {
+            char c = line.charAt(i);
+            if (quoted)
+            {
+                if (c == '"' && i + 1 < line.length() && line.charAt(i + 1) == '"')
+                {
+                    value.append('"');
+                    i++;
+                }
+                else if (c == '"')
+                {
+                    quoted = false;
+                }
+                else
+                {
+                    value.append(c);
+                }
+            }
+            else if (c == '"')
+            {
+                quoted = true;
+            }
+            else if (c == separator)
+            {
+                values.add(value.toString());
+                value.setLength(0);
+            }
+            else
+            {
+                value.append(c);
+            }
+        }
+        values.add(value.toString());
+        return values;
+    }
+
+    /**
+     * Receives parsed orders
+     */
+    private interface OrderSink
+    {
+        void put(ImportedOrder order) throws InterruptedException;
+    }
+
+    /**
+     * Order read from the file together with its key
+     */
+    private static class ImportedOrder
+    {
+        final String key;
+        final DocumentDraft draft;
+
+        ImportedOrder(String key, DocumentDraft draft)
+        {
+            this.key = key;
+            this.draft = draft;
+        }
+    }
+
+    /**
+     * Outcome of an import
+     */
+    public static class Summary
+    {
+        // number of orders added
+        public final AtomicInteger posted = new AtomicInteger();
+        // number of orders rejected by the server or failed otherwise
+        public final AtomicInteger failed = new AtomicInteger();
+        // error message of every failed order by its OrderKey
+        public final Map<String, String> errors = new ConcurrentHashMap<>();
+        // duration of the whole import, in nanoseconds
+        public long elapsedNanos;
+
+        /**
+         * Get throughput of the import
+         *
+         * @return orders added per second
+         */
+        public double getOrdersPerSecond()
+        {
+            return elapsedNanos == 0 ? 0 : posted.get() * 1e9 / elapsedNanos;
+        }
+
+        @Override
+        public String toString()
+        {
+            return String.format("Added %d Sales Orders, %d failed, %.1f orders/sec",
+                    posted.get(), failed.get(), getOrdersPerSecond());
+        }
+    }
+}
@@ -0,0 +1,558 @@
+/*
+ * A pool of already connected Company instances, keyed by company database.
+ * DI API login takes seconds and occupies a license seat, so instead of calling
+ * connect() for every operation, borrow a warm session from the pool and give
+ * it back when done. Every session has its own BusinessObjectPool, so
+ * Recordsets and business objects are reused as well and released when the
+ * session is disconnected.
+ * For this program to work, you need SAP Business One DI API installed.
+ */
+
+/*
+ * Import JCO libraries from DI API folder. Two files need to be added to your
+ * project libraries - sboapi.jar and sbowrapper.jar
+ * The files are usually located in:
+ * C:\Program Files (x86)\SAP\SAP Business One DI API\JCO\LIB - 32 bit build
+ * C:\Program Files\SAP\SAP Business One DI API\JCO\LIB - 64 bit build
+ */
+import com.sap.smb.sbo.api.*;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ *
+ * @author Rafal Rozmus (rozmus.rafal@gmail.com)
+ */
+public class SessionPool
+{
+
+    // connection parameters shared by all sessions
+    private final ConnectionSettings settings;
+    // number of sessions kept open per company database even when idle
+    private final int minSize;
+    // maximum number of sessions (license seats) per company database
+    private final int maxSize;
+    // idle sessions above minSize are disconnected after this time
+    private final long maxIdleMillis;
+    // sessions idle for longer than this are probed with a query on borrow
+    private final long validateAfterMillis;
+    // how long borrow() waits for a free session when maxSize is reached
+    private final long borrowTimeoutMillis;
+    // one partition per company database
+    private final Map<String, Partition> partitions = new ConcurrentHashMap<>();
+    // company database of every borrowed session
+    private final Map<ICompany, Partition> borrowed = new IdentityHashMap<>();
+    // business objects of every open session
+    private final Map<ICompany, BusinessObjectPool> objects = new IdentityHashMap<>();
+    // idle business objects kept per kind and session
+    private volatile int maxIdleObjects = 4;
+    // background idle eviction
+    private final ScheduledExecutorService evictor;
+    private volatile boolean closed = false;
+
+    public static void main(String[] args) throws Exception
+    {
+        SessionPool pool = new SessionPool(new ConnectionSettings(), 1, 4, 300000);
+        // log in once, then reuse the same session for several operations
+        pool.warmUp("SBODemoGB");
+        for (int i = 0; i < 3; i++)
+        {
+            ICompany session = pool.borrow("SBODemoGB");
+            try
+            {
+                RecordsetExample example = new RecordsetExample();
+                example.company = session;
+                example.getBPList();
+            }
+            finally
+            {
+                pool.giveBack(session);
+            }
+        }
+        pool.close();
+    }
+
+    public SessionPool(ConnectionSettings settings, int minSize, int maxSize, long maxIdleMillis)
+    {
+        this(settings, minSize, maxSize, maxIdleMillis, 60000, 30000);
+    }
+
+    public SessionPool(ConnectionSettings settings, int minSize, int maxSize, long maxIdleMillis,
+            long validateAfterMillis, long borrowTimeoutMillis)
+    {
+        if (minSize < 0 || maxSize < 1 || minSize > maxSize)
+        {
+            throw new IllegalArgumentException("Invalid pool size: min " + minSize + ", max " + maxSize);
+        }
+        this.settings = settings;
+        this.minSize = minSize;
+        this.maxSize = maxSize;
+        this.maxIdleMillis = maxIdleMillis;
+        this.validateAfterMillis = validateAfterMillis;
+        this.borrowTimeoutMillis = borrowTimeoutMillis;
+        evictor = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "session-pool-evictor");
+            t.setDaemon(true);
+            return t;
+        });
+        long period = Math.max(1000, maxIdleMillis / 2);
+        evictor.scheduleWithFixedDelay(this::evictIdle, period, period, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Open minSize sessions for the company database up front, so the first
+     * borrowers do not pay for the login.
+     *
+     * @param companyDb company database name
+     */
+    public void warmUp(String companyDb) throws DiApiException, SBOCOMException, InterruptedException
+    {
+        List<ICompany> sessions = new ArrayList<>();
+        try
+        {
+            while (sessions.size() < minSize)
+            {
+                sessions.add(borrow(companyDb));
+            }
+        }
+        finally
+        {
+            for (ICompany session : sessions)
+            {
+                giveBack(session);
+            }
+        }
+    }
+
+    /**
+     * Borrow a connected session for the company database. Idle sessions are
+     * reused, a new one is connected only when none is idle and maxSize has not
+     * been reached. Every session handed out must be returned with giveBack()
+     * or invalidate().
+     *
+     * @param companyDb company database name
+     * @return connected company instance
+     * @throws DiApiException if a new session cannot connect
+     * @throws InterruptedException if interrupted while waiting for a session
+     * @throws IllegalStateException if the pool is closed, or no session
+     *         became free within borrowTimeoutMillis
+     */
+    public ICompany borrow(String companyDb) throws DiApiException, SBOCOMException, InterruptedException
+    {
+        if (closed)
+        {
+            throw new IllegalStateException("Session pool is closed");
+        }
+        Partition partition = partitions.computeIfAbsent(companyDb, Partition::new);
+        if (closed)
+        {
+            // close() may have missed a partition created just now
+            partition.close();
+        }
+        while (true)
+        {
+            PooledSession idle = partition.take(borrowTimeoutMillis);
+            if (idle == null)
+            {
+                // a seat has been reserved for us, log in outside of the lock
+                ICompany company;
+                try
+                {
+                    company = settings.connect(companyDb);
+                }
+                catch (DiApiException | SBOCOMException | RuntimeException e)
+                {
+                    partition.discard();
+                    throw e;
+                }
+                markBorrowed(company, partition);
+                return company;
+            }
+            if (isValid(idle))
+            {
+                markBorrowed(idle.company, partition);
+                return idle.company;
+            }
+            // broken session, drop it and try again
+            partition.discard();
+            disconnect(idle.company);
+        }
+    }
+
+    /**
+     * Get the business objects of a borrowed session. The pool lives as long
+     * as the session, objects taken from it are reused by later borrowers.
+     *
+     * @param company session obtained from borrow()
+     * @return business object pool of the session
+     */
+    public BusinessObjectPool objects(ICompany company)
+    {
+        synchronized (borrowed)
+        {
+            if (!borrowed.containsKey(company))
+            {
+                throw new IllegalArgumentException("Session was not borrowed from this pool");
+            }
+        }
+        synchronized (objects)
+        {
+            return objects.computeIfAbsent(company, c -> new BusinessObjectPool(c, maxIdleObjects));
+        }
+    }
+
+    /**
+     * Set how many idle business objects of each kind a session keeps, for
+     * sessions whose objects() are first used after this call
+     *
+     * @param maxIdleObjects idle objects per kind
+     */
+    public void setMaxIdleObjects(int maxIdleObjects)
+    {
+        if (maxIdleObjects < 1)
+        {
+            throw new IllegalArgumentException("Invalid number of idle objects: " + maxIdleObjects);
+        }
+        this.maxIdleObjects = maxIdleObjects;
+    }
+
+    /**
+     * Return a borrowed session to the pool. Business objects the borrower
+     * took from objects() and did not give back are released.
+     *
+     * @param company session obtained from borrow()
+     */
+    public void giveBack(ICompany company)
+    {
+        Partition partition = unmarkBorrowed(company);
+        BusinessObjectPool sessionObjects;
+        synchronized (objects)
+        {
+            sessionObjects = objects.get(company);
+        }
+        if (sessionObjects != null)
+        {
+            int leaked = sessionObjects.releaseBorrowed();
+            if (leaked > 0)
+            {
+                System.err.println(leaked + " business objects of a " + partition.companyDb
+                        + " session were not given back");
+            }
+        }
+        // never hand out a session with an open transaction
+        try
+        {
+            if (company.isInTransaction())
+            {
+                company.endTransaction(SBOCOMConstants.BoWfTransOpt_wf_RollBack);
+            }
+        }
+        catch (RuntimeException e)
+        {
+            // state of the session is unknown, don't keep it
+            e.printStackTrace();
+            partition.discard();
+            disconnect(company);
+            return;
+        }
+        if (!partition.offer(new PooledSession(company)))
+        {
+            // the pool was closed meanwhile
+            disconnect(company);
+        }
+    }
+
+    /**
+     * Drop a borrowed session that is known to be broken, e.g. after the
+     * connection to the server has been lost.
+     *
+     * @param company session obtained from borrow()
+     */
+    public void invalidate(ICompany company)
+    {
+        Partition partition = unmarkBorrowed(company);
+        partition.discard();
+        disconnect(company);
+    }
+
+    /**
+     * Disconnect all idle sessions and stop accepting new borrowers. Sessions
+     * still borrowed are disconnected when they are given back.
+     */
+    public void close()
+    {
+        closed = true;
+        evictor.shutdownNow();
+        for (Partition partition : partitions.values())
+        {
+            for (PooledSession session : partition.close())
+            {
+                disconnect(session.company);
+            }
+        }
+    }
+
+    /**
+     * Get number of idle sessions for the company database
+     *
+     * @param companyDb company database name
+     * @return idle sessions
+     */
+    public int getIdleCount(String companyDb)
+    {
+        Partition partition = partitions.get(companyDb);
+        return partition == null ? 0 : partition.idleCount();
+    }
+
+    /**
+     * Get number of open (idle and borrowed) sessions for the company database
+     *
+     * @param companyDb company database name
+     * @return open sessions
+     */
+    public int getOpenCount(String companyDb)
+    {
+        Partition partition = partitions.get(companyDb);
+        return partition == null ? 0 : partition.openCount();
+    }
+
+    /**
+     * Check an idle session before handing it out. Sessions used recently are
+     * trusted, older ones get a round trip to the server.
+     */
+    private boolean isValid(PooledSession session)
+    {
+        try
+        {
+            if (!session.company.isConnected())
+            {
+                return false;
+            }
+            if (System.currentTimeMillis() - session.lastUsed < validateAfterMillis)
+            {
+                return true;
+            }
+            IRecordset probe = HandleTracker.shared().newRecordset(session.company);
+            try
+            {
+                DiApiMetrics.shared().doQuery(probe, "SELECT 1");
+                return probe.getRecordCount() == 1;
+            }
+            finally
+            {
+                probe.release();
+            }
+        }
+        catch (Exception e)
+        {
+            return false;
+        }
+    }
+
+    private void evictIdle()
+    {
+        long cutoff = System.currentTimeMillis() - maxIdleMillis;
+        for (Partition partition : partitions.values())
+        {
+            for (PooledSession session : partition.drain(minSize, cutoff))
+            {
+                disconnect(session.company);
+            }
+        }
+    }
+
+    private void markBorrowed(ICompany company, Partition partition)
+    {
+        synchronized (borrowed)
+        {
+            borrowed.put(company, partition);
+        }
+    }
+
+    private Partition unmarkBorrowed(ICompany company)
+    {
+        Partition partition;
+        synchronized (borrowed)
+        {
+            partition = borrowed.remove(company);
+        }
+        if (partition == null)
+        {
+            throw new IllegalArgumentException("Session was not borrowed from this pool");
+        }
+        return partition;
+    }
+
+    private void disconnect(ICompany company)
+    {
+        BusinessObjectPool sessionObjects;
+        synchronized (objects)
+        {
+            sessionObjects = objects.remove(company);
+        }
+        if (sessionObjects != null)
+        {
+            // release business objects before their session goes away
+            sessionObjects.close();
+            sessionObjects.releaseBorrowed();
+        }
+        try
+        {
+            company.disconnect();
+            company.release();
+        }
+        catch (Exception e)
+        {
+            e.printStackTrace();
+        }
+    }
+
+    /**
+     * Idle session together with the time it was given back
+     */
+    private static class PooledSession
+    {
+        final ICompany company;
+        final long lastUsed = System.currentTimeMillis();
+
+        PooledSession(ICompany company)
+        {
+            this.company = company;
+        }
+    }
+
+    /**
+     * Sessions of a single company database
+     */
+    private class Partition
+    {
+        // company database name, used in error messages
+        private final String companyDb;
+        // most recently used session first, so that the others can expire
+        private final Deque<PooledSession> idle = new ArrayDeque<>();
+        // idle plus borrowed plus currently connecting
+        private int open = 0;
+        // set by close(), under the lock, so no seat is reserved and no
+        // session is queued afterwards
+        private boolean closed = false;
+
+        Partition(String companyDb)
+        {
+            this.companyDb = companyDb;
+        }
+
+        /**
+         * Take an idle session or reserve a seat for a new one (returns null).
+         * Waits when all maxSize sessions are borrowed.
+         *
+         * @throws IllegalStateException if the pool is closed, also while
+         *         waiting
+         */
+        synchronized PooledSession take(long timeoutMillis) throws InterruptedException
+        {
+            long deadline = System.currentTimeMillis() + timeoutMillis;
+            while (!closed && idle.isEmpty() && open >= maxSize)
+            {
+                long remaining = deadline - System.currentTimeMillis();
+                if (remaining <= 0)
+                {
+                    throw new IllegalStateException("Timed out waiting for a free session to "
+                            + companyDb + ", all " + maxSize + " are in use");
+                }
+                wait(remaining);
+            }
+            if (closed)
+            {
+                throw new IllegalStateException("Session pool is closed");
+            }
+            if (!idle.isEmpty())
+            {
+                return idle.pollFirst();
+            }
+            open++;
+            return null;
+        }
+
+        /**
+         * Queue a session given back
+         *
+         * @return false if the pool is closed; the seat is freed and the
+         *         caller disconnects the session
+         */
+        synchronized boolean offer(PooledSession session)
+        {
+            if (closed)
+            {
+                open--;
+                return false;
+            }
+            idle.addFirst(session);
+            notify();
+            return true;
+        }
+
+        synchronized void discard()
+        {
+            open--;
+            notify();
+        }
+
+        /**
+         * Remove idle sessions last used before the cutoff, keeping at least
+         * keep sessions open.
+         */
+        synchronized List<PooledSession> drain(int keep, long cutoff)
+        {
+            List<PooledSession> expired = new ArrayList<>();
+            Iterator<PooledSession> oldestFirst = idle.descendingIterator();
+            while (oldestFirst.hasNext() && open > keep)
+            {
+                PooledSession session = oldestFirst.next();
+                if (cutoff > 0 && session.lastUsed >= cutoff)
+                {
+                    break;
+                }
+                oldestFirst.remove();
+                open--;
+                expired.add(session);
+            }
+            notifyAll();
+            return expired;
+        }
+
+        /**
+         * Stop handing out and queueing sessions, wake up all waiting
+         * borrowers
+         *
+         * @return idle sessions, to be disconnected
+         */
+        synchronized List<PooledSession> close()
+        {
+            closed = true;
+            List<PooledSession> sessions = new ArrayList<>(idle);
+            open -= idle.size();
+            idle.clear();
+            notifyAll();
+            return sessions;
+        }
+
+        synchronized int idleCount()
+        {
+            return idle.size();
+        }
+
+        synchronized int openCount()
+        {
+            return open;
+        }
+    }
+}
@@ -45,13 +45,13 @@ public class UnlockUser {
         try
         {
             // initialise User object
-            user = SBOCOMUtil.newUsers(company);
+            user = HandleTracker.shared().newUsers(company);
             // get the user by its InternalKey (INTERNAL_K in OUSR table)
             user.getByKey(40);
             // check if user is locked
             if (user.getLocked() == 1) {
                 user.setLocked(0);
-                if(user.update() == 0) {
+                if(DiApiMetrics.shared().update(company, user) == 0) {
                     System.out.println("Successfully unlocked user: " + user.getUserCode());
                 }
                 else {
@@ -73,6 +73,14 @@ public class UnlockUser {
         {
             e.printStackTrace();
         }
+        finally
+        {
+            if (user != null)
+            {
+                user.release();
+                user = null;
+            }
+        }
     }
     
     
@@ -108,7 +116,7 @@ public class UnlockUser {
             company.setLicenseServer("licenserver:30000");
             
             // initialise connection
-            connectionResult = company.connect();
+            connectionResult = DiApiMetrics.shared().connect(company);
             
             // if connection successful
             if (connectionResult == 0) 
@@ -12,6 +12,8 @@
  */
 
 import com.sap.smb.sbo.api.*;
+import java.util.HashSet;
+import java.util.Set;
 /**
  *
  * @author Rafal.Rozmus (rozmus.rafal@gmail.com)
@@ -22,6 +24,8 @@ public class UpdateAlternateCatNumbersExample {
     public ICompany company;
     // declare Business Partner Catalogue Numbers object
     public IAlternateCatNum altCatNum;
+    // business objects of the company, the Catalogue Numbers object is taken from them
+    private BusinessObjectPool objects;
     // set default value for connection result, 0 will mean success
     private int connectionResult = -1;
     // declare a list of Business Partners
@@ -36,10 +40,18 @@ public class UpdateAlternateCatNumbersExample {
     public static void main(String[] args) {
         UpdateAlternateCatNumbersExample sapConnection = new UpdateAlternateCatNumbersExample();
         sapConnection.connect();
-        sapConnection.updateCategoryNumbers();
-        // check if connection has been established before disconnecting
+        // check if connection has been established before using it
         if (sapConnection.getConnectionResult() == 0)
         {
+            // pass "diff" to read existing numbers with one query and update only the changed ones
+            if (args.length > 0 && args[0].equals("diff"))
+            {
+                sapConnection.updateChangedCategoryNumbers();
+            }
+            else
+            {
+                sapConnection.updateCategoryNumbers();
+            }
             sapConnection.disconnect();
         }
     }
@@ -76,12 +88,13 @@ public class UpdateAlternateCatNumbersExample {
             company.setLicenseServer("licenserver:30000");
             
             // initialise connection
-            connectionResult = company.connect();
+            connectionResult = DiApiMetrics.shared().connect(company);
             
             // if connection successful
             if (connectionResult == 0) 
             {
                 System.out.println("Successfully connected to " + company.getCompanyName());
+                objects = new BusinessObjectPool(company, 1);
             }
             // if connection failed
             else 
@@ -108,6 +121,8 @@ public class UpdateAlternateCatNumbersExample {
      */
     public void disconnect() 
     {
+        // release business objects before their session goes away
+        objects.close();
         company.disconnect();
         System.out.println("Application disconnected successfully");
     }
@@ -124,13 +139,17 @@ public class UpdateAlternateCatNumbersExample {
     
     public void updateCategoryNumbers() {
         try {
-            altCatNum = SBOCOMUtil.newAlternateCatNum(company);
+            altCatNum = objects.alternateCatNum();
             
             // iterate through all Business Partners
             for (int i = 0; i < bpList.length; i++) {
                 // iterate through all products
                 for (int y = 0; y < productsList.length; y++) {
-                    altCatNum.getByKey(productsList[y], bpList[i], currentCatNumbersList[y]);
+                    if (!altCatNum.getByKey(productsList[y], bpList[i], currentCatNumbersList[y])) {
+                        System.out.println("BP #" + i + " - BP: " + bpList[i] + ", Product: " + productsList[y]
+                            + ", BP Category Number " + currentCatNumbersList[y] + " not found");
+                        continue;
+                    }
                     System.out.println("BP #" + i + " - BP: " + altCatNum.getCardCode() 
                         + ", Product: " + altCatNum.getItemCode()
                         + ", BP Category Number: " + altCatNum.getSubstitute()
@@ -138,7 +157,7 @@ public class UpdateAlternateCatNumbersExample {
                     );
                     System.out.println("Updating ...");
                     altCatNum.setSubstitute(newCatNumbersList[y]);
-                    if (altCatNum.update() == 0) {
+                    if (DiApiMetrics.shared().update(company, altCatNum) == 0) {
                         System.out.println("Success!");
                     } else {
                         // get error message fom SAP Business One Server
@@ -158,6 +177,99 @@ public class UpdateAlternateCatNumbersExample {
         {
             e.printStackTrace();
         }
+        finally
+        {
+            giveBack();
+        }
+    }
+            
+    /**
+     * Same as updateCategoryNumbers(), but all existing Catalogue Numbers of
+     * the Business Partners are loaded with one query first. getByKey() and
+     * update() are only called for rows which still have the old number.
+     */
+    public void updateChangedCategoryNumbers() {
+        int updated = 0;
+        int skipped = 0;
+        int failed = 0;
+        try {
+            // load existing OSCN rows, keyed by ItemCode, CardCode and Substitute
+            Set<String> existing = new HashSet<>();
+            StringBuilder query = new StringBuilder("SELECT ItemCode, CardCode, Substitute FROM OSCN WHERE CardCode IN (");
+            for (int i = 0; i < bpList.length; i++) {
+                query.append(i == 0 ? "N'" : ", N'").append(bpList[i].replace("'", "''")).append('\'');
+            }
+            query.append(')');
+            try (RecordsetCursor cursor = RecordsetCursor.open(company, query.toString())) {
+                for (RecordsetCursor.Row row : cursor) {
+                    existing.add(catNumKey(row.getString(0), row.getString(1), row.getString(2)));
+                }
+            }
+            
+            altCatNum = objects.alternateCatNum();
+            // iterate through all Business Partners
+            for (int i = 0; i < bpList.length; i++) {
+                // iterate through all products
+                for (int y = 0; y < productsList.length; y++) {
+                    // nothing to do if the old number is gone or the new one is already there
+                    if (!existing.contains(catNumKey(productsList[y], bpList[i], currentCatNumbersList[y]))
+                            || existing.contains(catNumKey(productsList[y], bpList[i], newCatNumbersList[y]))) {
+                        skipped++;
+                        continue;
+                    }
+                    // the row may have been changed since the query
+                    if (!altCatNum.getByKey(productsList[y], bpList[i], currentCatNumbersList[y])) {
+                        failed++;
+                        System.out.println("Failed to update BP: " + bpList[i] + ", Product: " + productsList[y]
+                            + ": Catalogue Number " + currentCatNumbersList[y] + " not found");
+                        continue;
+                    }
+                    altCatNum.setSubstitute(newCatNumbersList[y]);
+                    if (DiApiMetrics.shared().update(company, altCatNum) == 0) {
+                        updated++;
+                    } else {
+                        failed++;
+                        // get error message fom SAP Business One Server
+                        SBOErrorMessage errMsg = company.getLastError();
+                        System.out.println(
+                            "Failed to update BP: " + bpList[i] + ", Product: " + productsList[y] + ": "
+                            + errMsg.getErrorMessage()
+                            + " "
+                            + errMsg.getErrorCode()
+                        );
+                    }
+                }
+            }
+        }
+        catch(SBOCOMException e)
+        {
+            e.printStackTrace();
+        }
+        finally
+        {
+            giveBack();
+        }
+        System.out.println("Updated: " + updated + ", skipped: " + skipped + ", failed: " + failed);
+    }
+    
+    /**
+     * Give the Catalogue Numbers object back, it is loaded with getByKey()
+     * before every use
+     */
+    private void giveBack() {
+        if (altCatNum != null) {
+            objects.giveBack(altCatNum);
+            altCatNum = null;
+        }
+    }
+    
+    /**
+     * Key of a Catalogue Number; codes are compared ignoring case like the
+     * server does, see CardCodeIndex
+     */
+    private static String catNumKey(String itemCode, String cardCode, String substitute) {
+        return itemCode.trim().toUpperCase() + '\u0000' + cardCode.trim().toUpperCase() + '\u0000'
+            + substitute.trim().toUpperCase();
     }
             
 }
@@ -0,0 +1,404 @@
+/*
+ * Reads keys with a query on one session and updates the objects behind them
+ * on other sessions at the same time. MarkInvoiceAsPrinted moves through its
+ * Recordset and updates every invoice on the same thread, so the time of
+ * reading and of writing adds up; here a reader thread drains the query into
+ * a bounded queue and several writer threads, each with its own session from
+ * a SessionPool, take keys from it. When the writers fall behind the queue
+ * fills up and the reader waits, so memory stays bounded however large the
+ * result is. Transient failures of a key are retried with a RetryPolicy, a
+ * key which still fails is recorded and the others go on.
+ * For this program to work, you need SAP Business One DI API installed.
+ */
+
+/*
+ * Import JCO libraries from DI API folder. Two files need to be added to your
+ * project libraries - sboapi.jar and sbowrapper.jar
+ * The files are usually located in:
+ * C:\Program Files (x86)\SAP\SAP Business One DI API\JCO\LIB - 32 bit build
+ * C:\Program Files\SAP\SAP Business One DI API\JCO\LIB - 64 bit build
+ */
+import com.sap.smb.sbo.api.*;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ *
+ * @author Rafal Rozmus (rozmus.rafal@gmail.com)
+ */
+public class UpdatePipeline<K>
+{
+
+    // marks the end of the keys, one per writer
+    private static final Object END = new Object();
+
+    // pool the reader and writer sessions are borrowed from
+    private final SessionPool pool;
+    private final String companyDb;
+    // number of writer threads, each with its own session
+    private final int writers;
+    // number of keys read ahead of the writers
+    private final int queueCapacity;
+    private final RetryPolicy retryPolicy;
+
+    /**
+     * Get the key of a row
+     */
+    public interface KeyReader<K>
+    {
+        K read(RecordsetCursor.Row row);
+    }
+
+    /**
+     * Apply the update for one key
+     */
+    public interface KeyWriter<K>
+    {
+        /**
+         * @param objects business objects of the writer's session, see
+         *        BusinessObjectPool.getCompany()
+         * @param key key read from the query
+         * @throws Exception e.g. DiApiException if update() failed
+         */
+        void write(BusinessObjectPool objects, K key) throws Exception;
+    }
+
+    public static void main(String[] args) throws Exception
+    {
+        SessionPool pool = new SessionPool(new ConnectionSettings(), 0, 5, 300000);
+        try
+        {
+            UpdatePipeline<Integer> pipeline = new UpdatePipeline<>(pool, "SBODemoGB", 4, 1000, new RetryPolicy());
+            // mark all today's AR Invoices as printed, like MarkInvoiceAsPrinted
+            Result<Integer> result = pipeline.run(
+                    "SELECT T0.[DocEntry] FROM OINV T0"
+                    + " WHERE T0.DocDate = CAST(CURRENT_TIMESTAMP AS DATE) AND T0.[Printed] = 'N'",
+                    row -> row.getInt(0),
+                    (objects, docEntry) -> {
+                        // 13 means AR Invoice
+                        IDocuments invoice = objects.documents(13);
+                        try
+                        {
+                            if (!invoice.getByKey(docEntry))
+                            {
+                                throw new DiApiException("find invoice " + docEntry, -2028, "Invoice not found");
+                            }
+                            invoice.setPrinted(1);
+                            if (DiApiMetrics.shared().update(objects.getCompany(), invoice, 13) != 0)
+                            {
+                                throw new DiApiException("mark invoice " + docEntry,
+                                        objects.getCompany().getLastError());
+                            }
+                        }
+                        finally
+                        {
+                            objects.giveBack(invoice);
+                        }
+                    });
+            result.failed.forEach((docEntry, error) ->
+                    System.out.println("Cannot mark Invoice " + docEntry + ": " + error));
+            System.out.println(result);
+        }
+        finally
+        {
+            pool.close();
+        }
+    }
+
+    /**
+     * @param pool session pool, it needs room for writers + 1 sessions
+     * @param companyDb company database name
+     * @param writers number of writer threads
+     * @param queueCapacity keys read ahead of the writers
+     * @param retryPolicy retries of transient write failures
+     */
+    public UpdatePipeline(SessionPool pool, String companyDb, int writers, int queueCapacity, RetryPolicy retryPolicy)
+    {
+        if (writers < 1 || queueCapacity < 1)
+        {
+            throw new IllegalArgumentException("Invalid number of writers " + writers + " or queue capacity "
+                    + queueCapacity);
+        }
+        this.pool = pool;
+        this.companyDb = companyDb;
+        this.writers = writers;
+        this.queueCapacity = queueCapacity;
+        this.retryPolicy = retryPolicy;
+    }
+
+    /**
+     * Read keys with the query and write every key
+     *
+     * @param query SQL query
+     * @param reader gets the key of a row
+     * @param writer applies the update of a key
+     * @return written and failed keys, and how long the stages waited
+     * @throws ExecutionException if the query failed or a session could not
+     *         be borrowed; keys written so far stay written
+     */
+    public Result<K> run(String query, KeyReader<K> reader, KeyWriter<K> writer)
+            throws ExecutionException, InterruptedException
+    {
+        Run run = new Run(query, reader, writer);
+        long start = System.nanoTime();
+        List<Thread> threads = new ArrayList<>();
+        threads.add(new Thread(run::read, "pipeline-reader-" + companyDb));
+        for (int i = 0; i < writers; i++)
+        {
+            threads.add(new Thread(run::write, "pipeline-writer-" + companyDb + "-" + i));
+        }
+        for (Thread thread : threads)
+        {
+            thread.start();
+        }
+        try
+        {
+            for (Thread thread : threads)
+            {
+                thread.join();
+            }
+        }
+        catch (InterruptedException e)
+        {
+            run.abort(e);
+            for (Thread thread : threads)
+            {
+                thread.interrupt();
+            }
+            throw e;
+        }
+        run.result.millis = (System.nanoTime() - start) / 1000000;
+        run.result.readerBlockedMillis = run.readerBlockedNanos.get() / 1000000;
+        run.result.writersIdleMillis = run.writersIdleNanos.get() / 1000000;
+        if (run.error != null)
+        {
+            throw new ExecutionException("Pipeline on " + companyDb + " failed: " + run.error.getMessage(),
+                    run.error);
+        }
+        return run.result;
+    }
+
+    /**
+     * State of one run, shared by its threads
+     */
+    private class Run
+    {
+        final String query;
+        final KeyReader<K> reader;
+        final KeyWriter<K> writer;
+        final BlockingQueue<Object> queue = new ArrayBlockingQueue<>(queueCapacity);
+        final Result<K> result = new Result<>();
+        // time the reader waited for room in the queue, and writers for keys
+        final AtomicLong readerBlockedNanos = new AtomicLong();
+        final AtomicLong writersIdleNanos = new AtomicLong();
+        // first failure which stops the run
+        volatile Throwable error;
+
+        Run(String query, KeyReader<K> reader, KeyWriter<K> writer)
+        {
+            this.query = query;
+            this.reader = reader;
+            this.writer = writer;
+        }
+
+        synchronized void abort(Throwable e)
+        {
+            if (error == null)
+            {
+                error = e;
+            }
+        }
+
+        void read()
+        {
+            try
+            {
+                ICompany session = pool.borrow(companyDb);
+                try (RecordsetCursor cursor = RecordsetCursor.open(pool.objects(session), query))
+                {
+                    for (RecordsetCursor.Row row : cursor)
+                    {
+                        if (!put(reader.read(row)))
+                        {
+                            return;
+                        }
+                        synchronized (result)
+                        {
+                            result.read++;
+                        }
+                    }
+                }
+                finally
+                {
+                    pool.giveBack(session);
+                }
+            }
+            catch (Exception e)
+            {
+                abort(e);
+            }
+            finally
+            {
+                // let every writer finish, after the keys already queued
+                for (int i = 0; i < writers; i++)
+                {
+                    if (!put(END))
+                    {
+                        break;
+                    }
+                }
+            }
+        }
+
+        /**
+         * Queue a key, waiting while the queue is full
+         *
+         * @return false if the run was aborted meanwhile
+         */
+        boolean put(Object key)
+        {
+            try
+            {
+                if (queue.offer(key))
+                {
+                    return true;
+                }
+                long start = System.nanoTime();
+                try
+                {
+                    // writers are behind, wait for them
+                    while (error == null)
+                    {
+                        if (queue.offer(key, 100, TimeUnit.MILLISECONDS))
+                        {
+                            return true;
+                        }
+                    }
+                    return false;
+                }
+                finally
+                {
+                    readerBlockedNanos.addAndGet(System.nanoTime() - start);
+                }
+            }
+            catch (InterruptedException e)
+            {
+                Thread.currentThread().interrupt();
+                abort(e);
+                return false;
+            }
+        }
+
+        @SuppressWarnings("unchecked")
+        void write()
+        {
+            ICompany session = null;
+            try
+            {
+                session = pool.borrow(companyDb);
+                while (error == null)
+                {
+                    long start = System.nanoTime();
+                    Object next = queue.poll(100, TimeUnit.MILLISECONDS);
+                    writersIdleNanos.addAndGet(System.nanoTime() - start);
+                    if (next == END)
+                    {
+                        return;
+                    }
+                    if (next != null)
+                    {
+                        if (session == null)
+                        {
+                            session = pool.borrow(companyDb);
+                        }
+                        session = writeOne(session, (K) next);
+                    }
+                }
+            }
+            catch (Exception e)
+            {
+                abort(e);
+            }
+            finally
+            {
+                if (session != null)
+                {
+                    pool.giveBack(session);
+                }
+            }
+        }
+
+        /**
+         * Write one key with retries
+         *
+         * @return session to go on with, null if it was dropped after the
+         *         connection was lost
+         */
+        ICompany writeOne(ICompany session, K key) throws Exception
+        {
+            BusinessObjectPool objects = pool.objects(session);
+            try
+            {
+                retryPolicy.run(session, c -> {
+                    writer.write(objects, key);
+                    return null;
+                });
+                synchronized (result)
+                {
+                    result.written++;
+                }
+                return session;
+            }
+            catch (InterruptedException e)
+            {
+                throw e;
+            }
+            catch (Exception e)
+            {
+                synchronized (result)
+                {
+                    result.failed.put(key, e.getMessage());
+                }
+                if (retryPolicy.getClassifier().needsFreshSession(e))
+                {
+                    pool.invalidate(session);
+                    return null;
+                }
+                return session;
+            }
+        }
+    }
+
+    /**
+     * Outcome of a run
+     */
+    public static class Result<K>
+    {
+        // number of keys read by the query
+        public long read = 0;
+        // number of keys written
+        public long written = 0;
+        // error message of every key which could not be written
+        public final Map<K, String> failed = new LinkedHashMap<>();
+        // total duration
+        public long millis = 0;
+        // time the reader waited because the writers were behind
+        public long readerBlockedMillis = 0;
+        // time the writers together waited for keys
+        public long writersIdleMillis = 0;
+
+        @Override
+        public String toString()
+        {
+            return "Read " + read + " keys, written " + written + ", failed " + failed.size() + " in " + millis
+                    + " ms (reader blocked " + readerBlockedMillis + " ms, writers idle " + writersIdleMillis + " ms)";
+        }
+    }
+}